@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns.karaf;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.MBeanException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.karaf.shell.commands.Option;
+import org.apache.karaf.shell.console.OsgiCommandSupport;
+
+/**
+ * base for sns appender console commands; appender lives inside pax logging
+ * fragment and is not visible to other bundles, so commands talk to its
+ * metrics MBean over platform JMX server
+ */
+public abstract class CommandBase extends OsgiCommandSupport {
+
+	/** must match appender metrics domain */
+	public static final String DOMAIN = "com.carrotgarden.log4j.aws.sns";
+
+	@Option(name = "-n", aliases = "--name", description = "appender name; default is all appenders", required = false, multiValued = false)
+	protected String name;
+
+	protected MBeanServer server() {
+		return ManagementFactory.getPlatformMBeanServer();
+	}
+
+	/** appender name from MBean name */
+	protected static String appenderName(final ObjectName objectName) {
+		final String name = objectName.getKeyProperty("name");
+		try {
+			return ObjectName.unquote(name);
+		} catch (final Exception e) {
+			return name;
+		}
+	}
+
+	/** registered appender MBeans, ordered by name, filtered by name option */
+	protected List<ObjectName> appenderList() throws Exception {
+
+		final ObjectName pattern = new ObjectName(DOMAIN + ":type=Appender,*");
+
+		final List<ObjectName> list = new ArrayList<ObjectName>();
+
+		for (final ObjectName objectName : server().queryNames(pattern, null)) {
+			if (name == null || name.equals(appenderName(objectName))) {
+				list.add(objectName);
+			}
+		}
+
+		Collections.sort(list);
+
+		return list;
+
+	}
+
+	protected long longValue(final ObjectName objectName,
+			final String attribute) throws Exception {
+		return ((Number) server().getAttribute(objectName, attribute))
+				.longValue();
+	}
+
+	protected Object invoke(final ObjectName objectName,
+			final String operation, final int value) throws Exception {
+		try {
+			return server().invoke(objectName, operation,
+					new Object[] { value }, new String[] { "int" });
+		} catch (final MBeanException e) {
+			throw e.getTargetException();
+		}
+	}
+
+	@Override
+	protected Object doExecute() throws Exception {
+
+		final List<ObjectName> list = appenderList();
+
+		final PrintStream out = System.out;
+
+		if (list.isEmpty()) {
+			out.println(name == null ? "no sns appenders"
+					: "no sns appender : " + name);
+			return null;
+		}
+
+		for (final ObjectName objectName : list) {
+			out.println("appender : " + appenderName(objectName));
+			try {
+				execute(objectName, out);
+			} catch (final Exception e) {
+				out.println("  failure : " + e);
+			}
+		}
+
+		return null;
+
+	}
+
+	/** run command for one appender */
+	protected abstract void execute(ObjectName objectName, PrintStream out)
+			throws Exception;
+
+}
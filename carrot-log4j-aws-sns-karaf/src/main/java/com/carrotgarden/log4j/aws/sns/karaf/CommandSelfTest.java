@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns.karaf;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import javax.management.ObjectName;
+
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+
+/**
+ * end-to-end publish round trip through appender client and configured
+ * endpoint; messages reach real topic subscribers, marked with "selftest"
+ * message attribute; count is capped by the appender
+ */
+@Command(scope = "sns", name = "selftest", description = "time self test publish to sns appender default topic")
+public class CommandSelfTest extends CommandBase {
+
+	@Option(name = "-c", aliases = "--count", description = "self test message count", required = false, multiValued = false)
+	protected int count = 3;
+
+	@Override
+	protected void execute(final ObjectName objectName, final PrintStream out)
+			throws Exception {
+
+		final long[] micros = (long[]) invoke(objectName, "selfTest", count);
+
+		if (micros.length == 0) {
+			out.println("  no messages");
+			return;
+		}
+
+		for (int index = 0; index < micros.length; index++) {
+			out.printf("  publish %d : %d us%n", index + 1, micros[index]);
+		}
+
+		final long[] sorted = micros.clone();
+
+		Arrays.sort(sorted);
+
+		out.printf("  min=%d median=%d max=%d us%n", sorted[0],
+				sorted[sorted.length / 2], sorted[sorted.length - 1]);
+
+	}
+
+}
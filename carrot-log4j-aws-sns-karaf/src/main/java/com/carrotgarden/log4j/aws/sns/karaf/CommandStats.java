@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns.karaf;
+
+import java.io.PrintStream;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+
+/**
+ * counters with rates over sample interval, current in-flight and queue
+ * depth, render and publish latency percentiles
+ */
+@Command(scope = "sns", name = "stats", description = "show sns appender pipeline counters, rates and latency")
+public class CommandStats extends CommandBase {
+
+	static final String[] COUNTERS = { "EventsSeen", "EventsRejected",
+			"EventsRendered", "BytesRendered", "EventsTruncated",
+			"EventsPublished", "EventsFailed", "ExecutorRejected" };
+
+	static final String[] LATENCY = { "Count", "Mean", "P50", "P99", "P999",
+			"Max" };
+
+	@Option(name = "-i", aliases = "--interval", description = "rate sample interval, millis; 0 to skip rates", required = false, multiValued = false)
+	protected int interval = 1000;
+
+	protected long[] counters(final ObjectName objectName) throws Exception {
+		final long[] values = new long[COUNTERS.length];
+		for (int index = 0; index < COUNTERS.length; index++) {
+			values[index] = longValue(objectName, COUNTERS[index]);
+		}
+		return values;
+	}
+
+	@Override
+	protected Object doExecute() throws Exception {
+
+		if (interval <= 0) {
+			return super.doExecute();
+		}
+
+		/** sample all appenders over the same interval */
+
+		final List<ObjectName> list = appenderList();
+
+		final PrintStream out = System.out;
+
+		if (list.isEmpty()) {
+			return super.doExecute();
+		}
+
+		final long[][] before = new long[list.size()][];
+
+		for (int index = 0; index < list.size(); index++) {
+			before[index] = counters(list.get(index));
+		}
+
+		final long time = System.nanoTime();
+
+		Thread.sleep(interval);
+
+		final double seconds = (System.nanoTime() - time) / 1e9;
+
+		for (int index = 0; index < list.size(); index++) {
+
+			final ObjectName objectName = list.get(index);
+
+			out.println("appender : " + appenderName(objectName));
+
+			try {
+				report(objectName, before[index], seconds, out);
+			} catch (final Exception e) {
+				out.println("  failure : " + e);
+			}
+
+		}
+
+		return null;
+
+	}
+
+	@Override
+	protected void execute(final ObjectName objectName, final PrintStream out)
+			throws Exception {
+		report(objectName, null, 0, out);
+	}
+
+	protected void report(final ObjectName objectName, final long[] before,
+			final double seconds, final PrintStream out) throws Exception {
+
+		final long[] after = counters(objectName);
+
+		for (int index = 0; index < COUNTERS.length; index++) {
+			if (before == null) {
+				out.printf("  %-18s %12d%n", COUNTERS[index], after[index]);
+			} else {
+				out.printf("  %-18s %12d %12.1f/s%n", COUNTERS[index],
+						after[index], (after[index] - before[index]) / seconds);
+			}
+		}
+
+		out.printf("  %-18s %12d%n", "InFlight",
+				longValue(objectName, "InFlight"));
+		out.printf("  %-18s %12d%n", "QueueDepth",
+				longValue(objectName, "QueueDepth"));
+
+		latency(objectName, "Render", out);
+		latency(objectName, "Publish", out);
+
+	}
+
+	protected void latency(final ObjectName objectName, final String prefix,
+			final PrintStream out) throws Exception {
+
+		final StringBuilder text = new StringBuilder();
+
+		text.append(String.format("  %-18s", prefix + " us"));
+
+		for (final String suffix : LATENCY) {
+			text.append(String.format(" %s=%d", suffix.toLowerCase(),
+					longValue(objectName, prefix + suffix)));
+		}
+
+		out.println(text);
+
+	}
+
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns.karaf;
+
+import java.io.PrintStream;
+
+import javax.management.ObjectName;
+
+import org.apache.karaf.shell.commands.Command;
+import org.apache.karaf.shell.commands.Option;
+
+/**
+ * most suppressed event signatures of appender throttling evaluator
+ */
+@Command(scope = "sns", name = "throttle-top", description = "list event signatures most suppressed by sns appender throttle")
+public class CommandThrottleTop extends CommandBase {
+
+	@Option(name = "-l", aliases = "--limit", description = "signature count to list", required = false, multiValued = false)
+	protected int limit = 10;
+
+	@Override
+	protected void execute(final ObjectName objectName, final PrintStream out)
+			throws Exception {
+
+		final String[] lines = (String[]) invoke(objectName, "throttleTop",
+				limit);
+
+		if (lines.length == 0) {
+			out.println("  no suppressed events");
+			return;
+		}
+
+		for (final String line : lines) {
+			out.println("  " + line);
+		}
+
+	}
+
+}
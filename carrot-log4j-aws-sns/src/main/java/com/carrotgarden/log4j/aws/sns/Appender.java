@@ -8,11 +8,21 @@
 package com.carrotgarden.log4j.aws.sns;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.AppenderSkeleton;
@@ -25,13 +35,8 @@ import org.codehaus.jackson.annotate.JsonProperty;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.SerializationConfig.Feature;
 
-import com.amazonaws.auth.AWSCredentials;
-import com.amazonaws.auth.PropertiesCredentials;
 import com.amazonaws.services.sns.AmazonSNSAsync;
-import com.amazonaws.services.sns.AmazonSNSAsyncClient;
-import com.amazonaws.services.sns.model.ListTopicsResult;
 import com.amazonaws.services.sns.model.PublishRequest;
-import com.amazonaws.services.sns.model.Topic;
 
 /**
  * AWS SNS appender
@@ -48,6 +53,18 @@ public class Appender extends AppenderSkeleton {
 	public static final int DEFAULT_POOL_MIN = 0;
 	public static final int DEFAULT_POOL_MAX = 10;
 
+	public static final int DEFAULT_ACTIVATION_RETRIES = 5;
+	public static final int DEFAULT_ACTIVATION_BACKOFF = 1000;
+	public static final int DEFAULT_ACTIVATION_BUFFER = 100;
+
+	public static final int DEFAULT_RENDER_QUEUE_SIZE = 1000;
+
+	/** seconds */
+	public static final int DEFAULT_THROTTLE_SNAPSHOT_PERIOD = 60;
+
+	/** millis */
+	public static final int ACTIVATION_BACKOFF_LIMIT = 60 * 1000;
+
 	//
 
 	/** log4j config option; amazon credentials file; must exist */
@@ -65,14 +82,165 @@ public class Appender extends AppenderSkeleton {
 	@JsonProperty
 	protected String topicSubject;
 
-	/** log4j config option; minimum thread pool size; optional */
+	/**
+	 * log4j config option; minimum thread pool size; pool is shared by
+	 * appenders with the same credentials, first one sets the size; optional
+	 */
 	@JsonProperty
 	protected int poolMin = DEFAULT_POOL_MIN;
 
-	/** log4j config option; maximum thread pool size; optional */
+	/**
+	 * log4j config option; maximum thread pool size; pool is shared by
+	 * appenders with the same credentials, first one sets the size; optional
+	 */
 	@JsonProperty
 	protected int poolMax = DEFAULT_POOL_MAX;
 
+	/**
+	 * log4j config option; publish executor: POOL or VIRTUAL; virtual mode
+	 * uses pool max as concurrency limit and falls back to pool on runtime
+	 * without virtual threads; optional
+	 */
+	@JsonProperty
+	protected ExecutorMode executorMode = ExecutorMode.DEFAULT;
+
+	/**
+	 * log4j config option; SNS endpoint, such as
+	 * "sns.eu-west-1.amazonaws.com"; optional
+	 */
+	@JsonProperty
+	protected String endpoint;
+
+	/**
+	 * log4j config option; concurrent publish request limit of this appender
+	 * on the shared client; optional
+	 */
+	@JsonProperty
+	protected int inFlight = InFlightLimit.DEFAULT_LIMIT;
+
+	/** log4j config option; remote activation retry count; optional */
+	@JsonProperty
+	protected int activationRetries = DEFAULT_ACTIVATION_RETRIES;
+
+	/**
+	 * log4j config option; first retry delay, millis, doubled on each retry;
+	 * optional
+	 */
+	@JsonProperty
+	protected int activationBackoff = DEFAULT_ACTIVATION_BACKOFF;
+
+	/**
+	 * log4j config option; events kept while activation is pending; extra
+	 * events are dropped; optional
+	 */
+	@JsonProperty
+	protected int activationBuffer = DEFAULT_ACTIVATION_BUFFER;
+
+	/**
+	 * log4j config option; content based routes as "topic-name=expression"
+	 * properties, see {@link Route}; events matching no route go to
+	 * {@link #topicName}, when present; optional
+	 */
+	@JsonProperty
+	protected String routes;
+
+	/**
+	 * log4j config option; local file which persists resolved topic ARN
+	 * between restarts, see {@link TopicCache}; optional
+	 */
+	@JsonProperty
+	protected String topicCacheFile;
+
+	/** log4j config option; resolved topic ARN retention, seconds; optional */
+	@JsonProperty
+	protected int topicCacheTTL = TopicCache.DEFAULT_TTL;
+
+	/**
+	 * log4j config option; local file which persists throttle state of
+	 * {@link EvaluatorThrottler} between restarts, see
+	 * {@link ThrottleSnapshot}; optional
+	 */
+	@JsonProperty
+	protected String throttleSnapshotFile;
+
+	/** log4j config option; throttle snapshot write period, seconds; optional */
+	@JsonProperty
+	protected int throttleSnapshotPeriod = DEFAULT_THROTTLE_SNAPSHOT_PERIOD;
+
+	/**
+	 * log4j config option; SNS message attributes as comma separated list of
+	 * "level, logger, host, signature, mdc.KEY", see
+	 * {@link MessageAttributes}; optional
+	 */
+	@JsonProperty
+	protected String messageAttributes;
+
+	/** log4j config option; per route pending request limit; optional */
+	@JsonProperty
+	protected int routeQueueSize = Route.DEFAULT_QUEUE_SIZE;
+
+	/** log4j config option; per route concurrent request limit; optional */
+	@JsonProperty
+	protected int routeInFlight = Route.DEFAULT_IN_FLIGHT;
+
+	/**
+	 * log4j config option; default topic level lanes as comma separated
+	 * "LEVEL=capacity" list, such as "FATAL=100,ERROR=1000,ALL=1000", see
+	 * {@link PriorityLanes}; lanes use {@link #inFlight} publisher threads;
+	 * optional
+	 */
+	@JsonProperty
+	protected String priorityLanes;
+
+	/**
+	 * log4j config option; evaluate, render and publish on a publisher thread
+	 * from event snapshot taken on the caller thread, see
+	 * {@link EventSnapshot}; optional
+	 */
+	@JsonProperty
+	protected boolean renderAsync;
+
+	/**
+	 * log4j config option; snapshot events waiting for publisher thread;
+	 * extra events are dropped; optional
+	 */
+	@JsonProperty
+	protected int renderQueueSize = DEFAULT_RENDER_QUEUE_SIZE;
+
+	/**
+	 * log4j config option; comma separated MDC keys kept in event snapshot,
+	 * in addition to layout and message attribute keys; optional
+	 */
+	@JsonProperty
+	protected String snapshotMDC;
+
+	/**
+	 * log4j config option; capture caller location in event snapshot; needed
+	 * by location fields and location signature masks; optional
+	 */
+	@JsonProperty
+	protected boolean snapshotLocation = true;
+
+	/**
+	 * log4j config option; digest mode interval, seconds; when positive,
+	 * events accepted by evaluator are counted per evaluator signature key
+	 * instead of being routed and published one by one, and default topic
+	 * gets one digest per interval, see {@link Digest}; throttling evaluator
+	 * passes only the first event per period, so digest counts come from
+	 * evaluator without throttle, such as {@link EvaluatorSimple} level
+	 * rules; optional
+	 */
+	@JsonProperty
+	protected int digestPeriod;
+
+	/** log4j config option; signatures listed in digest; optional */
+	@JsonProperty
+	protected int digestTop = Digest.DEFAULT_TOP;
+
+	/** log4j config option; signatures tracked per digest interval; optional */
+	@JsonProperty
+	protected int digestSlots = Digest.DEFAULT_SLOTS;
+
 	/** log4j config option; layout class name; optional */
 	@JsonProperty
 	public Layout getLaoyut() {
@@ -111,11 +279,11 @@ public class Appender extends AppenderSkeleton {
 
 		final Evaluator defaultEvaluator = new EvaluatorThrottler();
 
-		evaluator = (Evaluator) OptionConverter.instantiateByClassName( //
+		setEvaluator((Evaluator) OptionConverter.instantiateByClassName( //
 				evaluatorClassName, //
 				Evaluator.class, //
 				defaultEvaluator //
-				);
+				));
 
 	}
 
@@ -130,33 +298,168 @@ public class Appender extends AppenderSkeleton {
 	protected Evaluator evaluator;
 
 	/**
-	 * topic ARN resolved from existing amazon topic name
+	 * topic ARN resolved from existing amazon topic name; log4j config option,
+	 * skips the lookup when present; optional
 	 * 
 	 * http://aws.amazon.com/sns/faqs/#10
 	 */
 	@JsonProperty
 	protected String topicARN;
 
-	/** AWS SNS client thread pool */
-	protected ExecutorService service;
+	/** active content based routes */
+	@JsonProperty
+	protected List<Route> routeList = Collections.emptyList();
+
+	/** message attribute maker; present when configured */
+	@JsonProperty
+	protected MessageAttributes attributeMaker;
+
+	/** default topic level lanes; present when configured */
+	protected volatile PriorityLanes lanes;
+
+	/**
+	 * per event route match scratch; guarded by doAppend lock, or owned by
+	 * publisher thread in {@link #renderAsync} mode
+	 */
+	protected boolean[] routeMatch = new boolean[0];
+
+	/** MDC keys kept in event snapshot */
+	@JsonProperty
+	protected String[] snapshotKeys = new String[0];
+
+	/** snapshot events for publisher thread; present in async mode */
+	protected volatile BlockingQueue<LoggingEvent> renderQueue;
+
+	/** runs publisher thread in async mode */
+	protected ExecutorService renderer;
 
-	/** AWS SNS client dedicated to the appender */
+	/** per interval signature counts; present in digest mode */
+	protected volatile Digest digest;
+
+	/** publishes digest periodically */
+	protected ScheduledExecutorService digester;
+
+	/** shared client registration; see {@link ClientRegistry} */
+	protected ClientRegistry.Lease lease;
+
+	/** AWS SNS client shared by appenders with the same credentials */
 	protected AmazonSNSAsync amazonClient;
 
+	/** isolates this appender on the shared client */
+	protected InFlightLimit inFlightLimit = new InFlightLimit(
+			InFlightLimit.DEFAULT_LIMIT);
+
 	/** appender activation status */
 	@JsonProperty
 	protected volatile boolean isActive;
 
+	/** background activation is in progress */
+	@JsonProperty
+	protected volatile boolean isPending;
+
+	/** events accepted while activation is pending */
+	protected BlockingQueue<LoggingEvent> pendingQueue;
+
+	/** identity of current background activation */
+	protected volatile Object activationToken;
+
+	/** current background activation */
+	protected volatile Future<?> activation;
+
+	/** runs background activation steps */
+	protected ExecutorService activator;
+
+	/** writes throttle snapshot periodically */
+	protected ScheduledExecutorService snapshotter;
+
+	/** pipeline metrics, kept across re-activation; see {@link Metrics} */
+	protected final Metrics metrics = new Metrics(new Metrics.Source() {
+
+		@Override
+		public int inFlight() {
+			final PriorityLanes lanes = Appender.this.lanes;
+			return inFlightLimit.getCount()
+					+ (lanes == null ? 0 : lanes.getInFlight());
+		}
+
+		@Override
+		public int queueDepth() {
+
+			int depth = 0;
+
+			final BlockingQueue<LoggingEvent> pendingQueue = Appender.this.pendingQueue;
+
+			if (isPending() && pendingQueue != null) {
+				depth += pendingQueue.size();
+			}
+
+			for (final Route route : routeList) {
+				depth += route.getQueueDepth();
+			}
+
+			final PriorityLanes lanes = Appender.this.lanes;
+
+			if (lanes != null) {
+				depth += lanes.getQueueDepth();
+			}
+
+			final BlockingQueue<LoggingEvent> renderQueue = Appender.this.renderQueue;
+
+			if (renderQueue != null) {
+				depth += renderQueue.size();
+			}
+
+			return depth;
+
+		}
+
+		@Override
+		public String[] throttleTop(final int limit) {
+			return Appender.this.throttleTop(limit);
+		}
+
+		@Override
+		public long[] selfTest(final int count) throws Exception {
+			return Appender.this.selfTest(count);
+		}
+
+	});
+
 	//
 
 	public boolean isActive() {
 		return isActive;
 	}
 
+	public boolean isPending() {
+		return isPending;
+	}
+
 	public boolean isTriggering(final LoggingEvent event) {
 		return isActive && evaluator.isTriggeringEvent(event);
 	}
 
+	/** evaluated without signature key, see {@link #evaluate(LoggingEvent)} */
+	protected static final String UNKEYED = "";
+
+	/**
+	 * evaluate event; return signature key made by evaluator when digest or
+	 * message attributes need it, else {@link #UNKEYED}; null when event is
+	 * rejected
+	 */
+	protected String evaluate(final LoggingEvent event) {
+
+		final MessageAttributes attributeMaker = this.attributeMaker;
+
+		if (digest != null || attributeMaker != null
+				&& attributeMaker.isKeyed()) {
+			return evaluator.triggeringKey(event);
+		}
+
+		return evaluator.isTriggeringEvent(event) ? UNKEYED : null;
+
+	}
+
 	public boolean hasCredentials() {
 		return credentials != null;
 	}
@@ -181,6 +484,18 @@ public class Appender extends AppenderSkeleton {
 		return topicARN != null;
 	}
 
+	public boolean hasMessageAttributes() {
+		return messageAttributes != null;
+	}
+
+	public boolean hasRoutes() {
+		return routes != null;
+	}
+
+	public boolean hasThrottleSnapshotFile() {
+		return throttleSnapshotFile != null;
+	}
+
 	public boolean hasAmazonClient() {
 		return amazonClient != null;
 	}
@@ -205,10 +520,10 @@ public class Appender extends AppenderSkeleton {
 
 	}
 
-	/** amazon topic name is required option */
+	/** amazon topic name, topic ARN or routes is required option */
 	protected boolean ensureTopicName() {
 
-		if (hasTopicName()) {
+		if (hasTopicName() || hasTopicARN() || hasRoutes()) {
 
 			return true;
 
@@ -223,16 +538,16 @@ public class Appender extends AppenderSkeleton {
 
 	}
 
-	/** instantiate amazon client */
+	/** obtain shared amazon client */
 	protected boolean ensureAmazonClient() {
 
 		try {
 
-			final File file = new File(getCredentials());
-
-			final AWSCredentials creds = new PropertiesCredentials(file);
+			lease = ClientRegistry.acquire(getCredentials(), getEndpoint(),
+					getExecutorMode(), getPoolMin(), getPoolMax(),
+					inFlightLimit.getLimit());
 
-			amazonClient = new AmazonSNSAsyncClient(creds, service);
+			amazonClient = lease.getClient();
 
 			return true;
 
@@ -246,31 +561,31 @@ public class Appender extends AppenderSkeleton {
 
 	}
 
-	/** resolve topic ARN from topic name */
-	protected boolean ensureTopicARN() {
-
-		try {
-
-			final ListTopicsResult result = amazonClient.listTopics();
-
-			final List<Topic> topicList = result.getTopics();
+	/**
+	 * find existing topic ARN by topic name, first in {@link TopicCache}, then
+	 * in all topic list pages; null when missing
+	 */
+	protected String findTopicARN(final String topicName) {
+		return TopicCache.find(amazonClient, getCredentials(), topicName,
+				getTopicCacheFile(), getTopicCacheTTL());
+	}
 
-			for (final Topic entry : topicList) {
+	/** resolve topic ARN from topic name; optional with routes */
+	protected boolean ensureTopicARN() {
 
-				final String arn = entry.getTopicArn();
-				final String name = Util.topicNameFromARN(arn);
+		if (hasTopicARN()) {
+			return true;
+		}
 
-				if (getTopicName().equals(name)) {
-					topicARN = arn;
-					return true;
-				}
+		if (!hasTopicName()) {
+			return true;
+		}
 
-			}
+		try {
 
-			LogLog.error("sns: unknown topic name",
-					new IllegalArgumentException(getTopicName()));
+			topicARN = findTopicARN(getTopicName());
 
-			return false;
+			return hasTopicARN();
 
 		} catch (final Exception e) {
 
@@ -282,43 +597,46 @@ public class Appender extends AppenderSkeleton {
 
 	}
 
-	/** provide default throttling evaluator */
-	protected boolean ensureEvaluator() {
-
-		try {
-
-			if (!hasEvaluator()) {
-				setEvaluator(new EvaluatorThrottler());
-			}
-
-			getEvaluator().setProperties(getEvaluatorProperties());
+	/** resolve route topics and start route pipelines */
+	protected boolean ensureRoutes() {
 
+		if (!hasRoutes()) {
 			return true;
+		}
 
-		} catch (final Exception e) {
+		try {
 
-			LogLog.error("sns: evaluator init falure", e);
+			final List<Route> routeList = Route.listFrom(getRoutes(),
+					getRouteQueueSize(), getRouteInFlight());
 
-			return false;
+			final List<String> arnList = new ArrayList<String>();
 
-		}
+			for (final Route route : routeList) {
 
-	}
+				final String arn = findTopicARN(route.getTopicName());
 
-	/** provide default JSON event layout renderer */
-	protected boolean ensureLayout() {
+				if (arn == null) {
+					return false;
+				}
 
-		try {
+				arnList.add(arn);
 
-			if (!hasLayout()) {
-				setLayout(new LayoutJSON());
 			}
 
+			/** start only when all resolved, so retry does not leak */
+			for (int index = 0; index < routeList.size(); index++) {
+				routeList.get(index).start(amazonClient, arnList.get(index),
+						metrics);
+			}
+
+			this.routeMatch = new boolean[routeList.size()];
+			this.routeList = routeList;
+
 			return true;
 
 		} catch (final Exception e) {
 
-			LogLog.error("sns: layout init failure", e);
+			LogLog.error("sns: route init failure", e);
 
 			return false;
 
@@ -326,127 +644,1009 @@ public class Appender extends AppenderSkeleton {
 
 	}
 
-	/** provide AWS SNS thread pool */
-	protected boolean ensureService() {
-
-		try {
-
-			service = new ThreadPoolExecutor(//
-					poolMin, //
-					poolMax, //
-					60L, //
-					TimeUnit.SECONDS, //
-					new SynchronousQueue<Runnable>(), //
-					new ThreadFactoryAWS() //
-			);
+	protected void stopRoutes() {
 
-			return true;
+		for (final Route route : routeList) {
+			route.stop();
+		}
 
-		} catch (final Exception e) {
+		routeList = Collections.emptyList();
 
-			LogLog.warn("sns: failed to init service; using default", e);
+	}
 
-			service = Executors.newCachedThreadPool();
+	/** parse default topic level lanes; started once topic is resolved */
+	protected boolean ensurePriorityLanes() {
 
+		if (getPriorityLanes() == null) {
 			return true;
-
 		}
 
-	}
+		lanes = PriorityLanes.from(getPriorityLanes(), getInFlight());
 
-	@Override
-	public synchronized void activateOptions() {
+		return lanes != null;
 
-		isActive = true //
-				&& ensureLayout() //
-				&& ensureEvaluator() //
-				&& ensureService() //
-				&& ensureCredentials() //
-				&& ensureAmazonClient() //
-				&& ensureTopicName() //
-				&& ensureTopicARN() //
-		;
+	}
 
-		LogLog.warn("sns: appender activate : " + getClass().getName() + "\n"
-				+ this);
+	/** start level lanes on resolved default topic */
+	protected boolean startPriorityLanes() {
 
-		if (!isActive()) {
-			LogLog.error("sns: appender is disabled due to invalid configration  : "
-					+ getClass().getName());
-		}
+		final PriorityLanes lanes = this.lanes;
 
-	}
+		if (lanes == null || lanes.isStarted() || !hasTopicARN()) {
+			return true;
+		}
 
-	/**  */
-	@Override
-	public synchronized void close() {
+		lanes.start(amazonClient, topicARN, metrics);
 
-		isActive = false;
+		return true;
 
-		LogLog.warn("sns: appender deactivate : " + getClass().getName());
+	}
 
-		if (hasAmazonClient()) {
+	protected void stopPriorityLanes() {
 
-			service.shutdown();
-			service = null;
+		final PriorityLanes lanes = this.lanes;
 
-			amazonClient.shutdown();
-			amazonClient = null;
+		this.lanes = null;
 
+		if (lanes != null) {
+			lanes.stop();
 		}
 
 	}
 
-	/** will used json layout by default */
-	@Override
-	public boolean requiresLayout() {
-		return true;
-	}
+	/** collect snapshot MDC keys and start publisher thread in async mode */
+	protected boolean ensureRenderer() {
 
-	@Override
-	public void append(final LoggingEvent event) {
+		if (!isRenderAsync()) {
+			return true;
+		}
 
-		// LogLog.warn("event=" + event.getMessage());
+		final Set<String> keySet = new LinkedHashSet<String>();
 
-		if (!isTriggering(event)) {
-			return;
+		if (getSnapshotMDC() != null) {
+			for (final String term : getSnapshotMDC().split(",")) {
+				final String key = term.trim();
+				if (key.length() > 0) {
+					keySet.add(key);
+				}
+			}
 		}
 
-		// LogLog.warn("event=" + event.getLoggerName());
+		if (getLayout() instanceof LayoutBase) {
+			keySet.addAll(Arrays.asList(((LayoutBase) getLayout())
+					.getMdcKeys()));
+		}
 
-		String message;
+		final MessageAttributes attributeMaker = this.attributeMaker;
 
-		if (hasLayout()) {
-			message = getLayout().format(event);
-		} else {
-			message = event.getRenderedMessage();
+		if (attributeMaker != null) {
+			keySet.addAll(attributeMaker.mdcKeys());
 		}
 
-		message = Util.forceByteLimit(message, Util.MESSAGE_LIMIT);
+		snapshotKeys = keySet.toArray(new String[keySet.size()]);
 
-		String subject;
+		final BlockingQueue<LoggingEvent> queue = new ArrayBlockingQueue<LoggingEvent>(
+				Math.max(1, getRenderQueueSize()));
 
-		if (hasTopicSubject()) {
-			subject = getTopicSubject();
-			subject = Util.forceByteLimit(subject, Util.SUBJECT_LIMIT);
-		} else {
-			subject = null;
-		}
+		renderer = Executors.newSingleThreadExecutor(new ThreadFactoryAWS());
+
+		renderer.execute(new Runnable() {
+			@Override
+			public void run() {
+				render(queue);
+			}
+		});
+
+		renderQueue = queue;
 
-		publish(message, subject);
+		return true;
 
 	}
 
-	protected void publish(final String message, final String subject) {
-		try {
+	/** stop publisher thread; pending snapshot events are dropped */
+	protected void stopRenderer() {
 
-			final PublishRequest request = new PublishRequest(//
-					topicARN, message, subject);
+		final BlockingQueue<LoggingEvent> queue = renderQueue;
 
-			amazonClient.publishAsync(request);
+		renderQueue = null;
+
+		if (renderer != null) {
+			renderer.shutdownNow();
+			try {
+				renderer.awaitTermination(1, TimeUnit.SECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			renderer = null;
+		}
+
+		if (queue != null) {
+			queue.clear();
+		}
+
+	}
+
+	/** provide digest table in digest mode; published once topic is resolved */
+	protected boolean ensureDigest() {
+
+		if (getDigestPeriod() <= 0) {
+			return true;
+		}
+
+		digest = new Digest(getDigestTop(), getDigestSlots());
+
+		return true;
+
+	}
+
+	/** schedule digest publish on resolved default topic */
+	protected boolean startDigest() {
+
+		if (digest == null || digester != null) {
+			return true;
+		}
+
+		if (!hasTopicARN()) {
+			LogLog.error("sns: digest mode needs default topic");
+			return false;
+		}
+
+		digester = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactoryAWS());
+
+		digester.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				publishDigest();
+			}
+		}, getDigestPeriod(), getDigestPeriod(), TimeUnit.SECONDS);
+
+		return true;
+
+	}
+
+	/** stop digest timer; unfinished interval is dropped */
+	protected void stopDigest() {
+
+		digest = null;
+
+		if (digester != null) {
+			digester.shutdownNow();
+			digester = null;
+		}
+
+	}
+
+	/** close digest interval and publish its report, when not empty */
+	protected void publishDigest() {
+
+		final Digest digest = this.digest;
+		final AmazonSNSAsync amazonClient = this.amazonClient;
+
+		if (digest == null || amazonClient == null) {
+			return;
+		}
+
+		try {
+
+			final String report = digest.drain(System.currentTimeMillis());
+
+			if (report == null) {
+				return;
+			}
+
+			final String message = Util.forceByteLimit(report,
+					Util.MESSAGE_LIMIT);
+
+			final String subject = Util.forceByteLimit("digest "
+					+ (hasTopicSubject() ? getTopicSubject() : ""),
+					Util.SUBJECT_LIMIT);
+
+			metrics.rendered(0, Util.byteLength(message), message != report);
+
+			amazonClient.publishAsync(MessageAttributes.request(topicARN,
+					message, subject, null, metrics));
+
+		} catch (final Exception e) {
+
+			metrics.failed();
+
+			LogLog.error("sns: digest publish failure", e);
+
+		}
+
+	}
+
+	/**
+	 * count accepted event under its evaluator signature key in digest mode;
+	 * true when event is consumed
+	 */
+	protected boolean recordDigest(final LoggingEvent event, final String key) {
+
+		final Digest digest = this.digest;
+
+		if (digest == null) {
+			return false;
+		}
+
+		/** evaluated before digest mode was on */
+		final String signature = key == null || key.length() == 0 ? getEvaluator()
+				.getSignature().make(event) : key;
+
+		digest.record(event, signature, getLayout());
+
+		return true;
+
+	}
+
+	/** publisher thread: evaluate, render and publish snapshot events */
+	protected void render(final BlockingQueue<LoggingEvent> queue) {
+
+		while (true) {
+
+			final LoggingEvent event;
+
+			try {
+				event = queue.take();
+			} catch (final InterruptedException e) {
+				return;
+			}
+
+			try {
+
+				final String key = isActive ? evaluate(event) : null;
+
+				if (key == null) {
+					metrics.rejected();
+					continue;
+				}
+
+				if (recordDigest(event, key)) {
+					continue;
+				}
+
+				deliver(event, key);
+
+			} catch (final Exception e) {
+
+				metrics.failed();
+
+				LogLog.error("sns: render failure", e);
+
+			}
+
+		}
+
+	}
+
+	/** provide default throttling evaluator */
+	protected boolean ensureEvaluator() {
+
+		try {
+
+			if (!hasEvaluator()) {
+				setEvaluator(new EvaluatorThrottler());
+			}
+
+			getEvaluator().setProperties(getEvaluatorProperties());
+
+			return true;
+
+		} catch (final Exception e) {
+
+			LogLog.error("sns: evaluator init falure", e);
+
+			return false;
+
+		}
+
+	}
+
+	/** restore throttle state and schedule periodic snapshot */
+	protected boolean ensureThrottleSnapshot() {
+
+		if (!hasThrottleSnapshotFile()) {
+			return true;
+		}
+
+		if (!(getEvaluator() instanceof EvaluatorThrottler)) {
+			LogLog.warn("sns: throttle snapshot needs EvaluatorThrottler");
+			return true;
+		}
+
+		final EvaluatorThrottler throttler = (EvaluatorThrottler) getEvaluator();
+
+		throttler.restore(ThrottleSnapshot.load(new File(
+				getThrottleSnapshotFile())));
+
+		final long period = Math.max(1, getThrottleSnapshotPeriod());
+
+		snapshotter = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactoryAWS());
+
+		snapshotter.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				saveThrottleSnapshot();
+			}
+		}, period, period, TimeUnit.SECONDS);
+
+		return true;
+
+	}
+
+	protected void saveThrottleSnapshot() {
+
+		if (!hasThrottleSnapshotFile()
+				|| !(getEvaluator() instanceof EvaluatorThrottler)) {
+			return;
+		}
+
+		((EvaluatorThrottler) getEvaluator()).snapshot().save(
+				new File(getThrottleSnapshotFile()));
+
+	}
+
+	/**
+	 * stop periodic snapshot; running save is not interrupted, since
+	 * interrupt closes its file channel; false when it is still running
+	 */
+	protected boolean stopThrottleSnapshot() {
+
+		if (snapshotter == null) {
+			return true;
+		}
+
+		snapshotter.shutdown();
+
+		try {
+			if (!snapshotter.awaitTermination(5, TimeUnit.SECONDS)) {
+				LogLog.warn("sns: throttle snapshot save is still running");
+				return false;
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			snapshotter = null;
+		}
+
+		return true;
+
+	}
+
+	/** signature of active evaluator, so its keys are reused */
+	protected Signature attributeSignature() {
+		return getEvaluator().getSignature();
+	}
+
+	/** provide message attribute maker when configured */
+	protected boolean ensureMessageAttributes() {
+
+		try {
+
+			if (hasMessageAttributes()) {
+				attributeMaker = new MessageAttributes(getMessageAttributes(),
+						attributeSignature());
+			} else {
+				attributeMaker = null;
+			}
+
+			return true;
+
+		} catch (final Exception e) {
+
+			LogLog.error("sns: message attributes init failure", e);
+
+			return false;
+
+		}
+
+	}
+
+	/** provide default JSON event layout renderer */
+	protected boolean ensureLayout() {
+
+		try {
+
+			if (!hasLayout()) {
+				final LayoutJSON layout = new LayoutJSON();
+				layout.activateOptions();
+				setLayout(layout);
+			}
+
+			if (getLayout() instanceof LayoutBase) {
+				final LayoutBase layout = (LayoutBase) getLayout();
+				if (layout.getIdentity() == null && hasTopicSubject()) {
+					layout.setIdentity(getTopicSubject());
+					layout.activateOptions();
+				}
+			}
+
+			return true;
+
+		} catch (final Exception e) {
+
+			LogLog.error("sns: layout init failure", e);
+
+			return false;
+
+		}
+
+	}
+
+	/** provide per appender in-flight limit */
+	protected boolean ensureInFlightLimit() {
+
+		final InFlightLimit past = inFlightLimit;
+
+		inFlightLimit = new InFlightLimit(getInFlight());
+
+		/** lease reserves current limit in shared pool */
+		if (lease != null) {
+			ClientRegistry.reserve(lease, past.getLimit(),
+					inFlightLimit.getLimit());
+		}
+
+		return true;
+
+	}
+
+	/** most suppressed signatures as "count signature" lines */
+	public String[] throttleTop(final int limit) {
+
+		if (!(evaluator instanceof EvaluatorThrottler)) {
+			return new String[0];
+		}
+
+		final Map<String, Long> top = ((EvaluatorThrottler) evaluator)
+				.topSuppressed(limit);
+
+		final List<String> lineList = new ArrayList<String>();
+
+		for (final Map.Entry<String, Long> entry : top.entrySet()) {
+			lineList.add(entry.getValue() + " " + entry.getKey());
+		}
+
+		return lineList.toArray(new String[lineList.size()]);
+
+	}
+
+	/** self test message count limit */
+	public static final int SELF_TEST_LIMIT = 10;
+
+	/** self test message attributes */
+	protected static final Map<String, String> SELF_TEST_ATTRIBUTES = Collections
+			.singletonMap(MessageAttributes.SELF_TEST, "true");
+
+	/**
+	 * publish at most {@link #SELF_TEST_LIMIT} self test messages to default
+	 * topic with blocking client call, bypassing evaluator, layout and
+	 * in-flight limit; messages carry {@link MessageAttributes#SELF_TEST}
+	 * attribute; round trip per message, micros
+	 */
+	public long[] selfTest(final int count) throws Exception {
+
+		final AmazonSNSAsync amazonClient = this.amazonClient;
+		final String topicARN = this.topicARN;
+
+		if (!isActive() || amazonClient == null || topicARN == null) {
+			throw new IllegalStateException("sns: appender is not active");
+		}
+
+		final String subject = Util.forceByteLimit("self-test "
+				+ (hasTopicSubject() ? getTopicSubject() : ""),
+				Util.SUBJECT_LIMIT);
+
+		final long[] micros = new long[Math.max(0,
+				Math.min(SELF_TEST_LIMIT, count))];
+
+		for (int index = 0; index < micros.length; index++) {
+
+			final PublishRequest request = MessageAttributes.request(topicARN,
+					"sns self-test " + (index + 1) + "/" + micros.length,
+					subject, SELF_TEST_ATTRIBUTES);
+
+			final long start = System.nanoTime();
+
+			amazonClient.publish(request);
+
+			micros[index] = TimeUnit.NANOSECONDS.toMicros(System.nanoTime()
+					- start);
+
+		}
+
+		return micros;
+
+	}
+
+	/** JMX name of this appender; log4j appender name when present */
+	protected String metricsName() {
+
+		final String name = getName();
+
+		if (name != null && name.length() > 0) {
+			return name;
+		}
+
+		return "sns@" + Integer.toHexString(System.identityHashCode(this));
+
+	}
+
+	/**
+	 * validate local options on the caller thread, then run remote steps in
+	 * background; events which arrive meanwhile are buffered
+	 */
+	@Override
+	public synchronized void activateOptions() {
+
+		cancelActivation();
+
+		isActive = false;
+
+		stopRenderer();
+
+		stopDigest();
+
+		stopRoutes();
+
+		stopPriorityLanes();
+
+		stopThrottleSnapshot();
+
+		metrics.register(metricsName());
+
+		final boolean isReady = true //
+				&& ensureLayout() //
+				&& ensureEvaluator() //
+				&& ensureThrottleSnapshot() //
+				&& ensureMessageAttributes() //
+				&& ensureInFlightLimit() //
+				&& ensurePriorityLanes() //
+				&& ensureTopicName() //
+				&& ensureDigest() //
+				&& ensureRenderer() //
+		;
+
+		if (!isReady) {
+			LogLog.error("sns: appender is disabled due to invalid configration  : "
+					+ getClass().getName());
+			return;
+		}
+
+		final Object token = new Object();
+
+		activationToken = token;
+		pendingQueue = new ArrayBlockingQueue<LoggingEvent>(Math.max(1,
+				activationBuffer));
+		isPending = true;
+
+		activator = Executors.newCachedThreadPool(new ThreadFactoryAWS());
+
+		activation = activator.submit(new Runnable() {
+			@Override
+			public void run() {
+				activateRemote(token);
+			}
+		});
+
+	}
+
+	/** stop pending background activation, if any */
+	protected void cancelActivation() {
+
+		activationToken = null;
+		isPending = false;
+
+		if (activation != null) {
+			activation.cancel(true);
+			activation = null;
+		}
+
+		if (activator != null) {
+			activator.shutdownNow();
+			activator = null;
+		}
+
+		if (pendingQueue != null) {
+			pendingQueue.clear();
+		}
+
+	}
+
+	/** wait for background activation; true when active */
+	public boolean awaitActivation(final long timeout, final TimeUnit unit) {
+
+		final Future<?> activation = this.activation;
+
+		if (activation != null) {
+			try {
+				activation.get(timeout, unit);
+			} catch (final Exception e) {
+				LogLog.warn("sns: activation wait failure", e);
+			}
+		}
+
+		return isActive();
+
+	}
+
+	/** remote activation with retry and exponential backoff */
+	protected void activateRemote(final Object token) {
+
+		boolean isReady = false;
+
+		long backoff = Math.max(1, activationBackoff);
+
+		for (int attempt = 0; attempt <= activationRetries; attempt++) {
+
+			if (attempt > 0) {
+
+				LogLog.warn("sns: activation retry " + attempt + " in "
+						+ backoff + " ms : " + getClass().getName());
+
+				try {
+					Thread.sleep(backoff);
+				} catch (final InterruptedException e) {
+					return;
+				}
+
+				backoff = Math.min(2 * backoff, ACTIVATION_BACKOFF_LIMIT);
+
+			}
+
+			if (activationToken != token) {
+				return;
+			}
+
+			isReady = true //
+					&& runParallel(clientStep(), topicCacheStep()) //
+					&& runParallel(topicStep(), routesStep()) //
+			;
+
+			if (isReady) {
+				break;
+			}
+
+		}
+
+		synchronized (this) {
+
+			if (activationToken != token) {
+				return;
+			}
+
+			isPending = false;
+			isActive = isReady;
+
+			if (isReady) {
+				final List<LoggingEvent> eventList = new ArrayList<LoggingEvent>();
+				pendingQueue.drainTo(eventList);
+				for (final LoggingEvent event : eventList) {
+					deliver(event, null);
+				}
+			} else {
+				pendingQueue.clear();
+			}
+
+			activator.shutdown();
+			activator = null;
+			activation = null;
+
+		}
+
+		LogLog.warn("sns: appender activate : " + getClass().getName() + "\n"
+				+ this);
+
+		if (!isReady) {
+			LogLog.error("sns: appender is disabled due to activation failure : "
+					+ getClass().getName());
+		}
+
+	}
+
+	/** run independent steps concurrently; true when all succeed */
+	protected boolean runParallel(final Callable<Boolean> one,
+			final Callable<Boolean> two) {
+
+		final ExecutorService activator = this.activator;
+
+		if (activator == null) {
+			return false;
+		}
+
+		boolean isReady = true;
+
+		try {
+
+			final List<Callable<Boolean>> stepList = new ArrayList<Callable<Boolean>>();
+			stepList.add(one);
+			stepList.add(two);
+
+			final List<Future<Boolean>> futureList = activator
+					.invokeAll(stepList);
+
+			for (final Future<Boolean> future : futureList) {
+				try {
+					isReady &= future.get();
+				} catch (final Exception e) {
+					LogLog.error("sns: activation step failure", e);
+					isReady = false;
+				}
+			}
+
+		} catch (final Exception e) {
+
+			LogLog.error("sns: activation failure", e);
+
+			return false;
+
+		}
+
+		return isReady;
+
+	}
+
+	/** credentials and amazon client */
+	protected Callable<Boolean> clientStep() {
+		return new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return hasAmazonClient()
+						|| (ensureCredentials() && ensureAmazonClient());
+			}
+		};
+	}
+
+	/** warm up topic cache from file, while client is created */
+	protected Callable<Boolean> topicCacheStep() {
+		return new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				if (hasTopicName() && getTopicCacheFile() != null) {
+					TopicCache.get(
+							TopicCache.key(getCredentials(), getTopicName()),
+							getTopicCacheFile());
+				}
+				return true;
+			}
+		};
+	}
+
+	protected Callable<Boolean> topicStep() {
+		return new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return ensureTopicARN() && startPriorityLanes()
+						&& startDigest();
+			}
+		};
+	}
+
+	protected Callable<Boolean> routesStep() {
+		return new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return routeList.isEmpty() ? ensureRoutes() : true;
+			}
+		};
+	}
+
+	/**  */
+	@Override
+	public synchronized void close() {
+
+		cancelActivation();
+
+		isActive = false;
+
+		LogLog.warn("sns: appender deactivate : " + getClass().getName());
+
+		stopRenderer();
+
+		stopDigest();
+
+		stopRoutes();
+
+		stopPriorityLanes();
+
+		/** final save only after periodic save is done with the temp file */
+		if (stopThrottleSnapshot()) {
+			saveThrottleSnapshot();
+		}
+
+		if (hasEvaluator()) {
+			getEvaluator().close();
+		}
+
+		metrics.unregister();
+
+		if (lease != null) {
+			ClientRegistry.release(lease, inFlightLimit.getLimit());
+			lease = null;
+		} else if (hasAmazonClient()) {
+			amazonClient.shutdown();
+		}
+
+		amazonClient = null;
+
+	}
+
+	/** will used json layout by default */
+	@Override
+	public boolean requiresLayout() {
+		return true;
+	}
+
+	@Override
+	public void append(final LoggingEvent event) {
+
+		// LogLog.warn("event=" + event.getMessage());
+
+		metrics.seen();
+
+		if (!isActive()) {
+			if (!isPending()) {
+				return;
+			}
+			final String key = evaluate(event);
+			if (key == null) {
+				metrics.rejected();
+			} else if (!recordDigest(event, key)) {
+				buffer(event);
+			}
+			return;
+		}
+
+		final BlockingQueue<LoggingEvent> renderQueue = this.renderQueue;
+
+		if (renderQueue != null) {
+			/** evaluate, render and publish later, on publisher thread */
+			if (!renderQueue.offer(EventSnapshot.take(event, snapshotKeys,
+					isSnapshotLocation()))) {
+				metrics.executorRejected();
+				LogLog.warn("sns: render queue is full; event dropped");
+			}
+			return;
+		}
+
+		final String key = evaluate(event);
+
+		if (key == null) {
+			metrics.rejected();
+			return;
+		}
+
+		if (recordDigest(event, key)) {
+			return;
+		}
+
+		deliver(event, key);
+
+	}
+
+	/** keep event until activation completes */
+	protected void buffer(final LoggingEvent event) {
+
+		/** capture thread bound state now, render later */
+		event.getThreadName();
+		event.getNDC();
+		event.getMDCCopy();
+		event.getRenderedMessage();
+		event.getThrowableStrRep();
+		event.getLocationInformation();
+
+		if (!pendingQueue.offer(event)) {
+			metrics.executorRejected();
+			LogLog.warn("sns: activation buffer is full; event dropped");
+		}
+
+	}
+
+	/**
+	 * render and publish accepted event with its evaluator signature key, or
+	 * null; guarded by doAppend lock, or called by publisher thread only in
+	 * {@link #renderAsync} mode
+	 */
+	protected void deliver(final LoggingEvent event, final String key) {
+
+		// LogLog.warn("event=" + event.getLoggerName());
+
+		final List<Route> routeList = this.routeList;
+		final boolean[] routeMatch = this.routeMatch;
+
+		boolean isRouted = false;
+
+		for (int index = 0; index < routeList.size(); index++) {
+			final boolean isMatching = routeList.get(index).isMatching(event);
+			routeMatch[index] = isMatching;
+			isRouted |= isMatching;
+		}
+
+		if (!isRouted && !hasTopicARN()) {
+			return;
+		}
+
+		/** render once for all destinations */
+
+		final long renderStart = System.nanoTime();
+
+		final String rendered;
+
+		if (hasLayout()) {
+			rendered = getLayout().format(event);
+		} else {
+			rendered = event.getRenderedMessage();
+		}
+
+		final String message = Util.forceByteLimit(rendered,
+				Util.MESSAGE_LIMIT);
+
+		metrics.rendered(System.nanoTime() - renderStart,
+				Util.byteLength(message), message != rendered);
+
+		String subject;
+
+		if (hasTopicSubject()) {
+			subject = getTopicSubject();
+			subject = Util.forceByteLimit(subject, Util.SUBJECT_LIMIT);
+		} else {
+			subject = null;
+		}
+
+		final MessageAttributes attributeMaker = this.attributeMaker;
+
+		final Map<String, String> attributes = attributeMaker == null ? null
+				: attributeMaker.make(event, key);
+
+		if (!isRouted) {
+			final PriorityLanes lanes = this.lanes;
+			if (lanes == null) {
+				publish(message, subject, attributes);
+			} else {
+				lanes.offer(event.getLevel(), message, subject, attributes);
+			}
+			return;
+		}
+
+		for (int index = 0; index < routeList.size(); index++) {
+			if (routeMatch[index]) {
+				routeList.get(index).offer(message, subject, attributes);
+			}
+		}
+
+	}
+
+	protected void publish(final String message, final String subject,
+			final Map<String, String> attributes) {
+
+		if (!inFlightLimit.tryAcquire()) {
+			metrics.executorRejected();
+			LogLog.warn("sns: in-flight limit reached; event dropped");
+			return;
+		}
+
+		try {
+
+			final PublishRequest request = MessageAttributes.request(//
+					topicARN, message, subject, attributes, metrics);
+
+			inFlightLimit.track(amazonClient.publishAsync(request));
+
+		} catch (final RejectedExecutionException e) {
+
+			inFlightLimit.release();
+
+			metrics.executorRejected();
+
+			LogLog.warn("sns: publish executor is saturated; event dropped");
 
 		} catch (final Exception e) {
 
+			inFlightLimit.release();
+
+			metrics.failed();
+
 			LogLog.error("sns: publish failure", e);
 
 		}
@@ -476,12 +1676,21 @@ public class Appender extends AppenderSkeleton {
 		this.topicSubject = topicSubject;
 	}
 
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
 	public Evaluator getEvaluator() {
 		return evaluator;
 	}
 
+	/** replaced evaluator is closed */
 	public void setEvaluator(final Evaluator evaluator) {
+		final Evaluator past = this.evaluator;
 		this.evaluator = evaluator;
+		if (past != null && past != evaluator) {
+			past.close();
+		}
 	}
 
 	public int getPoolMin() {
@@ -508,6 +1717,262 @@ public class Appender extends AppenderSkeleton {
 		this.poolMax = Util.getIntValue(poolMaxText, DEFAULT_POOL_MAX);
 	}
 
+	public String getTopicARN() {
+		return topicARN;
+	}
+
+	public void setTopicARN(final String topicARN) {
+		this.topicARN = topicARN;
+	}
+
+	public String getTopicCacheFile() {
+		return topicCacheFile;
+	}
+
+	public void setTopicCacheFile(final String topicCacheFile) {
+		this.topicCacheFile = topicCacheFile;
+	}
+
+	public int getTopicCacheTTL() {
+		return topicCacheTTL;
+	}
+
+	public void setTopicCacheTTL(final int topicCacheTTL) {
+		this.topicCacheTTL = topicCacheTTL;
+	}
+
+	public void setTopicCacheTTL(final String topicCacheTTLText) {
+		this.topicCacheTTL = Util.getIntValue(topicCacheTTLText,
+				TopicCache.DEFAULT_TTL);
+	}
+
+	public String getThrottleSnapshotFile() {
+		return throttleSnapshotFile;
+	}
+
+	public void setThrottleSnapshotFile(final String throttleSnapshotFile) {
+		this.throttleSnapshotFile = throttleSnapshotFile;
+	}
+
+	public int getThrottleSnapshotPeriod() {
+		return throttleSnapshotPeriod;
+	}
+
+	public void setThrottleSnapshotPeriod(final int throttleSnapshotPeriod) {
+		this.throttleSnapshotPeriod = throttleSnapshotPeriod;
+	}
+
+	public void setThrottleSnapshotPeriod(
+			final String throttleSnapshotPeriodText) {
+		this.throttleSnapshotPeriod = Util.getIntValue(
+				throttleSnapshotPeriodText, DEFAULT_THROTTLE_SNAPSHOT_PERIOD);
+	}
+
+	public String getMessageAttributes() {
+		return messageAttributes;
+	}
+
+	public void setMessageAttributes(final String messageAttributes) {
+		this.messageAttributes = messageAttributes;
+	}
+
+	public int getActivationRetries() {
+		return activationRetries;
+	}
+
+	public void setActivationRetries(final int activationRetries) {
+		this.activationRetries = activationRetries;
+	}
+
+	public void setActivationRetries(final String activationRetriesText) {
+		this.activationRetries = Util.getIntValue(activationRetriesText,
+				DEFAULT_ACTIVATION_RETRIES);
+	}
+
+	public int getActivationBackoff() {
+		return activationBackoff;
+	}
+
+	public void setActivationBackoff(final int activationBackoff) {
+		this.activationBackoff = activationBackoff;
+	}
+
+	public void setActivationBackoff(final String activationBackoffText) {
+		this.activationBackoff = Util.getIntValue(activationBackoffText,
+				DEFAULT_ACTIVATION_BACKOFF);
+	}
+
+	public int getActivationBuffer() {
+		return activationBuffer;
+	}
+
+	public void setActivationBuffer(final int activationBuffer) {
+		this.activationBuffer = activationBuffer;
+	}
+
+	public void setActivationBuffer(final String activationBufferText) {
+		this.activationBuffer = Util.getIntValue(activationBufferText,
+				DEFAULT_ACTIVATION_BUFFER);
+	}
+
+	public String getRoutes() {
+		return routes;
+	}
+
+	public void setRoutes(final String routes) {
+		this.routes = routes;
+	}
+
+	public int getRouteQueueSize() {
+		return routeQueueSize;
+	}
+
+	public void setRouteQueueSize(final int routeQueueSize) {
+		this.routeQueueSize = routeQueueSize;
+	}
+
+	public void setRouteQueueSize(final String routeQueueSizeText) {
+		this.routeQueueSize = Util.getIntValue(routeQueueSizeText,
+				Route.DEFAULT_QUEUE_SIZE);
+	}
+
+	public String getPriorityLanes() {
+		return priorityLanes;
+	}
+
+	public void setPriorityLanes(final String priorityLanes) {
+		this.priorityLanes = priorityLanes;
+	}
+
+	public boolean isRenderAsync() {
+		return renderAsync;
+	}
+
+	public void setRenderAsync(final boolean renderAsync) {
+		this.renderAsync = renderAsync;
+	}
+
+	public void setRenderAsync(final String renderAsyncText) {
+		this.renderAsync = OptionConverter.toBoolean(renderAsyncText, false);
+	}
+
+	public int getRenderQueueSize() {
+		return renderQueueSize;
+	}
+
+	public void setRenderQueueSize(final int renderQueueSize) {
+		this.renderQueueSize = renderQueueSize;
+	}
+
+	public void setRenderQueueSize(final String renderQueueSizeText) {
+		this.renderQueueSize = Util.getIntValue(renderQueueSizeText,
+				DEFAULT_RENDER_QUEUE_SIZE);
+	}
+
+	public String getSnapshotMDC() {
+		return snapshotMDC;
+	}
+
+	public void setSnapshotMDC(final String snapshotMDC) {
+		this.snapshotMDC = snapshotMDC;
+	}
+
+	public boolean isSnapshotLocation() {
+		return snapshotLocation;
+	}
+
+	public void setSnapshotLocation(final boolean snapshotLocation) {
+		this.snapshotLocation = snapshotLocation;
+	}
+
+	public void setSnapshotLocation(final String snapshotLocationText) {
+		this.snapshotLocation = OptionConverter.toBoolean(
+				snapshotLocationText, true);
+	}
+
+	public int getDigestPeriod() {
+		return digestPeriod;
+	}
+
+	public void setDigestPeriod(final int digestPeriod) {
+		this.digestPeriod = digestPeriod;
+	}
+
+	public void setDigestPeriod(final String digestPeriodText) {
+		this.digestPeriod = Util.getIntValue(digestPeriodText, 0);
+	}
+
+	public int getDigestTop() {
+		return digestTop;
+	}
+
+	public void setDigestTop(final int digestTop) {
+		this.digestTop = digestTop;
+	}
+
+	public void setDigestTop(final String digestTopText) {
+		this.digestTop = Util.getIntValue(digestTopText, Digest.DEFAULT_TOP);
+	}
+
+	public int getDigestSlots() {
+		return digestSlots;
+	}
+
+	public void setDigestSlots(final int digestSlots) {
+		this.digestSlots = digestSlots;
+	}
+
+	public void setDigestSlots(final String digestSlotsText) {
+		this.digestSlots = Util.getIntValue(digestSlotsText,
+				Digest.DEFAULT_SLOTS);
+	}
+
+	public int getRouteInFlight() {
+		return routeInFlight;
+	}
+
+	public void setRouteInFlight(final int routeInFlight) {
+		this.routeInFlight = routeInFlight;
+	}
+
+	public void setRouteInFlight(final String routeInFlightText) {
+		this.routeInFlight = Util.getIntValue(routeInFlightText,
+				Route.DEFAULT_IN_FLIGHT);
+	}
+
+	public ExecutorMode getExecutorMode() {
+		return executorMode;
+	}
+
+	public void setExecutorMode(final ExecutorMode executorMode) {
+		this.executorMode = executorMode;
+	}
+
+	public void setExecutorMode(final String executorModeText) {
+		this.executorMode = ExecutorMode.from(executorModeText);
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	public void setEndpoint(final String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	public void setInFlight(final int inFlight) {
+		this.inFlight = inFlight;
+	}
+
+	public void setInFlight(final String inFlightText) {
+		this.inFlight = Util.getIntValue(inFlightText,
+				InFlightLimit.DEFAULT_LIMIT);
+	}
+
 	public String getEvaluatorProperties() {
 		return evaluatorProperties;
 	}
@@ -516,25 +1981,34 @@ public class Appender extends AppenderSkeleton {
 		this.evaluatorProperties = evaluatorProperties;
 	}
 
-	/** render as JSON; use only @JsonProperty annotated fields */
-	@Override
-	public String toString() {
+	/** shared renderer; built on first use, off the activation path */
+	protected static class Mapper {
 
-		try {
+		static final ObjectMapper INSTANCE = new ObjectMapper();
+
+		static {
+
+			INSTANCE.configure(Feature.INDENT_OUTPUT, true);
 
-			final ObjectMapper mapper = new ObjectMapper();
+			INSTANCE.configure(Feature.USE_ANNOTATIONS, true);
 
-			mapper.configure(Feature.INDENT_OUTPUT, true);
+			INSTANCE.configure(Feature.AUTO_DETECT_FIELDS, false);
+			INSTANCE.configure(Feature.AUTO_DETECT_GETTERS, false);
+			INSTANCE.configure(Feature.AUTO_DETECT_IS_GETTERS, false);
 
-			mapper.configure(Feature.USE_ANNOTATIONS, true);
+			INSTANCE.configure(Feature.FAIL_ON_EMPTY_BEANS, false);
 
-			mapper.configure(Feature.AUTO_DETECT_FIELDS, false);
-			mapper.configure(Feature.AUTO_DETECT_GETTERS, false);
-			mapper.configure(Feature.AUTO_DETECT_IS_GETTERS, false);
+		}
+
+	}
+
+	/** render as JSON; use only @JsonProperty annotated fields */
+	@Override
+	public String toString() {
 
-			mapper.configure(Feature.FAIL_ON_EMPTY_BEANS, false);
+		try {
 
-			return mapper.writeValueAsString(this);
+			return Mapper.INSTANCE.writeValueAsString(this);
 
 		} catch (final Exception e) {
 
@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.PropertiesCredentials;
+import com.amazonaws.services.sns.AmazonSNSAsync;
+import com.amazonaws.services.sns.AmazonSNSAsyncClient;
+
+/**
+ * process wide reference counted registry of amazon clients; appenders with
+ * the same credentials and endpoint share one client, one http connection
+ * pool and one executor; last release shuts them down
+ *
+ * executor mode and pool size are taken from the first acquirer; http
+ * connection pool is sized to allow pool max concurrent requests
+ *
+ * each acquirer reserves its in-flight limit; pool max size grows to the sum
+ * of reserved limits, so a busy appender can not take the threads of the
+ * others on the same client, which would reject their requests
+ */
+public class ClientRegistry {
+
+	/** shared client with its executor */
+	public static final class Lease {
+
+		final String key;
+
+		final AmazonSNSAsync client;
+
+		final ExecutorService service;
+
+		/** pool max size of the first acquirer */
+		final int poolMax;
+
+		/** guarded by registry lock */
+		int count;
+
+		/** sum of reserved in-flight limits; guarded by registry lock */
+		int inFlight;
+
+		Lease(final String key, final AmazonSNSAsync client,
+				final ExecutorService service) {
+			this.key = key;
+			this.client = client;
+			this.service = service;
+			this.poolMax = service instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) service)
+					.getMaximumPoolSize() : 0;
+		}
+
+		/** pool max size covers pool max and all reserved limits */
+		void resize() {
+			if (service instanceof ThreadPoolExecutor) {
+				((ThreadPoolExecutor) service).setMaximumPoolSize(Math.max(
+						poolMax, inFlight));
+			}
+		}
+
+		public AmazonSNSAsync getClient() {
+			return client;
+		}
+
+		public ExecutorService getService() {
+			return service;
+		}
+
+	}
+
+	/** [ credentials-endpoint, lease ] */
+	private static final Map<String, Lease> REGISTRY = new HashMap<String, Lease>();
+
+	public static String key(final String credentials, final String endpoint) {
+		return credentials + "|" + endpoint;
+	}
+
+	/** shared client for credentials file and optional endpoint */
+	public static synchronized Lease acquire(final String credentials,
+			final String endpoint, final int poolMin, final int poolMax)
+			throws Exception {
+		return acquire(credentials, endpoint, ExecutorMode.DEFAULT, poolMin,
+				poolMax);
+	}
+
+	/** shared client for credentials file and optional endpoint */
+	public static synchronized Lease acquire(final String credentials,
+			final String endpoint, final ExecutorMode mode, final int poolMin,
+			final int poolMax) throws Exception {
+		return acquire(credentials, endpoint, mode, poolMin, poolMax, 0);
+	}
+
+	/**
+	 * shared client for credentials file and optional endpoint, with reserved
+	 * in-flight limit; release with the same limit
+	 */
+	public static synchronized Lease acquire(final String credentials,
+			final String endpoint, final ExecutorMode mode, final int poolMin,
+			final int poolMax, final int inFlight) throws Exception {
+
+		final String key = key(credentials, endpoint);
+
+		Lease lease = REGISTRY.get(key);
+
+		if (lease == null) {
+
+			final AWSCredentials creds = new PropertiesCredentials(new File(
+					credentials));
+
+			final ExecutorService service = mode.newService(poolMin, poolMax);
+
+			final ClientConfiguration config = new ClientConfiguration();
+
+			config.setMaxConnections(Math.max(poolMax,
+					ClientConfiguration.DEFAULT_MAX_CONNECTIONS));
+
+			final AmazonSNSAsyncClient client = new AmazonSNSAsyncClient(
+					creds, config, service);
+
+			client.addRequestHandler(new MessageAttributes.Handler());
+			client.addRequestHandler(new Metrics.Handler());
+
+			if (endpoint != null) {
+				client.setEndpoint(endpoint);
+			}
+
+			lease = new Lease(key, client, service);
+
+			REGISTRY.put(key, lease);
+
+		}
+
+		lease.count++;
+
+		lease.inFlight += Math.max(0, inFlight);
+		lease.resize();
+
+		return lease;
+
+	}
+
+	/** drop reference; shutdown client on last release */
+	public static synchronized void release(final Lease lease) {
+		release(lease, 0);
+	}
+
+	/** drop reference and its reserved in-flight limit */
+	public static synchronized void release(final Lease lease,
+			final int inFlight) {
+
+		if (REGISTRY.get(lease.key) != lease || lease.count <= 0) {
+			return;
+		}
+
+		lease.count--;
+
+		lease.inFlight = Math.max(0, lease.inFlight - Math.max(0, inFlight));
+		lease.resize();
+
+		if (lease.count > 0) {
+			return;
+		}
+
+		REGISTRY.remove(lease.key);
+
+		lease.service.shutdown();
+		lease.client.shutdown();
+
+	}
+
+	/** change reserved in-flight limit of a held lease */
+	public static synchronized void reserve(final Lease lease,
+			final int past, final int next) {
+
+		if (REGISTRY.get(lease.key) != lease || lease.count <= 0) {
+			return;
+		}
+
+		lease.inFlight = Math.max(0, lease.inFlight - Math.max(0, past)
+				+ Math.max(0, next));
+		lease.resize();
+
+	}
+
+	/** number of shared clients */
+	public static synchronized int size() {
+		return REGISTRY.size();
+	}
+
+	/** number of appenders sharing the client */
+	public static synchronized int count(final Lease lease) {
+		return lease.count;
+	}
+
+}
@@ -0,0 +1,294 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Layout;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * per interval event digest: counts per signature in a lock free table, with
+ * first seen, last seen and one rendered sample per signature; report lists
+ * top signatures by count and total volume; appender records only events
+ * accepted by its evaluator, keyed by the evaluator signature key
+ *
+ * memory is bounded by slot count and sample size; events of new signatures
+ * over the slot limit are counted as "other"
+ *
+ * note: event which races with interval switch can be counted in the closed
+ * interval after its report is made
+ */
+public class Digest {
+
+	public static final int DEFAULT_TOP = 10;
+
+	public static final int DEFAULT_SLOTS = 1000;
+
+	/** rendered sample limit, bytes */
+	public static final int SAMPLE_LIMIT = 1024;
+
+	protected static final class Entry {
+
+		final String signature;
+
+		final long firstSeen;
+
+		final AtomicLong lastSeen;
+
+		final AtomicLong count = new AtomicLong();
+
+		final String sample;
+
+		Entry(final String signature, final long time, final String sample) {
+			this.signature = signature;
+			this.firstSeen = time;
+			this.lastSeen = new AtomicLong(time);
+			this.sample = sample;
+		}
+
+		/** keep the latest time under concurrent updates */
+		void seen(final long time) {
+			while (true) {
+				final long last = lastSeen.get();
+				if (time <= last || lastSeen.compareAndSet(last, time)) {
+					return;
+				}
+			}
+		}
+
+	}
+
+	/** entry values read once for report, so sort sees stable counts */
+	protected static final class Row {
+
+		final String signature;
+
+		final long count;
+
+		final long firstSeen;
+
+		final long lastSeen;
+
+		final String sample;
+
+		Row(final Entry entry) {
+			this.signature = entry.signature;
+			this.count = entry.count.get();
+			this.firstSeen = entry.firstSeen;
+			this.lastSeen = entry.lastSeen.get();
+			this.sample = entry.sample;
+		}
+
+	}
+
+	/** one interval */
+	protected static final class Table {
+
+		final long start;
+
+		final ConcurrentMap<String, Entry> entryMap = new ConcurrentHashMap<String, Entry>();
+
+		final AtomicInteger size = new AtomicInteger();
+
+		final AtomicLong total = new AtomicLong();
+
+		final AtomicLong other = new AtomicLong();
+
+		Table(final long start) {
+			this.start = start;
+		}
+
+	}
+
+	protected static final Comparator<Row> BY_COUNT = new Comparator<Row>() {
+		@Override
+		public int compare(final Row one, final Row two) {
+			final long a = one.count;
+			final long b = two.count;
+			return a > b ? -1 : a < b ? 1 : 0;
+		}
+	};
+
+	protected final int top;
+
+	protected final int slots;
+
+	protected final TimeFormat timeFormat = new TimeFormat(
+			TimeFormat.Mode.UTC);
+
+	protected volatile Table table;
+
+	public Digest(final int top, final int slots) {
+		this.top = Math.max(1, top);
+		this.slots = Math.max(1, slots);
+		this.table = new Table(System.currentTimeMillis());
+	}
+
+	/** count event; sample is rendered only for new signature */
+	public void record(final LoggingEvent event, final String signature,
+			final Layout layout) {
+
+		final Table table = this.table;
+
+		table.total.incrementAndGet();
+
+		Entry entry = table.entryMap.get(signature);
+
+		if (entry == null) {
+
+			if (table.size.get() >= slots) {
+				table.other.incrementAndGet();
+				return;
+			}
+
+			final Entry created = new Entry(signature, event.getTimeStamp(),
+					sample(event, layout));
+
+			entry = table.entryMap.putIfAbsent(signature, created);
+
+			if (entry == null) {
+				entry = created;
+				table.size.incrementAndGet();
+			}
+
+		}
+
+		entry.count.incrementAndGet();
+
+		entry.seen(event.getTimeStamp());
+
+	}
+
+	protected static String sample(final LoggingEvent event,
+			final Layout layout) {
+
+		final String rendered = layout == null ? event.getRenderedMessage()
+				: layout.format(event);
+
+		return Util.forceByteLimit(rendered, SAMPLE_LIMIT);
+
+	}
+
+	/** close current interval; report text, or null when interval is empty */
+	public String drain(final long now) {
+
+		final Table table = this.table;
+
+		this.table = new Table(now);
+
+		if (table.total.get() == 0) {
+			return null;
+		}
+
+		return report(table, now);
+
+	}
+
+	/** events counted in current interval */
+	public long getTotal() {
+		return table.total.get();
+	}
+
+	/** signatures tracked in current interval */
+	public int getSize() {
+		return table.size.get();
+	}
+
+	public int getTop() {
+		return top;
+	}
+
+	public int getSlots() {
+		return slots;
+	}
+
+	protected String report(final Table table, final long end) {
+
+		/** late writers of closed interval may still update entries */
+		final List<Row> rowList = new ArrayList<Row>(table.size.get());
+
+		for (final Entry entry : table.entryMap.values()) {
+			rowList.add(new Row(entry));
+		}
+
+		Collections.sort(rowList, BY_COUNT);
+
+		final long other = table.other.get();
+
+		final StringBuilder text = new StringBuilder(1024);
+
+		text.append("digest ");
+		timeFormat.format(table.start, text);
+		text.append(" .. ");
+		timeFormat.format(end, text);
+		text.append(" : ");
+		text.append(table.total.get());
+		text.append(" events, ");
+		text.append(rowList.size());
+		text.append(" signatures\n");
+
+		final int size = Math.min(top, rowList.size());
+
+		for (int index = 0; index < size; index++) {
+
+			final Row row = rowList.get(index);
+
+			text.append("\n#");
+			text.append(index + 1);
+			text.append(" count=");
+			text.append(row.count);
+			text.append(" first=");
+			timeFormat.format(row.firstSeen, text);
+			text.append(" last=");
+			timeFormat.format(row.lastSeen, text);
+			text.append("\nsignature: ");
+			text.append(row.signature);
+			text.append("\nsample: ");
+			text.append(row.sample);
+			text.append("\n");
+
+		}
+
+		long rest = other;
+		int restCount = 0;
+
+		for (int index = size; index < rowList.size(); index++) {
+			rest += rowList.get(index).count;
+			restCount++;
+		}
+
+		if (rest > 0) {
+			text.append("\nother: ");
+			text.append(rest);
+			text.append(" events");
+			if (restCount > 0) {
+				text.append(" in ");
+				text.append(restCount);
+				text.append(" signatures");
+			}
+			if (other > 0) {
+				text.append(", ");
+				text.append(other);
+				text.append(" events over slot limit");
+			}
+			text.append("\n");
+		}
+
+		return text.toString();
+
+	}
+
+}
@@ -16,7 +16,23 @@ public interface Evaluator extends TriggeringEventEvaluator {
 	@Override
 	boolean isTriggeringEvent(LoggingEvent event);
 
+	/**
+	 * evaluate event and return its signature key, made with
+	 * {@link #getSignature()} during evaluation, so appender can reuse it;
+	 * null when event is rejected
+	 */
+	String triggeringKey(LoggingEvent event);
+
+	/** signature which groups events of this evaluator */
+	Signature getSignature();
+
 	/** evaluator configuration via key=value properties text */
 	void setProperties(String propsText);
 
+	/**
+	 * release evaluator resources, on appender close and on evaluator
+	 * replacement; evaluator is usable again after {@link #setProperties}
+	 */
+	void close();
+
 }
@@ -0,0 +1,583 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * log4j event evaluator driven by boolean filter expression, such as
+ *
+ * <pre>
+ * expression=level >= ERROR && logger ^= "com.acme" && mdc.tenant != "test"
+ * </pre>
+ *
+ * fields: level, logger, thread, message, ndc, mdc.KEY, throwable.class,
+ * throwable.message
+ *
+ * operators: == != for all fields; > >= < <= for level; ^= (starts with), $=
+ * (ends with), ~ (contains) for text; && || ! ( ) for logic
+ *
+ * expression is parsed once into predicate tree; logic operands are ordered
+ * by evaluation cost, so cheap checks short circuit expensive ones;
+ * evaluation does not allocate
+ *
+ * fails closed: without expression all events are rejected; invalid
+ * expression is reported and last valid expression stays in effect
+ *
+ * optional "mask" sets signature of accepted events, used for message
+ * attributes and digest; see {@link Signature.Mask}
+ */
+public class EvaluatorExpression implements Evaluator {
+
+	public static final String PROP_EXPRESSION = "expression";
+	public static final String PROP_MASK = "mask";
+
+	/** compiled expression node */
+	protected static abstract class Predicate {
+
+		/** relative evaluation cost, used for operand ordering */
+		abstract int cost();
+
+		abstract boolean test(LoggingEvent event);
+
+	}
+
+	protected static final Predicate REJECT_ALL = new Predicate() {
+		@Override
+		int cost() {
+			return 0;
+		}
+
+		@Override
+		boolean test(final LoggingEvent event) {
+			return false;
+		}
+	};
+
+	protected static final Comparator<Predicate> COST_ORDER = new Comparator<Predicate>() {
+		@Override
+		public int compare(final Predicate one, final Predicate two) {
+			return one.cost() - two.cost();
+		}
+	};
+
+	protected static final class And extends Predicate {
+
+		final Predicate[] terms;
+		final int cost;
+
+		And(final List<Predicate> list) {
+			Collections.sort(list, COST_ORDER);
+			terms = list.toArray(new Predicate[list.size()]);
+			cost = costOf(terms);
+		}
+
+		@Override
+		int cost() {
+			return cost;
+		}
+
+		@Override
+		boolean test(final LoggingEvent event) {
+			for (final Predicate term : terms) {
+				if (!term.test(event)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+	protected static final class Or extends Predicate {
+
+		final Predicate[] terms;
+		final int cost;
+
+		Or(final List<Predicate> list) {
+			Collections.sort(list, COST_ORDER);
+			terms = list.toArray(new Predicate[list.size()]);
+			cost = costOf(terms);
+		}
+
+		@Override
+		int cost() {
+			return cost;
+		}
+
+		@Override
+		boolean test(final LoggingEvent event) {
+			for (final Predicate term : terms) {
+				if (term.test(event)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+	}
+
+	protected static final class Not extends Predicate {
+
+		final Predicate term;
+
+		Not(final Predicate term) {
+			this.term = term;
+		}
+
+		@Override
+		int cost() {
+			return term.cost();
+		}
+
+		@Override
+		boolean test(final LoggingEvent event) {
+			return !term.test(event);
+		}
+
+	}
+
+	static int costOf(final Predicate[] terms) {
+		int cost = 0;
+		for (final Predicate term : terms) {
+			cost += term.cost();
+		}
+		return cost;
+	}
+
+	/** level comparison on int values */
+	protected static final class LevelTest extends Predicate {
+
+		final String operator;
+		final int level;
+
+		LevelTest(final String operator, final Level level) {
+			this.operator = operator;
+			this.level = level.toInt();
+		}
+
+		@Override
+		int cost() {
+			return 1;
+		}
+
+		@Override
+		boolean test(final LoggingEvent event) {
+			final int value = event.getLevel().toInt();
+			switch (operator.charAt(0)) {
+			case '=':
+				return value == level;
+			case '!':
+				return value != level;
+			case '>':
+				return operator.length() == 1 ? value > level : value >= level;
+			case '<':
+				return operator.length() == 1 ? value < level : value <= level;
+			default:
+				return false;
+			}
+		}
+
+	}
+
+	/** event text field accessor */
+	protected static abstract class Field {
+
+		final int cost;
+
+		Field(final int cost) {
+			this.cost = cost;
+		}
+
+		/** null when absent */
+		abstract String value(LoggingEvent event);
+
+	}
+
+	protected static final Field LOGGER = new Field(2) {
+		@Override
+		String value(final LoggingEvent event) {
+			return event.getLoggerName();
+		}
+	};
+
+	protected static final Field THREAD = new Field(3) {
+		@Override
+		String value(final LoggingEvent event) {
+			return event.getThreadName();
+		}
+	};
+
+	protected static final Field NDC = new Field(4) {
+		@Override
+		String value(final LoggingEvent event) {
+			return event.getNDC();
+		}
+	};
+
+	protected static final Field MESSAGE = new Field(5) {
+		@Override
+		String value(final LoggingEvent event) {
+			return event.getRenderedMessage();
+		}
+	};
+
+	protected static final Field THROWABLE_CLASS = new Field(3) {
+		@Override
+		String value(final LoggingEvent event) {
+			final ThrowableInformation info = event.getThrowableInformation();
+			if (info == null || info.getThrowable() == null) {
+				return null;
+			}
+			return info.getThrowable().getClass().getName();
+		}
+	};
+
+	protected static final Field THROWABLE_MESSAGE = new Field(4) {
+		@Override
+		String value(final LoggingEvent event) {
+			final ThrowableInformation info = event.getThrowableInformation();
+			if (info == null || info.getThrowable() == null) {
+				return null;
+			}
+			return info.getThrowable().getMessage();
+		}
+	};
+
+	protected static final class MdcField extends Field {
+
+		final String key;
+
+		MdcField(final String key) {
+			super(3);
+			this.key = key;
+		}
+
+		@Override
+		String value(final LoggingEvent event) {
+			final Object value = event.getMDC(key);
+			return value == null ? null : value.toString();
+		}
+
+	}
+
+	/** text comparison; absent value matches only != */
+	protected static final class TextTest extends Predicate {
+
+		final Field field;
+		final String operator;
+		final String text;
+
+		TextTest(final Field field, final String operator, final String text) {
+			this.field = field;
+			this.operator = operator;
+			this.text = text;
+		}
+
+		@Override
+		int cost() {
+			return field.cost;
+		}
+
+		@Override
+		boolean test(final LoggingEvent event) {
+			final String value = field.value(event);
+			if (value == null) {
+				return operator.equals("!=");
+			}
+			switch (operator.charAt(0)) {
+			case '=':
+				return value.equals(text);
+			case '!':
+				return !value.equals(text);
+			case '^':
+				return value.startsWith(text);
+			case '$':
+				return value.endsWith(text);
+			case '~':
+				return value.contains(text);
+			default:
+				return false;
+			}
+		}
+
+	}
+
+	/** recursive descent parser over expression text */
+	protected static class Parser {
+
+		static final String[] OPERATORS = { "==", "!=", ">=", "<=", "^=",
+				"$=", ">", "<", "~" };
+
+		final String text;
+
+		int index;
+
+		Parser(final String text) {
+			this.text = text;
+		}
+
+		Predicate parse() {
+			final Predicate predicate = parseOr();
+			skipSpace();
+			if (index < text.length()) {
+				throw error("unexpected input");
+			}
+			return predicate;
+		}
+
+		Predicate parseOr() {
+			final List<Predicate> list = new ArrayList<Predicate>();
+			list.add(parseAnd());
+			while (accept("||")) {
+				list.add(parseAnd());
+			}
+			return list.size() == 1 ? list.get(0) : new Or(list);
+		}
+
+		Predicate parseAnd() {
+			final List<Predicate> list = new ArrayList<Predicate>();
+			list.add(parseUnary());
+			while (accept("&&")) {
+				list.add(parseUnary());
+			}
+			return list.size() == 1 ? list.get(0) : new And(list);
+		}
+
+		Predicate parseUnary() {
+			if (accept("(")) {
+				final Predicate predicate = parseOr();
+				if (!accept(")")) {
+					throw error("missing ')'");
+				}
+				return predicate;
+			}
+			if (!peek("!=") && accept("!")) {
+				return new Not(parseUnary());
+			}
+			return parseTest();
+		}
+
+		Predicate parseTest() {
+
+			final String name = parseWord();
+
+			String operator = null;
+			for (final String candidate : OPERATORS) {
+				if (accept(candidate)) {
+					operator = candidate;
+					break;
+				}
+			}
+			if (operator == null) {
+				throw error("missing operator");
+			}
+
+			final String value = parseValue();
+
+			if (name.equals("level")) {
+				final Level level = Level.toLevel(value, null);
+				if (level == null) {
+					throw error("invalid level " + value);
+				}
+				if (operator.equals("^=") || operator.equals("$=")
+						|| operator.equals("~")) {
+					throw error("invalid level operator " + operator);
+				}
+				return new LevelTest(operator, level);
+			}
+
+			if (operator.charAt(0) == '>' || operator.charAt(0) == '<') {
+				throw error("invalid text operator " + operator);
+			}
+
+			return new TextTest(fieldFrom(name), operator, value);
+
+		}
+
+		Field fieldFrom(final String name) {
+			if (name.equals("logger")) {
+				return LOGGER;
+			}
+			if (name.equals("thread")) {
+				return THREAD;
+			}
+			if (name.equals("ndc")) {
+				return NDC;
+			}
+			if (name.equals("message")) {
+				return MESSAGE;
+			}
+			if (name.equals("throwable.class")) {
+				return THROWABLE_CLASS;
+			}
+			if (name.equals("throwable.message")) {
+				return THROWABLE_MESSAGE;
+			}
+			if (name.startsWith("mdc.") && name.length() > 4) {
+				return new MdcField(name.substring(4));
+			}
+			throw error("invalid field " + name);
+		}
+
+		String parseWord() {
+			skipSpace();
+			final int start = index;
+			while (index < text.length()) {
+				final char one = text.charAt(index);
+				if (Character.isLetterOrDigit(one) || one == '.' || one == '_'
+						|| one == '-') {
+					index++;
+				} else {
+					break;
+				}
+			}
+			if (start == index) {
+				throw error("missing name");
+			}
+			return text.substring(start, index);
+		}
+
+		String parseValue() {
+			skipSpace();
+			if (index < text.length() && text.charAt(index) == '"') {
+				final int start = ++index;
+				final int finish = text.indexOf('"', start);
+				if (finish < 0) {
+					throw error("missing '\"'");
+				}
+				index = finish + 1;
+				return text.substring(start, finish);
+			}
+			return parseWord();
+		}
+
+		boolean peek(final String token) {
+			skipSpace();
+			return text.startsWith(token, index);
+		}
+
+		boolean accept(final String token) {
+			if (peek(token)) {
+				index += token.length();
+				return true;
+			}
+			return false;
+		}
+
+		void skipSpace() {
+			while (index < text.length()
+					&& Character.isWhitespace(text.charAt(index))) {
+				index++;
+			}
+		}
+
+		IllegalArgumentException error(final String message) {
+			return new IllegalArgumentException(message + " at " + index
+					+ " : " + text);
+		}
+
+	}
+
+	/** configured expression text */
+	@JsonProperty
+	protected String expression;
+
+	protected volatile Predicate predicate = REJECT_ALL;
+
+	/** signature of accepted events */
+	@JsonProperty
+	protected volatile Signature signature = Signature.DEFAULT;
+
+	/** parse and compile expression; null on error */
+	protected static Predicate compile(final String expression) {
+		try {
+			return new Parser(expression).parse();
+		} catch (final Exception e) {
+			LogLog.error("sns: invalid expression", e);
+			return null;
+		}
+	}
+
+	@Override
+	public void setProperties(final String propsText) {
+
+		if (propsText == null) {
+			return;
+		}
+
+		final Properties props = Util.propsFrom(propsText);
+
+		signature = new Signature(Util.maskFrom(props, PROP_MASK,
+				Signature.Mask.DEFAULT));
+
+		setExpression(props.getProperty(PROP_EXPRESSION));
+
+	}
+
+	@Override
+	public boolean isTriggeringEvent(final LoggingEvent event) {
+		return predicate.test(event);
+	}
+
+	@Override
+	public String triggeringKey(final LoggingEvent event) {
+		return predicate.test(event) ? signature.make(event) : null;
+	}
+
+	@Override
+	public Signature getSignature() {
+		return signature;
+	}
+
+	/** heap state only; nothing to release */
+	@Override
+	public void close() {
+	}
+
+	public void setSignature(final Signature signature) {
+		this.signature = signature;
+	}
+
+	public String getExpression() {
+		return expression;
+	}
+
+	public void setExpression(final String expression) {
+
+		if (expression == null) {
+			LogLog.error("sns: missing expression; all events are rejected");
+			this.expression = null;
+			this.predicate = REJECT_ALL;
+			return;
+		}
+
+		final Predicate predicate = compile(expression);
+
+		if (predicate == null) {
+			LogLog.error("sns: keep last valid expression : "
+					+ this.expression);
+			return;
+		}
+
+		this.expression = expression;
+		this.predicate = predicate;
+
+	}
+
+}
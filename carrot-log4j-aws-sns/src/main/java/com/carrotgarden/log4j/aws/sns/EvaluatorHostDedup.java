@@ -0,0 +1,317 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.io.File;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import com.carrotgarden.log4j.aws.sns.Signature.Mask;
+import com.google.common.hash.Hashing;
+
+/**
+ * log4j event evaluator that throttles similar events across all processes on
+ * the host which share the same table file, see {@link SharedTable}
+ *
+ * table is open addressing with linear probe; slot is one long, packed as
+ * (signature-hash << 32 | expire-seconds) so that claim is a single
+ * compare-and-swap; empty slot is 0; slots are never cleared, expired slots
+ * are reused in place, so probe chain ends at first empty slot
+ *
+ * expire is seconds since table creation, so period resolution is one second;
+ * full probe chain accepts the event (fail open)
+ *
+ * <pre>
+ * file=/var/tmp/sns-dedup.table
+ * slots=65536
+ * period=10
+ * unit=MINUTES
+ * mask=LOGGER_NAME,LINE_NUMBER
+ * lock=false
+ * </pre>
+ */
+public class EvaluatorHostDedup implements Evaluator {
+
+	public static final String PROP_FILE = "file";
+	public static final String PROP_SLOTS = "slots";
+	public static final String PROP_PERIOD = "period";
+	public static final String PROP_UNIT = "unit";
+	public static final String PROP_MASK = "mask";
+	public static final String PROP_LOCK = "lock";
+
+	public static final int DEFAULT_SLOTS = 64 * 1024;
+	public static final int DEFAULT_PERIOD = 10;
+	public static final TimeUnit DEFAULT_UNIT = TimeUnit.MINUTES;
+	public static final Signature DEFAULT_SIGNATURE = Signature.DEFAULT;
+
+	/** slots visited per lookup */
+	public static final int MAX_PROBE = 16;
+
+	/** claim attempts lost to concurrent writers before giving up */
+	public static final int MAX_RETRY = 16;
+
+	protected static final long EXPIRE_MASK = 0xFFFFFFFFL;
+
+	/** shared table file; required */
+	@JsonProperty
+	protected String file;
+
+	/** table slot count, used only by process which creates the file */
+	@JsonProperty
+	protected int slots = DEFAULT_SLOTS;
+
+	/** suppression period value */
+	@JsonProperty
+	protected long period = DEFAULT_PERIOD;
+
+	/** suppression period unit */
+	@JsonProperty
+	protected TimeUnit timeUnit = DEFAULT_UNIT;
+
+	/** event signature */
+	@JsonProperty
+	protected Signature signature = DEFAULT_SIGNATURE;
+
+	/** force file lock instead of mapped compare-and-swap */
+	@JsonProperty
+	protected boolean lock;
+
+	/** table, signature and period; replaced as a whole */
+	protected static final class State {
+
+		final SharedTable table;
+
+		final Signature signature;
+
+		/** suppression period, seconds, at least 1 */
+		final long periodSeconds;
+
+		State(final SharedTable table, final Signature signature,
+				final long periodSeconds) {
+			this.table = table;
+			this.signature = signature;
+			this.periodSeconds = periodSeconds;
+		}
+
+	}
+
+	protected volatile State state;
+
+	@Override
+	public synchronized void setProperties(final String propsText) {
+
+		if (propsText == null) {
+			return;
+		}
+
+		final Properties props = Util.propsFrom(propsText);
+
+		file = props.getProperty(PROP_FILE);
+
+		slots = Util.getIntValue(props.getProperty(PROP_SLOTS), DEFAULT_SLOTS);
+
+		period = Util.longFrom(props, PROP_PERIOD, DEFAULT_PERIOD);
+
+		timeUnit = Util.unitFrom(props, PROP_UNIT, DEFAULT_UNIT);
+
+		signature = new Signature(Util.maskFrom(props, PROP_MASK, Mask.DEFAULT));
+
+		lock = Boolean.parseBoolean(props.getProperty(PROP_LOCK, "false")
+				.trim());
+
+		ensureTable();
+
+	}
+
+	/** open table for current options; evaluator accepts all without one */
+	protected synchronized void ensureTable() {
+
+		final State past = this.state;
+
+		SharedTable table = null;
+
+		if (file == null || file.trim().length() == 0) {
+			LogLog.error("sns: host dedup needs table file");
+		} else {
+			try {
+				table = new SharedTable(new File(file.trim()), slots, lock);
+			} catch (final Exception e) {
+				LogLog.error("sns: host dedup table open failure : " + file, e);
+			}
+		}
+
+		final long periodSeconds = Math.max(1,
+				(timeUnit.toMillis(period) + 999) / 1000);
+
+		this.state = table == null ? null : new State(table, signature,
+				periodSeconds);
+
+		if (past != null) {
+			past.table.close();
+		}
+
+	}
+
+	@Override
+	public boolean isTriggeringEvent(final LoggingEvent event) {
+		return triggeringKey(event) != null;
+	}
+
+	@Override
+	public String triggeringKey(final LoggingEvent event) {
+
+		final State state = this.state;
+
+		if (state == null) {
+			return signature.make(event);
+		}
+
+		final SharedTable table = state.table;
+
+		final String key = state.signature.make(event);
+
+		final int hash = hash(key);
+
+		final long now = System.currentTimeMillis() / 1000 - table.getEpoch();
+
+		final long word = (long) hash << 32
+				| (now + state.periodSeconds & EXPIRE_MASK);
+
+		final int count = table.getSlots();
+
+		final int start = (hash & Integer.MAX_VALUE) % count;
+
+		final int probeLimit = Math.min(MAX_PROBE, count);
+
+		for (int retry = 0; retry < MAX_RETRY; retry++) {
+
+			/** first reusable slot and its current value */
+			int free = -1;
+			long freeValue = 0;
+
+			for (int probe = 0; probe < probeLimit; probe++) {
+
+				int index = start + probe;
+				if (index >= count) {
+					index -= count;
+				}
+
+				final long value = table.get(index);
+
+				if (value == 0) {
+					if (free < 0) {
+						free = index;
+						freeValue = value;
+					}
+					break;
+				}
+
+				final boolean isExpired = (value & EXPIRE_MASK) <= now;
+
+				if ((int) (value >>> 32) == hash) {
+					if (!isExpired) {
+						return null;
+					}
+					if (free < 0) {
+						free = index;
+						freeValue = value;
+					}
+					break;
+				}
+
+				if (isExpired && free < 0) {
+					free = index;
+					freeValue = value;
+				}
+
+			}
+
+			if (free < 0) {
+				return key;
+			}
+
+			if (table.compareAndSet(free, freeValue, word)) {
+				return key;
+			}
+
+		}
+
+		return key;
+
+	}
+
+	/** 32 bit signature hash, never 0 */
+	protected static int hash(final String signature) {
+		final int hash = Hashing.murmur3_32()
+				.hashString(signature, Util.UTF_8).asInt();
+		return hash == 0 ? 1 : hash;
+	}
+
+	/** release table mapping; evaluator accepts all afterwards */
+	@Override
+	public synchronized void close() {
+		final State state = this.state;
+		this.state = null;
+		if (state != null) {
+			state.table.close();
+		}
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	public void setFile(final String file) {
+		this.file = file;
+	}
+
+	public int getSlots() {
+		return slots;
+	}
+
+	public void setSlots(final int slots) {
+		this.slots = slots;
+	}
+
+	public long getPeriod() {
+		return period;
+	}
+
+	public void setPeriod(final long period) {
+		this.period = period;
+	}
+
+	public TimeUnit getTimeUnit() {
+		return timeUnit;
+	}
+
+	public void setTimeUnit(final TimeUnit timeUnit) {
+		this.timeUnit = timeUnit;
+	}
+
+	public Signature getSignature() {
+		return signature;
+	}
+
+	public void setSignature(final Signature signature) {
+		this.signature = signature;
+	}
+
+	public boolean isLock() {
+		return lock;
+	}
+
+	public void setLock(final boolean lock) {
+		this.lock = lock;
+	}
+
+}
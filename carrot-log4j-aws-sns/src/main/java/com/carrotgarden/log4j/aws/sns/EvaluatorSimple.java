@@ -7,23 +7,355 @@
  */
 package com.carrotgarden.log4j.aws.sns;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.spi.LoggingEvent;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import com.carrotgarden.log4j.aws.sns.Signature.Mask;
 
 /**
- * TODO
+ * log4j event evaluator with per logger hierarchy policy;
+ *
+ * properties are logger name prefix to rule pairs, longest prefix wins:
+ *
+ * <pre>
+ * root=WARN
+ * com.amazonaws=ERROR:10:MINUTES
+ * com.company=INFO:10:SECONDS
+ * com.company.noisy=never
+ * mask=LOGGER_NAME,LINE_NUMBER
+ * </pre>
+ *
+ * rule is "never" or "LEVEL" or "LEVEL:period:UNIT", where the last form
+ * throttles events passing the level via {@link EvaluatorThrottler} with
+ * signature "mask"; without "root" rule all other events are accepted
+ *
+ * rules are compiled into dot segmented prefix trie; decision is cached per
+ * logger name, so most events are rejected before {@link Signature#make}
  */
 public class EvaluatorSimple implements Evaluator {
 
+	public static final String PROP_ROOT = "root";
+	public static final String PROP_MASK = "mask";
+
+	public static final String RULE_NEVER = "never";
+
+	/** logger name cache size which triggers cache reset */
+	public static final int CACHE_LIMIT = 10 * 1000;
+
+	/** compiled logger policy */
+	protected static class Rule {
+
+		/** accept at or above this level */
+		@JsonProperty
+		final Level level;
+
+		/** optional per rule throttle */
+		@JsonProperty
+		final EvaluatorThrottler throttler;
+
+		Rule(final Level level, final EvaluatorThrottler throttler) {
+			this.level = level;
+			this.throttler = throttler;
+		}
+
+		boolean isTriggering(final LoggingEvent event) {
+
+			if (level == null) {
+				return false;
+			}
+
+			if (!event.getLevel().isGreaterOrEqual(level)) {
+				return false;
+			}
+
+			if (throttler == null) {
+				return true;
+			}
+
+			return throttler.isTriggeringEvent(event);
+
+		}
+
+		/** signature key when triggering, else null */
+		String triggeringKey(final LoggingEvent event,
+				final Signature signature) {
+
+			if (level == null) {
+				return null;
+			}
+
+			if (!event.getLevel().isGreaterOrEqual(level)) {
+				return null;
+			}
+
+			if (throttler == null) {
+				return signature.make(event);
+			}
+
+			return throttler.triggeringKey(event);
+
+		}
+
+	}
+
+	/** accept everything */
+	protected static final Rule RULE_ALL = new Rule(Level.ALL, null);
+
+	/** dot segmented logger name prefix trie node */
+	protected static class Node {
+
+		final Map<String, Node> children = new HashMap<String, Node>();
+
+		Rule rule;
+
+		Node child(final String segment) {
+			Node node = children.get(segment);
+			if (node == null) {
+				node = new Node();
+				children.put(segment, node);
+			}
+			return node;
+		}
+
+	}
+
+	/** rule trie with its decision cache; replaced as a whole */
+	protected static class State {
+
+		/** immutable after compile */
+		final Node root;
+
+		/** "mask" signature, shared by rule throttles */
+		final Signature signature;
+
+		/** rule throttles : [ rule-key, throttler ] */
+		final Map<String, EvaluatorThrottler> throttlerMap;
+
+		/** longest prefix decision cache : [ logger-name, rule ] */
+		final ConcurrentMap<String, Rule> ruleCache = new ConcurrentHashMap<String, Rule>();
+
+		State(final Node root, final Signature signature,
+				final Map<String, EvaluatorThrottler> throttlerMap) {
+			this.root = root;
+			this.signature = signature;
+			this.throttlerMap = throttlerMap;
+		}
+
+	}
+
+	protected volatile State state = compile(new Properties(),
+			new HashMap<String, EvaluatorThrottler>());
+
+	/**
+	 * rule throttles are reconfigured in place, by rule key, so their
+	 * suppression windows survive reconfiguration
+	 */
+	@Override
+	public synchronized void setProperties(final String propsText) {
+
+		if (propsText == null) {
+			return;
+		}
+
+		state = compile(Util.propsFrom(propsText), state.throttlerMap);
+
+	}
+
+	protected static State compile(final Properties props,
+			final Map<String, EvaluatorThrottler> pastMap) {
+
+		final Map<String, EvaluatorThrottler> throttlerMap = new HashMap<String, EvaluatorThrottler>();
+
+		final Node root = new Node();
+
+		root.rule = RULE_ALL;
+
+		final Set<Mask> mask = props.containsKey(PROP_MASK) ? Util.maskFrom(
+				props, PROP_MASK, Mask.DEFAULT) : Mask.DEFAULT;
+
+		final Signature signature = new Signature(mask);
+
+		for (final String key : props.stringPropertyNames()) {
+
+			if (PROP_MASK.equals(key)) {
+				continue;
+			}
+
+			final String value = props.getProperty(key);
+
+			final Rule rule = ruleFrom(value, signature, pastMap.get(key));
+
+			if (rule == null) {
+				LogLog.error("sns: invalid rule : " + key + "=" + value);
+				continue;
+			}
+
+			if (rule.throttler != null) {
+				throttlerMap.put(key, rule.throttler);
+			}
+
+			if (PROP_ROOT.equals(key)) {
+				root.rule = rule;
+				continue;
+			}
+
+			Node node = root;
+
+			for (final String segment : key.split("\\.")) {
+				node = node.child(segment);
+			}
+
+			node.rule = rule;
+
+		}
+
+		return new State(root, signature, throttlerMap);
+
+	}
+
+	/**
+	 * parse "never", "LEVEL" or "LEVEL:period:UNIT"; null on error; past
+	 * throttler of the same rule key is reused, when present
+	 */
+	protected static Rule ruleFrom(final String value,
+			final Signature signature, final EvaluatorThrottler past) {
+
+		final String[] terms = value.trim().split(":");
+
+		if (terms.length == 1 && RULE_NEVER.equalsIgnoreCase(terms[0].trim())) {
+			return new Rule(null, null);
+		}
+
+		final Level level = Level.toLevel(terms[0].trim(), null);
+
+		if (level == null) {
+			return null;
+		}
+
+		if (terms.length == 1) {
+			return new Rule(level, null);
+		}
+
+		if (terms.length != 3) {
+			return null;
+		}
+
+		try {
+
+			final long period = Long.parseLong(terms[1].trim());
+			final TimeUnit timeUnit = TimeUnit.valueOf(terms[2].trim());
+
+			final EvaluatorThrottler throttler = past == null ? new EvaluatorThrottler()
+					: past;
+
+			synchronized (throttler) {
+				throttler.setPeriod(period);
+				throttler.setTimeUnit(timeUnit);
+				throttler.setSignature(signature);
+				throttler.ensureCache();
+			}
+
+			return new Rule(level, throttler);
+
+		} catch (final Exception e) {
+			return null;
+		}
+
+	}
+
+	/** longest prefix match in the trie */
+	protected static Rule lookup(final Node root, final String name) {
+
+		Rule rule = root.rule;
+
+		Node node = root;
+
+		int head = 0;
+
+		while (head <= name.length()) {
+
+			int tail = name.indexOf('.', head);
+
+			if (tail < 0) {
+				tail = name.length();
+			}
+
+			node = node.children.get(name.substring(head, tail));
+
+			if (node == null) {
+				break;
+			}
+
+			if (node.rule != null) {
+				rule = node.rule;
+			}
+
+			head = tail + 1;
+
+		}
+
+		return rule;
+
+	}
+
+	protected Rule ruleFor(final String name) {
+
+		final State state = this.state;
+
+		final ConcurrentMap<String, Rule> ruleCache = state.ruleCache;
+
+		Rule rule = ruleCache.get(name);
+
+		if (rule == null) {
+
+			rule = lookup(state.root, name);
+
+			if (ruleCache.size() > CACHE_LIMIT) {
+				ruleCache.clear();
+			}
+
+			ruleCache.put(name, rule);
+
+		}
+
+		return rule;
+
+	}
+
 	@Override
 	public boolean isTriggeringEvent(final LoggingEvent event) {
-		// TODO Auto-generated method stub
-		return false;
+
+		return ruleFor(event.getLoggerName()).isTriggering(event);
+
 	}
 
 	@Override
-	public void setProperties(final String props) {
-		// TODO Auto-generated method stub
+	public String triggeringKey(final LoggingEvent event) {
+
+		final Signature signature = state.signature;
 
+		return ruleFor(event.getLoggerName()).triggeringKey(event, signature);
+
+	}
+
+	@Override
+	public Signature getSignature() {
+		return state.signature;
+	}
+
+	/** rule throttles keep heap state only; nothing to release */
+	@Override
+	public void close() {
 	}
 
 }
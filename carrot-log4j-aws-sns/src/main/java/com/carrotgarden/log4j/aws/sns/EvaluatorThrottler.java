@@ -7,22 +7,41 @@
  */
 package com.carrotgarden.log4j.aws.sns;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.spi.LoggingEvent;
 import org.codehaus.jackson.annotate.JsonProperty;
 
 import com.carrotgarden.log4j.aws.sns.Signature.Mask;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 
 /**
  * log4j event evaluator that throttles similar events via after-write time
  * based cache eviction
- * 
+ *
+ * reconfiguration keeps throttle state: cached entries are migrated into new
+ * cache, re-keyed under new signature mask and re-timed under new period, then
+ * new cache is swapped in atomically; evaluation never sees an empty or half
+ * built cache; entry keeps only signature parts, not the event, see
+ * {@link Signature.Parts}
+ *
+ * expired entries are swept incrementally: each insert checks next few
+ * entries of a resumable cursor, so no insert pays for a full scan
+ *
  * original idea from
- * 
+ *
  * https://github.com/insula/log4j-sns
  */
 public class EvaluatorThrottler implements Evaluator {
@@ -35,6 +54,127 @@ public class EvaluatorThrottler implements Evaluator {
 	public static final TimeUnit DEFAULT_UNIT = TimeUnit.MINUTES;
 	public static final Signature DEFAULT_SIGNATURE = Signature.DEFAULT;
 
+	/** entries checked for expiration per insert */
+	public static final int SWEEP_STEP = 4;
+
+	/** cached event signature */
+	protected static final class Entry {
+
+		/** first accepted event time, nanos */
+		final long writeNanos;
+
+		/**
+		 * signature parts of first accepted event, kept to re-key entry on
+		 * signature mask change
+		 */
+		final Signature.Parts parts;
+
+		/** events suppressed while entry is present */
+		final AtomicLong suppressed;
+
+		Entry(final long writeNanos, final Signature.Parts parts,
+				final long suppressed) {
+			this.writeNanos = writeNanos;
+			this.parts = parts;
+			this.suppressed = new AtomicLong(suppressed);
+		}
+
+	}
+
+	/** signature, period and event cache; replaced as a whole */
+	protected static final class State {
+
+		final Signature signature;
+
+		/** after-write retention, nanos */
+		final long periodNanos;
+
+		/** event cache map : [ event-signature, entry ] */
+		final ConcurrentMap<String, Entry> eventCache = new ConcurrentHashMap<String, Entry>();
+
+		/** incremental sweep owner */
+		final AtomicBoolean isSweeping = new AtomicBoolean();
+
+		/** incremental sweep cursor; guarded by {@link #isSweeping} */
+		Iterator<Map.Entry<String, Entry>> sweeper;
+
+		State(final Signature signature, final long periodNanos) {
+			this.signature = signature;
+			this.periodNanos = periodNanos;
+		}
+
+		boolean isExpired(final Entry entry, final long now) {
+			return now - entry.writeNanos >= periodNanos;
+		}
+
+		/** merge entry under new key; latest write wins, counts add up */
+		void merge(final Entry entry, final long now) {
+
+			if (isExpired(entry, now)) {
+				return;
+			}
+
+			final String key = signature.make(entry.parts);
+
+			while (true) {
+
+				final Entry past = eventCache.putIfAbsent(key, entry);
+
+				if (past == null) {
+					return;
+				}
+
+				final Entry next = past.writeNanos >= entry.writeNanos ? //
+				new Entry(past.writeNanos, past.parts, past.suppressed.get()
+						+ entry.suppressed.get())
+						: new Entry(entry.writeNanos, entry.parts,
+								past.suppressed.get() + entry.suppressed.get());
+
+				if (eventCache.replace(key, past, next)) {
+					return;
+				}
+
+			}
+
+		}
+
+		/**
+		 * drop expired entries among next few of the cursor;
+		 * skipped while other thread sweeps
+		 */
+		void sweep(final long now) {
+
+			if (!isSweeping.compareAndSet(false, true)) {
+				return;
+			}
+
+			try {
+
+				for (int step = 0; step < SWEEP_STEP; step++) {
+
+					if (sweeper == null || !sweeper.hasNext()) {
+						sweeper = eventCache.entrySet().iterator();
+						if (!sweeper.hasNext()) {
+							return;
+						}
+					}
+
+					final Map.Entry<String, Entry> item = sweeper.next();
+
+					if (isExpired(item.getValue(), now)) {
+						eventCache.remove(item.getKey(), item.getValue());
+					}
+
+				}
+
+			} finally {
+				isSweeping.set(false);
+			}
+
+		}
+
+	}
+
 	/** cache after-write retention period value */
 	@JsonProperty
 	protected long period = DEFAULT_PERIOD;
@@ -47,13 +187,45 @@ public class EvaluatorThrottler implements Evaluator {
 	@JsonProperty
 	protected Signature signature = DEFAULT_SIGNATURE;
 
-	/** event cache map : [ event-signature, is-event-present ] */
-	private Cache<String, Boolean> eventCache;
+	protected volatile State state;
 
-	protected void ensureCache() {
+	/**
+	 * entries restored from previous process, consulted on cache miss;
+	 * released when all expired; see {@link ThrottleSnapshot}
+	 */
+	protected volatile ThrottleSnapshot restored;
 
-		eventCache = CacheBuilder.newBuilder()
-				.expireAfterWrite(period, timeUnit).build();
+	/**
+	 * apply current period, unit and signature; existing entries are carried
+	 * over into the new cache
+	 */
+	protected synchronized void ensureCache() {
+
+		final State past = this.state;
+
+		final State next = new State(signature, timeUnit.toNanos(period));
+
+		if (past == null) {
+			this.state = next;
+			return;
+		}
+
+		final long now = System.nanoTime();
+
+		for (final Entry entry : past.eventCache.values()) {
+			next.merge(entry, now);
+		}
+
+		this.state = next;
+
+		/** entries inserted by callers which still held the past state */
+		for (final Map.Entry<String, Entry> entry : past.eventCache
+				.entrySet()) {
+			final Entry value = entry.getValue();
+			if (next.eventCache.get(next.signature.make(value.parts)) == null) {
+				next.merge(value, now);
+			}
+		}
 
 	}
 
@@ -62,7 +234,7 @@ public class EvaluatorThrottler implements Evaluator {
 	}
 
 	@Override
-	public void setProperties(final String propsText) {
+	public synchronized void setProperties(final String propsText) {
 
 		if (propsText == null) {
 			return;
@@ -80,28 +252,188 @@ public class EvaluatorThrottler implements Evaluator {
 
 	}
 
-	/**  */
 	@Override
 	public boolean isTriggeringEvent(final LoggingEvent event) {
+		return triggeringKey(event) != null;
+	}
+
+	@Override
+	public String triggeringKey(final LoggingEvent event) {
+
+		final State state = this.state;
 
-		final String key = signature.make(event);
+		final ConcurrentMap<String, Entry> eventCache = state.eventCache;
 
-		final boolean isNew = (eventCache.getIfPresent(key) == null);
+		final String key = state.signature.make(event);
 
-		// LogLog.error("isNew=" + isNew);
+		final long now = System.nanoTime();
 
-		if (isNew) {
+		while (true) {
 
-			eventCache.put(key, true);
+			final Entry past = eventCache.get(key);
 
-			return true;
+			if (past != null && !state.isExpired(past, now)) {
 
+				past.suppressed.incrementAndGet();
+
+				return null;
+
+			}
+
+			/** thread bound parts are resolved now, for later re-keying */
+			final Signature.Parts parts = state.signature.parts(event);
+
+			final Entry next;
+
+			final long remaining = past == null ? restoredNanos(key) : 0;
+
+			if (remaining > 0) {
+				/** continue suppression window of previous process */
+				next = new Entry(now - state.periodNanos
+						+ Math.min(remaining, state.periodNanos), parts, 1);
+			} else {
+				next = new Entry(now, parts, 0);
+			}
+
+			final boolean isNew = past == null ? //
+			eventCache.putIfAbsent(key, next) == null
+					: eventCache.replace(key, past, next);
+
+			// LogLog.error("isNew=" + isNew);
+
+			if (isNew) {
+
+				state.sweep(now);
+
+				return remaining <= 0 ? key : null;
+
+			}
+
+		}
+
+	}
+
+	/** remaining restored suppression, nanos, or 0 */
+	protected long restoredNanos(final String key) {
+
+		final ThrottleSnapshot restored = this.restored;
+
+		if (restored == null) {
+			return 0;
+		}
+
+		final long now = System.currentTimeMillis();
+
+		if (restored.isExpired(now)) {
+			this.restored = null;
+			return 0;
+		}
+
+		final long expire = restored.expire(ThrottleSnapshot.hash(key));
+
+		return expire > now ? TimeUnit.MILLISECONDS.toNanos(expire - now) : 0;
+
+	}
+
+	/** continue suppression windows recorded by previous process */
+	public void restore(final ThrottleSnapshot snapshot) {
+		if (snapshot == null || snapshot.size() == 0) {
+			this.restored = null;
 		} else {
+			this.restored = snapshot;
+		}
+	}
+
+	/** live and still restored entries, with wall clock expire time */
+	public ThrottleSnapshot snapshot() {
 
-			return false;
+		final State state = this.state;
+
+		final long nowNanos = System.nanoTime();
+		final long nowMillis = System.currentTimeMillis();
+
+		/** entries added meanwhile are left for next snapshot */
+		final int size = state.eventCache.size();
+
+		final long[] live = new long[size * 2];
+
+		int count = 0;
+
+		for (final Map.Entry<String, Entry> item : state.eventCache
+				.entrySet()) {
+
+			if (count == size) {
+				break;
+			}
+
+			final Entry entry = item.getValue();
+
+			final long remaining = state.periodNanos
+					- (nowNanos - entry.writeNanos);
+
+			if (remaining <= 0) {
+				continue;
+			}
+
+			live[count * 2] = ThrottleSnapshot.hash(item.getKey());
+			live[count * 2 + 1] = nowMillis
+					+ TimeUnit.NANOSECONDS.toMillis(remaining);
+
+			count++;
 
 		}
 
+		return ThrottleSnapshot.merge(live, count, restored, nowMillis);
+
+	}
+
+	/** cached signatures, including expired but not yet swept */
+	public int size() {
+		return state.eventCache.size();
+	}
+
+	/**
+	 * most suppressed signatures in current retention period, ordered by
+	 * suppressed event count
+	 */
+	public Map<String, Long> topSuppressed(final int limit) {
+
+		final State state = this.state;
+
+		final long now = System.nanoTime();
+
+		/** snapshot counts, they change while sorting */
+		final Map<String, Long> countMap = new HashMap<String, Long>();
+
+		for (final Map.Entry<String, Entry> entry : state.eventCache
+				.entrySet()) {
+			if (state.isExpired(entry.getValue(), now)) {
+				continue;
+			}
+			final long count = entry.getValue().suppressed.get();
+			if (count > 0) {
+				countMap.put(entry.getKey(), count);
+			}
+		}
+
+		final List<String> keyList = new ArrayList<String>(countMap.keySet());
+
+		Collections.sort(keyList, new Comparator<String>() {
+			@Override
+			public int compare(final String one, final String two) {
+				return countMap.get(two).compareTo(countMap.get(one));
+			}
+		});
+
+		final Map<String, Long> top = new LinkedHashMap<String, Long>();
+
+		for (final String key : keyList.subList(0,
+				Math.min(Math.max(0, limit), keyList.size()))) {
+			top.put(key, countMap.get(key));
+		}
+
+		return top;
+
 	}
 
 	public long getPeriod() {
@@ -124,6 +456,11 @@ public class EvaluatorThrottler implements Evaluator {
 		return signature;
 	}
 
+	/** heap state only; nothing to release */
+	@Override
+	public void close() {
+	}
+
 	public void setSignature(final Signature signature) {
 		this.signature = signature;
 	}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * immutable copy of thread bound event state, taken on the caller thread, so
+ * evaluator, signature and layout can run on a publisher thread
+ *
+ * keeps time stamp, level, logger, thread name, NDC, message reference,
+ * throwable, selected MDC keys and optional location; MDC lookup never falls
+ * back to the current thread
+ *
+ * note: message object is kept by reference and is rendered later
+ */
+public class EventSnapshot extends LoggingEvent {
+
+	private static final long serialVersionUID = 1L;
+
+	/** snapshot of the event on the caller thread */
+	public static EventSnapshot take(final LoggingEvent event,
+			final String[] mdcKeys, final boolean withLocation) {
+
+		final Map<String, Object> mdc;
+
+		if (mdcKeys.length == 0) {
+			mdc = Collections.emptyMap();
+		} else {
+			mdc = new HashMap<String, Object>(mdcKeys.length * 2);
+			for (final String key : mdcKeys) {
+				final Object value = event.getMDC(key);
+				if (value != null) {
+					mdc.put(key, value);
+				}
+			}
+		}
+
+		final LocationInfo location = withLocation ? event
+				.getLocationInformation() : LocationInfo.NA_LOCATION_INFO;
+
+		return new EventSnapshot(event, mdc, location);
+
+	}
+
+	protected final Map<String, Object> mdc;
+
+	protected EventSnapshot(final LoggingEvent event,
+			final Map<String, Object> mdc, final LocationInfo location) {
+
+		super(event.getFQNOfLoggerClass(), event.getLogger(), event
+				.getTimeStamp(), event.getLevel(), event.getMessage(), event
+				.getThreadName(), event.getThrowableInformation(), event
+				.getNDC(), location, mdc);
+
+		this.mdc = mdc;
+
+	}
+
+	/** captured value only */
+	@Override
+	public Object getMDC(final String key) {
+		return mdc.get(key);
+	}
+
+	/** captured already; do not copy current thread context */
+	@Override
+	public void getMDCCopy() {
+	}
+
+}
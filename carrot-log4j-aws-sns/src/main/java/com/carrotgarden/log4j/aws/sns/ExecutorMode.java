@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.helpers.LogLog;
+
+/**
+ * publish executor flavor
+ */
+public enum ExecutorMode {
+
+	/** platform daemon threads, up to pool max */
+	POOL, //
+
+	/** virtual threads, pool max concurrent tasks; falls back to POOL */
+	VIRTUAL, //
+
+	;
+
+	public static final ExecutorMode DEFAULT = POOL;
+
+	/** parse config value; default on error */
+	public static ExecutorMode from(final String text) {
+		try {
+			return valueOf(text.trim().toUpperCase());
+		} catch (final Exception e) {
+			LogLog.error("sns: invalid executor mode : " + text);
+			return DEFAULT;
+		}
+	}
+
+	/** AWS SNS client executor */
+	public ExecutorService newService(final int poolMin, final int poolMax) {
+
+		if (this == VIRTUAL) {
+
+			final ExecutorService service = ExecutorVirtual.create(poolMax);
+
+			if (service != null) {
+				return service;
+			}
+
+			LogLog.warn("sns: virtual threads are not supported; using pool");
+
+		}
+
+		try {
+
+			return new ThreadPoolExecutor(//
+					poolMin, //
+					poolMax, //
+					60L, //
+					TimeUnit.SECONDS, //
+					new SynchronousQueue<Runnable>(), //
+					new ThreadFactoryAWS() //
+			);
+
+		} catch (final Exception e) {
+
+			LogLog.warn("sns: failed to init service; using default", e);
+
+			return Executors.newCachedThreadPool();
+
+		}
+
+	}
+
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.helpers.LogLog;
+
+/**
+ * runs each task on a new virtual thread, when runtime supports them;
+ * concurrency is limited by semaphore instead of thread count, so blocked
+ * publish costs a parked virtual thread, not a platform thread
+ *
+ * virtual thread api is resolved via reflection, so this class loads on any
+ * runtime; see {@link #isSupported()}
+ */
+public class ExecutorVirtual extends AbstractExecutorService {
+
+	/** virtual thread factory, or null when not supported */
+	private static final ThreadFactory FACTORY = factory();
+
+	/** thread per task executor method, or null when not supported */
+	private static final Method NEW_EXECUTOR = newExecutor();
+
+	private static ThreadFactory factory() {
+		try {
+
+			final Method ofVirtual = Thread.class.getMethod("ofVirtual");
+
+			final Class<?> builderClass = Class
+					.forName("java.lang.Thread$Builder");
+
+			final Method name = builderClass.getMethod("name", String.class,
+					long.class);
+
+			final Method factory = builderClass.getMethod("factory");
+
+			Object builder = ofVirtual.invoke(null);
+
+			builder = name.invoke(builder, "# amazon-sns virtual ", 0L);
+
+			return (ThreadFactory) factory.invoke(builder);
+
+		} catch (final Throwable e) {
+			return null;
+		}
+	}
+
+	private static Method newExecutor() {
+		try {
+			return Executors.class.getMethod("newThreadPerTaskExecutor",
+					ThreadFactory.class);
+		} catch (final Throwable e) {
+			return null;
+		}
+	}
+
+	public static boolean isSupported() {
+		return FACTORY != null && NEW_EXECUTOR != null;
+	}
+
+	/** virtual thread executor or null when not supported */
+	public static ExecutorService create(final int limit) {
+
+		if (!isSupported()) {
+			return null;
+		}
+
+		try {
+
+			final ExecutorService delegate = (ExecutorService) NEW_EXECUTOR
+					.invoke(null, FACTORY);
+
+			return new ExecutorVirtual(delegate, limit);
+
+		} catch (final Throwable e) {
+
+			LogLog.warn("sns: virtual executor failure", e);
+
+			return null;
+
+		}
+
+	}
+
+	protected final ExecutorService delegate;
+
+	protected final int limit;
+
+	protected final Semaphore permits;
+
+	protected ExecutorVirtual(final ExecutorService delegate, final int limit) {
+		this.delegate = delegate;
+		this.limit = Math.max(1, limit);
+		this.permits = new Semaphore(this.limit);
+	}
+
+	/** task waits for a permit on its own virtual thread */
+	@Override
+	public void execute(final Runnable task) {
+		delegate.execute(new Runnable() {
+			@Override
+			public void run() {
+				permits.acquireUninterruptibly();
+				try {
+					task.run();
+				} finally {
+					permits.release();
+				}
+			}
+		});
+	}
+
+	@Override
+	public void shutdown() {
+		delegate.shutdown();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		return delegate.shutdownNow();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return delegate.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return delegate.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(final long timeout, final TimeUnit unit)
+			throws InterruptedException {
+		return delegate.awaitTermination(timeout, unit);
+	}
+
+	/** tasks currently running */
+	public int getActiveCount() {
+		return limit - permits.availablePermits();
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.carrotgarden.log4j.aws.sns.Signature.Mask;
+
+/**
+ * allocation free throttle keyed by 64 bit event signature hash, for event
+ * models which can hash a signature without building it, see
+ * {@link EvaluatorThrottler} for string keyed variant
+ *
+ * fixed size open addressing table with linear probe; slot is one long,
+ * packed as (hash-tag << 40 | expire-millis) so that claim is a single
+ * compare-and-swap; expire is relative to table creation; empty slot is 0;
+ * expired slots are reused in place; full probe chain accepts the event
+ *
+ * configured with {@link EvaluatorThrottler} properties, plus "slots"
+ */
+public class HashThrottle {
+
+	public static final String PROP_SLOTS = "slots";
+
+	public static final int DEFAULT_SLOTS = 4 * 1024;
+
+	/** slots visited per lookup */
+	public static final int MAX_PROBE = 16;
+
+	/** claim attempts lost to concurrent writers before giving up */
+	public static final int MAX_RETRY = 16;
+
+	protected static final int EXPIRE_BITS = 40;
+
+	protected static final long EXPIRE_MASK = (1L << EXPIRE_BITS) - 1;
+
+	protected final AtomicLongArray table;
+
+	/** slot count - 1 */
+	protected final int mask;
+
+	/** retention, millis, at least 1 */
+	protected final long periodMillis;
+
+	/** table creation time, nanos */
+	protected final long originNanos = System.nanoTime();
+
+	/** slot count is rounded up to power of two */
+	public HashThrottle(final int slots, final long period, final TimeUnit unit) {
+
+		int size = 1;
+		while (size < slots && size < 1 << 30) {
+			size <<= 1;
+		}
+
+		this.table = new AtomicLongArray(size);
+		this.mask = size - 1;
+		this.periodMillis = Math.max(1, unit.toMillis(period));
+
+	}
+
+	/** throttle from {@link EvaluatorThrottler} properties text */
+	public static HashThrottle from(final String propsText) {
+
+		if (propsText == null) {
+			return new HashThrottle(DEFAULT_SLOTS,
+					EvaluatorThrottler.DEFAULT_PERIOD,
+					EvaluatorThrottler.DEFAULT_UNIT);
+		}
+
+		final Properties props = Util.propsFrom(propsText);
+
+		return new HashThrottle(Util.getIntValue(
+				props.getProperty(PROP_SLOTS), DEFAULT_SLOTS), //
+				Util.longFrom(props, EvaluatorThrottler.PROP_PERIOD,
+						EvaluatorThrottler.DEFAULT_PERIOD), //
+				Util.unitFrom(props, EvaluatorThrottler.PROP_UNIT,
+						EvaluatorThrottler.DEFAULT_UNIT));
+
+	}
+
+	/** signature mask from {@link EvaluatorThrottler} properties text */
+	public static Signature signatureFrom(final String propsText) {
+		return signatureFrom(propsText, Mask.DEFAULT);
+	}
+
+	/** signature mask from properties text, with own default mask */
+	public static Signature signatureFrom(final String propsText,
+			final Set<Mask> defaultMask) {
+
+		if (propsText == null) {
+			return new Signature(defaultMask);
+		}
+
+		final Properties props = Util.propsFrom(propsText);
+
+		return new Signature(Util.maskFrom(props,
+				EvaluatorThrottler.PROP_MASK, defaultMask));
+
+	}
+
+	/** false when same hash was accepted within period */
+	public boolean isTriggering(final long hash) {
+
+		final long now = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+				- originNanos);
+
+		final long tag = hash >>> EXPIRE_BITS;
+
+		final long word = tag << EXPIRE_BITS
+				| (now + periodMillis & EXPIRE_MASK);
+
+		final int start = (int) hash & mask;
+
+		final int probeLimit = Math.min(MAX_PROBE, mask + 1);
+
+		for (int retry = 0; retry < MAX_RETRY; retry++) {
+
+			/** first reusable slot and its current value */
+			int free = -1;
+			long freeValue = 0;
+
+			for (int probe = 0; probe < probeLimit; probe++) {
+
+				final int index = start + probe & mask;
+
+				final long value = table.get(index);
+
+				if (value == 0) {
+					if (free < 0) {
+						free = index;
+						freeValue = value;
+					}
+					break;
+				}
+
+				final boolean isExpired = (value & EXPIRE_MASK) <= now;
+
+				if (value >>> EXPIRE_BITS == tag) {
+					if (!isExpired) {
+						return false;
+					}
+					if (free < 0) {
+						free = index;
+						freeValue = value;
+					}
+					break;
+				}
+
+				if (isExpired && free < 0) {
+					free = index;
+					freeValue = value;
+				}
+
+			}
+
+			if (free < 0) {
+				return true;
+			}
+
+			if (table.compareAndSet(free, freeValue, word)) {
+				return true;
+			}
+
+		}
+
+		return true;
+
+	}
+
+	public int getSlots() {
+		return mask + 1;
+	}
+
+	public long getPeriodMillis() {
+		return periodMillis;
+	}
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * per appender limit of concurrent async publish requests on a shared
+ * client; completed requests are reaped on next acquire, so no completion
+ * callback is needed
+ *
+ * not thread safe; use under appender lock
+ */
+public class InFlightLimit {
+
+	public static final int DEFAULT_LIMIT = 10;
+
+	protected final int limit;
+
+	protected final List<Future<?>> futureList = new ArrayList<Future<?>>();
+
+	/** readable from any thread */
+	protected volatile int count;
+
+	public InFlightLimit(final int limit) {
+		this.limit = Math.max(1, limit);
+	}
+
+	/** reserve a slot; false when limit is reached */
+	public boolean tryAcquire() {
+
+		if (count >= limit) {
+			reap();
+		}
+
+		if (count >= limit) {
+			return false;
+		}
+
+		count++;
+
+		return true;
+
+	}
+
+	/** track reserved slot until request completes */
+	public void track(final Future<?> future) {
+
+		if (future == null || future.isDone()) {
+			count--;
+		} else {
+			futureList.add(future);
+		}
+
+	}
+
+	/** return reserved slot of failed request */
+	public void release() {
+		count--;
+	}
+
+	/** drop completed requests */
+	protected void reap() {
+
+		final Iterator<Future<?>> iterator = futureList.iterator();
+
+		while (iterator.hasNext()) {
+			if (iterator.next().isDone()) {
+				iterator.remove();
+				count--;
+			}
+		}
+
+	}
+
+	/** current in-flight request count */
+	public int getCount() {
+		return count;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+}
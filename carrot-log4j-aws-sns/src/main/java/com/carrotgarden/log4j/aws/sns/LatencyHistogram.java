@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * log-linear latency histogram, in the spirit of HdrHistogram: each power of
+ * two range is split into {@link #SUB_COUNT} linear buckets, so any recorded
+ * value is reported within 1/{@link #SUB_COUNT} relative error; fixed
+ * footprint, no allocation on record
+ *
+ * values are nanos
+ */
+public class LatencyHistogram {
+
+	/** linear buckets per power of two */
+	public static final int SUB_BITS = 4;
+
+	public static final int SUB_COUNT = 1 << SUB_BITS;
+
+	/** exact buckets for [0, SUB_COUNT), then log-linear up to 2^63 */
+	public static final int BUCKET_COUNT = SUB_COUNT * (64 - SUB_BITS);
+
+	/** bucket of a value */
+	public static int index(final long value) {
+
+		if (value < SUB_COUNT) {
+			return value < 0 ? 0 : (int) value;
+		}
+
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+		final int shift = exponent - SUB_BITS;
+
+		final int sub = (int) (value >>> shift) & (SUB_COUNT - 1);
+
+		return SUB_COUNT + shift * SUB_COUNT + sub;
+
+	}
+
+	/** largest value which falls into the bucket */
+	public static long highest(final int index) {
+
+		if (index < SUB_COUNT) {
+			return index;
+		}
+
+		final int shift = (index - SUB_COUNT) / SUB_COUNT;
+
+		final long sub = (index - SUB_COUNT) % SUB_COUNT;
+
+		final long lowest = (SUB_COUNT + sub) << shift;
+
+		return lowest + (1L << shift) - 1;
+
+	}
+
+	protected final AtomicLongArray buckets = new AtomicLongArray(
+			BUCKET_COUNT);
+
+	protected final StripedCounter count = new StripedCounter();
+
+	protected final StripedCounter total = new StripedCounter();
+
+	protected final AtomicLong maximum = new AtomicLong();
+
+	public void record(final long nanos) {
+
+		final long value = Math.max(0, nanos);
+
+		buckets.incrementAndGet(index(value));
+		count.increment();
+		total.add(value);
+
+		long past;
+		while (value > (past = maximum.get())) {
+			if (maximum.compareAndSet(past, value)) {
+				break;
+			}
+		}
+
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMaximum() {
+		return maximum.get();
+	}
+
+	public long getMean() {
+		final long count = getCount();
+		return count == 0 ? 0 : total.sum() / count;
+	}
+
+	/** value at quantile, such as 0.99; 0 when empty */
+	public long getQuantile(final double quantile) {
+
+		final long[] snapshot = new long[BUCKET_COUNT];
+
+		long count = 0;
+
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			snapshot[index] = buckets.get(index);
+			count += snapshot[index];
+		}
+
+		if (count == 0) {
+			return 0;
+		}
+
+		final long rank = Math.max(1, (long) Math.ceil(quantile * count));
+
+		long seen = 0;
+
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			seen += snapshot[index];
+			if (seen >= rank) {
+				return Math.min(highest(index), getMaximum());
+			}
+		}
+
+		return getMaximum();
+
+	}
+
+	public void reset() {
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			buckets.set(index, 0);
+		}
+		count.reset();
+		total.reset();
+		maximum.set(0);
+	}
+
+}
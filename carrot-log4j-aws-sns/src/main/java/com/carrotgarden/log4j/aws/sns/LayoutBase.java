@@ -0,0 +1,318 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Layout;
+import org.apache.log4j.spi.LoggingEvent;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * common options of structured event layouts: field names, stack depth, MDC
+ * keys, time stamp format and static fields
+ * 
+ * field is excluded from output when its name is empty or {@link #IGNORE}
+ */
+public abstract class LayoutBase extends Layout {
+
+	public static final String IGNORE = "ignore";
+
+	public static final int DEFAULT_STACK_DEPTH = 3;
+
+	//
+
+	/** stack depth reporting limit; frames per cause in json, lines in xml */
+	protected int stackDepth = DEFAULT_STACK_DEPTH;
+
+	/** list of MDC keys which should be reported */
+	protected String[] mdcKeys = new String[0];
+
+	protected boolean shouldInclude(final String fieldName) {
+		if (fieldName == null || fieldName.length() == 0) {
+			return false;
+		}
+		if (IGNORE.equalsIgnoreCase(fieldName)) {
+			return false;
+		}
+		return true;
+	}
+
+	/** option change notification; drop compiled state */
+	protected void reset() {
+	}
+
+	//
+
+	@JsonProperty
+	protected String fieldError = "error";
+
+	@JsonProperty
+	protected String fieldLogger = "logger";
+	@JsonProperty
+	protected String fieldLevel = "level";
+	@JsonProperty
+	protected String fieldTime = "time";
+	@JsonProperty
+	protected String fieldThread = "thread";
+	@JsonProperty
+	protected String fieldMessage = "message";
+	@JsonProperty
+	protected String fieldFile = "file";
+	@JsonProperty
+	protected String fieldClass = "class";
+	@JsonProperty
+	protected String fieldMethod = "method";
+	@JsonProperty
+	protected String fieldLine = "line";
+
+	@JsonProperty
+	protected String fieldNDC = "ndc";
+	@JsonProperty
+	protected String fieldStack = "stack";
+	@JsonProperty
+	protected String fieldMDC = "mdc";
+
+	/** static field; local host name */
+	@JsonProperty
+	protected String fieldHost = IGNORE;
+
+	/** static field; instance identity, defaults to appender topic subject */
+	@JsonProperty
+	protected String fieldIdentity = IGNORE;
+
+	/** instance identity value reported in {@link #fieldIdentity} */
+	@JsonProperty
+	protected String identity;
+
+	/** time stamp format mode; see {@link TimeFormat.Mode} */
+	@JsonProperty
+	protected String timeFormat = TimeFormat.Mode.DEFAULT.name();
+
+	protected TimeFormat timeFormatter = new TimeFormat(TimeFormat.Mode.DEFAULT);
+
+	/** resolve enabled static fields as [ name, value ] pairs */
+	protected List<String[]> staticFields() {
+
+		final List<String[]> list = new ArrayList<String[]>();
+
+		if (shouldInclude(fieldHost)) {
+			list.add(new String[] { fieldHost, Util.hostName() });
+		}
+
+		if (shouldInclude(fieldIdentity) && identity != null) {
+			list.add(new String[] { fieldIdentity, identity });
+		}
+
+		return list;
+
+	}
+
+	/** event message text */
+	protected static String messageOf(final LoggingEvent event) {
+		final Object message = event.getMessage();
+		return message == null ? null : message.toString();
+	}
+
+	@Override
+	public boolean ignoresThrowable() {
+		return false;
+	}
+
+	public String[] getMdcKeys() {
+		return mdcKeys.clone();
+	}
+
+	public void setMdcKeys(final String[] mdcKeysArray) {
+		if (mdcKeysArray == null) {
+			mdcKeys = new String[0];
+		} else {
+			mdcKeys = mdcKeysArray;
+		}
+		reset();
+	}
+
+	public void setMdcKeys(final String mdcKeysText) {
+		if (mdcKeysText == null || mdcKeysText.length() == 0) {
+			mdcKeys = new String[0];
+		} else {
+			mdcKeys = mdcKeysText.split(",");
+		}
+		reset();
+	}
+
+	public int getStackDepth() {
+		return stackDepth;
+	}
+
+	public void setStackDepth(final int stackDepth) {
+		this.stackDepth = stackDepth;
+		reset();
+	}
+
+	public void setStackDepth(final String stackDepthText) {
+		stackDepth = Util.getIntValue(stackDepthText, DEFAULT_STACK_DEPTH);
+		reset();
+	}
+
+	public String getFieldLogger() {
+		return fieldLogger;
+	}
+
+	public void setFieldLogger(final String fieldLog) {
+		this.fieldLogger = fieldLog;
+		reset();
+	}
+
+	public String getFieldLevel() {
+		return fieldLevel;
+	}
+
+	public void setFieldLevel(final String fieldLevel) {
+		this.fieldLevel = fieldLevel;
+		reset();
+	}
+
+	public String getFieldTime() {
+		return fieldTime;
+	}
+
+	public void setFieldTime(final String fieldTime) {
+		this.fieldTime = fieldTime;
+		reset();
+	}
+
+	public String getFieldThread() {
+		return fieldThread;
+	}
+
+	public void setFieldThread(final String fieldThread) {
+		this.fieldThread = fieldThread;
+		reset();
+	}
+
+	public String getFieldMessage() {
+		return fieldMessage;
+	}
+
+	public void setFieldMessage(final String fieldMessage) {
+		this.fieldMessage = fieldMessage;
+		reset();
+	}
+
+	public String getFieldNDC() {
+		return fieldNDC;
+	}
+
+	public void setFieldNDC(final String fieldNDC) {
+		this.fieldNDC = fieldNDC;
+		reset();
+	}
+
+	public String getFieldStack() {
+		return fieldStack;
+	}
+
+	public void setFieldStack(final String fieldStack) {
+		this.fieldStack = fieldStack;
+		reset();
+	}
+
+	public String getFieldMDC() {
+		return fieldMDC;
+	}
+
+	public void setFieldMDC(final String fieldMDC) {
+		this.fieldMDC = fieldMDC;
+		reset();
+	}
+
+	public String getFieldError() {
+		return fieldError;
+	}
+
+	public void setFieldError(final String fieldError) {
+		this.fieldError = fieldError;
+	}
+
+	public String getFieldLine() {
+		return fieldLine;
+	}
+
+	public void setFieldLine(final String fieldLine) {
+		this.fieldLine = fieldLine;
+		reset();
+	}
+
+	public String getFieldMethod() {
+		return fieldMethod;
+	}
+
+	public void setFieldMethod(final String fieldMethod) {
+		this.fieldMethod = fieldMethod;
+		reset();
+	}
+
+	public String getFieldFile() {
+		return fieldFile;
+	}
+
+	public void setFieldFile(final String fieldFile) {
+		this.fieldFile = fieldFile;
+		reset();
+	}
+
+	public String getFieldClass() {
+		return fieldClass;
+	}
+
+	public void setFieldClass(final String fieldClass) {
+		this.fieldClass = fieldClass;
+		reset();
+	}
+
+	public String getFieldHost() {
+		return fieldHost;
+	}
+
+	public void setFieldHost(final String fieldHost) {
+		this.fieldHost = fieldHost;
+		reset();
+	}
+
+	public String getFieldIdentity() {
+		return fieldIdentity;
+	}
+
+	public void setFieldIdentity(final String fieldIdentity) {
+		this.fieldIdentity = fieldIdentity;
+		reset();
+	}
+
+	public String getIdentity() {
+		return identity;
+	}
+
+	public void setIdentity(final String identity) {
+		this.identity = identity;
+		reset();
+	}
+
+	public String getTimeFormat() {
+		return timeFormat;
+	}
+
+	public void setTimeFormat(final String timeFormat) {
+		final TimeFormat.Mode mode = TimeFormat.Mode.from(timeFormat);
+		this.timeFormat = mode.name();
+		this.timeFormatter = new TimeFormat(mode);
+		reset();
+	}
+
+}
@@ -9,51 +9,47 @@ package com.carrotgarden.log4j.aws.sns;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
 
-import org.apache.log4j.Layout;
 import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.spi.LocationInfo;
 import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.annotate.JsonProperty;
-import org.joda.time.DateTime;
+import org.codehaus.jackson.io.SerializedString;
 
 /**
  * render log4j event in json format
  * 
+ * configuration is compiled once into a plan of field writer steps with
+ * pre-encoded field names; see {@link #activateOptions()}
+ * 
  * original idea from
  * 
  * https://github.com/Aconex/json-log4j-layout
  * 
  * TODO auto size limit
  */
-public class LayoutJSON extends Layout {
-
-	public static final String IGNORE = "ignore";
+public class LayoutJSON extends LayoutBase {
 
-	public static final int DEFAULT_STACK_DEPTH = 3;
+	protected final JsonFactory jsonFactory = new JsonFactory();
 
 	//
 
-	/** stack depth reporting limit */
-	protected int stackDepth = DEFAULT_STACK_DEPTH;
+	/** compiled event field writer */
+	protected static interface Step {
 
-	/** list of MDC keys which should be reported */
-	protected String[] mdcKeys = new String[0];
-
-	protected final JsonFactory jsonFactory = new JsonFactory();
+		void write(LoggingEvent event, JsonGenerator jsonGen)
+				throws Exception;
 
-	protected boolean shouldInclude(final String fieldName) {
-		if (fieldName == null || fieldName.length() == 0) {
-			return false;
-		}
-		if (IGNORE.equalsIgnoreCase(fieldName)) {
-			return false;
-		}
-		return true;
 	}
 
+	/** compiled field writer plan; reset on option change */
+	protected volatile Step[] plan;
+
 	//
 
 	@JsonProperty
@@ -61,9 +57,6 @@ public class LayoutJSON extends Layout {
 
 	//
 
-	@JsonProperty
-	protected String fieldError = "error";
-
 	@Override
 	public String format(final LoggingEvent event) {
 		try {
@@ -72,17 +65,7 @@ public class LayoutJSON extends Layout {
 
 			final JsonGenerator jsonGen = createJsonGen(writer);
 
-			jsonGen.writeStartObject();
-
-			write(event, jsonGen);
-
-			writeStack(event, jsonGen);
-
-			writeMDC(event, jsonGen);
-
-			writeNDC(event, jsonGen);
-
-			jsonGen.writeEndObject();
+			writeEvent(event, jsonGen);
 
 			jsonGen.close();
 
@@ -102,6 +85,22 @@ public class LayoutJSON extends Layout {
 		}
 	}
 
+	/** render event object with compiled plan */
+	protected void writeEvent(final LoggingEvent event,
+			final JsonGenerator jsonGen) throws Exception {
+
+		final Step[] plan = ensurePlan();
+
+		jsonGen.writeStartObject();
+
+		for (final Step step : plan) {
+			step.write(event, jsonGen);
+		}
+
+		jsonGen.writeEndObject();
+
+	}
+
 	protected JsonGenerator createJsonGen(final StringWriter writer)
 			throws Exception {
 
@@ -115,307 +114,426 @@ public class LayoutJSON extends Layout {
 
 	}
 
-	@JsonProperty
-	protected String fieldLogger = "logger";
-	@JsonProperty
-	protected String fieldLevel = "level";
-	@JsonProperty
-	protected String fieldTime = "time";
-	@JsonProperty
-	protected String fieldThread = "thread";
-	@JsonProperty
-	protected String fieldMessage = "message";
-	@JsonProperty
-	protected String fieldFile = "file";
-	@JsonProperty
-	protected String fieldClass = "class";
-	@JsonProperty
-	protected String fieldMethod = "method";
-	@JsonProperty
-	protected String fieldLine = "line";
+	protected Step[] ensurePlan() {
 
-	protected void write(final LoggingEvent event, final JsonGenerator jsonGen)
-			throws Exception {
+		Step[] plan = this.plan;
+
+		if (plan == null) {
+			plan = compile();
+			this.plan = plan;
+		}
+
+		return plan;
+
+	}
+
+	/** build field writer plan from current options */
+	protected Step[] compile() {
+
+		final List<Step> list = new ArrayList<Step>();
 
 		if (shouldInclude(fieldLogger)) {
-			jsonGen.writeStringField(fieldLogger, event.getLoggerName());
+			final SerializedString name = new SerializedString(fieldLogger);
+			list.add(new Step() {
+				@Override
+				public void write(final LoggingEvent event,
+						final JsonGenerator jsonGen) throws Exception {
+					jsonGen.writeFieldName(name);
+					jsonGen.writeString(event.getLoggerName());
+				}
+			});
 		}
 
 		if (shouldInclude(fieldLevel)) {
-			jsonGen.writeStringField(fieldLevel, event.getLevel().toString());
+			final SerializedString name = new SerializedString(fieldLevel);
+			list.add(new Step() {
+				@Override
+				public void write(final LoggingEvent event,
+						final JsonGenerator jsonGen) throws Exception {
+					jsonGen.writeFieldName(name);
+					jsonGen.writeString(event.getLevel().toString());
+				}
+			});
 		}
 
 		if (shouldInclude(fieldTime)) {
-			jsonGen.writeStringField(fieldTime,
-					new DateTime(event.timeStamp).toString());
+			final SerializedString name = new SerializedString(fieldTime);
+			list.add(new Step() {
+				@Override
+				public void write(final LoggingEvent event,
+						final JsonGenerator jsonGen) throws Exception {
+					jsonGen.writeFieldName(name);
+					writeTime(event, jsonGen);
+				}
+			});
 		}
 
 		if (shouldInclude(fieldThread)) {
-			jsonGen.writeStringField(fieldThread, event.getThreadName());
+			final SerializedString name = new SerializedString(fieldThread);
+			list.add(new Step() {
+				@Override
+				public void write(final LoggingEvent event,
+						final JsonGenerator jsonGen) throws Exception {
+					jsonGen.writeFieldName(name);
+					jsonGen.writeString(event.getThreadName());
+				}
+			});
 		}
 
 		if (shouldInclude(fieldMessage)) {
-			jsonGen.writeStringField(fieldMessage, event.getMessage()
-					.toString());
+			final SerializedString name = new SerializedString(fieldMessage);
+			list.add(new Step() {
+				@Override
+				public void write(final LoggingEvent event,
+						final JsonGenerator jsonGen) throws Exception {
+					jsonGen.writeFieldName(name);
+					jsonGen.writeString(fitMessage(messageOf(event)));
+				}
+			});
 		}
 
 		if (shouldInclude(fieldFile)) {
-			final LocationInfo location = event.getLocationInformation();
-			jsonGen.writeStringField(fieldFile, location.getFileName());
+			final SerializedString name = new SerializedString(fieldFile);
+			list.add(new Step() {
+				@Override
+				public void write(final LoggingEvent event,
+						final JsonGenerator jsonGen) throws Exception {
+					final LocationInfo location = event
+							.getLocationInformation();
+					jsonGen.writeFieldName(name);
+					jsonGen.writeString(location.getFileName());
+				}
+			});
 		}
 
 		if (shouldInclude(fieldClass)) {
-			final LocationInfo location = event.getLocationInformation();
-			jsonGen.writeStringField(fieldClass, location.getClassName());
+			final SerializedString name = new SerializedString(fieldClass);
+			list.add(new Step() {
+				@Override
+				public void write(final LoggingEvent event,
+						final JsonGenerator jsonGen) throws Exception {
+					final LocationInfo location = event
+							.getLocationInformation();
+					jsonGen.writeFieldName(name);
+					jsonGen.writeString(location.getClassName());
+				}
+			});
 		}
 
 		if (shouldInclude(fieldMethod)) {
-			final LocationInfo location = event.getLocationInformation();
-			jsonGen.writeStringField(fieldMethod, location.getMethodName());
+			final SerializedString name = new SerializedString(fieldMethod);
+			list.add(new Step() {
+				@Override
+				public void write(final LoggingEvent event,
+						final JsonGenerator jsonGen) throws Exception {
+					final LocationInfo location = event
+							.getLocationInformation();
+					jsonGen.writeFieldName(name);
+					jsonGen.writeString(location.getMethodName());
+				}
+			});
 		}
 
 		if (shouldInclude(fieldLine)) {
-			final LocationInfo location = event.getLocationInformation();
-			jsonGen.writeStringField(fieldLine, location.getLineNumber());
+			final SerializedString name = new SerializedString(fieldLine);
+			list.add(new Step() {
+				@Override
+				public void write(final LoggingEvent event,
+						final JsonGenerator jsonGen) throws Exception {
+					final LocationInfo location = event
+							.getLocationInformation();
+					jsonGen.writeFieldName(name);
+					jsonGen.writeString(location.getLineNumber());
+				}
+			});
+		}
+
+		compileStatic(list);
+
+		if (shouldInclude(fieldStack)) {
+			final SerializedString name = new SerializedString(fieldStack);
+			list.add(new Step() {
+				@Override
+				public void write(final LoggingEvent event,
+						final JsonGenerator jsonGen) throws Exception {
+					writeStack(name, event, jsonGen);
+				}
+			});
+		}
+
+		if (shouldInclude(fieldMDC)) {
+			final SerializedString name = new SerializedString(fieldMDC);
+			list.add(new Step() {
+				@Override
+				public void write(final LoggingEvent event,
+						final JsonGenerator jsonGen) throws Exception {
+					writeMDC(name, event, jsonGen);
+				}
+			});
+		}
+
+		if (shouldInclude(fieldNDC)) {
+			final SerializedString name = new SerializedString(fieldNDC);
+			list.add(new Step() {
+				@Override
+				public void write(final LoggingEvent event,
+						final JsonGenerator jsonGen) throws Exception {
+					writeNDC(name, event, jsonGen);
+				}
+			});
 		}
 
+		return list.toArray(new Step[list.size()]);
+
 	}
 
-	@JsonProperty
-	protected String fieldNDC = "ndc";
+	/** static fields are resolved once and rendered as a single step */
+	protected void compileStatic(final List<Step> list) {
 
-	protected void writeNDC(final LoggingEvent event,
-			final JsonGenerator jsonGen) throws Exception {
+		final List<String[]> fieldList = staticFields();
 
-		if (!shouldInclude(fieldNDC)) {
+		if (fieldList.isEmpty()) {
 			return;
 		}
 
-		final String ndcText = event.getNDC();
+		final SerializedString[] names = new SerializedString[fieldList.size()];
+		final String[] values = new String[fieldList.size()];
 
-		if (ndcText == null) {
-			return;
+		for (int index = 0; index < names.length; index++) {
+			names[index] = new SerializedString(fieldList.get(index)[0]);
+			values[index] = fieldList.get(index)[1];
 		}
 
-		jsonGen.writeStringField(fieldNDC, ndcText);
+		list.add(new Step() {
+			@Override
+			public void write(final LoggingEvent event,
+					final JsonGenerator jsonGen) throws Exception {
+				for (int index = 0; index < names.length; index++) {
+					jsonGen.writeFieldName(names[index]);
+					jsonGen.writeString(values[index]);
+				}
+			}
+		});
 
 	}
 
-	@JsonProperty
-	protected String fieldStack = "stack";
-
-	protected void writeStack(final LoggingEvent event,
-			final JsonGenerator jsonGen) throws Exception {
-
-		if (!shouldInclude(fieldStack)) {
-			return;
+	/** per thread time stamp render buffer */
+	protected final ThreadLocal<char[]> timeBuffer = new ThreadLocal<char[]>() {
+		@Override
+		protected char[] initialValue() {
+			return new char[TimeFormat.SIZE];
 		}
+	};
 
-		final String[] stackArray = event.getThrowableStrRep();
+	/** write time stamp value; field name is already written */
+	protected void writeTime(final LoggingEvent event,
+			final JsonGenerator jsonGen) throws Exception {
 
-		if (stackArray == null) {
+		if (timeFormatter.getMode() == TimeFormat.Mode.EPOCH) {
+			jsonGen.writeNumber(event.timeStamp);
 			return;
 		}
 
-		jsonGen.writeFieldName(fieldStack);
-
-		jsonGen.writeStartArray();
+		final char[] buffer = timeBuffer.get();
 
-		int index = 0;
+		final int length = timeFormatter.format(event.timeStamp, buffer);
 
-		for (final String entry : stackArray) {
+		jsonGen.writeString(buffer, 0, length);
 
-			if (index > stackDepth) {
-				break;
-			}
+	}
 
-			jsonGen.writeStartObject();
-			jsonGen.writeStringField(Integer.toString(index), entry);
-			jsonGen.writeEndObject();
+	protected void writeNDC(final SerializedString name,
+			final LoggingEvent event, final JsonGenerator jsonGen)
+			throws Exception {
 
-			index++;
+		final String ndcText = fit(event.getNDC());
 
+		if (ndcText == null) {
+			return;
 		}
 
-		jsonGen.writeEndArray();
+		jsonGen.writeFieldName(name);
+		jsonGen.writeString(ndcText);
 
 	}
 
-	@JsonProperty
-	protected String fieldMDC = "mdc";
+	protected static final SerializedString STACK_CLASS = new SerializedString(
+			"class");
+	protected static final SerializedString STACK_MESSAGE = new SerializedString(
+			"message");
+	protected static final SerializedString STACK_FRAMES = new SerializedString(
+			"frames");
+
+	/**
+	 * write cause chain as [ { class, message, frames } ]; walks stack trace
+	 * elements directly, up to {@link #stackDepth} frames per cause; frames
+	 * shared with enclosing trace and frames over the limit are reported as
+	 * "... N more"
+	 */
+	protected void writeStack(final SerializedString name,
+			final LoggingEvent event, final JsonGenerator jsonGen)
+			throws Exception {
 
-	protected void writeMDC(final LoggingEvent event,
-			final JsonGenerator jsonGen) throws IOException {
+		final ThrowableInformation info = event.getThrowableInformation();
 
-		if (!shouldInclude(fieldMDC)) {
+		if (info == null) {
 			return;
 		}
 
-		if (mdcKeys.length == 0) {
+		final Throwable throwable = info.getThrowable();
+
+		if (throwable == null) {
+			/** deserialized event: text only */
+			writeStackText(name, event, jsonGen);
 			return;
 		}
 
-		event.getMDCCopy();
+		jsonGen.writeFieldName(name);
 
-		jsonGen.writeObjectFieldStart(fieldMDC);
+		jsonGen.writeStartArray();
 
-		for (final String key : mdcKeys) {
+		StackTraceElement[] enclosing = null;
 
-			final Object mdc = event.getMDC(key);
+		for (final Throwable cause : Util.causeChain(throwable)) {
+
+			final StackTraceElement[] trace = cause.getStackTrace();
+
+			final int unique = enclosing == null ? trace.length
+					: trace.length - Util.framesInCommon(trace, enclosing);
+
+			final int size = Math.max(0, Math.min(stackDepth, unique));
+
+			jsonGen.writeStartObject();
 
-			if (mdc != null) {
-				jsonGen.writeStringField(key, mdc.toString());
+			jsonGen.writeFieldName(STACK_CLASS);
+			jsonGen.writeString(cause.getClass().getName());
+
+			final String message = fit(cause.getMessage());
+
+			if (message != null) {
+				jsonGen.writeFieldName(STACK_MESSAGE);
+				jsonGen.writeString(message);
 			}
 
-		}
+			jsonGen.writeFieldName(STACK_FRAMES);
+			jsonGen.writeStartArray();
 
-		jsonGen.writeEndObject();
+			int count = 0;
 
-	}
+			for (; count < size; count++) {
+				final String frame = fit(trace[count].toString());
+				if (frame == null) {
+					break;
+				}
+				jsonGen.writeString(frame);
+			}
 
-	public String[] getMdcKeys() {
-		return mdcKeys.clone();
-	}
+			if (count < trace.length) {
+				jsonGen.writeString("... " + (trace.length - count) + " more");
+			}
 
-	public void setMdcKeys(final String[] mdcKeysArray) {
-		if (mdcKeysArray == null) {
-			mdcKeys = new String[0];
-		} else {
-			mdcKeys = mdcKeysArray;
-		}
-	}
+			jsonGen.writeEndArray();
 
-	public void setMdcKeys(final String mdcKeysText) {
-		if (mdcKeysText == null || mdcKeysText.length() == 0) {
-			mdcKeys = new String[0];
-		} else {
-			mdcKeys = mdcKeysText.split(",");
-		}
-	}
+			jsonGen.writeEndObject();
 
-	@Override
-	public boolean ignoresThrowable() {
-		return false;
-	}
+			enclosing = trace;
 
-	@Override
-	public void activateOptions() {
-	}
+		}
 
-	public int getStackDepth() {
-		return stackDepth;
-	}
+		jsonGen.writeEndArray();
 
-	public void setStackDepth(final int stackDepth) {
-		this.stackDepth = stackDepth;
 	}
 
-	public void setStackDepth(final String stackDepthText) {
-		stackDepth = Util.getIntValue(stackDepthText, DEFAULT_STACK_DEPTH);
-	}
+	/** write first {@link #stackDepth} lines of rendered stack trace */
+	protected void writeStackText(final SerializedString name,
+			final LoggingEvent event, final JsonGenerator jsonGen)
+			throws Exception {
 
-	public String getFieldLogger() {
-		return fieldLogger;
-	}
+		final String[] stackArray = event.getThrowableStrRep();
 
-	public void setFieldLogger(final String fieldLog) {
-		this.fieldLogger = fieldLog;
-	}
+		if (stackArray == null) {
+			return;
+		}
 
-	public String getFieldLevel() {
-		return fieldLevel;
-	}
+		jsonGen.writeFieldName(name);
 
-	public void setFieldLevel(final String fieldLevel) {
-		this.fieldLevel = fieldLevel;
-	}
+		jsonGen.writeStartArray();
 
-	public String getFieldTime() {
-		return fieldTime;
-	}
+		final int size = Math.min(stackDepth, stackArray.length);
 
-	public void setFieldTime(final String fieldTime) {
-		this.fieldTime = fieldTime;
-	}
+		for (int index = 0; index < size; index++) {
+			final String line = fit(stackArray[index]);
+			if (line == null) {
+				break;
+			}
+			jsonGen.writeStartObject();
+			jsonGen.writeStringField(Integer.toString(index), line);
+			jsonGen.writeEndObject();
+		}
 
-	public String getFieldThread() {
-		return fieldThread;
-	}
+		jsonGen.writeEndArray();
 
-	public void setFieldThread(final String fieldThread) {
-		this.fieldThread = fieldThread;
 	}
 
-	public String getFieldMessage() {
-		return fieldMessage;
-	}
+	protected void writeMDC(final SerializedString name,
+			final LoggingEvent event, final JsonGenerator jsonGen)
+			throws IOException {
 
-	public void setFieldMessage(final String fieldMessage) {
-		this.fieldMessage = fieldMessage;
-	}
+		final String[] mdcKeys = this.mdcKeys;
 
-	public String getFieldNDC() {
-		return fieldNDC;
-	}
+		if (mdcKeys.length == 0) {
+			return;
+		}
 
-	public void setFieldNDC(final String fieldNDC) {
-		this.fieldNDC = fieldNDC;
-	}
+		event.getMDCCopy();
 
-	public String getFieldStack() {
-		return fieldStack;
-	}
+		jsonGen.writeFieldName(name);
+		jsonGen.writeStartObject();
 
-	public void setFieldStack(final String fieldStack) {
-		this.fieldStack = fieldStack;
-	}
+		for (final String key : mdcKeys) {
 
-	public String getFieldMDC() {
-		return fieldMDC;
-	}
+			final Object mdc = event.getMDC(key);
 
-	public void setFieldMDC(final String fieldMDC) {
-		this.fieldMDC = fieldMDC;
-	}
+			if (mdc == null) {
+				continue;
+			}
 
-	public String getFieldError() {
-		return fieldError;
-	}
+			final String value = fit(mdc.toString());
 
-	public void setFieldError(final String fieldError) {
-		this.fieldError = fieldError;
-	}
+			if (value == null) {
+				break;
+			}
 
-	public String getFieldLine() {
-		return fieldLine;
-	}
+			jsonGen.writeStringField(key, value);
 
-	public void setFieldLine(final String fieldLine) {
-		this.fieldLine = fieldLine;
-	}
+		}
 
-	public String getFieldMethod() {
-		return fieldMethod;
-	}
+		jsonGen.writeEndObject();
 
-	public void setFieldMethod(final String fieldMethod) {
-		this.fieldMethod = fieldMethod;
 	}
 
-	public String getFieldFile() {
-		return fieldFile;
+	/**
+	 * variable size text as written: message, stack lines, MDC values, NDC;
+	 * subclass can cut it to a size budget, null drops it
+	 */
+	protected String fit(final String text) {
+		return text;
 	}
 
-	public void setFieldFile(final String fieldFile) {
-		this.fieldFile = fieldFile;
+	/** event message text as written; see {@link #fit(String)} */
+	protected String fitMessage(final String text) {
+		return fit(text);
 	}
 
-	public String getFieldClass() {
-		return fieldClass;
+	/** compile field writer plan */
+	@Override
+	public void activateOptions() {
+		plan = compile();
 	}
 
-	public void setFieldClass(final String fieldClass) {
-		this.fieldClass = fieldClass;
+	@Override
+	protected void reset() {
+		plan = null;
 	}
 
 	public String getUsePrettyPrinter() {
@@ -7,28 +7,435 @@
  */
 package com.carrotgarden.log4j.aws.sns;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.log4j.Layout;
+import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+import org.codehaus.jackson.annotate.JsonProperty;
 
-/** TODO */
+/**
+ * render log4j event as compact text; intended for sms and email subscribers
+ *
+ * pattern is compiled once into segment writers; supported conversions:
+ *
+ * %d time stamp, %d{UTC|OFFSET|EPOCH}; %p level; %c logger, %c{N} last N
+ * logger name parts; %t thread; %m message; %x NDC; %X{key} MDC value; %h
+ * host name; %e short throwable summary, " (exception-class at top-frame)";
+ * %n line separator; %% percent sign
+ *
+ * conversion can be limited to N chars as in %.Nm
+ *
+ * output is truncated to {@link #byteLimit} UTF-8 bytes, if set
+ */
 public class LayoutSimple extends Layout {
 
+	public static final String DEFAULT_PATTERN = "%d{UTC} %p %c{1} - %m%e";
+
+	/** no limit */
+	public static final int DEFAULT_BYTE_LIMIT = 0;
+
+	/** appended to truncated output */
+	public static final String ELLIPSIS = "...";
+
+	/** builder capacity retained between events */
+	protected static final int BUILDER_RETAIN = 16 * 1024;
+
+	/** compiled pattern segment writer */
+	protected static interface Segment {
+
+		void render(LoggingEvent event, StringBuilder text);
+
+	}
+
+	/** log4j config option; event conversion pattern */
+	@JsonProperty
+	protected String conversionPattern = DEFAULT_PATTERN;
+
+	/** log4j config option; output UTF-8 size limit; 0 is unlimited */
+	@JsonProperty
+	protected int byteLimit = DEFAULT_BYTE_LIMIT;
+
+	/** compiled pattern; reset on option change */
+	protected volatile Segment[] plan;
+
+	/** pattern includes throwable conversion */
+	protected volatile boolean hasThrowable;
+
+	/** per thread reused render buffer */
+	protected final ThreadLocal<StringBuilder> builder = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+
 	@Override
 	public void activateOptions() {
-		// TODO Auto-generated method stub
-
+		plan = compile(conversionPattern);
 	}
 
 	@Override
 	public String format(final LoggingEvent event) {
-		// TODO Auto-generated method stub
-		return null;
+
+		final Segment[] plan = ensurePlan();
+
+		StringBuilder text = builder.get();
+
+		if (text.capacity() > BUILDER_RETAIN) {
+			text = new StringBuilder(256);
+			builder.set(text);
+		}
+
+		text.setLength(0);
+
+		for (final Segment segment : plan) {
+			segment.render(event, text);
+		}
+
+		if (byteLimit > 0) {
+			truncate(text, byteLimit);
+		}
+
+		return text.toString();
+
 	}
 
+	/** cut on code point boundary and mark as truncated */
+	protected static void truncate(final StringBuilder text, final int limit) {
+
+		final int index = Util.byteLimitIndex(text, limit);
+
+		if (index == text.length()) {
+			return;
+		}
+
+		if (limit <= ELLIPSIS.length()) {
+			text.setLength(index);
+			return;
+		}
+
+		text.setLength(Util.byteLimitIndex(text, limit - ELLIPSIS.length()));
+		text.append(ELLIPSIS);
+
+	}
+
+	/** render throwable itself when pattern does not */
 	@Override
 	public boolean ignoresThrowable() {
-		// TODO Auto-generated method stub
-		return false;
+		ensurePlan();
+		return !hasThrowable;
+	}
+
+	protected Segment[] ensurePlan() {
+
+		Segment[] plan = this.plan;
+
+		if (plan == null) {
+			plan = compile(conversionPattern);
+			this.plan = plan;
+		}
+
+		return plan;
+
+	}
+
+	/** parse pattern into segment writers */
+	protected Segment[] compile(final String pattern) {
+
+		final List<Segment> list = new ArrayList<Segment>();
+
+		final StringBuilder literal = new StringBuilder();
+
+		final int length = pattern == null ? 0 : pattern.length();
+
+		boolean hasThrowable = false;
+
+		int index = 0;
+
+		while (index < length) {
+
+			final char one = pattern.charAt(index++);
+
+			if (one != '%' || index == length) {
+				literal.append(one);
+				continue;
+			}
+
+			/** optional %.N limit */
+			int limit = 0;
+			if (pattern.charAt(index) == '.') {
+				index++;
+				while (index < length
+						&& Character.isDigit(pattern.charAt(index))) {
+					limit = limit * 10 + (pattern.charAt(index++) - '0');
+				}
+				if (index == length) {
+					LogLog.warn("sns: invalid pattern : " + pattern);
+					break;
+				}
+			}
+
+			final char code = pattern.charAt(index++);
+
+			/** optional {option} */
+			String option = null;
+			if (index < length && pattern.charAt(index) == '{') {
+				final int end = pattern.indexOf('}', index);
+				if (end > 0) {
+					option = pattern.substring(index + 1, end);
+					index = end + 1;
+				}
+			}
+
+			final Segment segment;
+
+			switch (code) {
+			case '%':
+				literal.append('%');
+				continue;
+			case 'n':
+				literal.append(LINE_SEP);
+				continue;
+			case 'h':
+				literal.append(Util.hostName());
+				continue;
+			case 'd':
+				segment = segmentTime(option);
+				break;
+			case 'p':
+				segment = segmentLevel();
+				break;
+			case 'c':
+				segment = segmentLogger(option);
+				break;
+			case 't':
+				segment = segmentThread();
+				break;
+			case 'm':
+				segment = segmentMessage();
+				break;
+			case 'x':
+				segment = segmentNDC();
+				break;
+			case 'X':
+				segment = segmentMDC(option);
+				break;
+			case 'e':
+				segment = segmentThrowable();
+				hasThrowable = true;
+				break;
+			default:
+				LogLog.warn("sns: unknown pattern conversion : %" + code);
+				literal.append('%').append(code);
+				continue;
+			}
+
+			if (literal.length() > 0) {
+				list.add(segmentLiteral(literal.toString()));
+				literal.setLength(0);
+			}
+
+			if (limit > 0) {
+				list.add(segmentLimit(segment, limit));
+			} else {
+				list.add(segment);
+			}
+
+		}
+
+		if (literal.length() > 0) {
+			list.add(segmentLiteral(literal.toString()));
+		}
+
+		this.hasThrowable = hasThrowable;
+
+		return list.toArray(new Segment[list.size()]);
+
+	}
+
+	protected Segment segmentLiteral(final String value) {
+		return new Segment() {
+			@Override
+			public void render(final LoggingEvent event,
+					final StringBuilder text) {
+				text.append(value);
+			}
+		};
+	}
+
+	protected Segment segmentLimit(final Segment segment, final int limit) {
+		return new Segment() {
+			@Override
+			public void render(final LoggingEvent event,
+					final StringBuilder text) {
+				final int start = text.length();
+				segment.render(event, text);
+				if (text.length() - start > limit) {
+					int end = start + limit;
+					if (Character.isHighSurrogate(text.charAt(end - 1))) {
+						end--;
+					}
+					text.setLength(end);
+				}
+			}
+		};
+	}
+
+	protected Segment segmentTime(final String option) {
+		final TimeFormat format = new TimeFormat(TimeFormat.Mode.from(option));
+		return new Segment() {
+			@Override
+			public void render(final LoggingEvent event,
+					final StringBuilder text) {
+				format.format(event.timeStamp, text);
+			}
+		};
+	}
+
+	protected Segment segmentLevel() {
+		return new Segment() {
+			@Override
+			public void render(final LoggingEvent event,
+					final StringBuilder text) {
+				text.append(event.getLevel().toString());
+			}
+		};
+	}
+
+	protected Segment segmentLogger(final String option) {
+		final int parts = option == null ? 0 : Util.getIntValue(option, 0);
+		return new Segment() {
+			@Override
+			public void render(final LoggingEvent event,
+					final StringBuilder text) {
+				final String name = event.getLoggerName();
+				if (parts <= 0) {
+					text.append(name);
+					return;
+				}
+				int start = name.length();
+				for (int count = 0; count < parts && start > 0; count++) {
+					start = name.lastIndexOf('.', start - 1);
+				}
+				text.append(name, start + 1, name.length());
+			}
+		};
+	}
+
+	protected Segment segmentThread() {
+		return new Segment() {
+			@Override
+			public void render(final LoggingEvent event,
+					final StringBuilder text) {
+				text.append(event.getThreadName());
+			}
+		};
+	}
+
+	protected Segment segmentMessage() {
+		return new Segment() {
+			@Override
+			public void render(final LoggingEvent event,
+					final StringBuilder text) {
+				text.append(event.getRenderedMessage());
+			}
+		};
+	}
+
+	protected Segment segmentNDC() {
+		return new Segment() {
+			@Override
+			public void render(final LoggingEvent event,
+					final StringBuilder text) {
+				final String ndc = event.getNDC();
+				if (ndc != null) {
+					text.append(ndc);
+				}
+			}
+		};
+	}
+
+	protected Segment segmentMDC(final String key) {
+		return new Segment() {
+			@Override
+			public void render(final LoggingEvent event,
+					final StringBuilder text) {
+				if (key == null) {
+					return;
+				}
+				final Object value = event.getMDC(key);
+				if (value != null) {
+					text.append(value);
+				}
+			}
+		};
+	}
+
+	protected Segment segmentThrowable() {
+		return new Segment() {
+			@Override
+			public void render(final LoggingEvent event,
+					final StringBuilder text) {
+
+				final ThrowableInformation info = event
+						.getThrowableInformation();
+
+				if (info == null) {
+					return;
+				}
+
+				final Throwable throwable = info.getThrowable();
+
+				if (throwable == null) {
+					return;
+				}
+
+				text.append(" (");
+				text.append(throwable.getClass().getName());
+
+				final StackTraceElement[] stack = throwable.getStackTrace();
+
+				if (stack != null && stack.length > 0) {
+					final StackTraceElement frame = stack[0];
+					text.append(" at ");
+					text.append(frame.getClassName());
+					text.append('.');
+					text.append(frame.getMethodName());
+					text.append('(');
+					text.append(frame.getFileName());
+					text.append(':');
+					text.append(frame.getLineNumber());
+					text.append(')');
+				}
+
+				text.append(')');
+
+			}
+		};
+	}
+
+	public String getConversionPattern() {
+		return conversionPattern;
+	}
+
+	public void setConversionPattern(final String conversionPattern) {
+		this.conversionPattern = conversionPattern;
+		plan = null;
+	}
+
+	public int getByteLimit() {
+		return byteLimit;
+	}
+
+	public void setByteLimit(final int byteLimit) {
+		this.byteLimit = byteLimit;
+	}
+
+	public void setByteLimit(final String byteLimitText) {
+		byteLimit = Util.getIntValue(byteLimitText, DEFAULT_BYTE_LIMIT);
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.codehaus.jackson.smile.SmileFactory;
+import org.codehaus.jackson.smile.SmileGenerator;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * render log4j event in binary json (smile) format, base64 wrapped for SNS
+ * transport; same fields and options as {@link LayoutJSON}
+ *
+ * repeated field names and short string values are written as back
+ * references; see {@link SmileGenerator.Feature#CHECK_SHARED_NAMES}
+ *
+ * consumers can use {@link #decode(SmileFactory, String)}
+ *
+ * message, stack lines, MDC values and NDC are cut to {@link #TEXT_BUDGET}
+ * before encoding, message to at most half of it, so encoded event fits
+ * {@link Util#MESSAGE_LIMIT} and core fields are always kept
+ */
+public class LayoutSmile extends LayoutJSON {
+
+	protected static final BaseEncoding BASE64 = BaseEncoding.base64();
+
+	/** variable text UTF-8 size budget; base64 size is 4/3 of raw size */
+	public static final int TEXT_BUDGET = Util.MESSAGE_LIMIT / 4 * 3 - 4 * 1024;
+
+	/** string value header size reserve */
+	protected static final int TEXT_RESERVE = 4;
+
+	/** buffer capacity retained between events */
+	protected static final int BUFFER_RETAIN = 64 * 1024;
+
+	/** log4j config option; back references for repeated string values */
+	@JsonProperty
+	protected String useSharedValues = "true";
+
+	protected final SmileFactory smileFactory = new SmileFactory();
+
+	/** per thread reused render buffer */
+	protected final ThreadLocal<Buffer> buffer = new ThreadLocal<Buffer>() {
+		@Override
+		protected Buffer initialValue() {
+			return new Buffer();
+		}
+	};
+
+	/** exposes capacity for retain check; carries text budget of the event */
+	protected static class Buffer extends ByteArrayOutputStream {
+
+		int budget;
+
+		Buffer() {
+			super(512);
+		}
+
+		int capacity() {
+			return buf.length;
+		}
+
+	}
+
+	public LayoutSmile() {
+		smileFactory.configure(SmileGenerator.Feature.WRITE_HEADER, true);
+		smileFactory.configure(SmileGenerator.Feature.CHECK_SHARED_NAMES,
+				true);
+		smileFactory.configure(
+				SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES, true);
+	}
+
+	@Override
+	public String format(final LoggingEvent event) {
+		try {
+
+			final Buffer output = ensureBuffer();
+
+			final JsonGenerator jsonGen = smileFactory
+					.createJsonGenerator(output);
+
+			writeEvent(event, jsonGen);
+
+			jsonGen.close();
+
+			final String payload = BASE64.encode(output.toByteArray());
+
+			if (payload.length() > Util.MESSAGE_LIMIT) {
+				return formatError("payload size limit : " + payload.length());
+			}
+
+			return payload;
+
+		} catch (final Exception e) {
+
+			LogLog.error("sns: layout error", e);
+
+			return formatError(e.toString());
+
+		}
+	}
+
+	protected Buffer ensureBuffer() {
+
+		Buffer output = buffer.get();
+
+		if (output.capacity() > BUFFER_RETAIN) {
+			output = new Buffer();
+			buffer.set(output);
+		}
+
+		output.reset();
+
+		output.budget = TEXT_BUDGET;
+
+		return output;
+
+	}
+
+	@Override
+	protected String fit(final String text) {
+		return fit(text, Integer.MAX_VALUE);
+	}
+
+	@Override
+	protected String fitMessage(final String text) {
+		return fit(text, TEXT_BUDGET / 2);
+	}
+
+	/** cut text to remaining event budget; null when budget is spent */
+	protected String fit(final String text, final int limit) {
+
+		if (text == null) {
+			return null;
+		}
+
+		final Buffer output = buffer.get();
+
+		final int budget = Math.min(limit, output.budget - TEXT_RESERVE);
+
+		if (budget <= 0) {
+			return null;
+		}
+
+		final String value = Util.forceByteLimit(text, budget);
+
+		output.budget -= Util.byteLength(value) + TEXT_RESERVE;
+
+		return value;
+
+	}
+
+	/** encoded error record, in place of the event */
+	protected String formatError(final String message) {
+		try {
+
+			final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+			final JsonGenerator jsonGen = smileFactory
+					.createJsonGenerator(output);
+
+			jsonGen.writeStartObject();
+			jsonGen.writeStringField(fieldError,
+					Util.forceByteLimit(message, Util.MESSAGE_LIMIT / 2));
+			jsonGen.writeEndObject();
+
+			jsonGen.close();
+
+			return BASE64.encode(output.toByteArray());
+
+		} catch (final Exception e) {
+
+			LogLog.error("sns: layout error", e);
+
+			return "";
+
+		}
+	}
+
+	/** parser for payload produced by this layout */
+	public static JsonParser decode(final SmileFactory factory,
+			final String payload) throws Exception {
+
+		return factory.createJsonParser(BASE64.decode(payload));
+
+	}
+
+	public String getUseSharedValues() {
+		return useSharedValues;
+	}
+
+	public void setUseSharedValues(final String useSharedValues) {
+		this.useSharedValues = useSharedValues;
+		smileFactory.configure(
+				SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES,
+				"true".equalsIgnoreCase(useSharedValues));
+	}
+
+}
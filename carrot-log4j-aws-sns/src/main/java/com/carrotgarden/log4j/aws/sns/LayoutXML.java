@@ -7,28 +7,595 @@
  */
 package com.carrotgarden.log4j.aws.sns;
 
-import org.apache.log4j.Layout;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LocationInfo;
 import org.apache.log4j.spi.LoggingEvent;
+import org.codehaus.jackson.annotate.JsonProperty;
 
-/** TODO */
-public class LayoutXML extends Layout {
+/**
+ * render log4j event in xml format; one element per field, named as in
+ * {@link LayoutJSON}:
+ *
+ * <pre>
+ * &lt;event&gt;&lt;logger&gt;bench.Main_03&lt;/logger&gt;&lt;level&gt;FATAL&lt;/level&gt;...
+ * &lt;stack&gt;&lt;entry index="0"&gt;...&lt;/entry&gt;&lt;/stack&gt;
+ * &lt;mdc&gt;&lt;entry key="UserId"&gt;U1&lt;/entry&gt;&lt;/mdc&gt;&lt;/event&gt;
+ * </pre>
+ *
+ * note: this is own schema, shared with json field options; it is neither
+ * log4j XMLLayout ("log4j:event" with CDATA) nor logstash event schema
+ *
+ * streams into a per-thread reused buffer; whole document is rendered within
+ * {@link #DOCUMENT_BUDGET} so appender size limit never cuts it: escaped
+ * message text takes at most {@link #MESSAGE_BUDGET}, then stack lines, MDC
+ * entries and NDC are cut or dropped when budget runs out, and every open
+ * element is closed
+ */
+public class LayoutXML extends LayoutBase {
 
-	@Override
-	public void activateOptions() {
-		// TODO Auto-generated method stub
+	/** whole document UTF-8 size budget */
+	public static final int DOCUMENT_BUDGET = Util.MESSAGE_LIMIT;
+
+	/** message text UTF-8 size budget */
+	public static final int MESSAGE_BUDGET = Util.MESSAGE_LIMIT / 2;
+
+	/** rendered time stamp size reserve */
+	protected static final int TIME_RESERVE = 64;
+
+	/** builder capacity retained between events */
+	protected static final int BUILDER_RETAIN = 128 * 1024;
+
+	/** compiled event field writer */
+	protected static interface Step {
+
+		/** write within UTF-8 byte budget; return remaining budget */
+		int write(LoggingEvent event, StringBuilder text, int budget);
 
 	}
 
+	/** compiled field writer plan with root element */
+	protected static final class Plan {
+
+		final String open;
+		final String close;
+
+		final Step[] steps;
+
+		Plan(final String name, final List<Step> stepList) {
+			this.open = "<" + name + ">";
+			this.close = "</" + name + ">";
+			this.steps = stepList.toArray(new Step[stepList.size()]);
+		}
+
+	}
+
+	/** compiled field writer plan; reset on option change */
+	protected volatile Plan plan;
+
+	/** per thread reused render buffer */
+	protected final ThreadLocal<StringBuilder> builder = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(1024);
+		}
+	};
+
+	/** root element name */
+	@JsonProperty
+	protected String fieldEvent = "event";
+
 	@Override
 	public String format(final LoggingEvent event) {
-		// TODO Auto-generated method stub
-		return null;
+		try {
+
+			final Plan plan = ensurePlan();
+
+			StringBuilder text = builder.get();
+
+			if (text.capacity() > BUILDER_RETAIN) {
+				text = new StringBuilder(1024);
+				builder.set(text);
+			}
+
+			text.setLength(0);
+
+			int budget = DOCUMENT_BUDGET - Util.byteLength(plan.open)
+					- Util.byteLength(plan.close);
+
+			text.append(plan.open);
+
+			for (final Step step : plan.steps) {
+				budget = step.write(event, text, budget);
+			}
+
+			text.append(plan.close);
+
+			return text.toString();
+
+		} catch (final Exception e) {
+
+			LogLog.error("sns: layout error", e);
+
+			String errorMessage = e.toString();
+
+			errorMessage = Util.forceByteLimit(errorMessage,
+					Util.MESSAGE_LIMIT / 2);
+
+			final StringBuilder text = new StringBuilder();
+			text.append('<').append(fieldError).append('>');
+			escape(errorMessage, 0, errorMessage.length(), text);
+			text.append("</").append(fieldError).append('>');
+			return text.toString();
+
+		}
 	}
 
+	protected Plan ensurePlan() {
+
+		Plan plan = this.plan;
+
+		if (plan == null) {
+			plan = compile();
+			this.plan = plan;
+		}
+
+		return plan;
+
+	}
+
+	/** build field writer plan from current options */
+	protected Plan compile() {
+
+		final List<Step> list = new ArrayList<Step>();
+
+		if (shouldInclude(fieldLogger)) {
+			list.add(new Element(fieldLogger) {
+				@Override
+				protected int value(final LoggingEvent event,
+						final StringBuilder text, final int budget) {
+					return budget
+							- escape(event.getLoggerName(), budget, text);
+				}
+			});
+		}
+
+		if (shouldInclude(fieldLevel)) {
+			list.add(new Element(fieldLevel) {
+				@Override
+				protected int value(final LoggingEvent event,
+						final StringBuilder text, final int budget) {
+					return budget
+							- escape(event.getLevel().toString(), budget, text);
+				}
+			});
+		}
+
+		if (shouldInclude(fieldTime)) {
+			list.add(new Element(fieldTime) {
+				@Override
+				protected int value(final LoggingEvent event,
+						final StringBuilder text, final int budget) {
+					if (budget < TIME_RESERVE) {
+						return budget;
+					}
+					final int mark = text.length();
+					timeFormatter.format(event.timeStamp, text);
+					return budget - (text.length() - mark);
+				}
+			});
+		}
+
+		if (shouldInclude(fieldThread)) {
+			list.add(new Element(fieldThread) {
+				@Override
+				protected int value(final LoggingEvent event,
+						final StringBuilder text, final int budget) {
+					return budget
+							- escape(event.getThreadName(), budget, text);
+				}
+			});
+		}
+
+		if (shouldInclude(fieldMessage)) {
+			list.add(new Element(fieldMessage) {
+				@Override
+				protected int value(final LoggingEvent event,
+						final StringBuilder text, final int budget) {
+					return budget
+							- escape(messageOf(event),
+									Math.min(MESSAGE_BUDGET, budget), text);
+				}
+			});
+		}
+
+		if (shouldInclude(fieldFile)) {
+			list.add(new Element(fieldFile) {
+				@Override
+				protected int value(final LoggingEvent event,
+						final StringBuilder text, final int budget) {
+					final LocationInfo location = event
+							.getLocationInformation();
+					return budget
+							- escape(location.getFileName(), budget, text);
+				}
+			});
+		}
+
+		if (shouldInclude(fieldClass)) {
+			list.add(new Element(fieldClass) {
+				@Override
+				protected int value(final LoggingEvent event,
+						final StringBuilder text, final int budget) {
+					final LocationInfo location = event
+							.getLocationInformation();
+					return budget
+							- escape(location.getClassName(), budget, text);
+				}
+			});
+		}
+
+		if (shouldInclude(fieldMethod)) {
+			list.add(new Element(fieldMethod) {
+				@Override
+				protected int value(final LoggingEvent event,
+						final StringBuilder text, final int budget) {
+					final LocationInfo location = event
+							.getLocationInformation();
+					return budget
+							- escape(location.getMethodName(), budget, text);
+				}
+			});
+		}
+
+		if (shouldInclude(fieldLine)) {
+			list.add(new Element(fieldLine) {
+				@Override
+				protected int value(final LoggingEvent event,
+						final StringBuilder text, final int budget) {
+					final LocationInfo location = event
+							.getLocationInformation();
+					return budget
+							- escape(location.getLineNumber(), budget, text);
+				}
+			});
+		}
+
+		/** static fields are rendered once */
+		final StringBuilder fragment = new StringBuilder();
+		for (final String[] field : staticFields()) {
+			fragment.append('<').append(field[0]).append('>');
+			escape(field[1], fragment);
+			fragment.append("</").append(field[0]).append('>');
+		}
+		if (fragment.length() > 0) {
+			list.add(literal(fragment.toString()));
+		}
+
+		if (shouldInclude(fieldStack)) {
+			list.add(new Element(fieldStack) {
+				@Override
+				public int write(final LoggingEvent event,
+						final StringBuilder text, final int budget) {
+					if (event.getThrowableStrRep() == null) {
+						return budget;
+					}
+					return super.write(event, text, budget);
+				}
+
+				@Override
+				protected int value(final LoggingEvent event,
+						final StringBuilder text, final int budget) {
+					return writeStack(event, text, budget);
+				}
+			});
+		}
+
+		if (shouldInclude(fieldMDC) && mdcKeys.length > 0) {
+			list.add(new Element(fieldMDC) {
+				@Override
+				protected int value(final LoggingEvent event,
+						final StringBuilder text, final int budget) {
+					return writeMDC(event, text, budget);
+				}
+			});
+		}
+
+		if (shouldInclude(fieldNDC)) {
+			list.add(new Element(fieldNDC) {
+				@Override
+				public int write(final LoggingEvent event,
+						final StringBuilder text, final int budget) {
+					if (event.getNDC() == null) {
+						return budget;
+					}
+					return super.write(event, text, budget);
+				}
+
+				@Override
+				protected int value(final LoggingEvent event,
+						final StringBuilder text, final int budget) {
+					return budget - escape(event.getNDC(), budget, text);
+				}
+			});
+		}
+
+		return new Plan(fieldEvent, list);
+
+	}
+
+	/** element with pre-rendered tags; dropped when tags do not fit */
+	protected static abstract class Element implements Step {
+
+		private final String open;
+		private final String close;
+
+		private final int cost;
+
+		protected Element(final String name) {
+			this.open = "<" + name + ">";
+			this.close = "</" + name + ">";
+			this.cost = Util.byteLength(open) + Util.byteLength(close);
+		}
+
+		@Override
+		public int write(final LoggingEvent event, final StringBuilder text,
+				final int budget) {
+			if (budget < cost) {
+				return budget;
+			}
+			text.append(open);
+			final int remain = value(event, text, budget - cost);
+			text.append(close);
+			return remain;
+		}
+
+		/** write value within budget; return remaining budget */
+		protected abstract int value(LoggingEvent event, StringBuilder text,
+				int budget);
+
+	}
+
+	/** fixed fragment; dropped when it does not fit */
+	protected static Step literal(final String value) {
+		final int cost = Util.byteLength(value);
+		return new Step() {
+			@Override
+			public int write(final LoggingEvent event,
+					final StringBuilder text, final int budget) {
+				if (budget < cost) {
+					return budget;
+				}
+				text.append(value);
+				return budget - cost;
+			}
+		};
+	}
+
+	/** stack lines up to depth; last line is cut, rest are dropped */
+	protected int writeStack(final LoggingEvent event,
+			final StringBuilder text, int budget) {
+
+		final String[] stackArray = event.getThrowableStrRep();
+
+		final int size = Math.min(stackDepth, stackArray.length);
+
+		for (int index = 0; index < size; index++) {
+
+			final String open = "<entry index=\"" + index + "\">";
+			final String close = "</entry>";
+
+			final int cost = open.length() + close.length();
+
+			if (budget <= cost) {
+				break;
+			}
+
+			text.append(open);
+			budget -= cost;
+			budget -= escape(stackArray[index], budget, text);
+			text.append(close);
+
+		}
+
+		return budget;
+
+	}
+
+	/** present MDC entries; last value is cut, rest are dropped */
+	protected int writeMDC(final LoggingEvent event, final StringBuilder text,
+			int budget) {
+
+		for (final String key : mdcKeys) {
+
+			final Object mdc = event.getMDC(key);
+
+			if (mdc == null) {
+				continue;
+			}
+
+			final String open = "<entry key=\"";
+			final String middle = "\">";
+			final String close = "</entry>";
+
+			final int cost = open.length() + escapeSize(key) + middle.length()
+					+ close.length();
+
+			if (budget <= cost) {
+				break;
+			}
+
+			text.append(open);
+			escape(key, text);
+			text.append(middle);
+			budget -= cost;
+			budget -= escape(mdc.toString(), budget, text);
+			text.append(close);
+
+		}
+
+		return budget;
+
+	}
+
+	protected static void escape(final String value, final StringBuilder text) {
+		if (value != null) {
+			escape(value, 0, value.length(), text);
+		}
+	}
+
+	/** escaped UTF-8 size of a char */
+	protected static int escapeCost(final char one) {
+		if (one < 0x80) {
+			switch (one) {
+			case '&':
+				return 5;
+			case '<':
+			case '>':
+				return 4;
+			case '"':
+				return 6;
+			default:
+				return 1;
+			}
+		} else if (one < 0x800) {
+			return 2;
+		} else {
+			return 3;
+		}
+	}
+
+	/** escaped UTF-8 size of value */
+	protected static int escapeSize(final String value) {
+		int bytes = 0;
+		for (int index = 0; index < value.length(); index++) {
+			bytes += escapeCost(value.charAt(index));
+		}
+		return bytes;
+	}
+
+	/**
+	 * escape longest value prefix which fits into escaped UTF-8 budget; return
+	 * escaped size
+	 */
+	protected static int escape(final String value, final int budget,
+			final StringBuilder text) {
+
+		if (value == null) {
+			return 0;
+		}
+
+		final int length = value.length();
+
+		int bytes = 0;
+		int index = 0;
+
+		for (; index < length; index++) {
+
+			final char one = value.charAt(index);
+
+			if (Character.isHighSurrogate(one) && index + 1 < length
+					&& Character.isLowSurrogate(value.charAt(index + 1))) {
+				if (bytes + 4 > budget) {
+					break;
+				}
+				bytes += 4;
+				index++;
+				continue;
+			}
+
+			final int cost = escapeCost(one);
+
+			if (bytes + cost > budget) {
+				break;
+			}
+
+			bytes += cost;
+
+		}
+
+		escape(value, 0, index, text);
+
+		return bytes;
+
+	}
+
+	/**
+	 * escape xml text or attribute value; chars not allowed in xml 1.0 are
+	 * replaced with '?'
+	 */
+	protected static void escape(final CharSequence value, final int start,
+			final int end, final StringBuilder text) {
+
+		int mark = start;
+
+		for (int index = start; index < end; index++) {
+
+			final char one = value.charAt(index);
+
+			/** fast path for common text */
+			if (one > '>' && one < 0xFFFE) {
+				continue;
+			}
+
+			final String entity;
+
+			switch (one) {
+			case '&':
+				entity = "&amp;";
+				break;
+			case '<':
+				entity = "&lt;";
+				break;
+			case '>':
+				entity = "&gt;";
+				break;
+			case '"':
+				entity = "&quot;";
+				break;
+			case '\t':
+			case '\n':
+			case '\r':
+				continue;
+			default:
+				if (one < 0x20 || one >= 0xFFFE) {
+					entity = "?";
+					break;
+				}
+				continue;
+			}
+
+			text.append(value, mark, index);
+			text.append(entity);
+
+			mark = index + 1;
+
+		}
+
+		text.append(value, mark, end);
+
+	}
+
+	/** compile field writer plan */
 	@Override
-	public boolean ignoresThrowable() {
-		// TODO Auto-generated method stub
-		return false;
+	public void activateOptions() {
+		plan = compile();
+	}
+
+	@Override
+	protected void reset() {
+		plan = null;
+	}
+
+	public String getFieldEvent() {
+		return fieldEvent;
+	}
+
+	public void setFieldEvent(final String fieldEvent) {
+		this.fieldEvent = fieldEvent;
+		reset();
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,275 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.handlers.AbstractRequestHandler;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.google.common.hash.Hashing;
+
+/**
+ * SNS message attributes made from event, for server side subscription
+ * filter policies; configured as comma separated list of
+ *
+ * <pre>
+ * level, logger, host, signature, mdc.KEY
+ * </pre>
+ *
+ * "signature" is a short hash of the evaluator signature key, handed over
+ * from the evaluation, see {@link Evaluator#triggeringKey}
+ *
+ * SNS publish api takes attributes as query parameters; this sdk version
+ * does not model them, so {@link Handler} adds them to the outgoing
+ * {@link Request} before signing
+ */
+public class MessageAttributes {
+
+	/** SNS limit */
+	public static final int ATTRIBUTE_LIMIT = 10;
+
+	public static final String LEVEL = "level";
+	public static final String LOGGER = "logger";
+	public static final String HOST = "host";
+	public static final String SIGNATURE = "signature";
+	public static final String MDC_PREFIX = "mdc.";
+
+	/**
+	 * marks self test messages, so subscription filter policy can drop them,
+	 * such as { "selftest" : [ { "exists" : false } ] }
+	 */
+	public static final String SELF_TEST = "selftest";
+
+	/** publish request with message attributes and optional metrics */
+	public static class Attributed extends PublishRequest {
+
+		private static final long serialVersionUID = 1L;
+
+		protected final Map<String, String> attributes;
+
+		protected final transient Metrics metrics;
+
+		/** set by {@link Metrics.Handler} when request is sent */
+		protected volatile long startNanos;
+
+		public Attributed(final String topicArn, final String message,
+				final String subject, final Map<String, String> attributes) {
+			this(topicArn, message, subject, attributes, null);
+		}
+
+		public Attributed(final String topicArn, final String message,
+				final String subject, final Map<String, String> attributes,
+				final Metrics metrics) {
+			super(topicArn, message, subject);
+			this.attributes = attributes == null ? Collections
+					.<String, String> emptyMap() : attributes;
+			this.metrics = metrics;
+		}
+
+		public Map<String, String> getAttributes() {
+			return attributes;
+		}
+
+		public Metrics getMetrics() {
+			return metrics;
+		}
+
+		public long getStartNanos() {
+			return startNanos;
+		}
+
+		public void setStartNanos(final long startNanos) {
+			this.startNanos = startNanos;
+		}
+
+	}
+
+	/** render attributes as publish api query parameters */
+	public static class Handler extends AbstractRequestHandler {
+
+		@Override
+		public void beforeRequest(final Request<?> request) {
+
+			final AmazonWebServiceRequest original = request
+					.getOriginalRequest();
+
+			if (!(original instanceof Attributed)) {
+				return;
+			}
+
+			int index = 1;
+
+			for (final Map.Entry<String, String> entry : ((Attributed) original)
+					.getAttributes().entrySet()) {
+
+				final String prefix = "MessageAttributes.entry." + index++
+						+ ".";
+
+				request.addParameter(prefix + "Name", entry.getKey());
+				request.addParameter(prefix + "Value.DataType", "String");
+				request.addParameter(prefix + "Value.StringValue",
+						entry.getValue());
+
+			}
+
+		}
+
+	}
+
+	/** publish request, with attributes when present */
+	public static PublishRequest request(final String topicArn,
+			final String message, final String subject,
+			final Map<String, String> attributes) {
+		return request(topicArn, message, subject, attributes, null);
+	}
+
+	/** publish request, with attributes and metrics when present */
+	public static PublishRequest request(final String topicArn,
+			final String message, final String subject,
+			final Map<String, String> attributes, final Metrics metrics) {
+
+		if (metrics == null && (attributes == null || attributes.isEmpty())) {
+			return new PublishRequest(topicArn, message, subject);
+		} else {
+			return new Attributed(topicArn, message, subject, attributes,
+					metrics);
+		}
+
+	}
+
+	/** configured attribute names */
+	@JsonProperty
+	protected final List<String> nameList;
+
+	/** resolved once */
+	protected final String host;
+
+	protected final Signature signature;
+
+	public MessageAttributes(final String names, final Signature signature) {
+
+		final List<String> nameList = new ArrayList<String>();
+
+		for (final String term : names.split(",")) {
+
+			final String name = term.trim();
+
+			if (name.length() == 0) {
+				continue;
+			}
+
+			if (name.equals(LEVEL) || name.equals(LOGGER)
+					|| name.equals(HOST) || name.equals(SIGNATURE)
+					|| name.startsWith(MDC_PREFIX)
+					&& name.length() > MDC_PREFIX.length()) {
+				nameList.add(name);
+			} else {
+				LogLog.error("sns: invalid message attribute : " + name);
+			}
+
+		}
+
+		if (nameList.size() > ATTRIBUTE_LIMIT) {
+			LogLog.error("sns: message attribute limit : " + nameList);
+			nameList.subList(ATTRIBUTE_LIMIT, nameList.size()).clear();
+		}
+
+		this.nameList = Collections.unmodifiableList(nameList);
+		this.host = nameList.contains(HOST) ? Util.hostName() : null;
+		this.signature = signature;
+
+	}
+
+	/** attribute values for the event; absent and empty values are skipped */
+	public Map<String, String> make(final LoggingEvent event) {
+		return make(event, null);
+	}
+
+	/**
+	 * attribute values for the event, with signature key made by evaluator;
+	 * key is made here when missing
+	 */
+	public Map<String, String> make(final LoggingEvent event, final String key) {
+
+		final Map<String, String> attributes = new LinkedHashMap<String, String>();
+
+		for (final String name : nameList) {
+
+			final String value;
+
+			if (name.equals(LEVEL)) {
+				value = event.getLevel().toString();
+			} else if (name.equals(LOGGER)) {
+				value = event.getLoggerName();
+			} else if (name.equals(HOST)) {
+				value = host;
+			} else if (name.equals(SIGNATURE)) {
+				value = Hashing
+						.murmur3_32()
+						.hashString(
+								key == null || key.length() == 0 ? signature
+										.make(event) : key, Util.UTF_8)
+						.toString();
+			} else {
+				final Object mdc = event.getMDC(name.substring(MDC_PREFIX
+						.length()));
+				value = mdc == null ? null : mdc.toString();
+			}
+
+			if (value == null || value.length() == 0) {
+				continue;
+			}
+
+			attributes.put(attributeName(name), value);
+
+		}
+
+		return attributes;
+
+	}
+
+	/** true when "signature" attribute needs evaluator signature key */
+	public boolean isKeyed() {
+		return nameList.contains(SIGNATURE);
+	}
+
+	/** MDC keys of configured "mdc.KEY" attributes */
+	public List<String> mdcKeys() {
+
+		final List<String> keyList = new ArrayList<String>();
+
+		for (final String name : nameList) {
+			if (name.startsWith(MDC_PREFIX)) {
+				keyList.add(attributeName(name));
+			}
+		}
+
+		return keyList;
+
+	}
+
+	/** SNS attribute name for configured name */
+	protected static String attributeName(final String name) {
+		if (name.startsWith(MDC_PREFIX)) {
+			return name.substring(MDC_PREFIX.length());
+		} else {
+			return name;
+		}
+	}
+
+}
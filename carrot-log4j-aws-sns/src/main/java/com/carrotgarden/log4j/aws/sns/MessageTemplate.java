@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+/**
+ * message template: variable tokens of message text, such as numbers, ids,
+ * UUIDs, IP addresses, time stamps and quoted values, are replaced with
+ * {@link #PLACEHOLDER}, so messages of the same call site share a signature
+ *
+ * single pass tokenizer, no regex; word is a run of letters, digits and
+ * ". : - _" characters; word is variable when its first letter or digit is a
+ * digit, or when it has at least {@link #DIGIT_LIMIT} digits; text in quotes
+ * which open at word start is variable
+ */
+public class MessageTemplate {
+
+	public static final String PLACEHOLDER = "{}";
+
+	/** digit count which makes a word variable, such as "user12345" */
+	public static final int DIGIT_LIMIT = 3;
+
+	/** template of message text */
+	public static String template(final CharSequence text) {
+
+		if (text == null) {
+			return null;
+		}
+
+		final StringBuilder target = new StringBuilder(text.length());
+
+		append(text, target);
+
+		return target.toString();
+
+	}
+
+	/** append template of message text to the target */
+	public static void append(final CharSequence text,
+			final StringBuilder target) {
+
+		final int length = text.length();
+
+		/** no closing quote after this index */
+		boolean isOpenSingle = true;
+		boolean isOpenDouble = true;
+
+		int index = 0;
+
+		while (index < length) {
+
+			final char c = text.charAt(index);
+
+			if (isWord(c)) {
+
+				final int start = index;
+
+				int digits = 0;
+				boolean isLeadingDigit = false;
+				boolean isLeadingSeen = false;
+
+				while (index < length) {
+					final char w = text.charAt(index);
+					if (!isWord(w)) {
+						break;
+					}
+					if (isDigit(w)) {
+						digits++;
+						if (!isLeadingSeen) {
+							isLeadingDigit = true;
+							isLeadingSeen = true;
+						}
+					} else if (!isLeadingSeen && isLetter(w)) {
+						isLeadingSeen = true;
+					}
+					index++;
+				}
+
+				if (isLeadingDigit || digits >= DIGIT_LIMIT) {
+					target.append(PLACEHOLDER);
+				} else {
+					target.append(text, start, index);
+				}
+
+				continue;
+
+			}
+
+			final boolean isQuote = (c == '\'' && isOpenSingle)
+					|| (c == '"' && isOpenDouble);
+
+			if (isQuote
+					&& (index == 0 || !isLetter(text.charAt(index - 1))
+							&& !isDigit(text.charAt(index - 1)))) {
+
+				final int close = indexOf(text, c, index + 1);
+
+				if (close < 0) {
+					if (c == '\'') {
+						isOpenSingle = false;
+					} else {
+						isOpenDouble = false;
+					}
+				} else {
+					target.append(c).append(PLACEHOLDER).append(c);
+					index = close + 1;
+					continue;
+				}
+
+			}
+
+			target.append(c);
+
+			index++;
+
+		}
+
+	}
+
+	protected static boolean isDigit(final char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	protected static boolean isLetter(final char c) {
+		if (c < 128) {
+			return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+		}
+		return Character.isLetter(c);
+	}
+
+	protected static boolean isWord(final char c) {
+		if (c < 128) {
+			return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z'
+					|| c >= '0' && c <= '9' || c == '.' || c == ':'
+					|| c == '-' || c == '_';
+		}
+		return Character.isLetterOrDigit(c);
+	}
+
+	protected static int indexOf(final CharSequence text, final char c,
+			final int from) {
+		for (int index = from; index < text.length(); index++) {
+			if (text.charAt(index) == c) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+}
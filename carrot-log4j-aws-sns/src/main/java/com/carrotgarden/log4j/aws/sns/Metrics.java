@@ -0,0 +1,355 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.helpers.LogLog;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.handlers.AbstractRequestHandler;
+import com.amazonaws.util.TimingInfo;
+
+/**
+ * per appender pipeline metrics, registered as JMX MBean
+ *
+ * <pre>
+ * com.carrotgarden.log4j.aws.sns:type=Appender,name=[appender-name]
+ * </pre>
+ *
+ * counters are striped, see {@link StripedCounter}; latency histograms are
+ * log-linear, see {@link LatencyHistogram}
+ *
+ * publish outcome and round trip are observed by {@link Handler} on the
+ * amazon client, for requests made by {@link MessageAttributes#request}
+ */
+public class Metrics implements MetricsMBean {
+
+	public static final String DOMAIN = "com.carrotgarden.log4j.aws.sns";
+
+	/** live values and diagnostics owned by the appender */
+	public interface Source {
+
+		int inFlight();
+
+		int queueDepth();
+
+		/** see {@link MetricsMBean#throttleTop(int)} */
+		String[] throttleTop(int limit);
+
+		/** see {@link MetricsMBean#selfTest(int)} */
+		long[] selfTest(int count) throws Exception;
+
+	}
+
+	/** records publish round trip and outcome */
+	public static class Handler extends AbstractRequestHandler {
+
+		protected static MessageAttributes.Attributed tracked(
+				final Request<?> request) {
+
+			final AmazonWebServiceRequest original = request
+					.getOriginalRequest();
+
+			if (!(original instanceof MessageAttributes.Attributed)) {
+				return null;
+			}
+
+			final MessageAttributes.Attributed attributed = (MessageAttributes.Attributed) original;
+
+			return attributed.getMetrics() == null ? null : attributed;
+
+		}
+
+		@Override
+		public void beforeRequest(final Request<?> request) {
+
+			final MessageAttributes.Attributed attributed = tracked(request);
+
+			if (attributed != null) {
+				attributed.setStartNanos(System.nanoTime());
+			}
+
+		}
+
+		@Override
+		public void afterResponse(final Request<?> request,
+				final Object response, final TimingInfo timingInfo) {
+
+			final MessageAttributes.Attributed attributed = tracked(request);
+
+			if (attributed != null) {
+				final Metrics metrics = attributed.getMetrics();
+				metrics.eventsPublished.increment();
+				metrics.publish.record(System.nanoTime()
+						- attributed.getStartNanos());
+			}
+
+		}
+
+		@Override
+		public void afterError(final Request<?> request, final Exception e) {
+
+			final MessageAttributes.Attributed attributed = tracked(request);
+
+			if (attributed != null) {
+				attributed.getMetrics().eventsFailed.increment();
+			}
+
+		}
+
+	}
+
+	protected static long micros(final long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+	protected final StripedCounter eventsSeen = new StripedCounter();
+	protected final StripedCounter eventsRejected = new StripedCounter();
+	protected final StripedCounter eventsRendered = new StripedCounter();
+	protected final StripedCounter bytesRendered = new StripedCounter();
+	protected final StripedCounter eventsTruncated = new StripedCounter();
+	protected final StripedCounter eventsPublished = new StripedCounter();
+	protected final StripedCounter eventsFailed = new StripedCounter();
+	protected final StripedCounter executorRejected = new StripedCounter();
+
+	protected final LatencyHistogram render = new LatencyHistogram();
+	protected final LatencyHistogram publish = new LatencyHistogram();
+
+	protected final Source source;
+
+	/** registered name, when registered */
+	protected ObjectName objectName;
+
+	public Metrics(final Source source) {
+		this.source = source;
+	}
+
+	public void seen() {
+		eventsSeen.increment();
+	}
+
+	public void rejected() {
+		eventsRejected.increment();
+	}
+
+	public void rendered(final long nanos, final int bytes,
+			final boolean isTruncated) {
+		eventsRendered.increment();
+		bytesRendered.add(bytes);
+		if (isTruncated) {
+			eventsTruncated.increment();
+		}
+		render.record(nanos);
+	}
+
+	public void failed() {
+		eventsFailed.increment();
+	}
+
+	public void executorRejected() {
+		executorRejected.increment();
+	}
+
+	/** register under appender name; replaces stale registration */
+	public synchronized void register(final String name) {
+
+		unregister();
+
+		try {
+
+			final MBeanServer server = ManagementFactory
+					.getPlatformMBeanServer();
+
+			final ObjectName objectName = objectName(name);
+
+			try {
+				server.registerMBean(this, objectName);
+			} catch (final InstanceAlreadyExistsException e) {
+				server.unregisterMBean(objectName);
+				server.registerMBean(this, objectName);
+			}
+
+			this.objectName = objectName;
+
+		} catch (final Throwable e) {
+			LogLog.warn("sns: metrics register failure : " + name, e);
+		}
+
+	}
+
+	public synchronized void unregister() {
+
+		if (objectName == null) {
+			return;
+		}
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+					objectName);
+		} catch (final Throwable e) {
+			LogLog.warn("sns: metrics unregister failure : " + objectName, e);
+		}
+
+		objectName = null;
+
+	}
+
+	public static ObjectName objectName(final String name) throws Exception {
+		return new ObjectName(DOMAIN + ":type=Appender,name="
+				+ ObjectName.quote(name));
+	}
+
+	public synchronized ObjectName getObjectName() {
+		return objectName;
+	}
+
+	@Override
+	public long getEventsSeen() {
+		return eventsSeen.sum();
+	}
+
+	@Override
+	public long getEventsRejected() {
+		return eventsRejected.sum();
+	}
+
+	@Override
+	public long getEventsRendered() {
+		return eventsRendered.sum();
+	}
+
+	@Override
+	public long getBytesRendered() {
+		return bytesRendered.sum();
+	}
+
+	@Override
+	public long getEventsTruncated() {
+		return eventsTruncated.sum();
+	}
+
+	@Override
+	public long getEventsPublished() {
+		return eventsPublished.sum();
+	}
+
+	@Override
+	public long getEventsFailed() {
+		return eventsFailed.sum();
+	}
+
+	@Override
+	public long getExecutorRejected() {
+		return executorRejected.sum();
+	}
+
+	@Override
+	public int getInFlight() {
+		return source == null ? 0 : source.inFlight();
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return source == null ? 0 : source.queueDepth();
+	}
+
+	@Override
+	public long getRenderCount() {
+		return render.getCount();
+	}
+
+	@Override
+	public long getRenderMean() {
+		return micros(render.getMean());
+	}
+
+	@Override
+	public long getRenderP50() {
+		return micros(render.getQuantile(0.50));
+	}
+
+	@Override
+	public long getRenderP99() {
+		return micros(render.getQuantile(0.99));
+	}
+
+	@Override
+	public long getRenderP999() {
+		return micros(render.getQuantile(0.999));
+	}
+
+	@Override
+	public long getRenderMax() {
+		return micros(render.getMaximum());
+	}
+
+	@Override
+	public long getPublishCount() {
+		return publish.getCount();
+	}
+
+	@Override
+	public long getPublishMean() {
+		return micros(publish.getMean());
+	}
+
+	@Override
+	public long getPublishP50() {
+		return micros(publish.getQuantile(0.50));
+	}
+
+	@Override
+	public long getPublishP99() {
+		return micros(publish.getQuantile(0.99));
+	}
+
+	@Override
+	public long getPublishP999() {
+		return micros(publish.getQuantile(0.999));
+	}
+
+	@Override
+	public long getPublishMax() {
+		return micros(publish.getMaximum());
+	}
+
+	@Override
+	public String[] throttleTop(final int limit) {
+		return source == null ? new String[0] : source.throttleTop(limit);
+	}
+
+	@Override
+	public long[] selfTest(final int count) throws Exception {
+		if (source == null) {
+			throw new IllegalStateException("no appender");
+		}
+		return source.selfTest(count);
+	}
+
+	@Override
+	public void reset() {
+		eventsSeen.reset();
+		eventsRejected.reset();
+		eventsRendered.reset();
+		bytesRendered.reset();
+		eventsTruncated.reset();
+		eventsPublished.reset();
+		eventsFailed.reset();
+		executorRejected.reset();
+		render.reset();
+		publish.reset();
+	}
+
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+/**
+ * appender pipeline metrics, as seen over JMX; latency values are micros
+ */
+public interface MetricsMBean {
+
+	/** events which reached the appender */
+	long getEventsSeen();
+
+	/** events rejected by evaluator */
+	long getEventsRejected();
+
+	/** events rendered by layout */
+	long getEventsRendered();
+
+	/** UTF-8 size of rendered messages */
+	long getBytesRendered();
+
+	/** rendered messages cut to SNS size limit */
+	long getEventsTruncated();
+
+	/** publish requests accepted by SNS */
+	long getEventsPublished();
+
+	/** publish requests failed */
+	long getEventsFailed();
+
+	/** publish requests dropped by in-flight limit, executor or route queue */
+	long getExecutorRejected();
+
+	/** current publish requests in-flight */
+	int getInFlight();
+
+	/** current events waiting in activation buffer and route queues */
+	int getQueueDepth();
+
+	long getRenderCount();
+
+	long getRenderMean();
+
+	long getRenderP50();
+
+	long getRenderP99();
+
+	long getRenderP999();
+
+	long getRenderMax();
+
+	long getPublishCount();
+
+	long getPublishMean();
+
+	long getPublishP50();
+
+	long getPublishP99();
+
+	long getPublishP999();
+
+	long getPublishMax();
+
+	/**
+	 * most suppressed event signatures of throttling evaluator, as
+	 * "count signature" lines; empty for other evaluators
+	 */
+	String[] throttleTop(int limit);
+
+	/**
+	 * publish self test messages to the default topic through the appender
+	 * client, one at a time, at most {@link Appender#SELF_TEST_LIMIT}; they
+	 * carry {@link MessageAttributes#SELF_TEST} attribute for subscription
+	 * filter; round trip per message, micros
+	 */
+	long[] selfTest(int count) throws Exception;
+
+	/** clear counters and histograms */
+	void reset();
+
+}
@@ -0,0 +1,344 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.helpers.LogLog;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import com.amazonaws.services.sns.AmazonSNS;
+import com.amazonaws.services.sns.model.PublishRequest;
+
+/**
+ * default topic publish pipeline with one bounded lane per level group, such
+ * as
+ *
+ * <pre>
+ * FATAL=100,ERROR=1000,ALL=1000
+ * </pre>
+ *
+ * event goes to first lane with level at or below event level; lowest lane
+ * takes the rest
+ *
+ * dispatch is strict priority: each publisher thread takes next request from
+ * highest non-empty lane, so a high level event waits at most for one publish
+ * already in progress; when a lane is full, new event evicts oldest request
+ * of lowest non-empty lower lane instead of being dropped, total pending
+ * stays within sum of lane capacities
+ */
+public class PriorityLanes {
+
+	public static final String DEFAULT_LANES = "FATAL=100,ERROR=1000,ALL=1000";
+
+	protected static final class Lane {
+
+		final Level level;
+
+		final int capacity;
+
+		/** requests dropped or evicted from this lane */
+		final AtomicLong dropCount = new AtomicLong();
+
+		/** guarded by lanes lock */
+		final ArrayDeque<PublishRequest> queue = new ArrayDeque<PublishRequest>();
+
+		Lane(final Level level, final int capacity) {
+			this.level = level;
+			this.capacity = Math.max(1, capacity);
+		}
+
+	}
+
+	/** descending level; no subtraction, ALL is Integer.MIN_VALUE */
+	protected static final Comparator<Lane> LEVEL_ORDER = new Comparator<Lane>() {
+		@Override
+		public int compare(final Lane one, final Lane two) {
+			final int a = one.level.toInt();
+			final int b = two.level.toInt();
+			return a > b ? -1 : a < b ? 1 : 0;
+		}
+	};
+
+	/** ordered by descending level */
+	protected final Lane[] lanes;
+
+	/** concurrent publish request limit */
+	@JsonProperty
+	protected final int inFlight;
+
+	/** one permit per active drain task */
+	protected final Semaphore permits;
+
+	protected volatile AmazonSNS amazonClient;
+
+	protected volatile String topicARN;
+
+	/** owner appender metrics; optional */
+	protected volatile Metrics metrics;
+
+	protected volatile ThreadPoolExecutor service;
+
+	/** drain lanes while holding a permit */
+	protected final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				PublishRequest request;
+				while ((request = poll()) != null) {
+					publish(request);
+				}
+			} finally {
+				permits.release();
+			}
+			schedule();
+		}
+	};
+
+	protected PriorityLanes(final List<Lane> laneList, final int inFlight) {
+
+		final List<Lane> list = new ArrayList<Lane>(laneList);
+
+		Collections.sort(list, LEVEL_ORDER);
+
+		this.lanes = list.toArray(new Lane[list.size()]);
+		this.inFlight = Math.max(1, inFlight);
+		this.permits = new Semaphore(this.inFlight);
+
+	}
+
+	/** parse "LEVEL=capacity" comma separated list; null when invalid */
+	public static PriorityLanes from(final String text, final int inFlight) {
+
+		if (text == null || text.trim().length() == 0) {
+			return null;
+		}
+
+		final List<Lane> laneList = new ArrayList<Lane>();
+
+		for (final String entry : text.split(",")) {
+
+			final String[] pair = entry.split("=");
+
+			final Level level = pair.length == 2 ? Level.toLevel(
+					pair[0].trim(), null) : null;
+
+			if (level == null) {
+				LogLog.error("sns: invalid priority lane : " + entry);
+				return null;
+			}
+
+			laneList.add(new Lane(level, Util.getIntValue(pair[1],
+					Route.DEFAULT_QUEUE_SIZE)));
+
+		}
+
+		return new PriorityLanes(laneList, inFlight);
+
+	}
+
+	/** lane index of event level */
+	protected int laneIndex(final Level level) {
+		for (int index = 0; index < lanes.length - 1; index++) {
+			if (level.isGreaterOrEqual(lanes[index].level)) {
+				return index;
+			}
+		}
+		return lanes.length - 1;
+	}
+
+	/** enqueue publish request; false when dropped */
+	public boolean offer(final Level level, final String message,
+			final String subject, final Map<String, String> attributes) {
+
+		if (service == null) {
+			return false;
+		}
+
+		final Metrics metrics = this.metrics;
+
+		final PublishRequest request = MessageAttributes.request(topicARN,
+				message, subject, attributes, metrics);
+
+		final int index = laneIndex(level);
+
+		final Lane lane = lanes[index];
+
+		synchronized (lanes) {
+
+			if (lane.queue.size() >= lane.capacity && !evictBelow(index)) {
+				lane.dropCount.incrementAndGet();
+				if (metrics != null) {
+					metrics.executorRejected();
+				}
+				return false;
+			}
+
+			lane.queue.addLast(request);
+
+		}
+
+		schedule();
+
+		return true;
+
+	}
+
+	/** drop oldest request of lowest non-empty lane below index */
+	protected boolean evictBelow(final int index) {
+
+		for (int lower = lanes.length - 1; lower > index; lower--) {
+
+			final Lane lane = lanes[lower];
+
+			if (lane.queue.pollFirst() != null) {
+				lane.dropCount.incrementAndGet();
+				final Metrics metrics = this.metrics;
+				if (metrics != null) {
+					metrics.executorRejected();
+				}
+				return true;
+			}
+
+		}
+
+		return false;
+
+	}
+
+	/** next request from highest non-empty lane */
+	protected PublishRequest poll() {
+		synchronized (lanes) {
+			for (final Lane lane : lanes) {
+				final PublishRequest request = lane.queue.pollFirst();
+				if (request != null) {
+					return request;
+				}
+			}
+			return null;
+		}
+	}
+
+	protected boolean isEmpty() {
+		return getQueueDepth() == 0;
+	}
+
+	/** start drain tasks up to in-flight limit */
+	protected void schedule() {
+
+		final ThreadPoolExecutor service = this.service;
+
+		if (service == null) {
+			return;
+		}
+
+		while (!isEmpty() && permits.tryAcquire()) {
+			try {
+				service.execute(drainTask);
+			} catch (final Exception e) {
+				permits.release();
+				LogLog.error("sns: priority lane schedule failure", e);
+				return;
+			}
+		}
+
+	}
+
+	protected void publish(final PublishRequest request) {
+		try {
+			amazonClient.publish(request);
+		} catch (final Exception e) {
+			final Metrics metrics = this.metrics;
+			if (metrics != null) {
+				metrics.failed();
+			}
+			LogLog.error("sns: priority lane publish failure", e);
+		}
+	}
+
+	public void start(final AmazonSNS amazonClient, final String topicARN,
+			final Metrics metrics) {
+
+		this.amazonClient = amazonClient;
+		this.topicARN = topicARN;
+		this.metrics = metrics;
+
+		final ThreadPoolExecutor service = new ThreadPoolExecutor(//
+				inFlight, //
+				inFlight, //
+				60L, //
+				TimeUnit.SECONDS, //
+				new LinkedBlockingQueue<Runnable>(), //
+				new ThreadFactoryAWS() //
+		);
+
+		service.allowCoreThreadTimeOut(true);
+
+		this.service = service;
+
+	}
+
+	public boolean isStarted() {
+		return service != null;
+	}
+
+	public void stop() {
+
+		final ThreadPoolExecutor service = this.service;
+
+		this.service = null;
+
+		if (service != null) {
+			service.shutdown();
+		}
+
+		synchronized (lanes) {
+			for (final Lane lane : lanes) {
+				lane.queue.clear();
+			}
+		}
+
+	}
+
+	/** pending publish requests in all lanes */
+	public int getQueueDepth() {
+		synchronized (lanes) {
+			int depth = 0;
+			for (final Lane lane : lanes) {
+				depth += lane.queue.size();
+			}
+			return depth;
+		}
+	}
+
+	/** publish requests in progress */
+	public int getInFlight() {
+		return inFlight - permits.availablePermits();
+	}
+
+	public int getLaneCount() {
+		return lanes.length;
+	}
+
+	/** requests dropped or evicted from lane */
+	public long getDropCount(final int index) {
+		return lanes[index].dropCount.get();
+	}
+
+}
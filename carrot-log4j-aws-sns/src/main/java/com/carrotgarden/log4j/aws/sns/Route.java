@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import com.amazonaws.services.sns.AmazonSNS;
+import com.amazonaws.services.sns.model.PublishRequest;
+
+/**
+ * content based route to a topic with independent publish pipeline: own
+ * bounded queue, own in-flight limit and own publisher threads, so a burst
+ * on one topic can not starve or delay another
+ *
+ * event selection uses {@link EvaluatorExpression} syntax
+ */
+public class Route {
+
+	public static final int DEFAULT_QUEUE_SIZE = 1000;
+	public static final int DEFAULT_IN_FLIGHT = 2;
+
+	/** SNS topic name; must exist */
+	@JsonProperty
+	protected final String topicName;
+
+	/** event selection expression */
+	@JsonProperty
+	protected final String expression;
+
+	/** pending publish request limit */
+	@JsonProperty
+	protected final int queueSize;
+
+	/** concurrent publish request limit */
+	@JsonProperty
+	protected final int inFlight;
+
+	/** resolved on start */
+	@JsonProperty
+	protected volatile String topicARN;
+
+	/** requests dropped due to full queue */
+	@JsonProperty
+	protected final AtomicLong dropCount = new AtomicLong();
+
+	protected final EvaluatorExpression evaluator = new EvaluatorExpression();
+
+	protected final BlockingQueue<PublishRequest> queue;
+
+	/** one permit per active drain task */
+	protected final Semaphore permits;
+
+	protected volatile AmazonSNS amazonClient;
+
+	/** owner appender metrics; optional */
+	protected volatile Metrics metrics;
+
+	protected volatile ThreadPoolExecutor service;
+
+	/** drain queue while holding a permit */
+	protected final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				PublishRequest request;
+				while ((request = queue.poll()) != null) {
+					publish(request);
+				}
+			} finally {
+				permits.release();
+			}
+			schedule();
+		}
+	};
+
+	public Route(final String topicName, final String expression,
+			final int queueSize, final int inFlight) {
+
+		this.topicName = topicName;
+		this.expression = expression;
+		this.queueSize = Math.max(1, queueSize);
+		this.inFlight = Math.max(1, inFlight);
+
+		this.queue = new ArrayBlockingQueue<PublishRequest>(this.queueSize);
+		this.permits = new Semaphore(this.inFlight);
+
+		evaluator.setExpression(expression);
+
+	}
+
+	/** parse "topic-name=expression" pairs */
+	public static List<Route> listFrom(final String propsText,
+			final int queueSize, final int inFlight) {
+
+		final List<Route> list = new ArrayList<Route>();
+
+		final Properties props = Util.propsFrom(propsText);
+
+		for (final String topicName : props.stringPropertyNames()) {
+
+			final String expression = props.getProperty(topicName);
+
+			if (EvaluatorExpression.compile(expression) == null) {
+				LogLog.error("sns: invalid route : " + topicName);
+				continue;
+			}
+
+			list.add(new Route(topicName, expression, queueSize, inFlight));
+
+		}
+
+		return list;
+
+	}
+
+	public boolean isMatching(final LoggingEvent event) {
+		return evaluator.isTriggeringEvent(event);
+	}
+
+	/** enqueue publish request; false when dropped */
+	public boolean offer(final String message, final String subject,
+			final Map<String, String> attributes) {
+
+		if (service == null) {
+			return false;
+		}
+
+		final Metrics metrics = this.metrics;
+
+		final PublishRequest request = MessageAttributes.request(topicARN,
+				message, subject, attributes, metrics);
+
+		if (!queue.offer(request)) {
+			dropCount.incrementAndGet();
+			if (metrics != null) {
+				metrics.executorRejected();
+			}
+			return false;
+		}
+
+		schedule();
+
+		return true;
+
+	}
+
+	/** start drain tasks up to in-flight limit */
+	protected void schedule() {
+
+		final ThreadPoolExecutor service = this.service;
+
+		if (service == null) {
+			return;
+		}
+
+		while (!queue.isEmpty() && permits.tryAcquire()) {
+			try {
+				service.execute(drainTask);
+			} catch (final Exception e) {
+				permits.release();
+				LogLog.error("sns: route schedule failure", e);
+				return;
+			}
+		}
+
+	}
+
+	protected void publish(final PublishRequest request) {
+		try {
+			amazonClient.publish(request);
+		} catch (final Exception e) {
+			LogLog.error("sns: route publish failure : " + topicName, e);
+		}
+	}
+
+	public void start(final AmazonSNS amazonClient, final String topicARN) {
+		start(amazonClient, topicARN, null);
+	}
+
+	public void start(final AmazonSNS amazonClient, final String topicARN,
+			final Metrics metrics) {
+
+		this.amazonClient = amazonClient;
+		this.topicARN = topicARN;
+		this.metrics = metrics;
+
+		final ThreadPoolExecutor service = new ThreadPoolExecutor(//
+				inFlight, //
+				inFlight, //
+				60L, //
+				TimeUnit.SECONDS, //
+				new LinkedBlockingQueue<Runnable>(), //
+				new ThreadFactoryAWS() //
+		);
+
+		service.allowCoreThreadTimeOut(true);
+
+		this.service = service;
+
+	}
+
+	public void stop() {
+
+		final ThreadPoolExecutor service = this.service;
+
+		this.service = null;
+
+		if (service != null) {
+			service.shutdown();
+		}
+
+		queue.clear();
+
+	}
+
+	public String getTopicName() {
+		return topicName;
+	}
+
+	public String getTopicARN() {
+		return topicARN;
+	}
+
+	public long getDropCount() {
+		return dropCount.get();
+	}
+
+	/** pending publish requests */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+}
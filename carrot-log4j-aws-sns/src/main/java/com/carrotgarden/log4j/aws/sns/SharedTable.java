@@ -0,0 +1,314 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+import org.apache.log4j.helpers.LogLog;
+
+/**
+ * fixed size table of longs in a memory mapped file, shared by all processes
+ * on the host which map the same file
+ *
+ * slot update is compare-and-swap on mapped memory via unsafe, found by
+ * reflection; when it is not available, read-modify-write runs under exclusive
+ * file lock
+ *
+ * file layout, native byte order:
+ *
+ * <pre>
+ * int magic, int version, int slots, int reserved, long epoch-seconds,
+ * long reserved, long[slots]
+ * </pre>
+ */
+public class SharedTable {
+
+	public static final int MAGIC = 0x534E5348; // "SNSH"
+
+	public static final int VERSION = 1;
+
+	public static final int HEADER_SIZE = 32;
+
+	public static final int SLOT_SIZE = 8;
+
+	/**
+	 * mapped memory access; unsafe is looked up by reflection, so the build
+	 * does not depend on the internal api; loaded only when present on runtime
+	 */
+	protected static final class Atomic {
+
+		static final Object UNSAFE;
+
+		static final Method GET_LONG;
+
+		static final Method GET_LONG_VOLATILE;
+
+		static final Method COMPARE_AND_SWAP_LONG;
+
+		/** Buffer.address field offset */
+		static final long ADDRESS_OFFSET;
+
+		static {
+			try {
+
+				final Class<?> klaz = Class.forName("sun.misc.Unsafe");
+
+				final Field field = klaz.getDeclaredField("theUnsafe");
+
+				field.setAccessible(true);
+
+				UNSAFE = field.get(null);
+
+				GET_LONG = klaz.getMethod("getLong", Object.class, long.class);
+
+				GET_LONG_VOLATILE = klaz.getMethod("getLongVolatile",
+						Object.class, long.class);
+
+				COMPARE_AND_SWAP_LONG = klaz.getMethod("compareAndSwapLong",
+						Object.class, long.class, long.class, long.class);
+
+				final Method objectFieldOffset = klaz.getMethod(
+						"objectFieldOffset", Field.class);
+
+				ADDRESS_OFFSET = (Long) objectFieldOffset.invoke(UNSAFE,
+						Buffer.class.getDeclaredField("address"));
+
+			} catch (final Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		static long address(final Buffer buffer) {
+			return (Long) invoke(GET_LONG, buffer, ADDRESS_OFFSET);
+		}
+
+		static long getVolatile(final long address) {
+			return (Long) invoke(GET_LONG_VOLATILE, null, address);
+		}
+
+		static boolean compareAndSwap(final long address, final long expect,
+				final long update) {
+			return (Boolean) invoke(COMPARE_AND_SWAP_LONG, null, address,
+					expect, update);
+		}
+
+		static Object invoke(final Method method, final Object... args) {
+			try {
+				return method.invoke(UNSAFE, args);
+			} catch (final Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+	}
+
+	protected static final boolean IS_ATOMIC = atomic();
+
+	protected static boolean atomic() {
+		try {
+			return Atomic.UNSAFE != null;
+		} catch (final Throwable e) {
+			return false;
+		}
+	}
+
+	/** mapped memory compare-and-swap is available */
+	public static boolean isAtomic() {
+		return IS_ATOMIC;
+	}
+
+	protected final File file;
+
+	protected final RandomAccessFile access;
+
+	protected final FileChannel channel;
+
+	protected final MappedByteBuffer buffer;
+
+	protected final int slots;
+
+	protected final long epoch;
+
+	/** first slot address, or 0 when file lock is used */
+	protected final long base;
+
+	/**
+	 * open or create table file; slot count of existing file wins; force file
+	 * lock mode with "useLock"
+	 */
+	public SharedTable(final File file, final int slots, final boolean useLock)
+			throws IOException {
+
+		this.file = file;
+
+		final File folder = file.getAbsoluteFile().getParentFile();
+
+		if (folder != null) {
+			folder.mkdirs();
+		}
+
+		this.access = new RandomAccessFile(file, "rw");
+		this.channel = access.getChannel();
+
+		final FileLock lock = channel.lock();
+
+		try {
+
+			if (channel.size() < HEADER_SIZE) {
+
+				final int count = Math.max(1, slots);
+
+				final long size = HEADER_SIZE + (long) count * SLOT_SIZE;
+
+				access.setLength(size);
+
+				final MappedByteBuffer init = channel.map(
+						FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+
+				init.order(ByteOrder.nativeOrder());
+				init.putInt(0, MAGIC);
+				init.putInt(4, VERSION);
+				init.putInt(8, count);
+				init.putLong(16, System.currentTimeMillis() / 1000);
+				init.force();
+
+			}
+
+			final MappedByteBuffer head = channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+
+			head.order(ByteOrder.nativeOrder());
+
+			if (head.getInt(0) != MAGIC || head.getInt(4) != VERSION) {
+				throw new IOException("invalid shared table : " + file);
+			}
+
+			this.slots = head.getInt(8);
+			this.epoch = head.getLong(16);
+
+			if (this.slots <= 0
+					|| channel.size() != HEADER_SIZE + (long) this.slots
+							* SLOT_SIZE) {
+				throw new IOException("invalid shared table size : " + file);
+			}
+
+		} catch (final IOException e) {
+			close();
+			throw e;
+		} finally {
+			if (lock.isValid()) {
+				lock.release();
+			}
+		}
+
+		this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+				channel.size());
+
+		this.buffer.order(ByteOrder.nativeOrder());
+
+		this.base = useLock || !isAtomic() ? 0 : Atomic.address(buffer)
+				+ HEADER_SIZE;
+
+	}
+
+	public int getSlots() {
+		return slots;
+	}
+
+	/** table creation time, seconds */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	public boolean isLocking() {
+		return base == 0;
+	}
+
+	/** current slot value */
+	public long get(final int index) {
+
+		if (base == 0) {
+			synchronized (this) {
+				return buffer.getLong(HEADER_SIZE + index * SLOT_SIZE);
+			}
+		}
+
+		return Atomic.getVolatile(base + (long) index * SLOT_SIZE);
+
+	}
+
+	/** atomic slot update; false when slot value is not "expect" */
+	public boolean compareAndSet(final int index, final long expect,
+			final long update) {
+
+		if (base == 0) {
+			return compareAndSetLocked(index, expect, update);
+		}
+
+		return Atomic.compareAndSwap(base + (long) index * SLOT_SIZE, expect,
+				update);
+
+	}
+
+	/** file lock is per process; threads are serialized by monitor */
+	protected synchronized boolean compareAndSetLocked(final int index,
+			final long expect, final long update) {
+
+		final int position = HEADER_SIZE + index * SLOT_SIZE;
+
+		FileLock lock = null;
+
+		try {
+
+			lock = channel.lock(position, SLOT_SIZE, false);
+
+			if (buffer.getLong(position) != expect) {
+				return false;
+			}
+
+			buffer.putLong(position, update);
+
+			return true;
+
+		} catch (final IOException e) {
+
+			LogLog.warn("sns: shared table lock failure : " + file, e);
+
+			return false;
+
+		} finally {
+			if (lock != null) {
+				try {
+					lock.release();
+				} catch (final IOException e) {
+					LogLog.warn("sns: shared table unlock failure", e);
+				}
+			}
+		}
+
+	}
+
+	public void close() {
+		try {
+			channel.close();
+			access.close();
+		} catch (final IOException e) {
+			LogLog.warn("sns: shared table close failure : " + file, e);
+		}
+	}
+
+}
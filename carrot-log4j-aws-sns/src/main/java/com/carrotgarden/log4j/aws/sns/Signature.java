@@ -51,6 +51,12 @@ public class Signature {
 		/** {@link LoggingEvent#getThrowableStrRep()} */
 		STACK_TRACE, //
 
+		/**
+		 * {@link LoggingEvent#getRenderedMessage()} with variable tokens
+		 * replaced, see {@link MessageTemplate}
+		 */
+		MESSAGE_TEMPLATE, //
+
 		;
 
 		public static Set<Mask> DEFAULT = Collections.unmodifiableSet(//
@@ -60,60 +66,141 @@ public class Signature {
 
 	public static final Signature DEFAULT = new Signature(Mask.DEFAULT);
 
+	/** parts in signature order */
+	protected static final Mask[] MASK_ARRAY = Mask.values();
+
 	@JsonProperty
 	public final Set<Mask> mask;
 
+	/**
+	 * rendered signature parts of one event, kept to re-key it under another
+	 * mask without keeping the event; level, logger, thread and location
+	 * parts are always kept, stack trace and message template only when they
+	 * are in the mask which made them
+	 */
+	public static final class Parts {
+
+		/** rendered part per mask ordinal; null when not kept */
+		final String[] partArray;
+
+		Parts(final String[] partArray) {
+			this.partArray = partArray;
+		}
+
+	}
+
 	public Signature(final Set<Mask> mask) {
 		this.mask = mask;
 	}
 
 	/**
-	 * make event signature based on event set mask
+	 * make event signature based on event set mask; evaluators hand made
+	 * signature to the appender, see {@link Evaluator#triggeringKey}
 	 */
 	public String make(final LoggingEvent event) {
 
 		final StringBuilder text = new StringBuilder(128);
 
-		if (mask.contains(LEVEL)) {
+		for (final Mask part : MASK_ARRAY) {
+			if (mask.contains(part)) {
+				render(part, event, text);
+			}
+		}
+
+		return text.toString();
+
+	}
+
+	/**
+	 * make signature from kept parts; part which was not kept, such as stack
+	 * trace outside of the original mask, is left out
+	 */
+	public String make(final Parts parts) {
+
+		final StringBuilder text = new StringBuilder(128);
+
+		for (final Mask part : MASK_ARRAY) {
+			if (mask.contains(part)) {
+				final String value = parts.partArray[part.ordinal()];
+				if (value != null) {
+					text.append(value);
+				}
+			}
+		}
+
+		return text.toString();
+
+	}
+
+	/** resolve thread and location parts now, on the caller thread */
+	public Parts parts(final LoggingEvent event) {
+
+		final String[] partArray = new String[MASK_ARRAY.length];
+
+		final StringBuilder text = new StringBuilder(128);
+
+		for (final Mask part : MASK_ARRAY) {
+
+			final boolean isHeavy = part == STACK_TRACE
+					|| part == MESSAGE_TEMPLATE;
+
+			if (isHeavy && !mask.contains(part)) {
+				continue;
+			}
+
+			text.setLength(0);
+
+			render(part, event, text);
+
+			partArray[part.ordinal()] = text.toString();
+
+		}
+
+		return new Parts(partArray);
+
+	}
+
+	protected static void render(final Mask part, final LoggingEvent event,
+			final StringBuilder text) {
+
+		switch (part) {
+
+		case LEVEL:
 			text.append("/");
 			text.append(event.getLevel().toString());
-		}
+			break;
 
-		if (mask.contains(LOGGER_NAME)) {
+		case LOGGER_NAME:
 			text.append("/");
 			text.append(event.getLoggerName());
-		}
+			break;
 
-		if (mask.contains(THREAD_NAME)) {
+		case THREAD_NAME:
 			text.append("/");
 			text.append(event.getThreadName());
-		}
+			break;
 
-		if (mask.contains(FILE_NAME)) {
-			final LocationInfo location = event.getLocationInformation();
+		case FILE_NAME:
 			text.append("/");
-			text.append(location.getFileName());
-		}
+			text.append(event.getLocationInformation().getFileName());
+			break;
 
-		if (mask.contains(CLASS_NAME)) {
-			final LocationInfo location = event.getLocationInformation();
+		case CLASS_NAME:
 			text.append("/");
-			text.append(location.getClassName());
-		}
+			text.append(event.getLocationInformation().getClassName());
+			break;
 
-		if (mask.contains(METHOD_NAME)) {
-			final LocationInfo location = event.getLocationInformation();
+		case METHOD_NAME:
 			text.append("/");
-			text.append(location.getMethodName());
-		}
+			text.append(event.getLocationInformation().getMethodName());
+			break;
 
-		if (mask.contains(LINE_NUMBER)) {
-			final LocationInfo location = event.getLocationInformation();
+		case LINE_NUMBER:
 			text.append("/");
-			text.append(location.getLineNumber());
-		}
+			text.append(event.getLocationInformation().getLineNumber());
+			break;
 
-		if (mask.contains(STACK_TRACE)) {
+		case STACK_TRACE:
 			final String[] stackArray = event.getThrowableStrRep();
 			if (stackArray != null) {
 				for (final String entry : stackArray) {
@@ -121,13 +208,17 @@ public class Signature {
 					text.append(entry);
 				}
 			}
-		}
-
-		final String value = text.toString();
+			break;
 
-		// LogLog.error("value=" + value);
+		case MESSAGE_TEMPLATE:
+			final String message = event.getRenderedMessage();
+			text.append("/");
+			if (message != null) {
+				MessageTemplate.append(message, text);
+			}
+			break;
 
-		return value;
+		}
 
 	}
 
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * counter with one cell per thread stripe; writers on different stripes do
+ * not share a cache line, so increments do not contend; reads sum all
+ * stripes and are not atomic snapshot
+ */
+public class StripedCounter {
+
+	/** longs per cache line; cells are this far apart */
+	protected static final int PADDING = 8;
+
+	protected static final int STRIPES = stripes();
+
+	/** power of two, twice the processor count, at most 64 */
+	protected static int stripes() {
+		final int cpus = Runtime.getRuntime().availableProcessors();
+		int stripes = 1;
+		while (stripes < cpus * 2 && stripes < 64) {
+			stripes <<= 1;
+		}
+		return stripes;
+	}
+
+	/** stripe of the current thread */
+	protected static int stripe() {
+		final long id = Thread.currentThread().getId();
+		return (int) (id ^ (id >>> 16)) & (STRIPES - 1);
+	}
+
+	protected final AtomicLongArray cells = new AtomicLongArray(
+			(STRIPES + 1) * PADDING);
+
+	public void increment() {
+		add(1);
+	}
+
+	public void add(final long value) {
+		cells.getAndAdd((stripe() + 1) * PADDING, value);
+	}
+
+	public long sum() {
+		long sum = 0;
+		for (int index = 1; index <= STRIPES; index++) {
+			sum += cells.get(index * PADDING);
+		}
+		return sum;
+	}
+
+	public void reset() {
+		for (int index = 1; index <= STRIPES; index++) {
+			cells.set(index * PADDING, 0);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(sum());
+	}
+
+}
@@ -0,0 +1,360 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import org.apache.log4j.helpers.LogLog;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * immutable set of throttle entries as sorted (signature-hash, expire-millis)
+ * pairs; persisted between restarts so a restarting node does not re-send
+ * recurring events
+ *
+ * file format, big endian: magic, version, count, then count sorted fixed
+ * size records; load and save are bulk transfers through one small heap
+ * buffer, with no parsing; lookup is binary search
+ *
+ * <pre>
+ * int magic, int version, long count, { long hash, long expire } * count
+ * </pre>
+ */
+public class ThrottleSnapshot {
+
+	public static final int MAGIC = 0x534E5354; // "SNST"
+
+	public static final int VERSION = 1;
+
+	public static final int HEADER_SIZE = 16;
+
+	public static final int RECORD_SIZE = 16;
+
+	/**
+	 * transfer buffer size; bounded, so channel i/o does not allocate or pin
+	 * snapshot sized direct buffers
+	 */
+	protected static final int CHUNK_SIZE = 64 * 1024;
+
+	public static final ThrottleSnapshot EMPTY = new ThrottleSnapshot(
+			new long[0], 0);
+
+	/** 64 bit signature hash */
+	public static long hash(final String signature) {
+		return Hashing.murmur3_128().hashString(signature, Util.UTF_8)
+				.asLong();
+	}
+
+	/** interleaved [ hash, expire ] pairs, sorted by hash, unique hash */
+	protected final long[] pairs;
+
+	protected final int count;
+
+	/** latest expire, wall clock millis */
+	protected final long expireMax;
+
+	protected ThrottleSnapshot(final long[] pairs, final int count) {
+
+		this.pairs = pairs;
+		this.count = count;
+
+		long expireMax = 0;
+		for (int index = 0; index < count; index++) {
+			expireMax = Math.max(expireMax, pairs[index * 2 + 1]);
+		}
+		this.expireMax = expireMax;
+
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/** nothing left to suppress */
+	public boolean isExpired(final long now) {
+		return now >= expireMax;
+	}
+
+	/** expire millis of the hash, or 0 when absent */
+	public long expire(final long hash) {
+
+		int low = 0;
+		int high = count - 1;
+
+		while (low <= high) {
+
+			final int middle = (low + high) >>> 1;
+
+			final long value = pairs[middle * 2];
+
+			if (value < hash) {
+				low = middle + 1;
+			} else if (value > hash) {
+				high = middle - 1;
+			} else {
+				return pairs[middle * 2 + 1];
+			}
+
+		}
+
+		return 0;
+
+	}
+
+	/**
+	 * snapshot of unsorted live pairs merged with past snapshot; entries
+	 * expired at "now" are dropped; duplicate hash keeps latest expire
+	 */
+	public static ThrottleSnapshot merge(final long[] live, final int liveCount,
+			final ThrottleSnapshot past, final long now) {
+
+		sort(live, 0, liveCount - 1);
+
+		final ThrottleSnapshot other = past == null ? EMPTY : past;
+
+		final long[] pairs = new long[(liveCount + other.count) * 2];
+
+		int count = 0;
+		int one = 0;
+		int two = 0;
+
+		while (one < liveCount || two < other.count) {
+
+			final long hash;
+			final long expire;
+
+			if (two >= other.count || one < liveCount
+					&& live[one * 2] < other.pairs[two * 2]) {
+				hash = live[one * 2];
+				expire = live[one * 2 + 1];
+				one++;
+			} else {
+				hash = other.pairs[two * 2];
+				expire = other.pairs[two * 2 + 1];
+				two++;
+			}
+
+			if (expire <= now) {
+				continue;
+			}
+
+			if (count > 0 && pairs[(count - 1) * 2] == hash) {
+				pairs[(count - 1) * 2 + 1] = Math.max(
+						pairs[(count - 1) * 2 + 1], expire);
+				continue;
+			}
+
+			pairs[count * 2] = hash;
+			pairs[count * 2 + 1] = expire;
+			count++;
+
+		}
+
+		return new ThrottleSnapshot(pairs, count);
+
+	}
+
+	/** in place quick sort of interleaved pairs by hash */
+	protected static void sort(final long[] pairs, int low, int high) {
+
+		while (low < high) {
+
+			final long pivot = pairs[((low + high) >>> 1) * 2];
+
+			int left = low;
+			int right = high;
+
+			while (left <= right) {
+				while (pairs[left * 2] < pivot) {
+					left++;
+				}
+				while (pairs[right * 2] > pivot) {
+					right--;
+				}
+				if (left <= right) {
+					swap(pairs, left++, right--);
+				}
+			}
+
+			/** recurse into smaller part, loop on larger */
+			if (right - low < high - left) {
+				sort(pairs, low, right);
+				low = left;
+			} else {
+				sort(pairs, left, high);
+				high = right;
+			}
+
+		}
+
+	}
+
+	protected static void swap(final long[] pairs, final int one,
+			final int two) {
+		final long hash = pairs[one * 2];
+		final long expire = pairs[one * 2 + 1];
+		pairs[one * 2] = pairs[two * 2];
+		pairs[one * 2 + 1] = pairs[two * 2 + 1];
+		pairs[two * 2] = hash;
+		pairs[two * 2 + 1] = expire;
+	}
+
+	/** load snapshot; empty when file is missing or invalid */
+	public static ThrottleSnapshot load(final File file) {
+
+		if (!file.exists()) {
+			return EMPTY;
+		}
+
+		FileInputStream input = null;
+
+		try {
+
+			input = new FileInputStream(file);
+
+			final FileChannel channel = input.getChannel();
+
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+					ByteOrder.BIG_ENDIAN);
+
+			readFully(channel, header);
+
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+				LogLog.warn("sns: throttle snapshot invalid header : " + file);
+				return EMPTY;
+			}
+
+			final long count = header.getLong(8);
+
+			if (count < 0
+					|| HEADER_SIZE + count * RECORD_SIZE != channel.size()
+					|| count * 2 > Integer.MAX_VALUE) {
+				LogLog.warn("sns: throttle snapshot invalid size : " + file);
+				return EMPTY;
+			}
+
+			final long[] pairs = new long[(int) count * 2];
+
+			final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE).order(
+					ByteOrder.BIG_ENDIAN);
+
+			int index = 0;
+
+			while (index < pairs.length) {
+
+				chunk.clear();
+				chunk.limit(Math.min(CHUNK_SIZE, (pairs.length - index) * 8));
+
+				readFully(channel, chunk);
+
+				final int size = chunk.remaining() / 8;
+
+				chunk.asLongBuffer().get(pairs, index, size);
+
+				index += size;
+
+			}
+
+			return new ThrottleSnapshot(pairs, (int) count);
+
+		} catch (final Exception e) {
+
+			LogLog.warn("sns: throttle snapshot load failure : " + file, e);
+
+			return EMPTY;
+
+		} finally {
+			Util.close(input);
+		}
+
+	}
+
+	protected static void readFully(final FileChannel channel,
+			final ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new IOException("unexpected end of file");
+			}
+		}
+		buffer.flip();
+	}
+
+	/** write buffer content, then clear it */
+	protected static void writeFully(final FileChannel channel,
+			final ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/** write snapshot; replace file atomically where possible */
+	public void save(final File file) {
+
+		final File temp = new File(file.getPath() + ".tmp");
+
+		FileOutputStream output = null;
+
+		try {
+
+			final File folder = file.getAbsoluteFile().getParentFile();
+
+			if (folder != null) {
+				folder.mkdirs();
+			}
+
+			output = new FileOutputStream(temp);
+
+			final FileChannel channel = output.getChannel();
+
+			final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE).order(
+					ByteOrder.BIG_ENDIAN);
+
+			chunk.putInt(MAGIC);
+			chunk.putInt(VERSION);
+			chunk.putLong(count);
+
+			for (int index = 0; index < count * 2; index++) {
+				if (!chunk.hasRemaining()) {
+					writeFully(channel, chunk);
+				}
+				chunk.putLong(pairs[index]);
+			}
+
+			writeFully(channel, chunk);
+
+			output.close();
+			output = null;
+
+			if (!temp.renameTo(file)) {
+				file.delete();
+				if (!temp.renameTo(file)) {
+					LogLog.warn("sns: throttle snapshot rename failure : "
+							+ file);
+				}
+			}
+
+		} catch (final Exception e) {
+
+			LogLog.warn("sns: throttle snapshot save failure : " + file, e);
+
+		} finally {
+			Util.close(output);
+		}
+
+	}
+
+}
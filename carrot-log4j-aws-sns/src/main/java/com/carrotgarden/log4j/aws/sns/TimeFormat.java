@@ -0,0 +1,279 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * event time stamp renderer
+ *
+ * caches formatted text for the current second and patches in milliseconds;
+ * writes into caller provided buffer; safe for concurrent use
+ */
+public class TimeFormat {
+
+	/**
+	 * time stamp rendering mode
+	 */
+	public static enum Mode {
+
+		/** ISO-8601 in UTC : "2012-08-16T00:26:40.738Z" */
+		UTC, //
+
+		/** ISO-8601 with local offset : "2012-08-15T19:26:40.738-05:00" */
+		OFFSET, //
+
+		/** epoch milliseconds : "1345076800738" */
+		EPOCH, //
+
+		;
+
+		public static final Mode DEFAULT = OFFSET;
+
+		public static Mode from(final String name) {
+			try {
+				return valueOf(name.trim().toUpperCase());
+			} catch (final Exception e) {
+				return DEFAULT;
+			}
+		}
+
+	}
+
+	/** maximum rendered length : "yyyy-MM-ddTHH:mm:ss.SSS+HH:MM" */
+	public static final int SIZE = 32;
+
+	/** position of milliseconds in cached text */
+	private static final int MILLIS_INDEX = 20;
+
+	private static final TimeZone ZONE_UTC = TimeZone.getTimeZone("UTC");
+
+	/** formatted text for a whole second; immutable */
+	private static final class Entry {
+
+		final long second;
+
+		final char[] text;
+
+		Entry(final long second, final char[] text) {
+			this.second = second;
+			this.text = text;
+		}
+
+	}
+
+	private final Mode mode;
+
+	private final TimeZone zone;
+
+	/** last rendered second */
+	private volatile Entry entry = new Entry(Long.MIN_VALUE, new char[0]);
+
+	public TimeFormat(final Mode mode) {
+		this(mode, TimeZone.getDefault());
+	}
+
+	public TimeFormat(final Mode mode, final TimeZone zone) {
+		this.mode = mode;
+		this.zone = mode == Mode.UTC ? ZONE_UTC : zone;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/** render time stamp into buffer; return rendered length */
+	public int format(final long millis, final char[] buffer) {
+
+		if (mode == Mode.EPOCH) {
+			return formatEpoch(millis, buffer);
+		}
+
+		final long second = floorDiv(millis, 1000);
+
+		final char[] text = entry(second).text;
+		final int length = text.length;
+
+		System.arraycopy(text, 0, buffer, 0, length);
+
+		patchMillis(millis, second, buffer, 0);
+
+		return length;
+
+	}
+
+	/** render time stamp into builder */
+	public void format(final long millis, final StringBuilder builder) {
+
+		if (mode == Mode.EPOCH) {
+			builder.append(millis);
+			return;
+		}
+
+		final long second = floorDiv(millis, 1000);
+
+		final int start = builder.length();
+
+		builder.append(entry(second).text);
+
+		final int fraction = (int) (millis - second * 1000);
+
+		builder.setCharAt(start + MILLIS_INDEX + 0,
+				(char) ('0' + fraction / 100));
+		builder.setCharAt(start + MILLIS_INDEX + 1,
+				(char) ('0' + fraction / 10 % 10));
+		builder.setCharAt(start + MILLIS_INDEX + 2,
+				(char) ('0' + fraction % 10));
+
+	}
+
+	/** cached text for the second; render on miss */
+	private Entry entry(final long second) {
+
+		Entry entry = this.entry;
+
+		if (entry.second != second) {
+			entry = new Entry(second, render(second * 1000));
+			this.entry = entry;
+		}
+
+		return entry;
+
+	}
+
+	private static void patchMillis(final long millis, final long second,
+			final char[] buffer, final int start) {
+
+		final int fraction = (int) (millis - second * 1000);
+
+		buffer[start + MILLIS_INDEX + 0] = (char) ('0' + fraction / 100);
+		buffer[start + MILLIS_INDEX + 1] = (char) ('0' + fraction / 10 % 10);
+		buffer[start + MILLIS_INDEX + 2] = (char) ('0' + fraction % 10);
+
+	}
+
+	/** render time stamp as text */
+	public String format(final long millis) {
+
+		final char[] buffer = new char[SIZE];
+
+		final int length = format(millis, buffer);
+
+		return new String(buffer, 0, length);
+
+	}
+
+	/** full render of the second, with zero milliseconds */
+	protected char[] render(final long millis) {
+
+		final int offset = zone.getOffset(millis);
+
+		final Calendar calendar = new GregorianCalendar(ZONE_UTC);
+		calendar.setTimeInMillis(millis + offset);
+
+		final char[] text = new char[SIZE];
+
+		int index = 0;
+
+		index = digits(calendar.get(Calendar.YEAR), 4, text, index);
+		text[index++] = '-';
+		index = digits(calendar.get(Calendar.MONTH) + 1, 2, text, index);
+		text[index++] = '-';
+		index = digits(calendar.get(Calendar.DAY_OF_MONTH), 2, text, index);
+		text[index++] = 'T';
+		index = digits(calendar.get(Calendar.HOUR_OF_DAY), 2, text, index);
+		text[index++] = ':';
+		index = digits(calendar.get(Calendar.MINUTE), 2, text, index);
+		text[index++] = ':';
+		index = digits(calendar.get(Calendar.SECOND), 2, text, index);
+		text[index++] = '.';
+		index = digits(0, 3, text, index);
+
+		if (offset == 0) {
+			text[index++] = 'Z';
+		} else {
+			final int minutes = Math.abs(offset) / 60000;
+			text[index++] = offset < 0 ? '-' : '+';
+			index = digits(minutes / 60, 2, text, index);
+			text[index++] = ':';
+			index = digits(minutes % 60, 2, text, index);
+		}
+
+		final char[] result = new char[index];
+		System.arraycopy(text, 0, result, 0, index);
+		return result;
+
+	}
+
+	/** zero padded decimal */
+	protected static int digits(final int value, final int width,
+			final char[] text, final int index) {
+
+		int limit = index + width;
+
+		while (value >= pow10(limit - index)) {
+			limit++;
+		}
+
+		int number = value;
+		for (int k = limit - 1; k >= index; k--) {
+			text[k] = (char) ('0' + number % 10);
+			number /= 10;
+		}
+
+		return limit;
+
+	}
+
+	private static int pow10(final int power) {
+		int value = 1;
+		for (int k = 0; k < power; k++) {
+			value *= 10;
+		}
+		return value;
+	}
+
+	protected static int formatEpoch(final long millis, final char[] buffer) {
+
+		if (millis < 0) {
+			final String text = Long.toString(millis);
+			final int length = text.length();
+			text.getChars(0, length, buffer, 0);
+			return length;
+		}
+
+		int length = 1;
+		for (long value = millis / 10; value > 0; value /= 10) {
+			length++;
+		}
+
+		long value = millis;
+		for (int index = length - 1; index >= 0; index--) {
+			buffer[index] = (char) ('0' + (int) (value % 10));
+			value /= 10;
+		}
+
+		return length;
+
+	}
+
+	protected static long floorDiv(final long value, final long divisor) {
+
+		final long result = value / divisor;
+
+		if ((value % divisor != 0) && ((value < 0) != (divisor < 0))) {
+			return result - 1;
+		} else {
+			return result;
+		}
+
+	}
+
+}
@@ -0,0 +1,275 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.helpers.LogLog;
+
+import com.amazonaws.services.sns.AmazonSNS;
+import com.amazonaws.services.sns.model.ListTopicsRequest;
+import com.amazonaws.services.sns.model.ListTopicsResult;
+import com.amazonaws.services.sns.model.Topic;
+
+/**
+ * process wide cache of resolved topic ARN, shared by all appenders;
+ * optionally persisted into local properties file, so restart skips the
+ * topic lookup
+ *
+ * file entry format: "key=arn,expire-millis"
+ */
+public class TopicCache {
+
+	/** seconds */
+	public static final int DEFAULT_TTL = (int) TimeUnit.DAYS.toSeconds(1);
+
+	protected static final class Entry {
+
+		final String arn;
+
+		/** wall clock millis */
+		final long expire;
+
+		Entry(final String arn, final long expire) {
+			this.arn = arn;
+			this.expire = expire;
+		}
+
+		boolean isExpired(final long now) {
+			return now >= expire;
+		}
+
+	}
+
+	/** [ cache-key, entry ] */
+	protected static final ConcurrentMap<String, Entry> CACHE = new ConcurrentHashMap<String, Entry>();
+
+	/** files already merged into cache */
+	protected static final Set<String> LOADED = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/** cache key for topic in account identified by credentials */
+	public static String key(final String credentials, final String topicName) {
+		return credentials + "|" + topicName;
+	}
+
+	/** cached ARN or null; file is optional */
+	public static String get(final String key, final String file) {
+
+		if (file != null && LOADED.add(file)) {
+			load(new File(file));
+		}
+
+		final Entry entry = CACHE.get(key);
+
+		if (entry == null) {
+			return null;
+		}
+
+		if (entry.isExpired(System.currentTimeMillis())) {
+			CACHE.remove(key, entry);
+			return null;
+		}
+
+		return entry.arn;
+
+	}
+
+	/** remember ARN for ttl seconds; file is optional */
+	public static void put(final String key, final String arn,
+			final int ttl, final String file) {
+
+		final long expire = System.currentTimeMillis()
+				+ TimeUnit.SECONDS.toMillis(ttl);
+
+		CACHE.put(key, new Entry(arn, expire));
+
+		if (file != null) {
+			save(new File(file));
+		}
+
+	}
+
+	/**
+	 * find existing topic ARN by topic name, first in cache, then in all topic
+	 * list pages; null when missing; file is optional
+	 */
+	public static String find(final AmazonSNS amazonClient,
+			final String credentials, final String topicName,
+			final String file, final int ttl) {
+
+		final String key = key(credentials, topicName);
+
+		final String cached = get(key, file);
+
+		if (cached != null) {
+			return cached;
+		}
+
+		String nextToken = null;
+
+		do {
+
+			final ListTopicsRequest request = new ListTopicsRequest()
+					.withNextToken(nextToken);
+
+			final ListTopicsResult result = amazonClient.listTopics(request);
+
+			final List<Topic> topicList = result.getTopics();
+
+			for (final Topic entry : topicList) {
+
+				final String arn = entry.getTopicArn();
+				final String name = Util.topicNameFromARN(arn);
+
+				if (topicName.equals(name)) {
+					put(key, arn, ttl, file);
+					return arn;
+				}
+
+			}
+
+			nextToken = result.getNextToken();
+
+		} while (nextToken != null);
+
+		LogLog.error("sns: unknown topic name", new IllegalArgumentException(
+				topicName));
+
+		return null;
+
+	}
+
+	/** forget memory state; file is reloaded on next use */
+	public static void clear() {
+		CACHE.clear();
+		LOADED.clear();
+	}
+
+	/** merge not expired file entries into cache */
+	protected static void load(final File file) {
+
+		if (!file.exists()) {
+			return;
+		}
+
+		final Properties props = new Properties();
+
+		InputStream input = null;
+
+		try {
+
+			input = new FileInputStream(file);
+
+			props.load(input);
+
+		} catch (final Exception e) {
+
+			LogLog.warn("sns: topic cache load failure : " + file, e);
+
+			return;
+
+		} finally {
+			Util.close(input);
+		}
+
+		final long now = System.currentTimeMillis();
+
+		for (final String key : props.stringPropertyNames()) {
+
+			final String value = props.getProperty(key);
+
+			final int index = value.lastIndexOf(',');
+
+			if (index < 0) {
+				continue;
+			}
+
+			try {
+
+				final Entry entry = new Entry(value.substring(0, index),
+						Long.parseLong(value.substring(index + 1)));
+
+				if (!entry.isExpired(now)) {
+					CACHE.putIfAbsent(key, entry);
+				}
+
+			} catch (final Exception e) {
+				LogLog.warn("sns: topic cache invalid entry : " + key);
+			}
+
+		}
+
+	}
+
+	/** write not expired entries; replace file atomically where possible */
+	protected static synchronized void save(final File file) {
+
+		final Properties props = new Properties();
+
+		final long now = System.currentTimeMillis();
+
+		for (final Map.Entry<String, Entry> item : CACHE.entrySet()) {
+
+			final Entry entry = item.getValue();
+
+			if (!entry.isExpired(now)) {
+				props.setProperty(item.getKey(), entry.arn + "," + entry.expire);
+			}
+
+		}
+
+		final File temp = new File(file.getPath() + ".tmp");
+
+		OutputStream output = null;
+
+		try {
+
+			final File folder = file.getAbsoluteFile().getParentFile();
+
+			if (folder != null) {
+				folder.mkdirs();
+			}
+
+			output = new FileOutputStream(temp);
+
+			props.store(output, "sns topic cache");
+
+			output.close();
+			output = null;
+
+			if (!temp.renameTo(file)) {
+				file.delete();
+				if (!temp.renameTo(file)) {
+					LogLog.warn("sns: topic cache rename failure : " + file);
+				}
+			}
+
+		} catch (final Exception e) {
+
+			LogLog.warn("sns: topic cache save failure : " + file, e);
+
+		} finally {
+			Util.close(output);
+		}
+
+	}
+
+}
@@ -8,9 +8,13 @@
 package com.carrotgarden.log4j.aws.sns;
 
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.InputStream;
+import java.net.InetAddress;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -29,19 +33,103 @@ public class Util {
 	/** bytes */
 	public static final int SUBJECT_LIMIT = 100;
 
-	/** truncate if too long */
+	/**
+	 * truncate if too long; measures UTF-8 size without encoding and cuts only
+	 * on a code point boundary
+	 */
 	public static String forceByteLimit(final String text, final int size) {
 
-		final byte[] array = text.getBytes(UTF_8);
+		final int index = byteLimitIndex(text, size);
 
-		if (array.length > size) {
-			return new String(array, 0, size, UTF_8);
+		if (index < text.length()) {
+			return text.substring(0, index);
 		} else {
 			return text;
 		}
 
 	}
 
+	/**
+	 * length of the longest text prefix which fits into UTF-8 byte size limit;
+	 * scan stops as soon as the limit is passed
+	 */
+	public static int byteLimitIndex(final CharSequence text, final int size) {
+
+		final int length = text.length();
+
+		/** every char encodes into at most 3 bytes */
+		if (length <= size / 3) {
+			return length;
+		}
+
+		int bytes = 0;
+
+		for (int index = 0; index < length; index++) {
+
+			final char one = text.charAt(index);
+
+			if (one < 0x80) {
+				bytes += 1;
+			} else if (one < 0x800) {
+				bytes += 2;
+			} else if (Character.isHighSurrogate(one) && index + 1 < length
+					&& Character.isLowSurrogate(text.charAt(index + 1))) {
+				bytes += 4;
+				if (bytes > size) {
+					return index;
+				}
+				index++;
+				continue;
+			} else if (one >= Character.MIN_SURROGATE
+					&& one <= Character.MAX_SURROGATE) {
+				/** unpaired surrogate is encoded as replacement '?' */
+				bytes += 1;
+			} else {
+				bytes += 3;
+			}
+
+			if (bytes > size) {
+				return index;
+			}
+
+		}
+
+		return length;
+
+	}
+
+	/** UTF-8 encoded size of the text, without encoding */
+	public static int byteLength(final CharSequence text) {
+
+		final int length = text.length();
+
+		int bytes = 0;
+
+		for (int index = 0; index < length; index++) {
+
+			final char one = text.charAt(index);
+
+			if (one < 0x80) {
+				bytes += 1;
+			} else if (one < 0x800) {
+				bytes += 2;
+			} else if (Character.isHighSurrogate(one) && index + 1 < length
+					&& Character.isLowSurrogate(text.charAt(index + 1))) {
+				bytes += 4;
+				index++;
+			} else if (one >= Character.MIN_SURROGATE
+					&& one <= Character.MAX_SURROGATE) {
+				bytes += 1;
+			} else {
+				bytes += 3;
+			}
+
+		}
+
+		return bytes;
+
+	}
+
 	/**
 	 * http://aws.amazon.com/sns/faqs/#10
 	 * 
@@ -55,6 +143,18 @@ public class Util {
 
 	}
 
+	/** local host name; resolved once per call, use at configuration time */
+	public static String hostName() {
+
+		try {
+			return InetAddress.getLocalHost().getHostName();
+		} catch (final Exception e) {
+			LogLog.warn("sns: host name lookup failure", e);
+			return "localhost";
+		}
+
+	}
+
 	public static int getIntProperty(final String propName,
 			final int propDefault) {
 
@@ -158,4 +258,57 @@ public class Util {
 
 	}
 
+	/** throwable and its causes, outermost first; cause cycle is cut */
+	public static List<Throwable> causeChain(final Throwable throwable) {
+
+		final List<Throwable> chain = new ArrayList<Throwable>(4);
+
+		Throwable cause = throwable;
+
+		while (cause != null) {
+
+			for (final Throwable known : chain) {
+				if (known == cause) {
+					return chain;
+				}
+			}
+
+			chain.add(cause);
+
+			cause = cause.getCause();
+
+		}
+
+		return chain;
+
+	}
+
+	/** trailing frames shared with enclosing trace, as in printStackTrace */
+	public static int framesInCommon(final StackTraceElement[] trace,
+			final StackTraceElement[] enclosing) {
+
+		int m = trace.length - 1;
+		int n = enclosing.length - 1;
+
+		while (m >= 0 && n >= 0 && trace[m].equals(enclosing[n])) {
+			m--;
+			n--;
+		}
+
+		return trace.length - 1 - m;
+
+	}
+
+	/** close quietly; null is ignored, failure is reported */
+	public static void close(final Closeable stream) {
+		if (stream == null) {
+			return;
+		}
+		try {
+			stream.close();
+		} catch (final Exception e) {
+			LogLog.warn("sns: close failure", e);
+		}
+	}
+
 }
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import org.apache.log4j.Logger;
+import org.joda.time.DateTime;
+
+import com.carrotgarden.log4j.aws.sns.TimeFormat;
+
+/**
+ * time stamp format benchmark: joda vs cached formatter
+ */
+public class Main_04 {
+
+	static Logger log = Logger.getLogger(Main_04.class);
+
+	static final int COUNT = 5 * 1000 * 1000;
+
+	static long sink;
+
+	static void joda(final long start) {
+
+		final long time = System.nanoTime();
+
+		for (int k = 0; k < COUNT; k++) {
+			sink += new DateTime(start + k / 10).toString().length();
+		}
+
+		report("joda", time);
+
+	}
+
+	static void cached(final long start, final TimeFormat.Mode mode) {
+
+		final TimeFormat format = new TimeFormat(mode);
+
+		final char[] buffer = new char[TimeFormat.SIZE];
+
+		final long time = System.nanoTime();
+
+		for (int k = 0; k < COUNT; k++) {
+			sink += format.format(start + k / 10, buffer);
+		}
+
+		report("cached " + mode, time);
+
+	}
+
+	static void report(final String name, final long time) {
+
+		final long nanos = (System.nanoTime() - time) / COUNT;
+
+		log.info(name + " : " + nanos + " ns/op");
+
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		final long start = System.currentTimeMillis();
+
+		for (int round = 0; round < 3; round++) {
+
+			joda(start);
+
+			cached(start, TimeFormat.Mode.OFFSET);
+			cached(start, TimeFormat.Mode.UTC);
+			cached(start, TimeFormat.Mode.EPOCH);
+
+		}
+
+		log.info("sink=" + sink);
+
+	}
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import java.nio.charset.Charset;
+
+import org.apache.log4j.Logger;
+
+import com.carrotgarden.log4j.aws.sns.Util;
+
+/**
+ * message byte limit benchmark: encode-and-measure vs char scan
+ */
+public class Main_05 {
+
+	static Logger log = Logger.getLogger(Main_05.class);
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	static final int COUNT = 2 * 1000;
+
+	static long sink;
+
+	static String text(final String unit, final int size) {
+		final StringBuilder text = new StringBuilder(size);
+		while (text.length() < size) {
+			text.append(unit);
+		}
+		return text.toString();
+	}
+
+	/** former implementation */
+	static String encoded(final String text, final int size) {
+		final byte[] array = text.getBytes(UTF_8);
+		if (array.length > size) {
+			return new String(array, 0, size, UTF_8);
+		} else {
+			return text;
+		}
+	}
+
+	static void run(final String name, final String text) {
+
+		long time = System.nanoTime();
+		for (int k = 0; k < COUNT; k++) {
+			sink += encoded(text, Util.MESSAGE_LIMIT).length();
+		}
+		final long nanosEncoded = (System.nanoTime() - time) / COUNT;
+
+		time = System.nanoTime();
+		for (int k = 0; k < COUNT; k++) {
+			sink += Util.forceByteLimit(text, Util.MESSAGE_LIMIT).length();
+		}
+		final long nanosScan = (System.nanoTime() - time) / COUNT;
+
+		log.info(name + " : chars=" + text.length() + " encoded="
+				+ nanosEncoded + " ns/op scan=" + nanosScan + " ns/op");
+
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		final String ascii = "logging message 12345 ";
+		final String cyrillic = "\u0441\u043e\u043e\u0431\u0449\u0435\u043d\u0438\u0435 ";
+		final String emoji = "\ud83d\ude00\ud83d\udd25 ok ";
+
+		for (int round = 0; round < 3; round++) {
+
+			run("ascii small", text(ascii, 1000));
+			run("ascii large", text(ascii, 4 * 1000 * 1000));
+
+			run("cyrillic small", text(cyrillic, 1000));
+			run("cyrillic large", text(cyrillic, 4 * 1000 * 1000));
+
+			run("emoji small", text(emoji, 1000));
+			run("emoji large", text(emoji, 4 * 1000 * 1000));
+
+		}
+
+		log.info("sink=" + sink);
+
+	}
+
+}
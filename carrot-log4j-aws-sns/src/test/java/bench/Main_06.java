@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import org.apache.log4j.Layout;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.spi.LoggingEvent;
+
+import com.carrotgarden.log4j.aws.sns.LayoutJSON;
+import com.carrotgarden.log4j.aws.sns.LayoutSimple;
+
+/**
+ * layout render benchmark: pattern vs simple vs json
+ */
+public class Main_06 {
+
+	static Logger log = Logger.getLogger(Main_06.class);
+
+	static final int COUNT = 1000 * 1000;
+
+	static final String PATTERN = "%d{ISO8601} %p %c{1} - %m";
+
+	static long sink;
+
+	static void run(final String name, final Layout layout,
+			final LoggingEvent event) {
+
+		final long time = System.nanoTime();
+
+		for (int k = 0; k < COUNT; k++) {
+			sink += layout.format(event).length();
+		}
+
+		final long nanos = (System.nanoTime() - time) / COUNT;
+
+		log.info(name + " : " + nanos + " ns/op");
+
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		final LoggingEvent event = new LoggingEvent("", log, Level.ERROR,
+				"order 12345 rejected by risk check", null);
+
+		final PatternLayout pattern = new PatternLayout(PATTERN);
+
+		final LayoutSimple simple = new LayoutSimple();
+		simple.setConversionPattern("%d %p %c{1} - %m");
+		simple.setByteLimit(140);
+		simple.activateOptions();
+
+		final LayoutJSON json = new LayoutJSON();
+		json.activateOptions();
+
+		for (int round = 0; round < 3; round++) {
+
+			run("pattern", pattern, event);
+			run("simple", simple, event);
+			run("json", json, event);
+
+		}
+
+		log.info("sink=" + sink);
+
+	}
+
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import org.apache.log4j.Layout;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.xml.XMLLayout;
+
+import com.carrotgarden.log4j.aws.sns.LayoutXML;
+
+/**
+ * xml layout render benchmark: log4j xml vs streaming xml
+ */
+public class Main_07 {
+
+	static Logger log = Logger.getLogger(Main_07.class);
+
+	static final int COUNT = 1000 * 1000;
+
+	static long sink;
+
+	static void run(final String name, final Layout layout,
+			final LoggingEvent event) {
+
+		final long time = System.nanoTime();
+
+		for (int k = 0; k < COUNT; k++) {
+			sink += layout.format(event).length();
+		}
+
+		final long nanos = (System.nanoTime() - time) / COUNT;
+
+		log.info(name + " : " + nanos + " ns/op");
+
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		final LoggingEvent event = new LoggingEvent("", log, Level.ERROR,
+				"order <12345> rejected by risk check & limits",
+				new IllegalStateException("risk"));
+
+		final XMLLayout log4j = new XMLLayout();
+		log4j.setLocationInfo(true);
+		log4j.activateOptions();
+
+		final LayoutXML stream = new LayoutXML();
+		stream.activateOptions();
+
+		for (int round = 0; round < 3; round++) {
+
+			run("log4j", log4j, event);
+			run("stream", stream, event);
+
+		}
+
+		log.info("sink=" + sink);
+
+	}
+
+}
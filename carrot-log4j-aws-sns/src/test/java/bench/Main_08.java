@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.spi.LoggingEvent;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.smile.SmileFactory;
+
+import com.carrotgarden.log4j.aws.sns.LayoutJSON;
+import com.carrotgarden.log4j.aws.sns.LayoutSmile;
+
+/**
+ * payload size and encode / decode throughput: json vs smile
+ */
+public class Main_08 {
+
+	static Logger log = Logger.getLogger(Main_08.class);
+
+	static final int COUNT = 200 * 1000;
+
+	static long sink;
+
+	/** stream all tokens, as a consumer would */
+	static void consume(final JsonParser parser) throws Exception {
+		while (parser.nextToken() != null) {
+			sink++;
+		}
+		parser.close();
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		MDC.put("tenant", "acme-production");
+		MDC.put("request", "2f9c1d7e-6a51-4f1b-9d9e-3c2b1a0f8e77");
+
+		final LoggingEvent event = new LoggingEvent("",
+				Logger.getLogger("com.acme.order.service.OrderProcessor"),
+				Level.ERROR, "order 12345 rejected by risk check",
+				new IllegalStateException("limit exceeded"));
+
+		final LayoutJSON json = new LayoutJSON();
+		json.setMdcKeys("tenant,request");
+		json.setStackDepth(10);
+		json.activateOptions();
+
+		final LayoutSmile smile = new LayoutSmile();
+		smile.setMdcKeys("tenant,request");
+		smile.setStackDepth(10);
+		smile.activateOptions();
+
+		final JsonFactory jsonFactory = new JsonFactory();
+		final SmileFactory smileFactory = new SmileFactory();
+
+		final String jsonText = json.format(event);
+		final String smileText = smile.format(event);
+
+		log.info("size json=" + jsonText.length() + " smile/base64="
+				+ smileText.length());
+
+		for (int round = 0; round < 3; round++) {
+
+			long time = System.nanoTime();
+			for (int k = 0; k < COUNT; k++) {
+				sink += json.format(event).length();
+			}
+			log.info("encode json : " + (System.nanoTime() - time) / COUNT
+					+ " ns/op");
+
+			time = System.nanoTime();
+			for (int k = 0; k < COUNT; k++) {
+				sink += smile.format(event).length();
+			}
+			log.info("encode smile : " + (System.nanoTime() - time) / COUNT
+					+ " ns/op");
+
+			time = System.nanoTime();
+			for (int k = 0; k < COUNT; k++) {
+				consume(jsonFactory.createJsonParser(jsonText));
+			}
+			log.info("decode json : " + (System.nanoTime() - time) / COUNT
+					+ " ns/op");
+
+			time = System.nanoTime();
+			for (int k = 0; k < COUNT; k++) {
+				consume(LayoutSmile.decode(smileFactory, smileText));
+			}
+			log.info("decode smile : " + (System.nanoTime() - time) / COUNT
+					+ " ns/op");
+
+		}
+
+		log.info("sink=" + sink);
+
+	}
+
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+import com.carrotgarden.log4j.aws.sns.Evaluator;
+import com.carrotgarden.log4j.aws.sns.EvaluatorSimple;
+import com.carrotgarden.log4j.aws.sns.EvaluatorThrottler;
+
+/**
+ * evaluator benchmark: signature throttle vs prefix trie pre-filter on mostly
+ * rejected noisy events
+ */
+public class Main_09 {
+
+	static Logger log = Logger.getLogger(Main_09.class);
+
+	static final int COUNT = 1000 * 1000;
+
+	static long sink;
+
+	static void run(final String name, final Evaluator evaluator,
+			final LoggingEvent[] events) {
+
+		final long time = System.nanoTime();
+
+		for (int k = 0; k < COUNT; k++) {
+			if (evaluator.isTriggeringEvent(events[k % events.length])) {
+				sink++;
+			}
+		}
+
+		final long nanos = (System.nanoTime() - time) / COUNT;
+
+		log.info(name + " : " + nanos + " ns/op");
+
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		final LoggingEvent[] events = new LoggingEvent[] {
+				new LoggingEvent("",
+						Logger.getLogger("com.amazonaws.http.AmazonHttpClient"),
+						Level.INFO, "retry", null),
+				new LoggingEvent("",
+						Logger.getLogger("org.apache.http.wire"), Level.DEBUG,
+						"wire", null),
+				new LoggingEvent("",
+						Logger.getLogger("com.company.order.Service"),
+						Level.WARN, "order", null), };
+
+		final String props = "root=WARN \n com.amazonaws=ERROR \n com.company=WARN:10:SECONDS";
+
+		final Evaluator throttler = new EvaluatorThrottler();
+		throttler.setProperties("period=10 \n unit=SECONDS \n mask=LOGGER_NAME,LINE_NUMBER");
+
+		final Evaluator simple = new EvaluatorSimple();
+		simple.setProperties(props);
+
+		for (int round = 0; round < 3; round++) {
+
+			run("throttler", throttler, events);
+			run("simple", simple, events);
+
+		}
+
+		log.info("sink=" + sink);
+
+	}
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.varia.DenyAllFilter;
+import org.apache.log4j.varia.LevelRangeFilter;
+import org.apache.log4j.varia.StringMatchFilter;
+
+import com.carrotgarden.log4j.aws.sns.Evaluator;
+import com.carrotgarden.log4j.aws.sns.EvaluatorExpression;
+
+/**
+ * filter benchmark: log4j filter chain vs compiled expression evaluator
+ */
+public class Main_10 {
+
+	static Logger log = Logger.getLogger(Main_10.class);
+
+	static final int COUNT = 10 * 1000 * 1000;
+
+	static long sink;
+
+	/** same decision procedure as AppenderSkeleton.doAppend */
+	static boolean accept(final Filter head, final LoggingEvent event) {
+		Filter filter = head;
+		while (filter != null) {
+			switch (filter.decide(event)) {
+			case Filter.DENY:
+				return false;
+			case Filter.ACCEPT:
+				return true;
+			case Filter.NEUTRAL:
+				filter = filter.getNext();
+			}
+		}
+		return true;
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		final LoggingEvent[] events = new LoggingEvent[] {
+				new LoggingEvent("", log, Level.INFO, "order 123 accepted",
+						null),
+				new LoggingEvent("", log, Level.ERROR, "order 123 rejected",
+						null),
+				new LoggingEvent("", log, Level.ERROR, "cache miss", null), };
+
+		/** level >= ERROR && message ~ "order" */
+
+		final LevelRangeFilter range = new LevelRangeFilter();
+		range.setLevelMin(Level.ERROR);
+		range.setAcceptOnMatch(false);
+
+		final StringMatchFilter match = new StringMatchFilter();
+		match.setStringToMatch("order");
+		match.setAcceptOnMatch(true);
+
+		final DenyAllFilter deny = new DenyAllFilter();
+
+		range.setNext(match);
+		match.setNext(deny);
+
+		final Evaluator evaluator = new EvaluatorExpression();
+		evaluator.setProperties("expression=level >= ERROR && message ~ \"order\"");
+
+		for (int round = 0; round < 3; round++) {
+
+			long time = System.nanoTime();
+			for (int k = 0; k < COUNT; k++) {
+				if (accept(range, events[k % events.length])) {
+					sink++;
+				}
+			}
+			log.info("filter chain : " + (System.nanoTime() - time) / COUNT
+					+ " ns/op");
+
+			time = System.nanoTime();
+			for (int k = 0; k < COUNT; k++) {
+				if (evaluator.isTriggeringEvent(events[k % events.length])) {
+					sink++;
+				}
+			}
+			log.info("expression : " + (System.nanoTime() - time) / COUNT
+					+ " ns/op");
+
+		}
+
+		log.info("sink=" + sink);
+
+	}
+
+}
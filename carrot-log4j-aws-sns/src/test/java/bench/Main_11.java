@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.amazonaws.services.sns.AmazonSNSAsync;
+import com.amazonaws.services.sns.model.ListTopicsRequest;
+import com.amazonaws.services.sns.model.ListTopicsResult;
+import com.amazonaws.services.sns.model.Topic;
+import com.carrotgarden.log4j.aws.sns.TopicCache;
+
+/**
+ * topic ARN resolution time: paged lookup vs process cache vs file cache on
+ * restart; network round trip is simulated
+ */
+public class Main_11 {
+
+	static Logger log = Logger.getLogger(Main_11.class);
+
+	/** typical list topics round trip, millis */
+	static final int LATENCY = 120;
+
+	static final int PAGES = 5;
+
+	static AmazonSNSAsync client() {
+
+		final AmazonSNSAsync amazonClient = mock(AmazonSNSAsync.class);
+
+		when(amazonClient.listTopics(any(ListTopicsRequest.class))).thenAnswer(
+				new Answer<ListTopicsResult>() {
+					@Override
+					public ListTopicsResult answer(
+							final InvocationOnMock invocation) throws Exception {
+
+						Thread.sleep(LATENCY);
+
+						final String token = ((ListTopicsRequest) invocation
+								.getArguments()[0]).getNextToken();
+
+						final int page = token == null ? 0 : Integer
+								.parseInt(token);
+
+						final List<Topic> topicList = new ArrayList<Topic>();
+						for (int k = 0; k < 100; k++) {
+							topicList.add(new Topic()
+									.withTopicArn("arn:aws:sns:us-east-1:123:topic-"
+											+ (page * 100 + k)));
+						}
+
+						return new ListTopicsResult().withTopics(topicList)
+								.withNextToken(
+										page < PAGES - 1 ? "" + (page + 1)
+												: null);
+
+					}
+				});
+
+		return amazonClient;
+
+	}
+
+	static class Tester extends com.carrotgarden.log4j.aws.sns.Appender {
+
+		Tester(final String file) {
+			amazonClient = client();
+			setCredentials("bench");
+			setTopicName("topic-" + (PAGES * 100 - 1));
+			setTopicCacheFile(file);
+		}
+
+		long activate() {
+			final long time = System.nanoTime();
+			topicARN = null;
+			ensureTopicARN();
+			return (System.nanoTime() - time) / 1000 / 1000;
+		}
+
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		final File file = File.createTempFile("topic-cache-", ".properties");
+		file.delete();
+
+		TopicCache.clear();
+
+		log.info("cold lookup      : " + new Tester(null).activate() + " ms");
+		log.info("process cache    : " + new Tester(null).activate() + " ms");
+
+		TopicCache.clear();
+
+		log.info("cold with file   : " + new Tester(file.getPath()).activate()
+				+ " ms");
+
+		/** simulate restart */
+		TopicCache.clear();
+
+		log.info("restart via file : " + new Tester(file.getPath()).activate()
+				+ " ms");
+
+		file.delete();
+
+	}
+
+}
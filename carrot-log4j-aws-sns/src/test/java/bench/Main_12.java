@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.auth.PropertiesCredentials;
+import com.amazonaws.services.sns.AmazonSNSAsync;
+import com.amazonaws.services.sns.AmazonSNSAsyncClient;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.carrotgarden.log4j.aws.sns.ClientRegistry;
+import com.carrotgarden.log4j.aws.sns.ThreadFactoryAWS;
+
+/**
+ * thread count and heap: client per appender vs shared client registry;
+ * publish burst goes to a local closed port
+ */
+public class Main_12 {
+
+	static Logger log = Logger.getLogger(Main_12.class);
+
+	static final int APPENDERS = 20;
+
+	static final int BURST = 10;
+
+	static final String ENDPOINT = "http://localhost:9";
+
+	static long heap() throws Exception {
+		final Runtime runtime = Runtime.getRuntime();
+		for (int k = 0; k < 3; k++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return (runtime.totalMemory() - runtime.freeMemory()) / 1024;
+	}
+
+	static void burst(final AmazonSNSAsync client) {
+		for (int k = 0; k < BURST; k++) {
+			try {
+				client.publishAsync(new PublishRequest("arn:aws:sns:x:1:t",
+						"message", "subject"));
+			} catch (final Exception e) {
+				/** pool saturated */
+			}
+		}
+	}
+
+	static void report(final String name, final long heapBase)
+			throws Exception {
+		Thread.sleep(200);
+		final int threads = Thread.activeCount();
+		log.info(name + " : threads=" + threads + " heap="
+				+ (heap() - heapBase) + " KiB");
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		final File file = File.createTempFile("credentials-", ".properties");
+		final Properties props = new Properties();
+		props.setProperty("accessKey", "access");
+		props.setProperty("secretKey", "secret");
+		final OutputStream output = new FileOutputStream(file);
+		props.store(output, null);
+		output.close();
+
+		final long heapBase = heap();
+
+		log.info("base : threads=" + Thread.activeCount());
+
+		/** client per appender */
+
+		final List<AmazonSNSAsync> clientList = new ArrayList<AmazonSNSAsync>();
+		final List<ExecutorService> serviceList = new ArrayList<ExecutorService>();
+
+		for (int k = 0; k < APPENDERS; k++) {
+			final ExecutorService service = new ThreadPoolExecutor(0, 10, 60,
+					TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+					new ThreadFactoryAWS());
+			final AmazonSNSAsyncClient client = new AmazonSNSAsyncClient(
+					new PropertiesCredentials(file), service);
+			client.setEndpoint(ENDPOINT);
+			clientList.add(client);
+			serviceList.add(service);
+			burst(client);
+		}
+
+		report("separate", heapBase);
+
+		for (int k = 0; k < APPENDERS; k++) {
+			clientList.get(k).shutdown();
+			serviceList.get(k).shutdownNow();
+		}
+
+		clientList.clear();
+		serviceList.clear();
+
+		Thread.sleep(1000);
+
+		/** shared registry */
+
+		final List<ClientRegistry.Lease> leaseList = new ArrayList<ClientRegistry.Lease>();
+
+		for (int k = 0; k < APPENDERS; k++) {
+			final ClientRegistry.Lease lease = ClientRegistry.acquire(
+					file.getPath(), ENDPOINT, 0, 10);
+			leaseList.add(lease);
+			burst(lease.getClient());
+		}
+
+		report("shared", heapBase);
+
+		for (final ClientRegistry.Lease lease : leaseList) {
+			ClientRegistry.release(lease);
+		}
+
+		file.delete();
+
+	}
+
+}
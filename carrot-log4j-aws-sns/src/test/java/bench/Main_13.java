@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.sns.AmazonSNSAsyncClient;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.carrotgarden.log4j.aws.sns.ExecutorMode;
+import com.carrotgarden.log4j.aws.sns.ExecutorVirtual;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * publish executor benchmark: platform pool vs virtual threads at 10, 100,
+ * 1000 concurrent in-flight publishes against local SNS stand-in with fixed
+ * response latency
+ */
+public class Main_13 {
+
+	static Logger log = Logger.getLogger(Main_13.class);
+
+	static final int COUNT = 5000;
+
+	/** stand-in response latency, millis */
+	static final int LATENCY = 50;
+
+	static final byte[] RESPONSE = ("" + //
+			"<PublishResponse xmlns=\"http://sns.amazonaws.com/doc/2010-03-31/\">" + //
+			"<PublishResult><MessageId>1</MessageId></PublishResult>" + //
+			"<ResponseMetadata><RequestId>1</RequestId></ResponseMetadata>" + //
+			"</PublishResponse>").getBytes();
+
+	static HttpServer server() throws Exception {
+
+		final HttpServer server = HttpServer.create(new InetSocketAddress(
+				"localhost", 0), 2000);
+
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) {
+				try {
+					final InputStream input = exchange.getRequestBody();
+					while (input.read() >= 0) {
+					}
+					Thread.sleep(LATENCY);
+					exchange.getResponseHeaders().add("Content-Type",
+							"text/xml");
+					exchange.sendResponseHeaders(200, RESPONSE.length);
+					final OutputStream output = exchange.getResponseBody();
+					output.write(RESPONSE);
+					output.close();
+				} catch (final Exception e) {
+					log.error("server", e);
+				}
+			}
+		});
+
+		server.setExecutor(Executors.newCachedThreadPool());
+
+		server.start();
+
+		return server;
+
+	}
+
+	static long heap() throws Exception {
+		final Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		Thread.sleep(100);
+		return (runtime.totalMemory() - runtime.freeMemory()) / 1024;
+	}
+
+	static void run(final ExecutorMode mode, final int inFlight,
+			final String endpoint) throws Exception {
+
+		final ExecutorService service = mode.newService(0, inFlight);
+
+		final ClientConfiguration config = new ClientConfiguration();
+		config.setMaxConnections(inFlight);
+
+		final AmazonSNSAsyncClient client = new AmazonSNSAsyncClient(
+				new BasicAWSCredentials("access", "secret"), config, service);
+		client.setEndpoint(endpoint);
+
+		/** caller side in-flight window, same for both modes */
+		final Semaphore window = new Semaphore(inFlight);
+		final CountDownLatch done = new CountDownLatch(COUNT);
+
+		final long heapBase = heap();
+		final int threadBase = Thread.activeCount();
+		int threadPeak = threadBase;
+
+		final long time = System.nanoTime();
+
+		for (int k = 0; k < COUNT; k++) {
+			window.acquire();
+			service.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						client.publish(new PublishRequest(
+								"arn:aws:sns:x:1:topic", "message", "subject"));
+					} catch (final Exception e) {
+						log.error("publish", e);
+					} finally {
+						window.release();
+						done.countDown();
+					}
+				}
+			});
+			if (k % 100 == 0) {
+				threadPeak = Math.max(threadPeak, Thread.activeCount());
+			}
+		}
+
+		final long heapPeak = (Runtime.getRuntime().totalMemory() - Runtime
+				.getRuntime().freeMemory()) / 1024;
+
+		done.await(5, TimeUnit.MINUTES);
+
+		final long millis = (System.nanoTime() - time) / 1000 / 1000;
+
+		log.info(String.format(
+				"%-8s in-flight=%4d : %6d msg/s, platform threads +%d, heap +%d KiB",
+				mode, inFlight, COUNT * 1000L / Math.max(1, millis), threadPeak
+						- threadBase, heapPeak - heapBase));
+
+		client.shutdown();
+		service.shutdown();
+
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		final HttpServer server = server();
+
+		final String endpoint = "http://localhost:"
+				+ server.getAddress().getPort();
+
+		log.info("virtual threads supported : " + ExecutorVirtual.isSupported());
+
+		for (final int inFlight : new int[] { 10, 100, 1000 }) {
+			run(ExecutorMode.POOL, inFlight, endpoint);
+			run(ExecutorMode.VIRTUAL, inFlight, endpoint);
+		}
+
+		server.stop(0);
+
+		System.exit(0);
+
+	}
+
+}
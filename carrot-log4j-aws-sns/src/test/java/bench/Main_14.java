@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.carrotgarden.log4j.aws.sns.LatencyHistogram;
+import com.carrotgarden.log4j.aws.sns.StripedCounter;
+
+/**
+ * metrics hot path cost: shared atomic vs striped counter under thread
+ * contention, and histogram record cost
+ */
+public class Main_14 {
+
+	static Logger log = Logger.getLogger(Main_14.class);
+
+	static final int COUNT = 10 * 1000 * 1000;
+
+	interface Task {
+		void run(int index);
+	}
+
+	static long measure(final int threads, final Task task) throws Exception {
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+
+		for (int k = 0; k < threads; k++) {
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (final InterruptedException e) {
+						return;
+					}
+					for (int index = 0; index < COUNT; index++) {
+						task.run(index);
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+
+		final long time = System.nanoTime();
+		start.countDown();
+		done.await();
+
+		return (System.nanoTime() - time) / COUNT;
+
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		for (final int threads : new int[] { 1, 2, 4, 8 }) {
+
+			final AtomicLong atomic = new AtomicLong();
+			final StripedCounter striped = new StripedCounter();
+			final LatencyHistogram histogram = new LatencyHistogram();
+
+			final long atomicNanos = measure(threads, new Task() {
+				@Override
+				public void run(final int index) {
+					atomic.incrementAndGet();
+				}
+			});
+
+			final long stripedNanos = measure(threads, new Task() {
+				@Override
+				public void run(final int index) {
+					striped.increment();
+				}
+			});
+
+			final long histogramNanos = measure(threads, new Task() {
+				@Override
+				public void run(final int index) {
+					histogram.record(index & 0xFFFFF);
+				}
+			});
+
+			log.info("threads=" + threads + " ns/op : atomic=" + atomicNanos
+					+ " striped=" + stripedNanos + " histogram="
+					+ histogramNanos);
+
+		}
+
+	}
+
+}
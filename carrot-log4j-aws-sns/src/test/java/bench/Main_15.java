@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import java.io.File;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import com.carrotgarden.log4j.aws.sns.ThrottleSnapshot;
+
+/**
+ * throttle snapshot save, load and lookup time for 1M entries
+ */
+public class Main_15 {
+
+	static Logger log = Logger.getLogger(Main_15.class);
+
+	static final int COUNT = 1000 * 1000;
+
+	public static void main(final String[] args) throws Exception {
+
+		final File file = File.createTempFile("throttle-", ".snapshot");
+
+		final Random random = new Random(1);
+
+		final long now = System.currentTimeMillis();
+
+		final long[] live = new long[COUNT * 2];
+
+		for (int index = 0; index < COUNT; index++) {
+			live[index * 2] = random.nextLong();
+			live[index * 2 + 1] = now + 600 * 1000;
+		}
+
+		final long[] hashes = new long[COUNT];
+		for (int index = 0; index < COUNT; index++) {
+			hashes[index] = live[index * 2];
+		}
+
+		for (int round = 0; round < 5; round++) {
+
+			long time = System.nanoTime();
+
+			final ThrottleSnapshot source = ThrottleSnapshot.merge(
+					live.clone(), COUNT, null, now);
+
+			final long mergeMillis = (System.nanoTime() - time) / 1000 / 1000;
+
+			time = System.nanoTime();
+
+			source.save(file);
+
+			final long saveMillis = (System.nanoTime() - time) / 1000 / 1000;
+
+			time = System.nanoTime();
+
+			final ThrottleSnapshot snapshot = ThrottleSnapshot.load(file);
+
+			final long loadMillis = (System.nanoTime() - time) / 1000 / 1000;
+
+			time = System.nanoTime();
+
+			long found = 0;
+			for (final long hash : hashes) {
+				if (snapshot.expire(hash) > 0) {
+					found++;
+				}
+			}
+
+			final long lookupNanos = (System.nanoTime() - time) / COUNT;
+
+			log.info("entries=" + snapshot.size() + " found=" + found
+					+ " merge=" + mergeMillis + "ms save=" + saveMillis
+					+ "ms load=" + loadMillis + "ms lookup=" + lookupNanos
+					+ "ns size=" + file.length() / 1024 + "KiB");
+
+		}
+
+		file.delete();
+
+	}
+
+}
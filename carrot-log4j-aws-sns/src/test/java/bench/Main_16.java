@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.amazonaws.services.sns.AmazonSNS;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.amazonaws.services.sns.model.PublishResult;
+import com.carrotgarden.log4j.aws.sns.LatencyHistogram;
+import com.carrotgarden.log4j.aws.sns.PriorityLanes;
+
+/**
+ * fatal event latency while warn events saturate publishers: single lane vs
+ * level lanes; publish is simulated with fixed delay
+ */
+public class Main_16 {
+
+	static Logger log = Logger.getLogger(Main_16.class);
+
+	static final int PUBLISH_MILLIS = 5;
+
+	static final int WARN_RATE = 10; // per fatal
+
+	static final int FATAL_COUNT = 200;
+
+	static LatencyHistogram measure(final String config) throws Exception {
+
+		final LatencyHistogram histogram = new LatencyHistogram();
+
+		final AmazonSNS amazonClient = mock(AmazonSNS.class);
+
+		when(amazonClient.publish(any(PublishRequest.class))).thenAnswer(
+				new Answer<PublishResult>() {
+					@Override
+					public PublishResult answer(
+							final InvocationOnMock invocation) throws Throwable {
+						final String message = ((PublishRequest) invocation
+								.getArguments()[0]).getMessage();
+						if (message.startsWith("F")) {
+							histogram.record(System.nanoTime()
+									- Long.parseLong(message.substring(1)));
+						}
+						Thread.sleep(PUBLISH_MILLIS);
+						return new PublishResult();
+					}
+				});
+
+		final PriorityLanes lanes = PriorityLanes.from(config, 4);
+
+		lanes.start(amazonClient, "arn", null);
+
+		for (int index = 0; index < FATAL_COUNT; index++) {
+			for (int warn = 0; warn < WARN_RATE; warn++) {
+				lanes.offer(Level.WARN, "W", null, null);
+			}
+			lanes.offer(Level.FATAL, "F" + System.nanoTime(), null, null);
+			Thread.sleep(PUBLISH_MILLIS);
+		}
+
+		while (histogram.getCount() + lanes.getDropCount(0) < FATAL_COUNT) {
+			Thread.sleep(10);
+		}
+
+		lanes.stop();
+
+		return histogram;
+
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		for (final String config : new String[] { "ALL=1000",
+				PriorityLanes.DEFAULT_LANES }) {
+
+			final LatencyHistogram histogram = measure(config);
+
+			log.info("lanes=" + config + " fatal count="
+					+ histogram.getCount() + " p50="
+					+ histogram.getQuantile(0.5) / 1000 / 1000 + "ms p99="
+					+ histogram.getQuantile(0.99) / 1000 / 1000 + "ms max="
+					+ histogram.getMaximum() / 1000 / 1000 + "ms");
+
+		}
+
+	}
+
+}
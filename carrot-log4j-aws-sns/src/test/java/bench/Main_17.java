@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.spi.LoggingEvent;
+
+import com.amazonaws.services.sns.AmazonSNSAsync;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.carrotgarden.log4j.aws.sns.Appender;
+import com.carrotgarden.log4j.aws.sns.EvaluatorSimple;
+
+/**
+ * caller thread time per accepted event: render on caller thread vs event
+ * snapshot with render on publisher thread; publish is mocked
+ */
+public class Main_17 {
+
+	static Logger log = Logger.getLogger(Main_17.class);
+
+	static final int COUNT = 100 * 1000;
+
+	/** remote activation is replaced with mock client */
+	static class Mocked extends Appender {
+
+		@Override
+		protected boolean ensureCredentials() {
+			return true;
+		}
+
+		@Override
+		protected boolean ensureAmazonClient() {
+			amazonClient = mock(AmazonSNSAsync.class);
+			when(amazonClient.publishAsync(any(PublishRequest.class)))
+					.thenReturn(null);
+			return true;
+		}
+
+	}
+
+	static void measure(final boolean renderAsync, final boolean location)
+			throws Exception {
+
+		final Mocked appender = new Mocked();
+
+		appender.setTopicARN("arn:topic:bench");
+		appender.setEvaluator(new EvaluatorSimple());
+		appender.setRenderAsync(renderAsync);
+		appender.setRenderQueueSize(COUNT);
+		appender.setSnapshotLocation(location);
+		appender.setSnapshotMDC("user");
+
+		appender.activateOptions();
+		appender.awaitActivation(5, TimeUnit.SECONDS);
+
+		final Logger logger = Logger.getLogger("bench.Service");
+
+		MDC.put("user", "bench");
+
+		final long start = System.nanoTime();
+
+		for (int index = 0; index < COUNT; index++) {
+			appender.doAppend(new LoggingEvent(Main_17.class.getName(),
+					logger, Level.ERROR, "message " + index, null));
+		}
+
+		final long nanos = (System.nanoTime() - start) / COUNT;
+
+		MDC.remove("user");
+
+		log.info("renderAsync=" + renderAsync + " snapshotLocation="
+				+ location + " caller=" + nanos + " ns/event rendered="
+				+ appender.getMetrics().getEventsRendered());
+
+		appender.close();
+
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		for (int round = 0; round < 3; round++) {
+			measure(false, true);
+			measure(true, true);
+			measure(true, false);
+		}
+
+	}
+
+}
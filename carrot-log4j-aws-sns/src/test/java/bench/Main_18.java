@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import java.lang.management.ManagementFactory;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.io.SerializedString;
+
+import com.carrotgarden.log4j.aws.sns.LayoutJSON;
+
+/**
+ * json layout time and allocation per exception event: full stack text vs
+ * depth limited stack walk; deep recursive stack with cause chain
+ */
+public class Main_18 {
+
+	static Logger log = Logger.getLogger(Main_18.class);
+
+	static final int COUNT = 20 * 1000;
+
+	static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	/** former stack writer: renders full text, keeps first lines */
+	static class LayoutText extends LayoutJSON {
+		@Override
+		protected void writeStack(final SerializedString name,
+				final LoggingEvent event, final JsonGenerator jsonGen)
+				throws Exception {
+			writeStackText(name, event, jsonGen);
+		}
+	}
+
+	static Exception deep(final int depth) {
+		if (depth == 0) {
+			return new RuntimeException("outer", new IllegalStateException(
+					"inner", new Exception("root")));
+		}
+		return deep(depth - 1);
+	}
+
+	static void measure(final String name, final LayoutJSON layout,
+			final Exception error) {
+
+		layout.activateOptions();
+
+		final Logger logger = Logger.getLogger("bench.Service");
+
+		final long id = Thread.currentThread().getId();
+
+		for (int round = 0; round < 2; round++) {
+
+			final long bytes = THREADS.getThreadAllocatedBytes(id);
+			final long time = System.nanoTime();
+
+			for (int index = 0; index < COUNT; index++) {
+				/** fresh event: throwable text is cached per event */
+				layout.format(new LoggingEvent("", logger, Level.ERROR,
+						"message", error));
+			}
+
+			final long nanos = (System.nanoTime() - time) / COUNT;
+			final long alloc = (THREADS.getThreadAllocatedBytes(id) - bytes)
+					/ COUNT;
+
+			log.info(name + " : " + nanos + " ns/event, " + alloc
+					+ " bytes/event");
+
+		}
+
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		final Exception error = deep(200);
+
+		measure("stack text", new LayoutText(), error);
+		measure("stack walk", new LayoutJSON(), error);
+
+	}
+
+}
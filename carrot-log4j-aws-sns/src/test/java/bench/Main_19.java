@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+import com.carrotgarden.log4j.aws.sns.LayoutJSON;
+import com.carrotgarden.log4j.aws.sns.LayoutSimple;
+import com.carrotgarden.log4j.aws.sns.MessageTemplate;
+
+/**
+ * message template cost vs event rendering on realistic messages
+ */
+public class Main_19 {
+
+	static Logger log = Logger.getLogger(Main_19.class);
+
+	static final int COUNT = 2 * 1000 * 1000;
+
+	static final String[] MESSAGES = {
+			"user 12345 not found",
+			"request 3f2504e0-4f89-11d3-9a0c-0305e82c3301 failed after 150ms",
+			"connect to 10.0.0.15:8080 timed out",
+			"job started at 2024-01-01T10:00:00.123Z",
+			"can't find user 'bob' in \"realm-7\"",
+			"GET /api/v1/users/98765 returned 503",
+			"java.lang.IllegalStateException: queue full, size=1000",
+			"order id=AB-778812 amount=-5.25 EUR", };
+
+	interface Task {
+		int run(int index);
+	}
+
+	static void measure(final String name, final Task task) {
+
+		long sink = 0;
+
+		for (int index = 0; index < COUNT / 10; index++) {
+			sink += task.run(index);
+		}
+
+		final long time = System.nanoTime();
+
+		for (int index = 0; index < COUNT; index++) {
+			sink += task.run(index);
+		}
+
+		final long nanos = (System.nanoTime() - time) / COUNT;
+
+		log.info(name + " : " + nanos + " ns/message (" + sink + ")");
+
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		final Logger logger = Logger.getLogger("bench.Service");
+
+		final LoggingEvent[] events = new LoggingEvent[MESSAGES.length];
+
+		for (int index = 0; index < events.length; index++) {
+			events[index] = new LoggingEvent("", logger, Level.ERROR,
+					MESSAGES[index], null);
+		}
+
+		final StringBuilder buffer = new StringBuilder(256);
+
+		measure("template    ", new Task() {
+			@Override
+			public int run(final int index) {
+				buffer.setLength(0);
+				MessageTemplate.append(MESSAGES[index % MESSAGES.length],
+						buffer);
+				return buffer.length();
+			}
+		});
+
+		final LayoutSimple simple = new LayoutSimple();
+		simple.activateOptions();
+
+		measure("layout simple", new Task() {
+			@Override
+			public int run(final int index) {
+				return simple.format(events[index % events.length]).length();
+			}
+		});
+
+		final LayoutJSON json = new LayoutJSON();
+		json.setFieldFile(LayoutJSON.IGNORE);
+		json.setFieldClass(LayoutJSON.IGNORE);
+		json.setFieldMethod(LayoutJSON.IGNORE);
+		json.setFieldLine(LayoutJSON.IGNORE);
+		json.activateOptions();
+
+		measure("layout json  ", new Task() {
+			@Override
+			public int run(final int index) {
+				return json.format(events[index % events.length]).length();
+			}
+		});
+
+	}
+
+}
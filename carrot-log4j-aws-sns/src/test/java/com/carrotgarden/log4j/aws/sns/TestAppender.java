@@ -11,8 +11,15 @@ import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
 import org.apache.log4j.spi.LoggingEvent;
 import org.junit.After;
 import org.junit.Before;
@@ -22,7 +29,10 @@ import org.mockito.ArgumentCaptor;
 import com.amazonaws.services.sns.AmazonSNSAsync;
 import com.amazonaws.services.sns.model.CreateTopicRequest;
 import com.amazonaws.services.sns.model.CreateTopicResult;
+import com.amazonaws.services.sns.model.ListTopicsRequest;
+import com.amazonaws.services.sns.model.ListTopicsResult;
 import com.amazonaws.services.sns.model.PublishRequest;
+import com.amazonaws.services.sns.model.Topic;
 
 /**
  * original idea from
@@ -43,6 +53,7 @@ public class TestAppender {
 
 	@Before
 	public void setUp() throws Exception {
+		TopicCache.clear();
 	}
 
 	@After
@@ -98,6 +109,355 @@ public class TestAppender {
 
 		verify(amazonClient, times(1)).publishAsync(any(PublishRequest.class));
 
+		final Metrics metrics = appender.getMetrics();
+
+		assertEquals(3, metrics.getEventsSeen());
+		assertEquals(2, metrics.getEventsRejected());
+		assertEquals(1, metrics.getEventsRendered());
+		assertEquals(1, metrics.getRenderCount());
+		assertTrue(metrics.getBytesRendered() > 0);
+
+	}
+
+	@Test
+	public void testRoutes() throws Exception {
+
+		final String pagerArn = "arn:aws:sns:us-east-1:123:pager";
+		final String digestArn = "arn:aws:sns:us-east-1:123:digest";
+		final String defaultArn = "arn:aws:sns:us-east-1:123:default";
+
+		final AmazonSNSAsync amazonClient = mock(AmazonSNSAsync.class);
+
+		when(amazonClient.listTopics(any(ListTopicsRequest.class))).thenReturn(
+				new ListTopicsResult().withTopics(
+						new Topic().withTopicArn(pagerArn),
+						new Topic().withTopicArn(digestArn)));
+
+		final ArgumentCaptor<PublishRequest> routeCaptor = ArgumentCaptor
+				.forClass(PublishRequest.class);
+
+		final ArgumentCaptor<PublishRequest> defaultCaptor = ArgumentCaptor
+				.forClass(PublishRequest.class);
+
+		final Appender appender = new Appender();
+
+		appender.amazonClient = amazonClient;
+		appender.isActive = true;
+		appender.topicARN = defaultArn;
+		appender.setEvaluator(new EvaluatorSimple());
+		appender.setRoutes("" + //
+				"pager = level == FATAL \n" + //
+				"digest = level >= WARN && logger ^= \"" + LOGGER + "\" \n" //
+		);
+
+		appender.ensureLayout();
+		appender.ensureEvaluator();
+
+		assertTrue(appender.ensureTopicName());
+		assertTrue(appender.ensureRoutes());
+
+		final Logger logger = Logger.getLogger(LOGGER);
+
+		appender.append(new LoggingEvent("", logger, Level.FATAL, MESSAGE,
+				null));
+		appender.append(new LoggingEvent("", logger, Level.INFO, MESSAGE,
+				null));
+
+		verify(amazonClient, timeout(1000).times(2)).publish(
+				routeCaptor.capture());
+		verify(amazonClient, times(1)).publishAsync(defaultCaptor.capture());
+
+		final List<String> arnList = new ArrayList<String>();
+		for (final PublishRequest request : routeCaptor.getAllValues()) {
+			arnList.add(request.getTopicArn());
+			assertTrue(request.getMessage().contains(MESSAGE));
+		}
+
+		assertTrue(arnList.contains(pagerArn));
+		assertTrue(arnList.contains(digestArn));
+
+		assertEquals(defaultArn, defaultCaptor.getValue().getTopicArn());
+
+		/** fatal event is rendered once for both routes */
+		assertSame(routeCaptor.getAllValues().get(0).getMessage(),
+				routeCaptor.getAllValues().get(1).getMessage());
+
+		for (final Route route : appender.routeList) {
+			route.stop();
+		}
+
+	}
+
+	/** remote steps are simulated; first client attempt fails */
+	static class Delayed extends Appender {
+
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		final AtomicInteger attempts = new AtomicInteger();
+
+		final AmazonSNSAsync client = mock(AmazonSNSAsync.class);
+
+		volatile int failures = 1;
+
+		@Override
+		protected boolean ensureCredentials() {
+			return true;
+		}
+
+		@Override
+		protected boolean ensureAmazonClient() {
+			try {
+				latch.await();
+			} catch (final InterruptedException e) {
+				return false;
+			}
+			if (attempts.incrementAndGet() <= failures) {
+				return false;
+			}
+			amazonClient = client;
+			return true;
+		}
+
+	}
+
+	@Test
+	public void testBackgroundActivation() throws Exception {
+
+		final Delayed appender = new Delayed();
+
+		appender.setTopicARN("arn:topic:test");
+		appender.setTopicSubject(SUBJECT);
+		appender.setEvaluator(new EvaluatorSimple());
+		appender.setActivationBackoff(10);
+
+		appender.activateOptions();
+
+		assertFalse(appender.isActive());
+		assertTrue(appender.isPending());
+
+		final Logger logger = Logger.getLogger(LOGGER);
+
+		appender.append(new LoggingEvent("", logger, Level.WARN, MESSAGE,
+				null));
+
+		verify(appender.client, never()).publishAsync(
+				any(PublishRequest.class));
+
+		appender.latch.countDown();
+
+		assertTrue(appender.awaitActivation(5, TimeUnit.SECONDS));
+		assertFalse(appender.isPending());
+		assertEquals(2, appender.attempts.get());
+
+		final ArgumentCaptor<PublishRequest> requestCaptor = ArgumentCaptor
+				.forClass(PublishRequest.class);
+
+		verify(appender.client, times(1)).publishAsync(
+				requestCaptor.capture());
+
+		assertTrue(requestCaptor.getValue().getMessage().contains(MESSAGE));
+
+		appender.close();
+
+	}
+
+	@Test
+	public void testRenderAsync() throws Exception {
+
+		final Delayed appender = new Delayed();
+
+		appender.failures = 0;
+		appender.latch.countDown();
+
+		appender.setTopicARN("arn:topic:test");
+		appender.setTopicSubject(SUBJECT);
+		appender.setEvaluator(new EvaluatorSimple());
+		appender.setMessageAttributes("level, mdc.user");
+		appender.setRenderAsync("true");
+
+		appender.activateOptions();
+
+		assertTrue(appender.awaitActivation(5, TimeUnit.SECONDS));
+
+		assertArrayEquals(new String[] { "user" }, appender.snapshotKeys);
+
+		final Logger logger = Logger.getLogger(LOGGER);
+
+		MDC.put("user", "alice");
+
+		appender.append(new LoggingEvent("", logger, Level.WARN, MESSAGE,
+				null));
+
+		MDC.remove("user");
+
+		final ArgumentCaptor<PublishRequest> requestCaptor = ArgumentCaptor
+				.forClass(PublishRequest.class);
+
+		/** evaluated, rendered and published on publisher thread */
+		verify(appender.client, timeout(1000).times(1)).publishAsync(
+				requestCaptor.capture());
+
+		final PublishRequest request = requestCaptor.getValue();
+
+		assertTrue(request.getMessage().contains(MESSAGE));
+		assertTrue(request.getMessage().contains(
+				Thread.currentThread().getName()));
+
+		assertEquals("alice", ((MessageAttributes.Attributed) request)
+				.getAttributes().get("user"));
+
+		assertEquals(1, appender.getMetrics().getEventsRendered());
+
+		appender.close();
+
+		assertNull(appender.renderQueue);
+
+	}
+
+	@Test
+	public void testDigest() throws Exception {
+
+		final Delayed appender = new Delayed();
+
+		appender.failures = 0;
+		appender.latch.countDown();
+
+		appender.setTopicARN("arn:topic:test");
+		appender.setTopicSubject(SUBJECT);
+		appender.setEvaluatorClassName(EvaluatorSimple.class.getName());
+		appender.setEvaluatorProperties("mask=LOGGER_NAME,MESSAGE_TEMPLATE"
+				+ " \n root=ERROR");
+		appender.setDigestPeriod(3600);
+		appender.setDigestTop(5);
+
+		appender.activateOptions();
+
+		assertTrue(appender.awaitActivation(5, TimeUnit.SECONDS));
+
+		final Logger logger = Logger.getLogger(LOGGER);
+
+		for (int index = 0; index < 10; index++) {
+			appender.append(new LoggingEvent("", logger, Level.ERROR,
+					"user " + (1000 + index) + " failed", null));
+		}
+
+		appender.append(new LoggingEvent("", logger, Level.ERROR,
+				MESSAGE, null));
+
+		/** rejected by evaluator, not counted */
+		appender.append(new LoggingEvent("", logger, Level.WARN, MESSAGE,
+				null));
+
+		/** counted, not published */
+		verify(appender.client, never()).publishAsync(
+				any(PublishRequest.class));
+
+		appender.publishDigest();
+
+		final ArgumentCaptor<PublishRequest> requestCaptor = ArgumentCaptor
+				.forClass(PublishRequest.class);
+
+		verify(appender.client, times(1)).publishAsync(
+				requestCaptor.capture());
+
+		final PublishRequest request = requestCaptor.getValue();
+
+		assertEquals("digest " + SUBJECT, request.getSubject());
+		assertTrue(request.getMessage(),
+				request.getMessage().contains(" : 11 events, 2 signatures\n"));
+		assertTrue(request.getMessage(),
+				request.getMessage().contains("#1 count=10"));
+		assertTrue(request.getMessage(),
+				request.getMessage().contains("signature: /" + LOGGER
+						+ "/user {} failed\n"));
+
+		/** empty interval is not published */
+		appender.publishDigest();
+
+		verify(appender.client, times(1)).publishAsync(
+				any(PublishRequest.class));
+
+		appender.close();
+
+	}
+
+	@Test
+	public void testSelfTest() throws Exception {
+
+		final AmazonSNSAsync amazonClient = mock(AmazonSNSAsync.class);
+
+		final ArgumentCaptor<PublishRequest> requestCaptor = ArgumentCaptor
+				.forClass(PublishRequest.class);
+
+		when(amazonClient.publish(requestCaptor.capture())).thenReturn(null);
+
+		final Appender appender = new Appender();
+
+		appender.topicARN = "arn:topic:test";
+		appender.amazonClient = amazonClient;
+		appender.isActive = true;
+
+		final long[] micros = appender.selfTest(1000);
+
+		assertEquals(Appender.SELF_TEST_LIMIT, micros.length);
+
+		verify(amazonClient, times(Appender.SELF_TEST_LIMIT)).publish(
+				any(PublishRequest.class));
+
+		final PublishRequest request = requestCaptor.getValue();
+
+		assertTrue(request instanceof MessageAttributes.Attributed);
+		assertEquals("true", ((MessageAttributes.Attributed) request)
+				.getAttributes().get(MessageAttributes.SELF_TEST));
+
+	}
+
+	@Test
+	public void testEvaluatorClose() throws Exception {
+
+		final Evaluator one = mock(Evaluator.class);
+		final Evaluator two = mock(Evaluator.class);
+
+		final Appender appender = new Appender();
+
+		appender.setEvaluator(one);
+		appender.setEvaluator(one);
+
+		verify(one, never()).close();
+
+		/** replaced evaluator is closed */
+		appender.setEvaluator(two);
+
+		verify(one).close();
+		verify(two, never()).close();
+
+		appender.close();
+
+		verify(two).close();
+
+	}
+
+	@Test
+	public void testActivationFailure() throws Exception {
+
+		final Delayed appender = new Delayed();
+
+		appender.failures = Integer.MAX_VALUE;
+
+		appender.setTopicARN("arn:topic:test");
+		appender.setActivationBackoff(10);
+		appender.setActivationRetries(2);
+
+		appender.latch.countDown();
+
+		appender.activateOptions();
+
+		assertFalse(appender.awaitActivation(5, TimeUnit.SECONDS));
+		assertFalse(appender.isPending());
+		assertEquals(3, appender.attempts.get());
+
+		appender.close();
+
 	}
 
 }
@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestClientRegistry {
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+
+		file = File.createTempFile("credentials-", ".properties");
+
+		final Properties props = new Properties();
+		props.setProperty("accessKey", "access");
+		props.setProperty("secretKey", "secret");
+
+		final OutputStream output = new FileOutputStream(file);
+		props.store(output, null);
+		output.close();
+
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testShare() throws Exception {
+
+		final int size = ClientRegistry.size();
+
+		final ClientRegistry.Lease one = ClientRegistry.acquire(
+				file.getPath(), null, 0, 10);
+		final ClientRegistry.Lease two = ClientRegistry.acquire(
+				file.getPath(), null, 0, 10);
+
+		assertSame(one, two);
+		assertSame(one.getClient(), two.getClient());
+		assertEquals(2, ClientRegistry.count(one));
+		assertEquals(size + 1, ClientRegistry.size());
+
+		ClientRegistry.release(one);
+
+		assertEquals(1, ClientRegistry.count(two));
+		assertFalse(two.getService().isShutdown());
+
+		ClientRegistry.release(two);
+
+		assertEquals(size, ClientRegistry.size());
+		assertTrue(two.getService().isShutdown());
+
+		/** extra release is ignored */
+		ClientRegistry.release(two);
+
+		assertEquals(0, ClientRegistry.count(two));
+
+	}
+
+	@Test
+	public void testEndpoint() throws Exception {
+
+		final ClientRegistry.Lease one = ClientRegistry.acquire(
+				file.getPath(), null, 0, 10);
+		final ClientRegistry.Lease two = ClientRegistry.acquire(
+				file.getPath(), "sns.eu-west-1.amazonaws.com", 0, 10);
+
+		assertNotSame(one.getClient(), two.getClient());
+
+		ClientRegistry.release(one);
+		ClientRegistry.release(two);
+
+	}
+
+	@Test
+	public void testIsolation() throws Exception {
+
+		final int inFlight = 10;
+
+		final ClientRegistry.Lease one = ClientRegistry.acquire(
+				file.getPath(), null, ExecutorMode.POOL, 0, 10, inFlight);
+		final ClientRegistry.Lease two = ClientRegistry.acquire(
+				file.getPath(), null, ExecutorMode.POOL, 0, 10, inFlight);
+
+		assertSame(one, two);
+
+		final ThreadPoolExecutor service = (ThreadPoolExecutor) one
+				.getService();
+
+		assertEquals(2 * inFlight, service.getMaximumPoolSize());
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final Runnable blocked = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					release.await();
+				} catch (final InterruptedException e) {
+				}
+			}
+		};
+
+		/** busy appender takes its whole in-flight limit */
+		for (int index = 0; index < inFlight; index++) {
+			one.getService().execute(blocked);
+		}
+
+		final CountDownLatch done = new CountDownLatch(1);
+
+		/** other appender still publishes */
+		two.getService().execute(new Runnable() {
+			@Override
+			public void run() {
+				done.countDown();
+			}
+		});
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+
+		release.countDown();
+
+		ClientRegistry.release(one, inFlight);
+
+		assertEquals(10, service.getMaximumPoolSize());
+
+		ClientRegistry.release(two, inFlight);
+
+		assertTrue(service.isShutdown());
+
+	}
+
+	@Test(expected = Exception.class)
+	public void testMissingCredentials() throws Exception {
+		ClientRegistry.acquire(file.getPath() + ".missing", null, 0, 10);
+	}
+
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Test;
+
+public class TestDigest {
+
+	private static final Logger logger = Logger.getLogger("tester");
+
+	static LoggingEvent event(final String message, final long time) {
+		return new LoggingEvent("", logger, time, Level.ERROR, message, null);
+	}
+
+	@Test
+	public void testReport() throws Exception {
+
+		final Digest digest = new Digest(2, 100);
+
+		assertNull(digest.drain(System.currentTimeMillis()));
+
+		digest.record(event("one", 1000), "/one", null);
+		digest.record(event("two", 2000), "/two", null);
+		digest.record(event("two", 3000), "/two", null);
+		digest.record(event("two", 4000), "/two", null);
+		digest.record(event("three", 5000), "/three", null);
+
+		assertEquals(5, digest.getTotal());
+		assertEquals(3, digest.getSize());
+
+		final String report = digest.drain(System.currentTimeMillis());
+
+		assertTrue(report, report.contains(" : 5 events, 3 signatures\n"));
+
+		/** top signature first, with its times and sample */
+		final int two = report.indexOf("#1 count=3"
+				+ " first=1970-01-01T00:00:02.000Z"
+				+ " last=1970-01-01T00:00:04.000Z"
+				+ "\nsignature: /two\nsample: two\n");
+
+		assertTrue(report, two > 0);
+		assertTrue(report, report.indexOf("#2 count=1") > two);
+		assertFalse(report, report.contains("#3"));
+		assertTrue(report, report.contains("\nother: 1 events in 1 signatures\n"));
+
+		/** next interval is empty */
+		assertEquals(0, digest.getTotal());
+		assertNull(digest.drain(System.currentTimeMillis()));
+
+	}
+
+	@Test
+	public void testSlots() throws Exception {
+
+		final Digest digest = new Digest(10, 2);
+
+		digest.record(event("one", 1000), "/one", null);
+		digest.record(event("two", 1000), "/two", null);
+		digest.record(event("three", 1000), "/three", null);
+		digest.record(event("one", 1000), "/one", null);
+
+		assertEquals(2, digest.getSize());
+		assertEquals(4, digest.getTotal());
+
+		final String report = digest.drain(System.currentTimeMillis());
+
+		assertTrue(report, report.contains("#1 count=2"));
+		assertTrue(report, report.contains(
+				"\nother: 1 events, 1 events over slot limit\n"));
+
+	}
+
+	@Test
+	public void testSample() throws Exception {
+
+		final Digest digest = new Digest(1, 10);
+
+		final LayoutSimple layout = new LayoutSimple();
+		layout.activateOptions();
+
+		final StringBuilder message = new StringBuilder();
+		for (int index = 0; index < 2 * Digest.SAMPLE_LIMIT; index++) {
+			message.append('x');
+		}
+
+		digest.record(event(message.toString(), 1000), "/one", layout);
+
+		final String report = digest.drain(System.currentTimeMillis());
+
+		assertTrue(report, report.contains("\nsample: " + layout.format(event("", 1000))
+				.substring(0, 10)));
+		assertTrue(report, report.length() < 2 * Digest.SAMPLE_LIMIT);
+
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+
+		final Digest digest = new Digest(10, 100);
+
+		final int threads = 8;
+		final int count = 10000;
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+
+		for (int k = 0; k < threads; k++) {
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int index = 0; index < count; index++) {
+							digest.record(event("message", 1000), "/"
+									+ (index % 10), null);
+						}
+					} catch (final InterruptedException e) {
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+
+		start.countDown();
+		done.await();
+
+		assertEquals(threads * count, digest.getTotal());
+		assertEquals(10, digest.getSize());
+
+		final String report = digest.drain(System.currentTimeMillis());
+
+		assertTrue(report, report.contains("#1 count=" + threads * count / 10));
+		assertTrue(report, report.contains("#10 count=" + threads * count / 10));
+
+	}
+
+	@Test
+	public void testLastSeen() throws Exception {
+
+		final Digest digest = new Digest(10, 100);
+
+		final int threads = 8;
+		final int count = 10000;
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+
+		for (int k = 0; k < threads; k++) {
+			final int thread = k;
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						/** interleaved times, latest is recorded by one thread */
+						for (int index = 0; index < count; index++) {
+							digest.record(event("message", 1000 + index
+									* threads + thread), "/one", null);
+						}
+					} catch (final InterruptedException e) {
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+
+		start.countDown();
+		done.await();
+
+		/** out of order event does not move last seen back */
+		digest.record(event("message", 1000), "/one", null);
+
+		final String report = digest.drain(System.currentTimeMillis());
+
+		assertTrue(report, report.contains("#1 count="
+				+ (threads * count + 1) + " first="));
+
+		/** 1000 + 10000 * 8 - 1 millis */
+		assertTrue(report, report.contains(" last=1970-01-01T00:01:20.999Z\n"));
+
+	}
+
+}
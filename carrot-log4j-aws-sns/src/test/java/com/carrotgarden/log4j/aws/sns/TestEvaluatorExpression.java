@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Test;
+
+public class TestEvaluatorExpression {
+
+	private static final String MESSAGE = "order 123 rejected";
+
+	@After
+	public void tearDown() throws Exception {
+		MDC.remove("tenant");
+	}
+
+	private static LoggingEvent event(final String name, final Level level,
+			final Throwable error) {
+		return new LoggingEvent("", Logger.getLogger(name), level, MESSAGE,
+				error);
+	}
+
+	private static Evaluator evaluator(final String expression) {
+		final Evaluator evaluator = new EvaluatorExpression();
+		evaluator.setProperties(EvaluatorExpression.PROP_EXPRESSION + "="
+				+ expression);
+		return evaluator;
+	}
+
+	@Test
+	public void testDefault() throws Exception {
+
+		final Evaluator evaluator = new EvaluatorExpression();
+
+		assertFalse(evaluator.isTriggeringEvent(event("any", Level.FATAL, null)));
+
+		evaluator.setProperties("other=value");
+
+		assertFalse(evaluator.isTriggeringEvent(event("any", Level.FATAL, null)));
+
+	}
+
+	@Test
+	public void testLevel() throws Exception {
+
+		final Evaluator evaluator = evaluator("level >= ERROR");
+
+		assertFalse(evaluator.isTriggeringEvent(event("any", Level.WARN, null)));
+		assertTrue(evaluator.isTriggeringEvent(event("any", Level.ERROR, null)));
+		assertTrue(evaluator.isTriggeringEvent(event("any", Level.FATAL, null)));
+
+		assertTrue(evaluator("level < warn").isTriggeringEvent(
+				event("any", Level.INFO, null)));
+
+	}
+
+	@Test
+	public void testCombined() throws Exception {
+
+		final Evaluator evaluator = evaluator("level >= ERROR "
+				+ "&& logger ^= \"com.acme\" && mdc.tenant != \"test\" "
+				+ "&& throwable.class ~ \"SQL\"");
+
+		final SQLException error = new SQLException("fail");
+
+		MDC.put("tenant", "prod");
+
+		assertTrue(evaluator.isTriggeringEvent(event("com.acme.Dao",
+				Level.ERROR, error)));
+		assertFalse(evaluator.isTriggeringEvent(event("com.acme.Dao",
+				Level.WARN, error)));
+		assertFalse(evaluator.isTriggeringEvent(event("org.other.Dao",
+				Level.ERROR, error)));
+		assertFalse(evaluator.isTriggeringEvent(event("com.acme.Dao",
+				Level.ERROR, new IllegalStateException())));
+		assertFalse(evaluator.isTriggeringEvent(event("com.acme.Dao",
+				Level.ERROR, null)));
+
+		MDC.put("tenant", "test");
+
+		assertFalse(evaluator.isTriggeringEvent(event("com.acme.Dao",
+				Level.ERROR, error)));
+
+		MDC.remove("tenant");
+
+		assertTrue(evaluator.isTriggeringEvent(event("com.acme.Dao",
+				Level.ERROR, error)));
+
+	}
+
+	@Test
+	public void testLogic() throws Exception {
+
+		final Evaluator evaluator = evaluator("!(logger $= \"Noisy\") "
+				+ "&& (level == FATAL || message ~ \"rejected\")");
+
+		assertTrue(evaluator.isTriggeringEvent(event("com.acme.Service",
+				Level.INFO, null)));
+		assertFalse(evaluator.isTriggeringEvent(event("com.acme.Noisy",
+				Level.FATAL, null)));
+
+		assertFalse(evaluator("message == \"other\"").isTriggeringEvent(
+				event("any", Level.INFO, null)));
+
+	}
+
+	@Test
+	public void testInvalid() throws Exception {
+
+		final String[] invalid = { "level", "level >= NOPE",
+				"level ~ ERROR", "logger > \"a\"", "nope == 1",
+				"(level == INFO", "message == \"open", "level == INFO &&" };
+
+		for (final String expression : invalid) {
+			assertNull(expression, EvaluatorExpression.compile(expression));
+			assertFalse(expression, evaluator(expression).isTriggeringEvent(
+					event("any", Level.FATAL, null)));
+		}
+
+		/** last valid expression stays in effect */
+		final EvaluatorExpression evaluator = new EvaluatorExpression();
+
+		evaluator.setExpression("level >= ERROR");
+		evaluator.setExpression("level >= NOPE");
+
+		assertEquals("level >= ERROR", evaluator.getExpression());
+		assertTrue(evaluator.isTriggeringEvent(event("any", Level.ERROR, null)));
+		assertFalse(evaluator.isTriggeringEvent(event("any", Level.WARN, null)));
+
+	}
+
+	@Test
+	public void testCostOrder() throws Exception {
+
+		final EvaluatorExpression.And and = (EvaluatorExpression.And) EvaluatorExpression
+				.compile("message ~ \"x\" && logger == \"y\" && level > INFO");
+
+		assertTrue(and.terms[0] instanceof EvaluatorExpression.LevelTest);
+		assertTrue(and.terms[2] instanceof EvaluatorExpression.TextTest);
+
+	}
+
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestEvaluatorHostDedup {
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("host-dedup-", ".table");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	static LoggingEvent event(final String name) {
+		return new LoggingEvent("", Logger.getLogger(name), Level.ERROR,
+				"message", null);
+	}
+
+	static EvaluatorHostDedup evaluator(final File file, final String props) {
+		final EvaluatorHostDedup evaluator = new EvaluatorHostDedup();
+		evaluator.setProperties(" file=" + file.getAbsolutePath()
+				+ " \n mask=LOGGER_NAME \n " + props);
+		return evaluator;
+	}
+
+	@Test
+	public void testShared() throws Exception {
+
+		final EvaluatorHostDedup one = evaluator(file, "period=10");
+		final EvaluatorHostDedup two = evaluator(file, "period=10");
+
+		assertTrue(one.isTriggeringEvent(event("one")));
+		assertFalse(one.isTriggeringEvent(event("one")));
+		assertFalse(two.isTriggeringEvent(event("one")));
+
+		assertTrue(two.isTriggeringEvent(event("two")));
+		assertFalse(one.isTriggeringEvent(event("two")));
+
+		one.close();
+		two.close();
+
+	}
+
+	@Test
+	public void testExpire() throws Exception {
+
+		final EvaluatorHostDedup evaluator = evaluator(file,
+				"period=1 \n unit=SECONDS");
+
+		assertTrue(evaluator.isTriggeringEvent(event("one")));
+		assertFalse(evaluator.isTriggeringEvent(event("one")));
+
+		Thread.sleep(2100);
+
+		assertTrue(evaluator.isTriggeringEvent(event("one")));
+		assertFalse(evaluator.isTriggeringEvent(event("one")));
+
+		evaluator.close();
+
+	}
+
+	@Test
+	public void testLock() throws Exception {
+
+		final EvaluatorHostDedup one = evaluator(file, "lock=true");
+		final EvaluatorHostDedup two = evaluator(file, "lock=true");
+
+		assertTrue(one.state.table.isLocking());
+
+		assertTrue(one.isTriggeringEvent(event("one")));
+		assertFalse(two.isTriggeringEvent(event("one")));
+
+		one.close();
+		two.close();
+
+	}
+
+	@Test
+	public void testTableFull() throws Exception {
+
+		final EvaluatorHostDedup evaluator = evaluator(file, "slots=4");
+
+		assertEquals(4, evaluator.state.table.getSlots());
+
+		/** probe chain is full: fail open */
+		for (int index = 0; index < 100; index++) {
+			evaluator.isTriggeringEvent(event("name-" + index));
+		}
+		assertTrue(evaluator.isTriggeringEvent(event("name-" + 1000)));
+		assertTrue(evaluator.isTriggeringEvent(event("name-" + 1000)));
+
+		evaluator.close();
+
+	}
+
+	@Test
+	public void testNoFile() throws Exception {
+
+		final EvaluatorHostDedup evaluator = new EvaluatorHostDedup();
+		evaluator.setProperties(" period=10 ");
+
+		assertTrue(evaluator.isTriggeringEvent(event("one")));
+		assertTrue(evaluator.isTriggeringEvent(event("one")));
+
+	}
+
+	static final int COUNT = 10 * 1000;
+
+	static final int PROCESS_COUNT = 4;
+
+	/** every signature is accepted exactly once across processes */
+	@Test
+	public void testProcesses() throws Exception {
+		verifyProcesses("false");
+		file.delete();
+		verifyProcesses("true");
+	}
+
+	void verifyProcesses(final String lock) throws Exception {
+
+		final String java = System.getProperty("java.home") + File.separator
+				+ "bin" + File.separator + "java";
+
+		final String start = ""
+				+ (System.currentTimeMillis() + 1000 * PROCESS_COUNT);
+
+		final List<Process> processList = new ArrayList<Process>();
+
+		for (int index = 0; index < PROCESS_COUNT; index++) {
+			final ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+					System.getProperty("java.class.path"),
+					Child.class.getName(), file.getAbsolutePath(), lock,
+					start, "" + COUNT);
+			builder.redirectErrorStream(true);
+			processList.add(builder.start());
+		}
+
+		int accepted = 0;
+
+		for (final Process process : processList) {
+
+			final BufferedReader reader = new BufferedReader(
+					new InputStreamReader(process.getInputStream(), Util.UTF_8));
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(Child.ACCEPTED)) {
+					accepted += Integer.parseInt(line.substring(Child.ACCEPTED
+							.length()));
+				}
+			}
+
+			assertEquals(0, process.waitFor());
+
+		}
+
+		assertEquals(COUNT, accepted);
+
+	}
+
+	/** evaluates same signatures as its siblings */
+	public static class Child {
+
+		static final String ACCEPTED = "accepted=";
+
+		public static void main(final String[] args) throws Exception {
+
+			final EvaluatorHostDedup evaluator = evaluator(new File(args[0]),
+					"lock=" + args[1]);
+
+			final long start = Long.parseLong(args[2]);
+
+			final int count = Integer.parseInt(args[3]);
+
+			final List<LoggingEvent> eventList = new ArrayList<LoggingEvent>();
+			for (int index = 0; index < count; index++) {
+				eventList.add(event("name-" + index));
+			}
+
+			while (System.currentTimeMillis() < start) {
+				Thread.sleep(1);
+			}
+
+			int accepted = 0;
+			for (final LoggingEvent event : eventList) {
+				if (evaluator.isTriggeringEvent(event)) {
+					accepted++;
+				}
+			}
+
+			evaluator.close();
+
+			System.out.println(ACCEPTED + accepted);
+
+		}
+
+	}
+
+}
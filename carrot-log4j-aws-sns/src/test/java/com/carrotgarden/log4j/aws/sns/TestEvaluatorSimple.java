@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestEvaluatorSimple {
+
+	private static final String MESSAGE = "logging message";
+
+	private Evaluator evaluator;
+
+	@Before
+	public void setUp() throws Exception {
+		evaluator = new EvaluatorSimple();
+		evaluator.setProperties("" + //
+				" root=WARN \n" + //
+				" com.amazonaws=ERROR \n" + //
+				" com.company=INFO:400:MILLISECONDS \n" + //
+				" com.company.noisy=never \n" + //
+				" mask=LOGGER_NAME,LINE_NUMBER \n" //
+		);
+	}
+
+	private static LoggingEvent event(final String name, final Level level) {
+		return new LoggingEvent("", Logger.getLogger(name), level, MESSAGE,
+				null);
+	}
+
+	@Test
+	public void testDefault() throws Exception {
+
+		final Evaluator evaluator = new EvaluatorSimple();
+
+		assertTrue(evaluator.isTriggeringEvent(event("any", Level.DEBUG)));
+		assertTrue(evaluator.isTriggeringEvent(event("any", Level.DEBUG)));
+
+	}
+
+	@Test
+	public void testTriggeringKey() throws Exception {
+
+		final LoggingEvent event = event("org.other", Level.WARN);
+
+		assertNull(evaluator.triggeringKey(event("org.other", Level.INFO)));
+		assertEquals(evaluator.getSignature().make(event),
+				evaluator.triggeringKey(event));
+
+		/** throttled rule hands over throttler key */
+		final LoggingEvent company = event("com.company", Level.INFO);
+
+		assertEquals(evaluator.getSignature().make(company),
+				evaluator.triggeringKey(company));
+		assertNull(evaluator.triggeringKey(company));
+
+	}
+
+	@Test
+	public void testRootLevel() throws Exception {
+
+		assertFalse(evaluator.isTriggeringEvent(event("org.other", Level.INFO)));
+		assertTrue(evaluator.isTriggeringEvent(event("org.other", Level.WARN)));
+		assertTrue(evaluator.isTriggeringEvent(event("org.other", Level.WARN)));
+
+	}
+
+	@Test
+	public void testPrefixLevel() throws Exception {
+
+		assertFalse(evaluator.isTriggeringEvent(event(
+				"com.amazonaws.http.AmazonHttpClient", Level.WARN)));
+		assertTrue(evaluator.isTriggeringEvent(event(
+				"com.amazonaws.http.AmazonHttpClient", Level.ERROR)));
+
+		/** segment boundary, not string prefix */
+		assertTrue(evaluator.isTriggeringEvent(event("com.amazonawsx",
+				Level.WARN)));
+
+	}
+
+	@Test
+	public void testNever() throws Exception {
+
+		assertFalse(evaluator.isTriggeringEvent(event("com.company.noisy",
+				Level.FATAL)));
+		assertFalse(evaluator.isTriggeringEvent(event(
+				"com.company.noisy.Worker", Level.FATAL)));
+
+	}
+
+	@Test
+	public void testThrottle() throws Exception {
+
+		final LoggingEvent event = event("com.company.Service", Level.INFO);
+
+		assertFalse(evaluator.isTriggeringEvent(event("com.company.Service",
+				Level.DEBUG)));
+
+		assertTrue(evaluator.isTriggeringEvent(event));
+		assertFalse(evaluator.isTriggeringEvent(event));
+
+		Thread.sleep(800);
+
+		assertTrue(evaluator.isTriggeringEvent(event));
+		assertFalse(evaluator.isTriggeringEvent(event));
+
+	}
+
+	@Test
+	public void testReconfigure() throws Exception {
+
+		assertFalse(evaluator.isTriggeringEvent(event("org.other", Level.INFO)));
+
+		evaluator.setProperties("root=INFO");
+
+		assertTrue(evaluator.isTriggeringEvent(event("org.other", Level.INFO)));
+
+	}
+
+	@Test
+	public void testReconfigureKeepsThrottle() throws Exception {
+
+		final LoggingEvent event = event("com.company.Service", Level.INFO);
+
+		assertTrue(evaluator.isTriggeringEvent(event));
+		assertFalse(evaluator.isTriggeringEvent(event));
+
+		/** same rule key, longer period: suppression window survives */
+		evaluator.setProperties("" + //
+				" root=WARN \n" + //
+				" com.company=INFO:10:MINUTES \n" + //
+				" mask=LOGGER_NAME,LINE_NUMBER \n" //
+		);
+
+		assertFalse(evaluator.isTriggeringEvent(event));
+
+	}
+
+	@Test
+	public void testInvalidRule() throws Exception {
+
+		evaluator.setProperties("root=WARN \n com.company=BAD:1 \n");
+
+		assertFalse(evaluator.isTriggeringEvent(event("com.company.Service",
+				Level.INFO)));
+
+	}
+
+}
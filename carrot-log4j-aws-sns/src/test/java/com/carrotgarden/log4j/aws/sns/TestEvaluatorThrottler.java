@@ -9,6 +9,11 @@ package com.carrotgarden.log4j.aws.sns;
 
 import static org.junit.Assert.*;
 
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.apache.log4j.spi.LoggingEvent;
@@ -75,4 +80,212 @@ public class TestEvaluatorThrottler {
 		assertFalse(evaluator.isTriggeringEvent(event));
 
 	}
+
+	@Test
+	public void testTopSuppressed() throws Exception {
+
+		final EvaluatorThrottler evaluator = new EvaluatorThrottler();
+		evaluator.setProperties(" mask=LOGGER_NAME");
+
+		final LoggingEvent one = new LoggingEvent("", Logger.getLogger("one"),
+				Level.INFO, MESSAGE, null);
+
+		final LoggingEvent two = new LoggingEvent("", Logger.getLogger("two"),
+				Level.INFO, MESSAGE, null);
+
+		final LoggingEvent tre = new LoggingEvent("", Logger.getLogger("tre"),
+				Level.INFO, MESSAGE, null);
+
+		for (int k = 0; k < 3; k++) {
+			evaluator.isTriggeringEvent(one);
+		}
+		for (int k = 0; k < 5; k++) {
+			evaluator.isTriggeringEvent(two);
+		}
+		evaluator.isTriggeringEvent(tre);
+
+		final Map<String, Long> top = evaluator.topSuppressed(10);
+
+		/** never suppressed signature is not listed */
+		assertEquals(2, top.size());
+
+		final Iterator<Long> counts = top.values().iterator();
+
+		assertEquals(4L, counts.next().longValue());
+		assertEquals(2L, counts.next().longValue());
+
+		assertEquals(1, evaluator.topSuppressed(1).size());
+
+	}
+
+	@Test
+	public void testReconfigureKeepsState() throws Exception {
+
+		final EvaluatorThrottler evaluator = new EvaluatorThrottler();
+		evaluator.setProperties(" period=10 \n unit=MINUTES \n mask=LOGGER_NAME");
+
+		final LoggingEvent event = new LoggingEvent("", Logger.getLogger("one"),
+				Level.INFO, MESSAGE, null);
+
+		assertTrue(evaluator.isTriggeringEvent(event));
+		assertFalse(evaluator.isTriggeringEvent(event));
+
+		/** same settings: window is kept */
+		evaluator.setProperties(" period=10 \n unit=MINUTES \n mask=LOGGER_NAME");
+		assertFalse(evaluator.isTriggeringEvent(event));
+
+		/** longer period: window is kept */
+		evaluator.setProperties(" period=20 \n unit=MINUTES \n mask=LOGGER_NAME");
+		assertFalse(evaluator.isTriggeringEvent(event));
+
+		assertEquals(3L, evaluator.topSuppressed(1).values().iterator().next()
+				.longValue());
+
+	}
+
+	@Test
+	public void testReconfigureRetime() throws Exception {
+
+		final EvaluatorThrottler evaluator = new EvaluatorThrottler();
+		evaluator.setProperties(" period=10 \n unit=MINUTES \n mask=LOGGER_NAME");
+
+		final LoggingEvent event = new LoggingEvent("", Logger.getLogger("one"),
+				Level.INFO, MESSAGE, null);
+
+		assertTrue(evaluator.isTriggeringEvent(event));
+
+		Thread.sleep(100);
+
+		/** shorter period which already passed: entry is dropped */
+		evaluator.setProperties(" period=50 \n unit=MILLISECONDS \n mask=LOGGER_NAME");
+
+		assertEquals(0, evaluator.size());
+		assertTrue(evaluator.isTriggeringEvent(event));
+		assertFalse(evaluator.isTriggeringEvent(event));
+
+	}
+
+	@Test
+	public void testReconfigureRekey() throws Exception {
+
+		final EvaluatorThrottler evaluator = new EvaluatorThrottler();
+		evaluator.setProperties(" mask=LOGGER_NAME,LEVEL");
+
+		final Logger logger = Logger.getLogger("one");
+
+		final LoggingEvent info = new LoggingEvent("", logger, Level.INFO,
+				MESSAGE, null);
+
+		final LoggingEvent warn = new LoggingEvent("", logger, Level.WARN,
+				MESSAGE, null);
+
+		assertTrue(evaluator.isTriggeringEvent(info));
+		assertTrue(evaluator.isTriggeringEvent(warn));
+		assertFalse(evaluator.isTriggeringEvent(warn));
+
+		assertEquals(2, evaluator.size());
+
+		/** coarser mask: both entries merge under logger name */
+		evaluator.setProperties(" mask=LOGGER_NAME");
+
+		assertEquals(1, evaluator.size());
+		assertFalse(evaluator.isTriggeringEvent(info));
+		assertFalse(evaluator.isTriggeringEvent(warn));
+
+		assertEquals(3L, evaluator.topSuppressed(1).values().iterator().next()
+				.longValue());
+
+	}
+
+	@Test
+	public void testReconfigureRekeyParts() throws Exception {
+
+		final EvaluatorThrottler evaluator = new EvaluatorThrottler();
+		evaluator.setProperties(" mask=LOGGER_NAME");
+
+		final LoggingEvent event = new LoggingEvent("", Logger.getLogger("one"),
+				Level.INFO, MESSAGE, null);
+
+		assertTrue(evaluator.isTriggeringEvent(event));
+
+		/** finer mask: entry is re-keyed from kept location parts */
+		evaluator.setProperties(" mask=LOGGER_NAME,THREAD_NAME,LINE_NUMBER");
+
+		assertEquals(1, evaluator.size());
+		assertFalse(evaluator.isTriggeringEvent(event));
+
+	}
+
+	@Test
+	public void testSweep() throws Exception {
+
+		final EvaluatorThrottler evaluator = new EvaluatorThrottler();
+		evaluator.setProperties(" period=50 \n unit=MILLISECONDS \n mask=LOGGER_NAME");
+
+		final int count = 100;
+
+		for (int index = 0; index < count; index++) {
+			assertTrue(evaluator.isTriggeringEvent(new LoggingEvent("", Logger
+					.getLogger("past-" + index), Level.INFO, MESSAGE, null)));
+		}
+
+		Thread.sleep(100);
+
+		for (int index = 0; index < count; index++) {
+			assertTrue(evaluator.isTriggeringEvent(new LoggingEvent("", Logger
+					.getLogger("next-" + index), Level.INFO, MESSAGE, null)));
+		}
+
+		/** each insert checks a few entries; expired ones are gone */
+		assertEquals(count, evaluator.size());
+
+	}
+
+	@Test
+	public void testReconfigureConcurrent() throws Exception {
+
+		final EvaluatorThrottler evaluator = new EvaluatorThrottler();
+		evaluator.setProperties(" mask=LOGGER_NAME");
+
+		final int loggers = 100;
+
+		final LoggingEvent[] events = new LoggingEvent[loggers];
+
+		for (int index = 0; index < loggers; index++) {
+			events[index] = new LoggingEvent("", Logger.getLogger("logger-"
+					+ index), Level.INFO, MESSAGE, null);
+			assertTrue(evaluator.isTriggeringEvent(events[index]));
+		}
+
+		final AtomicInteger accepted = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(4);
+
+		for (int k = 0; k < 4; k++) {
+			new Thread() {
+				@Override
+				public void run() {
+					for (int round = 0; round < 100; round++) {
+						for (final LoggingEvent event : events) {
+							if (evaluator.isTriggeringEvent(event)) {
+								accepted.incrementAndGet();
+							}
+						}
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+
+		for (int round = 0; round < 50; round++) {
+			evaluator.setProperties(" period=" + (10 + round % 2)
+					+ " \n mask=LOGGER_NAME");
+		}
+
+		done.await();
+
+		/** no burst of duplicates while reconfiguring */
+		assertEquals(0, accepted.get());
+
+	}
+
 }
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.NDC;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Test;
+
+public class TestEventSnapshot {
+
+	private static final Logger logger = Logger.getLogger("tester");
+
+	@After
+	public void tearDown() throws Exception {
+		MDC.remove("user");
+		MDC.remove("other");
+		NDC.remove();
+	}
+
+	/** run on other thread, which has own MDC */
+	static <T> T elsewhere(final Task<T> task) throws Exception {
+
+		final AtomicReference<T> result = new AtomicReference<T>();
+
+		final Thread thread = new Thread("elsewhere") {
+			@Override
+			public void run() {
+				MDC.put("other", "other-thread");
+				result.set(task.call());
+			}
+		};
+
+		thread.start();
+		thread.join();
+
+		return result.get();
+
+	}
+
+	interface Task<T> {
+		T call();
+	}
+
+	@Test
+	public void testState() throws Exception {
+
+		MDC.put("user", "alice");
+		MDC.put("other", "ignored");
+		NDC.push("request");
+
+		final Exception error = new Exception("error");
+
+		final LoggingEvent event = new LoggingEvent("", logger, Level.ERROR,
+				"message", error);
+
+		final LoggingEvent snapshot = EventSnapshot.take(event,
+				new String[] { "user", "missing" }, false);
+
+		MDC.put("user", "bob");
+		NDC.pop();
+
+		assertEquals(event.getTimeStamp(), snapshot.getTimeStamp());
+		assertEquals(Level.ERROR, snapshot.getLevel());
+		assertEquals("tester", snapshot.getLoggerName());
+		assertEquals("message", snapshot.getMessage());
+		assertSame(error, snapshot.getThrowableInformation().getThrowable());
+
+		final String thread = Thread.currentThread().getName();
+
+		/** state is read on other thread */
+		assertEquals(thread, elsewhere(new Task<String>() {
+			@Override
+			public String call() {
+				return snapshot.getThreadName();
+			}
+		}));
+
+		assertEquals("request", elsewhere(new Task<String>() {
+			@Override
+			public String call() {
+				return snapshot.getNDC();
+			}
+		}));
+
+		assertEquals("alice", elsewhere(new Task<Object>() {
+			@Override
+			public Object call() {
+				snapshot.getMDCCopy();
+				return snapshot.getMDC("user");
+			}
+		}));
+
+		/** only selected keys; no fallback to current thread */
+		assertNull(elsewhere(new Task<Object>() {
+			@Override
+			public Object call() {
+				return snapshot.getMDC("other");
+			}
+		}));
+
+		assertEquals(1, snapshot.getProperties().size());
+
+	}
+
+	@Test
+	public void testLocation() throws Exception {
+
+		final LoggingEvent event = new LoggingEvent(
+				TestEventSnapshot.class.getName(), logger, Level.ERROR,
+				"message", null);
+
+		final LoggingEvent without = EventSnapshot.take(event, new String[0],
+				false);
+
+		assertSame(LocationInfo.NA_LOCATION_INFO,
+				without.getLocationInformation());
+
+		/** resolved on caller thread */
+		final LoggingEvent with = EventSnapshot.take(event, new String[0],
+				true);
+
+		assertNotNull(with.getLocationInformation());
+		assertSame(event.getLocationInformation(),
+				with.getLocationInformation());
+
+	}
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestExecutorMode {
+
+	@Test
+	public void testFrom() throws Exception {
+		assertEquals(ExecutorMode.VIRTUAL, ExecutorMode.from(" virtual "));
+		assertEquals(ExecutorMode.POOL, ExecutorMode.from("POOL"));
+		assertEquals(ExecutorMode.DEFAULT, ExecutorMode.from("bad"));
+		assertEquals(ExecutorMode.DEFAULT, ExecutorMode.from(null));
+	}
+
+	@Test
+	public void testFallback() throws Exception {
+
+		final ExecutorService service = ExecutorMode.VIRTUAL.newService(0, 4);
+
+		try {
+			if (ExecutorVirtual.isSupported()) {
+				assertTrue(service instanceof ExecutorVirtual);
+			} else {
+				assertTrue(service instanceof ThreadPoolExecutor);
+				assertEquals(4,
+						((ThreadPoolExecutor) service).getMaximumPoolSize());
+			}
+		} finally {
+			service.shutdown();
+		}
+
+	}
+
+	@Test
+	public void testVirtualLimit() throws Exception {
+
+		assumeTrue(ExecutorVirtual.isSupported());
+
+		final int limit = 4;
+		final int count = 100;
+
+		final ExecutorService service = ExecutorVirtual.create(limit);
+
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger maximum = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(count);
+
+		for (int k = 0; k < count; k++) {
+			service.execute(new Runnable() {
+				@Override
+				public void run() {
+					final int value = active.incrementAndGet();
+					while (true) {
+						final int past = maximum.get();
+						if (value <= past
+								|| maximum.compareAndSet(past, value)) {
+							break;
+						}
+					}
+					try {
+						Thread.sleep(5);
+					} catch (final InterruptedException e) {
+					}
+					active.decrementAndGet();
+					done.countDown();
+				}
+			});
+		}
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertTrue(maximum.get() <= limit);
+
+		service.shutdown();
+
+	}
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.carrotgarden.log4j.aws.sns.Signature.Mask;
+
+public class TestHashThrottle {
+
+	/** distinct table index and tag */
+	static long hash(final long value) {
+		return value << 40 | value;
+	}
+
+	@Test
+	public void testThrottle() throws Exception {
+
+		final HashThrottle throttle = new HashThrottle(16, 400,
+				TimeUnit.MILLISECONDS);
+
+		assertTrue(throttle.isTriggering(hash(1)));
+		assertFalse(throttle.isTriggering(hash(1)));
+		assertTrue(throttle.isTriggering(hash(2)));
+		assertFalse(throttle.isTriggering(hash(2)));
+
+		Thread.sleep(800);
+
+		assertTrue(throttle.isTriggering(hash(1)));
+		assertFalse(throttle.isTriggering(hash(1)));
+
+	}
+
+	@Test
+	public void testFull() throws Exception {
+
+		final HashThrottle throttle = new HashThrottle(3, 10, TimeUnit.MINUTES);
+
+		assertEquals(4, throttle.getSlots());
+
+		for (long value = 1; value <= 4; value++) {
+			assertTrue(throttle.isTriggering(hash(value)));
+		}
+
+		/** no free slot: fail open */
+		assertTrue(throttle.isTriggering(hash(5)));
+		assertTrue(throttle.isTriggering(hash(5)));
+
+		assertFalse(throttle.isTriggering(hash(4)));
+
+	}
+
+	@Test
+	public void testProperties() throws Exception {
+
+		final String props = " period=3 \n unit=SECONDS \n slots=100 \n mask=LEVEL";
+
+		final HashThrottle throttle = HashThrottle.from(props);
+
+		assertEquals(128, throttle.getSlots());
+		assertEquals(3000, throttle.getPeriodMillis());
+
+		assertEquals(1, HashThrottle.signatureFrom(props).mask.size());
+		assertTrue(HashThrottle.signatureFrom(props).mask.contains(Mask.LEVEL));
+
+		assertEquals(EvaluatorThrottler.DEFAULT_SIGNATURE,
+				HashThrottle.signatureFrom(null));
+
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+
+		final HashThrottle throttle = new HashThrottle(1024, 10,
+				TimeUnit.MINUTES);
+
+		final int threads = 8;
+		final int count = 1000;
+
+		final AtomicInteger accepted = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+
+		for (int k = 0; k < threads; k++) {
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (long hash = 1; hash <= count; hash++) {
+							if (throttle.isTriggering(hash * 0x9E3779B97F4A7C15L)) {
+								accepted.incrementAndGet();
+							}
+						}
+					} catch (final InterruptedException e) {
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+
+		start.countDown();
+		done.await();
+
+		assertEquals(count, accepted.get());
+
+	}
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.FutureTask;
+
+import org.junit.Test;
+
+public class TestInFlightLimit {
+
+	private static FutureTask<Void> future() {
+		return new FutureTask<Void>(new Runnable() {
+			@Override
+			public void run() {
+			}
+		}, null);
+	}
+
+	@Test
+	public void testLimit() throws Exception {
+
+		final InFlightLimit limit = new InFlightLimit(2);
+
+		final FutureTask<Void> one = future();
+		final FutureTask<Void> two = future();
+
+		assertTrue(limit.tryAcquire());
+		limit.track(one);
+		assertTrue(limit.tryAcquire());
+		limit.track(two);
+
+		assertEquals(2, limit.getCount());
+		assertFalse(limit.tryAcquire());
+
+		one.run();
+
+		assertTrue(limit.tryAcquire());
+		assertEquals(2, limit.getCount());
+
+	}
+
+	@Test
+	public void testDoneAndFailed() throws Exception {
+
+		final InFlightLimit limit = new InFlightLimit(1);
+
+		assertTrue(limit.tryAcquire());
+		limit.track(null);
+		assertEquals(0, limit.getCount());
+
+		assertTrue(limit.tryAcquire());
+		limit.release();
+		assertEquals(0, limit.getCount());
+
+	}
+
+}
@@ -20,6 +20,9 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.MDC;
 import org.apache.log4j.NDC;
 import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -141,6 +144,116 @@ public class TestLayoutJSON {
 
 	}
 
+	@Test
+	public void validateStackDepthPerCause() throws Exception {
+
+		jsonLayout.setStackDepth(2);
+		jsonLayout.activateOptions();
+
+		final Exception cause = new IllegalStateException("inner");
+		final Exception error = new RuntimeException("outer", cause);
+
+		final LoggingEvent event = new LoggingEvent("", log, Level.ERROR,
+				"Hello World", error);
+
+		final JsonNode stack = new ObjectMapper().readTree(
+				jsonLayout.format(event)).get("stack");
+
+		assertEquals(2, stack.size());
+
+		final JsonNode outer = stack.get(0);
+
+		assertEquals("java.lang.RuntimeException", outer.get("class")
+				.getTextValue());
+		assertEquals("outer", outer.get("message").getTextValue());
+
+		final JsonNode outerFrames = outer.get("frames");
+
+		assertEquals(3, outerFrames.size());
+		assertEquals(error.getStackTrace()[0].toString(), outerFrames.get(0)
+				.getTextValue());
+		assertEquals("... " + (error.getStackTrace().length - 2) + " more",
+				outerFrames.get(2).getTextValue());
+
+		final JsonNode inner = stack.get(1);
+
+		assertEquals("java.lang.IllegalStateException", inner.get("class")
+				.getTextValue());
+		assertEquals("inner", inner.get("message").getTextValue());
+		assertTrue(inner.get("frames").get(inner.get("frames").size() - 1)
+				.getTextValue().startsWith("... "));
+
+	}
+
+	@Test
+	public void validateStackTextDepth() throws Exception {
+
+		jsonLayout.setStackDepth(2);
+		jsonLayout.activateOptions();
+
+		/** deserialized event has no throwable, only text */
+		final LoggingEvent event = new LoggingEvent("", log,
+				System.currentTimeMillis(), Level.ERROR, "Hello World",
+				"main", new ThrowableInformation(new String[] { "one", "two",
+						"three" }), null, null, null);
+
+		final JsonNode stack = new ObjectMapper().readTree(
+				jsonLayout.format(event)).get("stack");
+
+		assertEquals(2, stack.size());
+		assertEquals("two", stack.get(1).get("1").getTextValue());
+
+	}
+
+	@Test
+	public void validateIgnoredFieldIsNotLogged() {
+
+		jsonLayout.setFieldThread(LayoutJSON.IGNORE);
+		jsonLayout.activateOptions();
+
+		final LoggingEvent event = createDefaultLoggingEvent();
+
+		final String output = jsonLayout.format(event);
+
+		assertFalse(output.contains("\"thread\""));
+		validateLevel(output, event);
+		validateMessage(output, event);
+
+	}
+
+	@Test
+	public void validateStaticFieldsAreLogged() {
+
+		jsonLayout.setFieldHost("host");
+		jsonLayout.setFieldIdentity("identity");
+		jsonLayout.setIdentity("instance-1");
+		jsonLayout.activateOptions();
+
+		final LoggingEvent event = createDefaultLoggingEvent();
+
+		final String output = jsonLayout.format(event);
+
+		assertTrue(output.contains("\"host\":\""));
+		assertTrue(output.contains("\"identity\":\"instance-1\""));
+		validateBasicLogOutput(output, event);
+
+	}
+
+	@Test
+	public void validateOptionChangeRebuildsPlan() {
+
+		final LoggingEvent event = createDefaultLoggingEvent();
+
+		jsonLayout.format(event);
+
+		jsonLayout.setFieldMessage("text");
+
+		final String output = jsonLayout.format(event);
+
+		assertTrue(output.contains("\"text\":\"Hello World\""));
+
+	}
+
 	private void validateBasicLogOutput(final String logOutput,
 			final LoggingEvent event) {
 		validateLevel(logOutput, event);
@@ -238,7 +351,8 @@ public class TestLayoutJSON {
 
 		final List<String> partial = new ArrayList<String>();
 
-		partial.add("java.lang.IllegalArgumentException: Test Exception in event");
+		partial.add("\"class\":\"java.lang.IllegalArgumentException\"");
+		partial.add("\"message\":\"Test Exception in event\"");
 
 		// partial.add("org.elasticflume.log4j.JSONLayoutTest.createDefaultLoggingEventWithException(JSONLayoutTest.java:");
 
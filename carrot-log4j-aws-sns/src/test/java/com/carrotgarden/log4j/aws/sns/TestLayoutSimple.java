@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLayoutSimple {
+
+	private static final Logger log = Logger
+			.getLogger("com.carrotgarden.tester");
+
+	private LayoutSimple layout;
+
+	@Before
+	public void setUp() throws Exception {
+		layout = new LayoutSimple();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		MDC.remove("user");
+	}
+
+	private LoggingEvent event(final String message, final Throwable error) {
+		return new LoggingEvent("", log, 1345076800738L, Level.ERROR, message,
+				error);
+	}
+
+	@Test
+	public void testBasicPattern() {
+
+		layout.setConversionPattern("%d{UTC} %p %c{1} [%t] %m%%");
+		layout.activateOptions();
+
+		final String output = layout.format(event("hello", null));
+
+		assertEquals("2012-08-16T00:26:40.738Z ERROR tester ["
+				+ Thread.currentThread().getName() + "] hello%", output);
+
+	}
+
+	@Test
+	public void testLoggerParts() {
+
+		layout.setConversionPattern("%c|%c{2}|%c{9}");
+		layout.activateOptions();
+
+		final String output = layout.format(event("", null));
+
+		assertEquals("com.carrotgarden.tester|carrotgarden.tester"
+				+ "|com.carrotgarden.tester", output);
+
+	}
+
+	@Test
+	public void testMDC() {
+
+		MDC.put("user", "U1");
+
+		layout.setConversionPattern("%X{user}/%X{missing}/%m");
+		layout.activateOptions();
+
+		assertEquals("U1//text", layout.format(event("text", null)));
+
+	}
+
+	@Test
+	public void testThrowableSummary() {
+
+		layout.setConversionPattern("%m%e");
+		layout.activateOptions();
+
+		final Exception error = new IllegalStateException("ignored");
+
+		final String output = layout.format(event("failure", error));
+
+		assertTrue(output.startsWith("failure (java.lang.IllegalStateException at "
+				+ getClass().getName() + ".testThrowableSummary("));
+		assertFalse(output.contains("ignored"));
+		assertFalse(layout.ignoresThrowable());
+
+		assertEquals("failure", layout.format(event("failure", null)));
+
+	}
+
+	@Test
+	public void testIgnoresThrowable() {
+
+		layout.setConversionPattern("%m");
+
+		assertTrue(layout.ignoresThrowable());
+
+	}
+
+	@Test
+	public void testConversionLimit() {
+
+		layout.setConversionPattern("%.5m|%p");
+		layout.activateOptions();
+
+		assertEquals("abcde|ERROR", layout.format(event("abcdefgh", null)));
+		assertEquals("abc|ERROR", layout.format(event("abc", null)));
+
+	}
+
+	@Test
+	public void testByteLimit() {
+
+		layout.setConversionPattern("%m");
+		layout.setByteLimit(10);
+		layout.activateOptions();
+
+		assertEquals("0123456...", layout.format(event("0123456789ABC", null)));
+		assertEquals("0123456789", layout.format(event("0123456789", null)));
+
+		/** cut must not split surrogate pair */
+		assertEquals("0123...",
+				layout.format(event("0123\ud83d\ude00\ud83d\ude00", null)));
+
+	}
+
+	@Test
+	public void testUnknownConversion() {
+
+		layout.setConversionPattern("%q %m");
+		layout.activateOptions();
+
+		assertEquals("%q text", layout.format(event("text", null)));
+
+	}
+
+	@Test
+	public void testDefaultPattern() {
+
+		final String output = layout.format(event("text", null));
+
+		assertNotNull(output);
+		assertTrue(output.endsWith(" ERROR tester - text"));
+
+	}
+
+}
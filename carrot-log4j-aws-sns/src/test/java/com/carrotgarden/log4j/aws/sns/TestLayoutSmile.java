@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.spi.LoggingEvent;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.smile.SmileFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLayoutSmile {
+
+	private static final Logger log = Logger.getLogger(TestLayoutSmile.class);
+
+	private LayoutSmile layout;
+
+	private ObjectMapper mapper;
+
+	private SmileFactory factory;
+
+	@Before
+	public void setUp() throws Exception {
+
+		layout = new LayoutSmile();
+		layout.activateOptions();
+
+		factory = new SmileFactory();
+		mapper = new ObjectMapper(factory);
+
+	}
+
+	private JsonNode decode(final String payload) throws Exception {
+		return mapper.readTree(LayoutSmile.decode(factory, payload));
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+
+		final LoggingEvent event = new LoggingEvent("", log, Level.ERROR,
+				"Hello World", new IllegalStateException("Test Exception"));
+
+		final String payload = layout.format(event);
+
+		assertTrue(payload.matches("[A-Za-z0-9+/=]+"));
+
+		final JsonNode node = decode(payload);
+
+		assertEquals(log.getName(), node.get("logger").getTextValue());
+		assertEquals("ERROR", node.get("level").getTextValue());
+		assertEquals("Hello World", node.get("message").getTextValue());
+		assertEquals(event.getThreadName(), node.get("thread").getTextValue());
+		assertTrue(node.get("stack").isArray());
+
+	}
+
+	@Test
+	public void testSameFieldsAsJSON() throws Exception {
+
+		final LoggingEvent event = new LoggingEvent("", log, Level.WARN,
+				"Hello World", null);
+
+		final LayoutJSON json = new LayoutJSON();
+		json.activateOptions();
+
+		final JsonNode expected = new ObjectMapper().readTree(json
+				.format(event));
+
+		final JsonNode actual = decode(layout.format(event));
+
+		assertEquals(expected, actual);
+
+	}
+
+	@Test
+	public void testPayloadSizeLimit() throws Exception {
+
+		final StringBuilder message = new StringBuilder();
+		for (int k = 0; message.length() < Util.MESSAGE_LIMIT; k++) {
+			message.append(k);
+		}
+
+		MDC.put("UserId", message.toString());
+
+		try {
+
+			layout.setMdcKeys("UserId");
+			layout.setStackDepth(100);
+
+			final LoggingEvent event = new LoggingEvent("", log, Level.WARN,
+					message.toString(), new Exception(message.toString()));
+
+			final String payload = layout.format(event);
+
+			assertTrue(payload.length() <= Util.MESSAGE_LIMIT);
+
+			/** event is cut, not replaced with error record */
+			final JsonNode node = decode(payload);
+
+			assertNull(node.get(layout.getFieldError()));
+			assertEquals(log.getName(), node.get("logger").getTextValue());
+			assertEquals("WARN", node.get("level").getTextValue());
+
+			final String text = node.get("message").getTextValue();
+
+			assertTrue(text.length() > LayoutSmile.TEXT_BUDGET / 4);
+			assertTrue(message.toString().startsWith(text));
+			assertTrue(node.get("stack").isArray());
+
+		} finally {
+			MDC.remove("UserId");
+		}
+
+	}
+
+}
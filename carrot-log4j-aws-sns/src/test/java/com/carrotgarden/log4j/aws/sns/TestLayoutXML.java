@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.NDC;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+public class TestLayoutXML {
+
+	private static final Logger log = Logger.getLogger(TestLayoutXML.class);
+
+	private LayoutXML layout;
+
+	@Before
+	public void setUp() throws Exception {
+		layout = new LayoutXML();
+		layout.activateOptions();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		MDC.remove("UserId");
+	}
+
+	private static Document parse(final String text) throws Exception {
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.parse(new ByteArrayInputStream(text.getBytes(Util.UTF_8)));
+	}
+
+	private static String field(final Document document, final String name) {
+		final NodeList list = document.getElementsByTagName(name);
+		return list.getLength() == 0 ? null : list.item(0).getTextContent();
+	}
+
+	@Test
+	public void testBasicStructure() throws Exception {
+
+		final LoggingEvent event = new LoggingEvent("", log, Level.WARN,
+				"Hello World", null);
+
+		final Document document = parse(layout.format(event));
+
+		assertEquals("event", document.getDocumentElement().getTagName());
+		assertEquals(log.getName(), field(document, "logger"));
+		assertEquals("WARN", field(document, "level"));
+		assertEquals("Hello World", field(document, "message"));
+		assertEquals(event.getThreadName(), field(document, "thread"));
+		assertNotNull(field(document, "time"));
+		assertNull(field(document, "stack"));
+		assertNull(field(document, "ndc"));
+
+	}
+
+	@Test
+	public void testEscape() throws Exception {
+
+		final String message = "a < b && c > \"d\" \u0001 \n end";
+
+		final LoggingEvent event = new LoggingEvent("", log, Level.WARN,
+				message, null);
+
+		final Document document = parse(layout.format(event));
+
+		assertEquals("a < b && c > \"d\" ? \n end", field(document, "message"));
+
+	}
+
+	@Test
+	public void testStackDepth() throws Exception {
+
+		layout.setStackDepth(2);
+
+		final LoggingEvent event = new LoggingEvent("", log, Level.WARN,
+				"Hello World", new IllegalArgumentException("Test <Exception>"));
+
+		final Document document = parse(layout.format(event));
+
+		final NodeList list = document.getElementsByTagName("entry");
+
+		assertEquals(2, list.getLength());
+		assertEquals("java.lang.IllegalArgumentException: Test <Exception>",
+				list.item(0).getTextContent());
+
+	}
+
+	@Test
+	public void testMDC() throws Exception {
+
+		MDC.put("UserId", "U1");
+
+		layout.setMdcKeys("UserId,Missing");
+
+		final LoggingEvent event = new LoggingEvent("", log, Level.WARN,
+				"Hello World", null);
+
+		final Document document = parse(layout.format(event));
+
+		final Element entry = (Element) document.getElementsByTagName("entry")
+				.item(0);
+
+		assertEquals("UserId", entry.getAttribute("key"));
+		assertEquals("U1", entry.getTextContent());
+		assertEquals(1, document.getElementsByTagName("entry").getLength());
+
+	}
+
+	@Test
+	public void testFieldOptions() throws Exception {
+
+		layout.setFieldEvent("log");
+		layout.setFieldThread(LayoutBase.IGNORE);
+		layout.setFieldIdentity("identity");
+		layout.setIdentity("instance & co");
+		layout.setTimeFormat("EPOCH");
+
+		final LoggingEvent event = new LoggingEvent("", log, 1234L,
+				Level.WARN, "Hello World", null);
+
+		final Document document = parse(layout.format(event));
+
+		assertEquals("log", document.getDocumentElement().getTagName());
+		assertNull(field(document, "thread"));
+		assertEquals("instance & co", field(document, "identity"));
+		assertEquals("1234", field(document, "time"));
+
+	}
+
+	@Test
+	public void testMessageBudget() throws Exception {
+
+		final StringBuilder message = new StringBuilder();
+		while (message.length() < Util.MESSAGE_LIMIT) {
+			message.append("<&>");
+		}
+
+		final LoggingEvent event = new LoggingEvent("", log, Level.WARN,
+				message.toString(), null);
+
+		final String output = layout.format(event);
+
+		assertTrue(Util.byteLength(output) < Util.MESSAGE_LIMIT);
+
+		final String text = field(parse(output), "message");
+
+		assertTrue(text.length() > LayoutXML.MESSAGE_BUDGET / 5);
+		assertTrue(message.toString().startsWith(text));
+
+	}
+
+	@Test
+	public void testDocumentBudget() throws Exception {
+
+		final StringBuilder large = new StringBuilder();
+		while (large.length() < Util.MESSAGE_LIMIT) {
+			large.append("<&\u00e9>");
+		}
+
+		MDC.put("UserId", large.toString());
+		NDC.push(large.toString());
+
+		try {
+
+			layout.setMdcKeys("UserId");
+			layout.setStackDepth(100);
+
+			final LoggingEvent event = new LoggingEvent("", log, Level.WARN,
+					large.toString(), new Exception(large.toString()));
+
+			final String output = layout.format(event);
+
+			assertTrue(Util.byteLength(output) <= LayoutXML.DOCUMENT_BUDGET);
+
+			/** well formed after cut, core fields are kept */
+			final Document document = parse(output);
+
+			assertEquals(log.getName(), field(document, "logger"));
+			assertEquals("WARN", field(document, "level"));
+			assertTrue(large.toString().startsWith(field(document, "message")));
+			assertTrue(field(document, "stack").length() > 0);
+
+		} finally {
+			NDC.remove();
+		}
+
+	}
+
+}
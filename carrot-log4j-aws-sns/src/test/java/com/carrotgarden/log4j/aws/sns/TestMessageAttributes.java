@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.google.common.hash.Hashing;
+
+public class TestMessageAttributes {
+
+	private static final Logger log = Logger
+			.getLogger(TestMessageAttributes.class);
+
+	@After
+	public void tearDown() throws Exception {
+		MDC.remove("tenant");
+	}
+
+	@Test
+	public void testMake() throws Exception {
+
+		MDC.put("tenant", "acme");
+
+		final MessageAttributes maker = new MessageAttributes(
+				"level, logger, host, signature, mdc.tenant, mdc.missing, nope",
+				Signature.DEFAULT);
+
+		final LoggingEvent event = new LoggingEvent("", log, Level.WARN,
+				"Hello World", null);
+
+		final Map<String, String> attributes = maker.make(event);
+
+		assertEquals("WARN", attributes.get("level"));
+		assertEquals(log.getName(), attributes.get("logger"));
+		assertEquals(Util.hostName(), attributes.get("host"));
+		assertEquals("acme", attributes.get("tenant"));
+		assertEquals(8, attributes.get("signature").length());
+		assertFalse(attributes.containsKey("missing"));
+		assertEquals(5, attributes.size());
+
+	}
+
+	@Test
+	public void testSignatureKey() throws Exception {
+
+		final MessageAttributes maker = new MessageAttributes("signature",
+				Signature.DEFAULT);
+
+		assertTrue(maker.isKeyed());
+		assertFalse(new MessageAttributes("level", Signature.DEFAULT)
+				.isKeyed());
+
+		final LoggingEvent event = new LoggingEvent("", log, Level.WARN,
+				"Hello World", null);
+
+		/** key made by evaluator is used as is */
+		final String key = "/evaluator/key";
+
+		assertEquals(Hashing.murmur3_32().hashString(key, Util.UTF_8)
+				.toString(), maker.make(event, key).get("signature"));
+
+		/** missing key is made on demand */
+		assertEquals(
+				Hashing.murmur3_32()
+						.hashString(Signature.DEFAULT.make(event), Util.UTF_8)
+						.toString(), maker.make(event, null).get("signature"));
+
+	}
+
+	@Test
+	public void testHandler() throws Exception {
+
+		final MessageAttributes maker = new MessageAttributes("level, logger",
+				Signature.DEFAULT);
+
+		final LoggingEvent event = new LoggingEvent("", log, Level.ERROR,
+				"Hello World", null);
+
+		final PublishRequest publish = MessageAttributes.request("arn",
+				"message", "subject", maker.make(event));
+
+		assertTrue(publish instanceof MessageAttributes.Attributed);
+
+		final DefaultRequest<PublishRequest> request = new DefaultRequest<PublishRequest>(
+				publish, "AmazonSNS");
+
+		new MessageAttributes.Handler().beforeRequest(request);
+
+		final Map<String, String> params = request.getParameters();
+
+		assertEquals("level", params.get("MessageAttributes.entry.1.Name"));
+		assertEquals("String",
+				params.get("MessageAttributes.entry.1.Value.DataType"));
+		assertEquals("ERROR",
+				params.get("MessageAttributes.entry.1.Value.StringValue"));
+		assertEquals("logger", params.get("MessageAttributes.entry.2.Name"));
+		assertEquals(log.getName(),
+				params.get("MessageAttributes.entry.2.Value.StringValue"));
+
+		assertFalse(MessageAttributes.request("arn", "message", "subject",
+				null) instanceof MessageAttributes.Attributed);
+
+	}
+
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import java.util.EnumSet;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Test;
+
+import com.carrotgarden.log4j.aws.sns.Signature.Mask;
+
+public class TestMessageTemplate {
+
+	private static final Logger logger = Logger.getLogger("tester");
+
+	static void check(final String expected, final String message) {
+		assertEquals(expected, MessageTemplate.template(message));
+	}
+
+	@Test
+	public void testVariable() throws Exception {
+
+		check("user {} not found", "user 12345 not found");
+		check("{} not found", "user12345 not found");
+		check("request {} failed after {}",
+				"request 3f2504e0-4f89-11d3-9a0c-0305e82c3301 failed after 150ms");
+		check("connect to {} timed out", "connect to 10.0.0.15:8080 timed out");
+		check("started at {}", "started at 2024-01-01T10:00:00.123Z");
+		check("GET /api/v1/users/{} returned {}",
+				"GET /api/v1/users/98765 returned 503");
+		check("order id={} amount={} EUR", "order id=AB-778812 amount=-5.25 EUR");
+
+	}
+
+	@Test
+	public void testQuoted() throws Exception {
+
+		check("can't find user '{}' in \"{}\"",
+				"can't find user 'bob' in \"realm\"");
+
+		/** no closing quote */
+		check("unbalanced 'quote and \"more", "unbalanced 'quote and \"more");
+
+	}
+
+	@Test
+	public void testConstant() throws Exception {
+
+		check("log4j and ec2 stay", "log4j and ec2 stay");
+		check("java.lang.IllegalStateException: queue full",
+				"java.lang.IllegalStateException: queue full");
+		check("user {} failed with {}", "user {} failed with {}");
+		check("", "");
+
+		assertNull(MessageTemplate.template(null));
+
+	}
+
+	@Test
+	public void testSignature() throws Exception {
+
+		final Signature signature = new Signature(EnumSet.of(
+				Mask.LOGGER_NAME, Mask.MESSAGE_TEMPLATE));
+
+		final String one = signature.make(new LoggingEvent("", logger,
+				Level.ERROR, "user 1001 failed", null));
+		final String two = signature.make(new LoggingEvent("", logger,
+				Level.ERROR, "user 2002 failed", null));
+		final String three = signature.make(new LoggingEvent("", logger,
+				Level.ERROR, "user 2002 removed", null));
+
+		assertEquals("/tester/user {} failed", one);
+		assertEquals(one, two);
+		assertFalse(one.equals(three));
+
+	}
+
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.services.sns.model.PublishRequest;
+
+public class TestMetrics {
+
+	@Test
+	public void testStripedCounter() throws Exception {
+
+		final StripedCounter counter = new StripedCounter();
+
+		final int threads = 8;
+		final int count = 10000;
+
+		final CountDownLatch done = new CountDownLatch(threads);
+
+		for (int k = 0; k < threads; k++) {
+			new Thread() {
+				@Override
+				public void run() {
+					for (int index = 0; index < count; index++) {
+						counter.increment();
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+
+		done.await();
+
+		assertEquals(threads * count, counter.sum());
+
+		counter.reset();
+
+		assertEquals(0, counter.sum());
+
+	}
+
+	@Test
+	public void testHistogramIndex() throws Exception {
+
+		long past = -1;
+
+		for (int index = 0; index < LatencyHistogram.BUCKET_COUNT; index++) {
+			final long highest = LatencyHistogram.highest(index);
+			assertTrue(highest > past);
+			assertEquals(index, LatencyHistogram.index(highest));
+			past = highest;
+		}
+
+		assertEquals(LatencyHistogram.BUCKET_COUNT - 1,
+				LatencyHistogram.index(Long.MAX_VALUE));
+
+	}
+
+	@Test
+	public void testHistogramQuantile() throws Exception {
+
+		final LatencyHistogram histogram = new LatencyHistogram();
+
+		assertEquals(0, histogram.getQuantile(0.99));
+
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value * 1000);
+		}
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000 * 1000, histogram.getMaximum());
+
+		final long p50 = histogram.getQuantile(0.50);
+		final long p99 = histogram.getQuantile(0.99);
+
+		/** within one sub bucket */
+		final double error = 1.0 / LatencyHistogram.SUB_COUNT;
+
+		assertEquals(500 * 1000, p50, 500 * 1000 * error);
+		assertEquals(990 * 1000, p99, 990 * 1000 * error);
+		assertEquals(1000 * 1000, histogram.getQuantile(1.0));
+
+		histogram.reset();
+
+		assertEquals(0, histogram.getCount());
+
+	}
+
+	@Test
+	public void testHandler() throws Exception {
+
+		final Metrics metrics = new Metrics(null);
+
+		final PublishRequest publish = MessageAttributes.request("arn",
+				"message", "subject", null, metrics);
+
+		final DefaultRequest<PublishRequest> request = new DefaultRequest<PublishRequest>(
+				publish, "sns");
+
+		final Metrics.Handler handler = new Metrics.Handler();
+
+		handler.beforeRequest(request);
+		handler.afterResponse(request, null, null);
+		handler.afterError(request, new Exception());
+
+		assertEquals(1, metrics.getEventsPublished());
+		assertEquals(1, metrics.getEventsFailed());
+		assertEquals(1, metrics.getPublishCount());
+
+		/** untracked request is ignored */
+		handler.afterResponse(new DefaultRequest<PublishRequest>(
+				new PublishRequest("arn", "message"), "sns"), null, null);
+
+		assertEquals(1, metrics.getEventsPublished());
+
+	}
+
+	@Test
+	public void testRegister() throws Exception {
+
+		final Metrics metrics = new Metrics(new Metrics.Source() {
+			@Override
+			public int inFlight() {
+				return 3;
+			}
+
+			@Override
+			public int queueDepth() {
+				return 5;
+			}
+
+			@Override
+			public String[] throttleTop(final int limit) {
+				return new String[] { "7 signature" };
+			}
+
+			@Override
+			public long[] selfTest(final int count) {
+				return new long[count];
+			}
+		});
+
+		metrics.seen();
+		metrics.rendered(2000, 100, true);
+
+		metrics.register("test");
+
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+		final ObjectName name = Metrics.objectName("test");
+
+		assertEquals(name, metrics.getObjectName());
+		assertEquals(1L, server.getAttribute(name, "EventsSeen"));
+		assertEquals(100L, server.getAttribute(name, "BytesRendered"));
+		assertEquals(1L, server.getAttribute(name, "EventsTruncated"));
+		assertEquals(3, server.getAttribute(name, "InFlight"));
+		assertEquals(5, server.getAttribute(name, "QueueDepth"));
+
+		final String[] top = (String[]) server.invoke(name, "throttleTop",
+				new Object[] { 10 }, new String[] { "int" });
+
+		assertArrayEquals(new String[] { "7 signature" }, top);
+
+		final long[] micros = (long[]) server.invoke(name, "selfTest",
+				new Object[] { 2 }, new String[] { "int" });
+
+		assertEquals(2, micros.length);
+
+		/** re-register under the same name replaces stale instance */
+		new Metrics(null).register("test");
+		metrics.register("test");
+
+		metrics.unregister();
+
+		assertNull(metrics.getObjectName());
+
+	}
+
+}
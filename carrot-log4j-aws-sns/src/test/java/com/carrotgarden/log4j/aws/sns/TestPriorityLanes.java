@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.amazonaws.services.sns.AmazonSNS;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.amazonaws.services.sns.model.PublishResult;
+
+public class TestPriorityLanes {
+
+	private AmazonSNS amazonClient;
+
+	/** published messages, in publish order */
+	private List<String> messageList;
+
+	/** first publish is entered */
+	private CountDownLatch entered;
+
+	/** first publish is blocked until released */
+	private CountDownLatch release;
+
+	private PriorityLanes lanes;
+
+	@Before
+	public void setUp() throws Exception {
+
+		messageList = new ArrayList<String>();
+		entered = new CountDownLatch(1);
+		release = new CountDownLatch(1);
+
+		amazonClient = mock(AmazonSNS.class);
+
+		when(amazonClient.publish(any(PublishRequest.class))).thenAnswer(
+				new Answer<PublishResult>() {
+					@Override
+					public PublishResult answer(
+							final InvocationOnMock invocation) throws Throwable {
+						final PublishRequest request = (PublishRequest) invocation
+								.getArguments()[0];
+						entered.countDown();
+						release.await();
+						synchronized (messageList) {
+							messageList.add(request.getMessage());
+							messageList.notifyAll();
+						}
+						return new PublishResult();
+					}
+				});
+
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (lanes != null) {
+			lanes.stop();
+		}
+	}
+
+	void awaitPublished(final int count) throws Exception {
+		final long deadline = System.currentTimeMillis() + 5000;
+		synchronized (messageList) {
+			while (messageList.size() < count
+					&& System.currentTimeMillis() < deadline) {
+				messageList.wait(100);
+			}
+		}
+		assertEquals(count, messageList.size());
+	}
+
+	@Test
+	public void testLaneIndex() throws Exception {
+
+		lanes = PriorityLanes.from(" ERROR=1, FATAL=1, ALL=1 ", 1);
+
+		assertEquals(3, lanes.getLaneCount());
+		assertEquals(0, lanes.laneIndex(Level.FATAL));
+		assertEquals(1, lanes.laneIndex(Level.ERROR));
+		assertEquals(2, lanes.laneIndex(Level.WARN));
+		assertEquals(2, lanes.laneIndex(Level.DEBUG));
+
+		assertNull(PriorityLanes.from("BOGUS=1", 1));
+		assertNull(PriorityLanes.from("FATAL", 1));
+		assertNull(PriorityLanes.from(" ", 1));
+
+	}
+
+	@Test
+	public void testLaneOrder() throws Exception {
+
+		lanes = PriorityLanes.from("FATAL=100,ERROR=1000,ALL=1000", 1);
+
+		assertEquals(Level.FATAL, lanes.lanes[0].level);
+		assertEquals(Level.ERROR, lanes.lanes[1].level);
+		assertEquals(Level.ALL, lanes.lanes[2].level);
+
+		lanes.stop();
+
+		/** ALL level int is Integer.MIN_VALUE */
+		lanes = PriorityLanes.from("ALL=2,FATAL=1", 1);
+
+		assertEquals(Level.FATAL, lanes.lanes[0].level);
+		assertEquals(Level.ALL, lanes.lanes[1].level);
+		assertEquals(0, lanes.laneIndex(Level.FATAL));
+		assertEquals(1, lanes.laneIndex(Level.ERROR));
+
+	}
+
+	@Test
+	public void testStrictPriority() throws Exception {
+
+		lanes = PriorityLanes.from("FATAL=10,ERROR=10,ALL=10", 1);
+		lanes.start(amazonClient, "arn", null);
+
+		/** occupy the only publisher */
+		assertTrue(lanes.offer(Level.WARN, "w0", null, null));
+		assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+		assertTrue(lanes.offer(Level.WARN, "w1", null, null));
+		assertTrue(lanes.offer(Level.INFO, "i1", null, null));
+		assertTrue(lanes.offer(Level.ERROR, "e1", null, null));
+		assertTrue(lanes.offer(Level.FATAL, "f1", null, null));
+
+		assertEquals(4, lanes.getQueueDepth());
+
+		release.countDown();
+
+		awaitPublished(5);
+
+		assertEquals(Arrays.asList("w0", "f1", "e1", "w1", "i1"), messageList);
+
+	}
+
+	@Test
+	public void testEvict() throws Exception {
+
+		lanes = PriorityLanes.from("FATAL=1,ALL=2", 1);
+		lanes.start(amazonClient, "arn", null);
+
+		assertTrue(lanes.offer(Level.WARN, "w0", null, null));
+		assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+		assertTrue(lanes.offer(Level.WARN, "w1", null, null));
+		assertTrue(lanes.offer(Level.WARN, "w2", null, null));
+		assertFalse(lanes.offer(Level.WARN, "w3", null, null));
+
+		/** full fatal lane takes over low lane capacity */
+		assertTrue(lanes.offer(Level.FATAL, "f1", null, null));
+		assertTrue(lanes.offer(Level.FATAL, "f2", null, null));
+		assertTrue(lanes.offer(Level.FATAL, "f3", null, null));
+		assertFalse(lanes.offer(Level.FATAL, "f4", null, null));
+
+		assertEquals(3, lanes.getQueueDepth());
+		assertEquals(1, lanes.getDropCount(0));
+		assertEquals(3, lanes.getDropCount(1));
+
+		release.countDown();
+
+		awaitPublished(4);
+
+		assertEquals(Arrays.asList("w0", "f1", "f2", "f3"), messageList);
+
+	}
+
+	@Test
+	public void testStopped() throws Exception {
+
+		lanes = PriorityLanes.from(PriorityLanes.DEFAULT_LANES, 2);
+
+		assertFalse(lanes.offer(Level.FATAL, "f1", null, null));
+
+		lanes.start(amazonClient, "arn", null);
+		assertTrue(lanes.isStarted());
+
+		lanes.stop();
+		assertFalse(lanes.isStarted());
+
+		assertFalse(lanes.offer(Level.FATAL, "f1", null, null));
+
+	}
+
+}
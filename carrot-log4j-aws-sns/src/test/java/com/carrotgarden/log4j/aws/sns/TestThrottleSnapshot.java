@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestThrottleSnapshot {
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("throttle-", ".snapshot");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testMerge() throws Exception {
+
+		final long now = 1000;
+
+		final long[] live = { 5, 2000, 1, 3000, 3, 500, 5, 2500 };
+
+		final ThrottleSnapshot past = ThrottleSnapshot.merge(new long[] { 1,
+				4000, 7, 5000 }, 2, null, now);
+
+		final ThrottleSnapshot snapshot = ThrottleSnapshot.merge(live, 4,
+				past, now);
+
+		/** hash 3 is expired, hash 5 and 1 are merged */
+		assertEquals(3, snapshot.size());
+		assertEquals(4000, snapshot.expire(1));
+		assertEquals(0, snapshot.expire(3));
+		assertEquals(2500, snapshot.expire(5));
+		assertEquals(5000, snapshot.expire(7));
+		assertEquals(0, snapshot.expire(2));
+
+	}
+
+	@Test
+	public void testSaveLoad() throws Exception {
+
+		final int count = 10000;
+
+		final Random random = new Random(1);
+
+		final long[] live = new long[count * 2];
+
+		for (int index = 0; index < count; index++) {
+			live[index * 2] = random.nextLong();
+			live[index * 2 + 1] = Long.MAX_VALUE - index;
+		}
+
+		final long[] copy = live.clone();
+
+		ThrottleSnapshot.merge(live, count, null, 0).save(file);
+
+		final ThrottleSnapshot snapshot = ThrottleSnapshot.load(file);
+
+		assertEquals(count, snapshot.size());
+
+		for (int index = 0; index < count; index++) {
+			assertEquals(copy[index * 2 + 1], snapshot.expire(copy[index * 2]));
+		}
+
+	}
+
+	@Test
+	public void testInvalid() throws Exception {
+
+		assertEquals(0, ThrottleSnapshot.load(file).size());
+
+		final FileOutputStream output = new FileOutputStream(file);
+		output.write("not a snapshot file".getBytes());
+		output.close();
+
+		assertEquals(0, ThrottleSnapshot.load(file).size());
+
+	}
+
+	@Test
+	public void testRestore() throws Exception {
+
+		final LoggingEvent event = new LoggingEvent("",
+				Logger.getLogger("one"), Level.INFO, "message", null);
+
+		final EvaluatorThrottler before = new EvaluatorThrottler();
+		before.setProperties(" period=10 \n unit=MINUTES \n mask=LOGGER_NAME");
+
+		assertTrue(before.isTriggeringEvent(event));
+
+		before.snapshot().save(file);
+
+		/** next process */
+
+		final EvaluatorThrottler after = new EvaluatorThrottler();
+		after.setProperties(" period=10 \n unit=MINUTES \n mask=LOGGER_NAME");
+
+		after.restore(ThrottleSnapshot.load(file));
+
+		assertFalse(after.isTriggeringEvent(event));
+		assertFalse(after.isTriggeringEvent(event));
+
+		final LoggingEvent other = new LoggingEvent("",
+				Logger.getLogger("two"), Level.INFO, "message", null);
+
+		assertTrue(after.isTriggeringEvent(other));
+
+		/** restored entries are carried into next snapshot */
+		assertEquals(2, after.snapshot().size());
+
+	}
+
+}
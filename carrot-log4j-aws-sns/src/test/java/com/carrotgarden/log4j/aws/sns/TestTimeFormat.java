@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import java.util.TimeZone;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+public class TestTimeFormat {
+
+	private static final long TIME = 1345076800738L;
+
+	@Test
+	public void testOffsetMatchesJoda() {
+
+		final TimeZone zone = TimeZone.getTimeZone("America/Chicago");
+
+		final TimeFormat format = new TimeFormat(TimeFormat.Mode.OFFSET, zone);
+
+		final DateTimeZone jodaZone = DateTimeZone.forTimeZone(zone);
+
+		for (long time = TIME; time < TIME + 5000; time += 7) {
+			final String expected = new DateTime(time, jodaZone).toString();
+			assertEquals(expected, format.format(time));
+		}
+
+	}
+
+	@Test
+	public void testOffsetAcrossTransition() {
+
+		final TimeZone zone = TimeZone.getTimeZone("America/Chicago");
+
+		final TimeFormat format = new TimeFormat(TimeFormat.Mode.OFFSET, zone);
+
+		final DateTimeZone jodaZone = DateTimeZone.forTimeZone(zone);
+
+		/** 2012-11-04 daylight saving end */
+		final long start = 1352008800000L - 2 * 3600 * 1000;
+
+		for (long time = start; time < start + 4 * 3600 * 1000; time += 60 * 1000 + 1) {
+			final String expected = new DateTime(time, jodaZone).toString();
+			assertEquals(expected, format.format(time));
+		}
+
+	}
+
+	@Test
+	public void testUTC() {
+
+		final TimeFormat format = new TimeFormat(TimeFormat.Mode.UTC);
+
+		assertEquals("2012-08-16T00:26:40.738Z", format.format(TIME));
+		assertEquals("2012-08-16T00:26:40.005Z", format.format(TIME - 733));
+		assertEquals("1969-12-31T23:59:59.999Z", format.format(-1));
+
+	}
+
+	@Test
+	public void testEpoch() {
+
+		final TimeFormat format = new TimeFormat(TimeFormat.Mode.EPOCH);
+
+		assertEquals("1345076800738", format.format(TIME));
+		assertEquals("0", format.format(0));
+		assertEquals("-1", format.format(-1));
+
+	}
+
+	@Test
+	public void testModeFrom() {
+
+		assertEquals(TimeFormat.Mode.UTC, TimeFormat.Mode.from(" utc "));
+		assertEquals(TimeFormat.Mode.DEFAULT, TimeFormat.Mode.from("invalid"));
+		assertEquals(TimeFormat.Mode.DEFAULT, TimeFormat.Mode.from(null));
+
+	}
+
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.amazonaws.services.sns.AmazonSNSAsync;
+import com.amazonaws.services.sns.model.ListTopicsRequest;
+import com.amazonaws.services.sns.model.ListTopicsResult;
+import com.amazonaws.services.sns.model.Topic;
+
+public class TestTopicCache {
+
+	private static final String PREFIX = "arn:aws:sns:us-east-1:123:";
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		TopicCache.clear();
+		file = File.createTempFile("topic-cache-", ".properties");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TopicCache.clear();
+		file.delete();
+	}
+
+	/** three pages of 100 topics each */
+	private static AmazonSNSAsync pagedClient() {
+
+		final AmazonSNSAsync amazonClient = mock(AmazonSNSAsync.class);
+
+		when(amazonClient.listTopics(any(ListTopicsRequest.class))).thenAnswer(
+				new Answer<ListTopicsResult>() {
+					@Override
+					public ListTopicsResult answer(
+							final InvocationOnMock invocation) {
+
+						final ListTopicsRequest request = (ListTopicsRequest) invocation
+								.getArguments()[0];
+
+						final String token = request.getNextToken();
+
+						final int page = token == null ? 0 : Integer
+								.parseInt(token);
+
+						final List<Topic> topicList = new ArrayList<Topic>();
+						for (int k = 0; k < 100; k++) {
+							topicList.add(new Topic().withTopicArn(PREFIX
+									+ "topic-" + (page * 100 + k)));
+						}
+
+						return new ListTopicsResult().withTopics(topicList)
+								.withNextToken(
+										page < 2 ? "" + (page + 1) : null);
+
+					}
+				});
+
+		return amazonClient;
+
+	}
+
+	@Test
+	public void testPagination() throws Exception {
+
+		final Appender appender = new Appender();
+		appender.amazonClient = pagedClient();
+
+		assertEquals(PREFIX + "topic-250", appender.findTopicARN("topic-250"));
+		verify(appender.amazonClient, times(3)).listTopics(
+				any(ListTopicsRequest.class));
+
+		assertNull(appender.findTopicARN("missing"));
+		verify(appender.amazonClient, times(6)).listTopics(
+				any(ListTopicsRequest.class));
+
+	}
+
+	@Test
+	public void testProcessCache() throws Exception {
+
+		final Appender appender = new Appender();
+		appender.amazonClient = pagedClient();
+
+		assertEquals(PREFIX + "topic-1", appender.findTopicARN("topic-1"));
+		assertEquals(PREFIX + "topic-1", appender.findTopicARN("topic-1"));
+
+		final Appender another = new Appender();
+		another.amazonClient = pagedClient();
+
+		assertEquals(PREFIX + "topic-1", another.findTopicARN("topic-1"));
+
+		verify(appender.amazonClient, times(1)).listTopics(
+				any(ListTopicsRequest.class));
+		verify(another.amazonClient, never()).listTopics(
+				any(ListTopicsRequest.class));
+
+	}
+
+	@Test
+	public void testFileCache() throws Exception {
+
+		final String key = TopicCache.key("creds", "topic");
+
+		TopicCache.put(key, PREFIX + "topic", 100, file.getPath());
+
+		assertTrue(file.exists());
+
+		/** new process */
+		TopicCache.clear();
+
+		assertEquals(PREFIX + "topic", TopicCache.get(key, file.getPath()));
+		assertNull(TopicCache.get(key + "x", file.getPath()));
+
+	}
+
+	@Test
+	public void testExpire() throws Exception {
+
+		final String key = TopicCache.key("creds", "topic");
+
+		TopicCache.put(key, PREFIX + "topic", 0, file.getPath());
+
+		assertNull(TopicCache.get(key, null));
+
+		TopicCache.clear();
+
+		assertNull(TopicCache.get(key, file.getPath()));
+
+	}
+
+	@Test
+	public void testConfiguredARN() throws Exception {
+
+		final Appender appender = new Appender();
+		appender.amazonClient = pagedClient();
+		appender.setTopicARN(PREFIX + "direct");
+
+		assertTrue(appender.ensureTopicName());
+		assertTrue(appender.ensureTopicARN());
+
+		assertEquals(PREFIX + "direct", appender.getTopicARN());
+		verify(appender.amazonClient, never()).listTopics(
+				any(ListTopicsRequest.class));
+
+	}
+
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j.aws.sns;
+
+import static org.junit.Assert.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestUtil {
+
+	/** U+1F600 as surrogate pair; 4 bytes in UTF-8 */
+	private static final String EMOJI = "\ud83d\ude00";
+
+	/** cyrillic; 2 bytes in UTF-8 */
+	private static final String CYRILLIC = "\u0436";
+
+	/** CJK; 3 bytes in UTF-8 */
+	private static final String CJK = "\u4e2d";
+
+	private static int encodedSize(final String text) {
+		return text.getBytes(Util.UTF_8).length;
+	}
+
+	@Test
+	public void testNoTruncation() {
+
+		final String text = "hello" + CYRILLIC + CJK + EMOJI;
+
+		assertSame(text, Util.forceByteLimit(text, encodedSize(text)));
+		assertSame(text, Util.forceByteLimit(text, 1000));
+
+	}
+
+	@Test
+	public void testTruncationAscii() {
+
+		assertEquals("hel", Util.forceByteLimit("hello", 3));
+		assertEquals("", Util.forceByteLimit("hello", 0));
+
+	}
+
+	@Test
+	public void testTruncationMultiByte() {
+
+		final String text = "a" + CYRILLIC + CJK;
+
+		assertEquals("a", Util.forceByteLimit(text, 1));
+		assertEquals("a", Util.forceByteLimit(text, 2));
+		assertEquals("a" + CYRILLIC, Util.forceByteLimit(text, 3));
+		assertEquals("a" + CYRILLIC, Util.forceByteLimit(text, 5));
+		assertEquals(text, Util.forceByteLimit(text, 6));
+
+	}
+
+	@Test
+	public void testTruncationSurrogatePair() {
+
+		final String text = "ab" + EMOJI + EMOJI;
+
+		assertEquals("ab", Util.forceByteLimit(text, 2));
+		assertEquals("ab", Util.forceByteLimit(text, 5));
+		assertEquals("ab" + EMOJI, Util.forceByteLimit(text, 6));
+		assertEquals("ab" + EMOJI, Util.forceByteLimit(text, 9));
+		assertEquals(text, Util.forceByteLimit(text, 10));
+
+	}
+
+	@Test
+	public void testUnpairedSurrogate() {
+
+		final String text = "a\ud83db\ude00c";
+
+		assertEquals(encodedSize(text), Util.byteLength(text));
+		assertEquals(text, Util.forceByteLimit(text, encodedSize(text)));
+
+	}
+
+	@Test
+	public void testResultFitsLimit() {
+
+		final String text = "x" + CYRILLIC + EMOJI + CJK + "y" + EMOJI
+				+ CYRILLIC + CJK + "z";
+
+		for (int size = 0; size <= encodedSize(text); size++) {
+
+			final String result = Util.forceByteLimit(text, size);
+
+			assertTrue(encodedSize(result) <= size);
+			assertTrue(text.startsWith(result));
+
+			if (result.length() > 0) {
+				final char last = result.charAt(result.length() - 1);
+				assertFalse(Character.isHighSurrogate(last));
+			}
+
+		}
+
+	}
+
+	@Test
+	public void testByteLength() {
+
+		final String text = "x" + CYRILLIC + EMOJI + CJK;
+
+		assertEquals(encodedSize(text), Util.byteLength(text));
+		assertEquals(0, Util.byteLength(""));
+
+	}
+
+	@Test
+	public void testCauseChain() {
+
+		final Exception inner = new Exception("inner");
+		final Exception outer = new Exception("outer", inner);
+
+		assertEquals(2, Util.causeChain(outer).size());
+		assertSame(inner, Util.causeChain(outer).get(1));
+
+		/** cycle is cut */
+		final Exception one = new Exception("one");
+		final Exception two = new Exception("two", one);
+		one.initCause(two);
+
+		assertEquals(2, Util.causeChain(one).size());
+
+		assertTrue(Util.causeChain(null).isEmpty());
+
+	}
+
+	@Test
+	public void testFramesInCommon() {
+
+		final StackTraceElement a = new StackTraceElement("A", "a", "A.java", 1);
+		final StackTraceElement b = new StackTraceElement("B", "b", "B.java", 2);
+		final StackTraceElement c = new StackTraceElement("C", "c", "C.java", 3);
+		final StackTraceElement d = new StackTraceElement("D", "d", "D.java", 4);
+
+		assertEquals(2, Util.framesInCommon(new StackTraceElement[] { d, b, c },
+				new StackTraceElement[] { a, b, c }));
+
+		assertEquals(0, Util.framesInCommon(new StackTraceElement[] { a },
+				new StackTraceElement[] { d }));
+
+		assertEquals(0, Util.framesInCommon(new StackTraceElement[0],
+				new StackTraceElement[] { d }));
+
+	}
+
+	@Test
+	public void testClose() {
+
+		final AtomicInteger count = new AtomicInteger();
+
+		final Closeable failing = new Closeable() {
+			@Override
+			public void close() throws IOException {
+				count.incrementAndGet();
+				throw new IOException("failure");
+			}
+		};
+
+		Util.close(null);
+		Util.close(failing);
+
+		assertEquals(1, count.get());
+
+	}
+
+}
@@ -0,0 +1,401 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j2.aws.sns;
+
+import java.io.Serializable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.message.Message;
+
+import com.amazonaws.services.sns.AmazonSNSAsync;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.carrotgarden.log4j.aws.sns.Appender;
+import com.carrotgarden.log4j.aws.sns.ClientRegistry;
+import com.carrotgarden.log4j.aws.sns.EvaluatorThrottler;
+import com.carrotgarden.log4j.aws.sns.ExecutorMode;
+import com.carrotgarden.log4j.aws.sns.HashThrottle;
+import com.carrotgarden.log4j.aws.sns.InFlightLimit;
+import com.carrotgarden.log4j.aws.sns.MessageAttributes;
+import com.carrotgarden.log4j.aws.sns.Metrics;
+import com.carrotgarden.log4j.aws.sns.TopicCache;
+import com.carrotgarden.log4j.aws.sns.Util;
+
+/**
+ * log4j 2 appender for amazon sns; shares client registry, topic cache,
+ * in-flight limit, metrics and throttle configuration with log4j 1.2
+ * {@link Appender}
+ *
+ * throttle is {@link HashThrottle} keyed by {@link SignatureHash}, with
+ * {@link EvaluatorThrottler} properties, so suppressed event path does not
+ * allocate; accepted events are rendered and published, which allocates;
+ * default mask is location free, see {@link SignatureHash#DEFAULT_MASK}
+ *
+ * event is not retained after append returns, so reusable events of async
+ * loggers and garbage free mode are safe
+ *
+ * throttle is not {@link EvaluatorThrottler} behind an adapter: evaluator
+ * needs a log4j 1.2 event and a signature string per event, which allocate;
+ * {@link HashThrottle} and {@link SignatureHash} share with it the properties
+ * "period", "unit", "mask", the mask parts and the message template rules,
+ * but not the key: hash is not computed over signature text, so it does not
+ * match "signature" of the log4j 1.2 appender
+ *
+ * not shared with log4j 1.2 {@link Appender}: other evaluators (simple,
+ * expression, host dedup), throttle snapshot file and throttle top, message
+ * attributes, digest, routes, priority lanes, render async, background
+ * activation and json, xml and smile layouts
+ *
+ * <pre>
+ * &lt;SNS name="sns" credentials="/etc/aws.properties" topicName="alerts"
+ *   evaluatorProperties="period=10 \n unit=MINUTES \n mask=LOGGER_NAME,MESSAGE_TEMPLATE"&gt;
+ *   &lt;SnsLayout timeMode="UTC"/&gt;
+ * &lt;/SNS&gt;
+ * </pre>
+ */
+@Plugin(name = "SNS", category = "Core", elementType = "appender", printObject = true)
+public class AppenderSNS extends AbstractAppender {
+
+	/** amazon credentials file; must exist */
+	protected final String credentials;
+
+	/** SNS endpoint; optional */
+	protected final String endpoint;
+
+	/** SNS topic name; must exist */
+	protected final String topicName;
+
+	/** SNS topic subject, already limited; optional */
+	protected final String topicSubject;
+
+	/** resolved topic ARN cache file; optional */
+	protected final String topicCacheFile;
+
+	/** resolved topic ARN retention, seconds */
+	protected final int topicCacheTTL;
+
+	protected final int poolMin;
+
+	protected final int poolMax;
+
+	protected final SignatureHash signature;
+
+	protected final HashThrottle throttle;
+
+	/** guarded by own lock */
+	protected final InFlightLimit inFlightLimit;
+
+	/** resolved on start, unless configured */
+	protected volatile String topicARN;
+
+	protected volatile ClientRegistry.Lease lease;
+
+	protected volatile AmazonSNSAsync amazonClient;
+
+	/** pipeline metrics; see {@link Metrics} */
+	protected final Metrics metrics = new Metrics(new Metrics.Source() {
+
+		@Override
+		public int inFlight() {
+			return inFlightLimit.getCount();
+		}
+
+		@Override
+		public int queueDepth() {
+			return 0;
+		}
+
+		@Override
+		public String[] throttleTop(final int limit) {
+			/** hash throttle keeps no signature text */
+			return new String[0];
+		}
+
+		@Override
+		public long[] selfTest(final int count) throws Exception {
+			return AppenderSNS.this.selfTest(count);
+		}
+
+	});
+
+	protected AppenderSNS(final String name, final Filter filter,
+			final Layout<? extends Serializable> layout,
+			final boolean ignoreExceptions, final String credentials,
+			final String endpoint, final String topicName,
+			final String topicARN, final String topicSubject,
+			final String topicCacheFile, final int topicCacheTTL,
+			final int poolMin, final int poolMax, final int inFlight,
+			final String evaluatorProperties) {
+
+		super(name, filter, layout, ignoreExceptions);
+
+		this.credentials = credentials;
+		this.endpoint = endpoint;
+		this.topicName = topicName;
+		this.topicARN = topicARN;
+		this.topicSubject = topicSubject == null ? null : Util
+				.forceByteLimit(topicSubject, Util.SUBJECT_LIMIT);
+		this.topicCacheFile = topicCacheFile;
+		this.topicCacheTTL = topicCacheTTL > 0 ? topicCacheTTL
+				: TopicCache.DEFAULT_TTL;
+		this.poolMin = poolMin;
+		this.poolMax = poolMax;
+
+		this.signature = new SignatureHash(HashThrottle.signatureFrom(
+				evaluatorProperties, SignatureHash.DEFAULT_MASK));
+		this.throttle = HashThrottle.from(evaluatorProperties);
+		this.inFlightLimit = new InFlightLimit(inFlight);
+
+		if (signature.isLocation()) {
+			LOGGER.warn("sns: signature mask has location parts;"
+					+ " they need includeLocation, which walks the stack per event : "
+					+ name);
+		}
+
+	}
+
+	@PluginFactory
+	public static AppenderSNS createAppender( //
+			@PluginAttribute("name") final String name, //
+			@PluginElement("Filter") final Filter filter, //
+			@PluginElement("Layout") final Layout<? extends Serializable> layout, //
+			@PluginAttribute(value = "ignoreExceptions", defaultBoolean = true) final boolean ignoreExceptions, //
+			@PluginAttribute("credentials") final String credentials, //
+			@PluginAttribute("endpoint") final String endpoint, //
+			@PluginAttribute("topicName") final String topicName, //
+			@PluginAttribute("topicARN") final String topicARN, //
+			@PluginAttribute("topicSubject") final String topicSubject, //
+			@PluginAttribute("topicCacheFile") final String topicCacheFile, //
+			@PluginAttribute(value = "topicCacheTTL", defaultInt = 0) final int topicCacheTTL, //
+			@PluginAttribute(value = "poolMin", defaultInt = Appender.DEFAULT_POOL_MIN) final int poolMin, //
+			@PluginAttribute(value = "poolMax", defaultInt = Appender.DEFAULT_POOL_MAX) final int poolMax, //
+			@PluginAttribute(value = "inFlight", defaultInt = InFlightLimit.DEFAULT_LIMIT) final int inFlight, //
+			@PluginAttribute("evaluatorProperties") final String evaluatorProperties //
+	) {
+
+		if (name == null) {
+			LOGGER.error("sns: appender needs name");
+			return null;
+		}
+
+		if (credentials == null || (topicName == null && topicARN == null)) {
+			LOGGER.error("sns: appender needs credentials and topicName : "
+					+ name);
+			return null;
+		}
+
+		return new AppenderSNS(name, filter,
+				layout == null ? LayoutSNS.createDefault() : layout,
+				ignoreExceptions, credentials, endpoint, topicName, topicARN,
+				topicSubject, topicCacheFile, topicCacheTTL, poolMin, poolMax,
+				inFlight, evaluatorProperties);
+
+	}
+
+	/** acquire shared client and resolve topic; stays stopped on failure */
+	@Override
+	public void start() {
+
+		try {
+
+			lease = ClientRegistry.acquire(credentials, endpoint,
+					ExecutorMode.DEFAULT, poolMin, poolMax,
+					inFlightLimit.getLimit());
+
+			amazonClient = lease.getClient();
+
+			if (topicARN == null) {
+				topicARN = TopicCache.find(amazonClient, credentials,
+						topicName, topicCacheFile, topicCacheTTL);
+			}
+
+		} catch (final Exception e) {
+			LOGGER.error("sns: appender activation failure : " + getName(), e);
+		}
+
+		if (topicARN == null) {
+			LOGGER.error("sns: appender is disabled due to activation failure : "
+					+ getName());
+			releaseClient();
+			return;
+		}
+
+		metrics.register(getName());
+
+		super.start();
+
+	}
+
+	@Override
+	public void stop() {
+
+		super.stop();
+
+		metrics.unregister();
+
+		releaseClient();
+
+	}
+
+	protected void releaseClient() {
+
+		final ClientRegistry.Lease lease = this.lease;
+
+		this.lease = null;
+		this.amazonClient = null;
+
+		if (lease != null) {
+			ClientRegistry.release(lease, inFlightLimit.getLimit());
+		}
+
+	}
+
+	/** throttle first, render and publish only accepted events */
+	@Override
+	public void append(final LogEvent event) {
+
+		metrics.seen();
+
+		if (!throttle.isTriggering(signature.hash(event))) {
+			metrics.rejected();
+			return;
+		}
+
+		final long renderStart = System.nanoTime();
+
+		final String rendered = render(event);
+
+		final String message = Util.forceByteLimit(rendered,
+				Util.MESSAGE_LIMIT);
+
+		metrics.rendered(System.nanoTime() - renderStart,
+				Util.byteLength(message), message != rendered);
+
+		publish(message);
+
+	}
+
+	protected String render(final LogEvent event) {
+
+		final Layout<? extends Serializable> layout = getLayout();
+
+		if (layout == null) {
+			final Message message = event.getMessage();
+			return message == null ? "" : message.getFormattedMessage();
+		}
+
+		final Serializable value = layout.toSerializable(event);
+
+		if (value instanceof String) {
+			return (String) value;
+		}
+
+		return new String(layout.toByteArray(event), LayoutSNS.UTF_8);
+
+	}
+
+	protected void publish(final String message) {
+
+		final AmazonSNSAsync amazonClient = this.amazonClient;
+		final String topicARN = this.topicARN;
+
+		if (amazonClient == null || topicARN == null) {
+			metrics.failed();
+			return;
+		}
+
+		synchronized (inFlightLimit) {
+
+			if (!inFlightLimit.tryAcquire()) {
+				metrics.executorRejected();
+				LOGGER.warn("sns: in-flight limit reached; event dropped");
+				return;
+			}
+
+			try {
+
+				final PublishRequest request = MessageAttributes.request(
+						topicARN, message, topicSubject, null, metrics);
+
+				inFlightLimit.track(amazonClient.publishAsync(request));
+
+			} catch (final RejectedExecutionException e) {
+
+				inFlightLimit.release();
+
+				metrics.executorRejected();
+
+				LOGGER.warn("sns: publish executor is saturated; event dropped");
+
+			} catch (final Exception e) {
+
+				inFlightLimit.release();
+
+				metrics.failed();
+
+				LOGGER.error("sns: publish failure", e);
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * publish self test messages with blocking client call, bypassing
+	 * throttle, layout and in-flight limit; round trip per message, micros
+	 */
+	public long[] selfTest(final int count) throws Exception {
+
+		final AmazonSNSAsync amazonClient = this.amazonClient;
+		final String topicARN = this.topicARN;
+
+		if (!isStarted() || amazonClient == null || topicARN == null) {
+			throw new IllegalStateException("sns: appender is not active");
+		}
+
+		final long[] micros = new long[Math.max(0, count)];
+
+		for (int index = 0; index < micros.length; index++) {
+
+			final PublishRequest request = new PublishRequest(topicARN,
+					"sns self-test " + (index + 1) + "/" + micros.length,
+					Util.forceByteLimit("self-test "
+							+ (topicSubject == null ? "" : topicSubject),
+							Util.SUBJECT_LIMIT));
+
+			final long start = System.nanoTime();
+
+			amazonClient.publish(request);
+
+			micros[index] = TimeUnit.NANOSECONDS.toMicros(System.nanoTime()
+					- start);
+
+		}
+
+		return micros;
+
+	}
+
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	public String getTopicARN() {
+		return topicARN;
+	}
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j2.aws.sns;
+
+import java.nio.charset.Charset;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.layout.AbstractStringLayout;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+
+import com.carrotgarden.log4j.aws.sns.LayoutSimple;
+import com.carrotgarden.log4j.aws.sns.TimeFormat;
+
+/**
+ * log4j 2 compact text layout, same output as {@link LayoutSimple} default
+ * pattern:
+ *
+ * <pre>
+ * 2012-08-16T00:26:40.738Z ERROR Logger - message (exception-class at top-frame)
+ * </pre>
+ *
+ * renders into reused builder; message which is
+ * {@link StringBuilderFormattable} writes itself into the builder, so only
+ * the final text is allocated
+ */
+@Plugin(name = "SnsLayout", category = "Core", elementType = "layout", printObject = true)
+public class LayoutSNS extends AbstractStringLayout {
+
+	public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	protected final TimeFormat timeFormat;
+
+	protected LayoutSNS(final TimeFormat.Mode timeMode) {
+		super(UTF_8);
+		this.timeFormat = new TimeFormat(timeMode);
+	}
+
+	@PluginFactory
+	public static LayoutSNS createLayout( //
+			@PluginAttribute(value = "timeMode", defaultString = "UTC") final String timeMode //
+	) {
+		return new LayoutSNS(TimeFormat.Mode.from(timeMode));
+	}
+
+	public static LayoutSNS createDefault() {
+		return new LayoutSNS(TimeFormat.Mode.UTC);
+	}
+
+	@Override
+	public String toSerializable(final LogEvent event) {
+		final StringBuilder text = getStringBuilder();
+		format(event, text);
+		return text.toString();
+	}
+
+	/** render event into builder */
+	public void format(final LogEvent event, final StringBuilder text) {
+
+		timeFormat.format(event.getTimeMillis(), text);
+
+		text.append(' ');
+		text.append(event.getLevel().name());
+		text.append(' ');
+
+		appendShortName(event.getLoggerName(), text);
+
+		text.append(" - ");
+
+		final Message message = event.getMessage();
+
+		if (message instanceof StringBuilderFormattable) {
+			((StringBuilderFormattable) message).formatTo(text);
+		} else if (message != null) {
+			text.append(message.getFormattedMessage());
+		}
+
+		final Throwable thrown = event.getThrown();
+
+		if (thrown != null) {
+			text.append(" (");
+			text.append(thrown.getClass().getName());
+			final StackTraceElement[] stack = thrown.getStackTrace();
+			if (stack.length > 0) {
+				text.append(" at ");
+				text.append(stack[0].getClassName());
+				text.append('.');
+				text.append(stack[0].getMethodName());
+				text.append('(');
+				text.append(stack[0].getFileName());
+				text.append(':');
+				text.append(stack[0].getLineNumber());
+				text.append(')');
+			}
+			text.append(')');
+		}
+
+	}
+
+	/** last logger name part, as %c{1} */
+	protected static void appendShortName(final String name,
+			final StringBuilder text) {
+
+		if (name == null) {
+			return;
+		}
+
+		text.append(name, name.lastIndexOf('.') + 1, name.length());
+
+	}
+
+}
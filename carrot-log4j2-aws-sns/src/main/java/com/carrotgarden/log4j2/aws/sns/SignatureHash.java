@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j2.aws.sns;
+
+import static com.carrotgarden.log4j.aws.sns.Signature.Mask.*;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+
+import com.carrotgarden.log4j.aws.sns.MessageTemplate;
+import com.carrotgarden.log4j.aws.sns.Signature;
+import com.carrotgarden.log4j.aws.sns.Signature.Mask;
+
+/**
+ * 64 bit log4j 2 event signature hash over the same parts as
+ * {@link Signature}, computed directly from event fields without building
+ * the signature text, so it does not allocate
+ *
+ * location parts are present only when logger config has includeLocation,
+ * which walks the stack per event, so {@link #DEFAULT_MASK} has none; stack
+ * trace part walks the throwable, which allocates, but only for events
+ * with a throwable
+ *
+ * message template part of a parameterized message is made from its format
+ * string once per call site and cached; other messages are tokenized per
+ * event into a per thread buffer; message which formats itself, see
+ * {@link StringBuilderFormattable}, is formatted into a per thread buffer
+ * first, so its formatted message string is not made
+ */
+public class SignatureHash {
+
+	protected static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+	protected static final long FNV_PRIME = 0x100000001b3L;
+
+	/** location free default mask : logger name and message template */
+	public static final Set<Mask> DEFAULT_MASK = Collections
+			.unmodifiableSet(EnumSet.of(LOGGER_NAME, MESSAGE_TEMPLATE));
+
+	/** format string template cache size limit */
+	public static final int TEMPLATE_CACHE_LIMIT = 1024;
+
+	protected final boolean isLevel;
+	protected final boolean isLoggerName;
+	protected final boolean isThreadName;
+	protected final boolean isFileName;
+	protected final boolean isClassName;
+	protected final boolean isMethodName;
+	protected final boolean isLineNumber;
+	protected final boolean isStackTrace;
+	protected final boolean isMessageTemplate;
+
+	protected final boolean isLocation;
+
+	/** format string to template; format string literal is per call site */
+	protected final ConcurrentMap<String, String> templateCache = new ConcurrentHashMap<String, String>();
+
+	/** per thread template buffer for messages without format string */
+	protected final ThreadLocal<StringBuilder> templateBuffer = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+
+	/** per thread message text buffer for messages which format themselves */
+	protected final ThreadLocal<StringBuilder> textBuffer = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+
+	public SignatureHash(final Signature signature) {
+		this(signature.mask);
+	}
+
+	public SignatureHash(final Set<Mask> mask) {
+		isLevel = mask.contains(LEVEL);
+		isLoggerName = mask.contains(LOGGER_NAME);
+		isThreadName = mask.contains(THREAD_NAME);
+		isFileName = mask.contains(FILE_NAME);
+		isClassName = mask.contains(CLASS_NAME);
+		isMethodName = mask.contains(METHOD_NAME);
+		isLineNumber = mask.contains(LINE_NUMBER);
+		isStackTrace = mask.contains(STACK_TRACE);
+		isMessageTemplate = mask.contains(MESSAGE_TEMPLATE);
+		isLocation = isFileName || isClassName || isMethodName
+				|| isLineNumber;
+	}
+
+	/** true when mask has file, class, method or line parts */
+	public boolean isLocation() {
+		return isLocation;
+	}
+
+	public long hash(final LogEvent event) {
+
+		long hash = FNV_OFFSET;
+
+		if (isLevel) {
+			hash = mix(hash, event.getLevel().intLevel());
+		}
+
+		if (isLoggerName) {
+			hash = mix(hash, event.getLoggerName());
+		}
+
+		if (isThreadName) {
+			hash = mix(hash, event.getThreadName());
+		}
+
+		if (isLocation) {
+			final StackTraceElement source = event.getSource();
+			if (source != null) {
+				if (isFileName) {
+					hash = mix(hash, source.getFileName());
+				}
+				if (isClassName) {
+					hash = mix(hash, source.getClassName());
+				}
+				if (isMethodName) {
+					hash = mix(hash, source.getMethodName());
+				}
+				if (isLineNumber) {
+					hash = mix(hash, source.getLineNumber());
+				}
+			}
+		}
+
+		if (isStackTrace) {
+			Throwable thrown = event.getThrown();
+			while (thrown != null) {
+				hash = mix(hash, thrown.getClass().getName());
+				hash = mix(hash, thrown.getMessage());
+				for (final StackTraceElement frame : thrown.getStackTrace()) {
+					hash = mix(hash, frame.getClassName());
+					hash = mix(hash, frame.getMethodName());
+					hash = mix(hash, frame.getLineNumber());
+				}
+				thrown = thrown.getCause() == thrown ? null : thrown
+						.getCause();
+			}
+		}
+
+		if (isMessageTemplate) {
+			hash = mix(hash, template(event.getMessage()));
+		}
+
+		return finish(hash);
+
+	}
+
+	/** message template; cached for format strings with parameters */
+	protected CharSequence template(final Message message) {
+
+		if (message == null) {
+			return null;
+		}
+
+		final String format = message.getFormat();
+
+		if (format != null && format.indexOf("{}") >= 0) {
+
+			String template = templateCache.get(format);
+
+			if (template == null) {
+				template = MessageTemplate.template(format);
+				if (templateCache.size() < TEMPLATE_CACHE_LIMIT) {
+					templateCache.put(format, template);
+				}
+			}
+
+			return template;
+
+		}
+
+		final StringBuilder buffer = templateBuffer.get();
+
+		buffer.setLength(0);
+
+		if (message instanceof StringBuilderFormattable) {
+
+			final StringBuilder text = textBuffer.get();
+
+			text.setLength(0);
+
+			((StringBuilderFormattable) message).formatTo(text);
+
+			MessageTemplate.append(text, buffer);
+
+			return buffer;
+
+		}
+
+		final String text = message.getFormattedMessage();
+
+		if (text == null) {
+			return null;
+		}
+
+		MessageTemplate.append(text, buffer);
+
+		return buffer;
+
+	}
+
+	/** FNV-1a over chars, then length as separator */
+	protected static long mix(long hash, final CharSequence text) {
+
+		if (text == null) {
+			return mix(hash, -1);
+		}
+
+		final int length = text.length();
+
+		for (int index = 0; index < length; index++) {
+			hash ^= text.charAt(index);
+			hash *= FNV_PRIME;
+		}
+
+		return mix(hash, length);
+
+	}
+
+	protected static long mix(long hash, final int value) {
+		hash ^= value;
+		hash *= FNV_PRIME;
+		return hash;
+	}
+
+	/** murmur3 finalizer, spreads bits for table index and tag */
+	protected static long finish(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package bench;
+
+import java.lang.management.ManagementFactory;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+
+import com.carrotgarden.log4j.aws.sns.Evaluator;
+import com.carrotgarden.log4j.aws.sns.EvaluatorThrottler;
+import com.carrotgarden.log4j.aws.sns.LayoutSimple;
+import com.carrotgarden.log4j2.aws.sns.AppenderSNS;
+import com.carrotgarden.log4j2.aws.sns.LayoutSNS;
+
+/**
+ * log4j 1.2 vs log4j 2 appender under the same load: time and allocation
+ * per event for throttled (suppressed) events and for rendering of accepted
+ * events
+ */
+public class Main_01 {
+
+	static final int COUNT = 5 * 1000 * 1000;
+
+	static final String PROPS = " period=10 \n unit=MINUTES \n mask=LOGGER_NAME";
+
+	static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	interface Task {
+		void run();
+	}
+
+	static void measure(final String name, final Task task) {
+
+		for (int index = 0; index < COUNT / 10; index++) {
+			task.run();
+		}
+
+		final long id = Thread.currentThread().getId();
+
+		final long bytes = THREADS.getThreadAllocatedBytes(id);
+		final long time = System.nanoTime();
+
+		for (int index = 0; index < COUNT; index++) {
+			task.run();
+		}
+
+		final long nanos = (System.nanoTime() - time) / COUNT;
+		final long alloc = (THREADS.getThreadAllocatedBytes(id) - bytes)
+				/ COUNT;
+
+		System.out.println(name + " : " + nanos + " ns/event, " + alloc
+				+ " bytes/event");
+
+	}
+
+	public static void main(final String[] args) throws Exception {
+
+		/** log4j 1.2 */
+
+		final org.apache.log4j.Logger logger1 = org.apache.log4j.Logger
+				.getLogger("bench.Service");
+
+		final Evaluator evaluator = new EvaluatorThrottler();
+		evaluator.setProperties(PROPS);
+
+		final LayoutSimple layout1 = new LayoutSimple();
+		layout1.activateOptions();
+
+		measure("log4j-1.2 throttled", new Task() {
+			@Override
+			public void run() {
+				/** log4j 1.2 makes event per call */
+				evaluator.isTriggeringEvent(new org.apache.log4j.spi.LoggingEvent(
+						"bench", logger1, org.apache.log4j.Level.ERROR,
+						"message", null));
+			}
+		});
+
+		final org.apache.log4j.spi.LoggingEvent event1 = new org.apache.log4j.spi.LoggingEvent(
+				"bench", logger1, org.apache.log4j.Level.ERROR, "message", null);
+
+		measure("log4j-1.2 rendered ", new Task() {
+			@Override
+			public void run() {
+				layout1.format(event1);
+			}
+		});
+
+		/** log4j 2 */
+
+		final AppenderSNS appender = AppenderSNS.createAppender("sns", null,
+				null, true, "aws.properties", null, "topic", null, null, null,
+				0, 0, 1, 10, PROPS);
+
+		/** not started: first accepted event is counted as failed */
+		/** async loggers reuse event */
+		final LogEvent event2 = Log4jLogEvent.newBuilder() //
+				.setLoggerName("bench.Service") //
+				.setLevel(org.apache.logging.log4j.Level.ERROR) //
+				.setMessage(new SimpleMessage("message")) //
+				.build();
+
+		measure("log4j-2   throttled", new Task() {
+			@Override
+			public void run() {
+				appender.append(event2);
+			}
+		});
+
+		final LayoutSNS layout2 = LayoutSNS.createDefault();
+
+		measure("log4j-2   rendered ", new Task() {
+			@Override
+			public void run() {
+				layout2.toSerializable(event2);
+			}
+		});
+
+	}
+
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j2.aws.sns;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.lang.management.ManagementFactory;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.amazonaws.services.sns.AmazonSNSAsync;
+import com.amazonaws.services.sns.model.PublishRequest;
+
+public class TestAppenderSNS {
+
+	private AmazonSNSAsync amazonClient;
+
+	private AppenderSNS appender;
+
+	@Before
+	public void setUp() throws Exception {
+
+		amazonClient = mock(AmazonSNSAsync.class);
+
+		appender = AppenderSNS.createAppender("sns", null, null, true,
+				"aws.properties", null, "topic", null, "subject", null, 0, 0,
+				1, 10, " period=10 \n unit=MINUTES \n mask=LOGGER_NAME");
+
+		/** stand in for start, which needs amazon */
+		appender.amazonClient = amazonClient;
+		appender.topicARN = "arn:aws:sns:us-east-1:123456789012:topic";
+
+	}
+
+	static LogEvent event(final String logger) {
+		return Log4jLogEvent.newBuilder() //
+				.setLoggerName(logger) //
+				.setLevel(Level.ERROR) //
+				.setMessage(new SimpleMessage("message")) //
+				.build();
+	}
+
+	@Test
+	public void testFactory() throws Exception {
+
+		assertNull(AppenderSNS.createAppender("sns", null, null, true, null,
+				null, "topic", null, null, null, 0, 0, 1, 10, null));
+
+		assertNull(AppenderSNS.createAppender("sns", null, null, true,
+				"aws.properties", null, null, null, null, null, 0, 0, 1, 10,
+				null));
+
+		assertTrue(appender.getLayout() instanceof LayoutSNS);
+
+	}
+
+	@Test
+	public void testAppend() throws Exception {
+
+		appender.append(event("one"));
+		appender.append(event("one"));
+		appender.append(event("two"));
+
+		final ArgumentCaptor<PublishRequest> captor = ArgumentCaptor
+				.forClass(PublishRequest.class);
+
+		verify(amazonClient, times(2)).publishAsync(captor.capture());
+
+		final PublishRequest request = captor.getAllValues().get(0);
+
+		assertEquals("subject", request.getSubject());
+		assertTrue(request.getMessage(),
+				request.getMessage().endsWith(" ERROR one - message"));
+
+		assertEquals(3, appender.getMetrics().getEventsSeen());
+		assertEquals(1, appender.getMetrics().getEventsRejected());
+		assertEquals(2, appender.getMetrics().getEventsRendered());
+
+	}
+
+	/** throttled path does not allocate, with default mask */
+	@Test
+	public void testGarbageFree() throws Exception {
+
+		final AppenderSNS appender = AppenderSNS.createAppender("sns", null,
+				null, true, "aws.properties", null, "topic", null, "subject",
+				null, 0, 0, 1, 10, " period=10 \n unit=MINUTES ");
+
+		appender.amazonClient = amazonClient;
+		appender.topicARN = "arn:aws:sns:us-east-1:123456789012:topic";
+
+		assertFalse(appender.signature.isLocation());
+
+		final java.lang.management.ThreadMXBean bean = ManagementFactory
+				.getThreadMXBean();
+
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		final LogEvent event = event("one");
+
+		appender.append(event);
+
+		/** warm up */
+		for (int index = 0; index < 100 * 1000; index++) {
+			appender.append(event);
+		}
+
+		final long id = Thread.currentThread().getId();
+
+		final int count = 1000 * 1000;
+
+		final long before = threads.getThreadAllocatedBytes(id);
+
+		for (int index = 0; index < count; index++) {
+			appender.append(event);
+		}
+
+		final long after = threads.getThreadAllocatedBytes(id);
+
+		/** measurement itself may allocate a little */
+		assertTrue("allocated=" + (after - before), after - before < 1024);
+
+	}
+
+}
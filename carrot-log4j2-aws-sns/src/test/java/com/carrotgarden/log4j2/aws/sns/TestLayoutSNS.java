@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j2.aws.sns;
+
+import static org.junit.Assert.*;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+import org.junit.Test;
+
+public class TestLayoutSNS {
+
+	static final long TIME = 1345076800738L;
+
+	static LogEvent event(final Message message, final Throwable thrown) {
+		return Log4jLogEvent.newBuilder() //
+				.setLoggerName("com.acme.Service") //
+				.setLevel(Level.ERROR) //
+				.setMessage(message) //
+				.setThrown(thrown) //
+				.setTimeMillis(TIME) //
+				.build();
+	}
+
+	@Test
+	public void testFormat() throws Exception {
+
+		final LayoutSNS layout = LayoutSNS.createDefault();
+
+		assertEquals("2012-08-16T00:26:40.738Z ERROR Service - hello",
+				layout.toSerializable(event(new SimpleMessage("hello"), null)));
+
+		assertEquals("2012-08-16T00:26:40.738Z ERROR Service - one=1",
+				layout.toSerializable(event(new ParameterizedMessage(
+						"one={}", 1), null)));
+
+	}
+
+	@Test
+	public void testThrowable() throws Exception {
+
+		final LayoutSNS layout = LayoutSNS.createLayout("EPOCH");
+
+		final String text = layout.toSerializable(event(new SimpleMessage(
+				"failure"), new IllegalStateException()));
+
+		assertTrue(text, text.startsWith(TIME + " ERROR Service - failure"
+				+ " (java.lang.IllegalStateException at "
+				+ getClass().getName() + ".testThrowable(TestLayoutSNS.java:"));
+
+	}
+
+	@Test
+	public void testFormattable() throws Exception {
+
+		final LayoutSNS layout = LayoutSNS.createDefault();
+
+		final StringBuilder text = new StringBuilder();
+
+		/** message writes itself, formatted message is not used */
+		layout.format(event(new Formattable(), null), text);
+
+		assertTrue(text.toString(), text.toString().endsWith(" - formatted"));
+
+	}
+
+	static class Formattable implements Message, StringBuilderFormattable {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public void formatTo(final StringBuilder buffer) {
+			buffer.append("formatted");
+		}
+
+		@Override
+		public String getFormattedMessage() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getFormat() {
+			return "";
+		}
+
+		@Override
+		public Object[] getParameters() {
+			return null;
+		}
+
+		@Override
+		public Throwable getThrowable() {
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2010-2013 Andrei Pozolotin <Andrei.Pozolotin@gmail.com>
+ *
+ * All rights reserved. Licensed under the OSI BSD License.
+ *
+ * http://www.opensource.org/licenses/bsd-license.php
+ */
+package com.carrotgarden.log4j2.aws.sns;
+
+import static org.junit.Assert.*;
+
+import java.util.EnumSet;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.Test;
+
+import com.carrotgarden.log4j.aws.sns.Signature;
+import com.carrotgarden.log4j.aws.sns.Signature.Mask;
+
+public class TestSignatureHash {
+
+	static LogEvent event(final String logger, final Level level,
+			final String message, final Throwable thrown) {
+		return Log4jLogEvent.newBuilder() //
+				.setLoggerName(logger) //
+				.setLevel(level) //
+				.setMessage(new SimpleMessage(message)) //
+				.setThrown(thrown) //
+				.setThreadName("main") //
+				.build();
+	}
+
+	@Test
+	public void testMask() throws Exception {
+
+		final SignatureHash logger = new SignatureHash(EnumSet.of(
+				Mask.LOGGER_NAME));
+
+		final SignatureHash level = new SignatureHash(EnumSet.of(
+				Mask.LOGGER_NAME, Mask.LEVEL));
+
+		final LogEvent one = event("one", Level.ERROR, "first", null);
+		final LogEvent two = event("one", Level.WARN, "second", null);
+		final LogEvent three = event("two", Level.ERROR, "first", null);
+
+		assertEquals(logger.hash(one), logger.hash(two));
+		assertFalse(logger.hash(one) == logger.hash(three));
+
+		assertFalse(level.hash(one) == level.hash(two));
+
+	}
+
+	@Test
+	public void testStackTrace() throws Exception {
+
+		final SignatureHash hash = new SignatureHash(EnumSet.of(
+				Mask.LOGGER_NAME, Mask.STACK_TRACE));
+
+		final Exception error = new Exception("error");
+
+		assertEquals(hash.hash(event("one", Level.ERROR, "", error)),
+				hash.hash(event("one", Level.ERROR, "", error)));
+
+		assertFalse(hash.hash(event("one", Level.ERROR, "", error)) == hash
+				.hash(event("one", Level.ERROR, "", new Exception("other"))));
+
+		assertFalse(hash.hash(event("one", Level.ERROR, "", error)) == hash
+				.hash(event("one", Level.ERROR, "", null)));
+
+	}
+
+	@Test
+	public void testMessageTemplate() throws Exception {
+
+		final SignatureHash hash = new SignatureHash(EnumSet.of(
+				Mask.LOGGER_NAME, Mask.MESSAGE_TEMPLATE));
+
+		assertEquals(hash.hash(event("one", Level.ERROR, "user 1001 failed",
+				null)), hash.hash(event("one", Level.ERROR,
+				"user 2002 failed", null)));
+
+		assertFalse(hash.hash(event("one", Level.ERROR, "user 1001 failed",
+				null)) == hash.hash(event("one", Level.ERROR,
+				"user 1001 removed", null)));
+
+		/** format string template is shared with rendered message */
+		final LogEvent parameterized = Log4jLogEvent.newBuilder() //
+				.setLoggerName("one") //
+				.setLevel(Level.ERROR) //
+				.setMessage(new ParameterizedMessage("user {} failed", 3003)) //
+				.build();
+
+		assertEquals(hash.hash(event("one", Level.ERROR, "user 1001 failed",
+				null)), hash.hash(parameterized));
+
+		assertEquals(1, hash.templateCache.size());
+
+	}
+
+	@Test
+	public void testDefault() throws Exception {
+
+		final SignatureHash hash = new SignatureHash(Signature.DEFAULT);
+
+		/** no location without includeLocation: logger name only */
+		assertEquals(hash.hash(event("one", Level.ERROR, "", null)),
+				hash.hash(event("one", Level.FATAL, "", null)));
+
+	}
+
+	@Test
+	public void testDefaultMask() throws Exception {
+
+		final SignatureHash hash = new SignatureHash(SignatureHash.DEFAULT_MASK);
+
+		assertFalse(hash.isLocation());
+
+		assertFalse(new SignatureHash(Signature.DEFAULT).isLocation() == hash
+				.isLocation());
+
+		assertEquals(hash.hash(event("one", Level.ERROR, "user 1001 failed",
+				null)), hash.hash(event("one", Level.WARN, "user 2002 failed",
+				null)));
+
+	}
+
+	@Test
+	public void testFormattable() throws Exception {
+
+		final SignatureHash hash = new SignatureHash(EnumSet.of(
+				Mask.LOGGER_NAME, Mask.MESSAGE_TEMPLATE));
+
+		/** message writes itself, formatted message is not used */
+		final LogEvent formattable = Log4jLogEvent.newBuilder() //
+				.setLoggerName("one") //
+				.setLevel(Level.ERROR) //
+				.setMessage(new TestLayoutSNS.Formattable()) //
+				.build();
+
+		assertEquals(hash.hash(event("one", Level.ERROR, "formatted", null)),
+				hash.hash(formattable));
+
+	}
+
+}